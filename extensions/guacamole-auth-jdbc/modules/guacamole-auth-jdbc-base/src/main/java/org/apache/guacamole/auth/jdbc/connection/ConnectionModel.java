@@ -92,6 +92,41 @@ public class ConnectionModel extends ChildObjectModel {
      */
     private EncryptionMethod proxyEncryptionMethod;
 
+    /**
+     * The number of milliseconds to wait when connecting to guacd, and for data
+     * from guacd, before timing out, or null if the value used by the default
+     * guacd configuration should be used.
+     */
+    private Integer proxyTimeout;
+
+    /**
+     * Whether Nagle's algorithm should be disabled (TCP_NODELAY) for the
+     * connection to guacd, or null if the value used by the default guacd
+     * configuration should be used.
+     */
+    private Boolean proxyTcpNoDelay;
+
+    /**
+     * Whether TCP keep-alive should be enabled (SO_KEEPALIVE) for the
+     * connection to guacd, or null if the value used by the default guacd
+     * configuration should be used.
+     */
+    private Boolean proxyKeepAlive;
+
+    /**
+     * The size of the send buffer (SO_SNDBUF) of the connection to guacd, in
+     * bytes, or null if the value used by the default guacd configuration
+     * should be used.
+     */
+    private Integer proxySendBufferSize;
+
+    /**
+     * The size of the receive buffer (SO_RCVBUF) of the connection to guacd, in
+     * bytes, or null if the value used by the default guacd configuration
+     * should be used.
+     */
+    private Integer proxyReceiveBufferSize;
+
     /**
      * Creates a new, empty connection.
      */
@@ -315,6 +350,141 @@ public class ConnectionModel extends ChildObjectModel {
         this.proxyEncryptionMethod = proxyEncryptionMethod;
     }
 
+    /**
+     * Returns the number of milliseconds to wait when connecting to guacd, and
+     * for data from guacd, before timing out. If the value used by the default
+     * guacd configuration should be used instead, null is returned.
+     *
+     * @return
+     *     The number of milliseconds to wait when connecting to guacd, and for
+     *     data from guacd, before timing out, or null if the value used by the
+     *     default guacd configuration should be used.
+     */
+    public Integer getProxyTimeout() {
+        return proxyTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait when connecting to guacd, and for
+     * data from guacd, before timing out.
+     *
+     * @param proxyTimeout
+     *     The number of milliseconds to wait when connecting to guacd, and for
+     *     data from guacd, before timing out, or null if the value used by the
+     *     default guacd configuration should be used.
+     */
+    public void setProxyTimeout(Integer proxyTimeout) {
+        this.proxyTimeout = proxyTimeout;
+    }
+
+    /**
+     * Returns whether Nagle's algorithm should be disabled (TCP_NODELAY) for
+     * the connection to guacd. If the value used by the default guacd
+     * configuration should be used instead, null is returned.
+     *
+     * @return
+     *     Whether Nagle's algorithm should be disabled (TCP_NODELAY) for the
+     *     connection to guacd, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public Boolean getProxyTcpNoDelay() {
+        return proxyTcpNoDelay;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm should be disabled (TCP_NODELAY) for the
+     * connection to guacd.
+     *
+     * @param proxyTcpNoDelay
+     *     Whether Nagle's algorithm should be disabled (TCP_NODELAY) for the
+     *     connection to guacd, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public void setProxyTcpNoDelay(Boolean proxyTcpNoDelay) {
+        this.proxyTcpNoDelay = proxyTcpNoDelay;
+    }
+
+    /**
+     * Returns whether TCP keep-alive should be enabled (SO_KEEPALIVE) for the
+     * connection to guacd. If the value used by the default guacd configuration
+     * should be used instead, null is returned.
+     *
+     * @return
+     *     Whether TCP keep-alive should be enabled (SO_KEEPALIVE) for the
+     *     connection to guacd, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public Boolean getProxyKeepAlive() {
+        return proxyKeepAlive;
+    }
+
+    /**
+     * Sets whether TCP keep-alive should be enabled (SO_KEEPALIVE) for the
+     * connection to guacd.
+     *
+     * @param proxyKeepAlive
+     *     Whether TCP keep-alive should be enabled (SO_KEEPALIVE) for the
+     *     connection to guacd, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public void setProxyKeepAlive(Boolean proxyKeepAlive) {
+        this.proxyKeepAlive = proxyKeepAlive;
+    }
+
+    /**
+     * Returns the size of the send buffer (SO_SNDBUF) of the connection to
+     * guacd, in bytes. If the value used by the default guacd configuration
+     * should be used instead, null is returned.
+     *
+     * @return
+     *     The size of the send buffer (SO_SNDBUF) of the connection to guacd,
+     *     in bytes, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public Integer getProxySendBufferSize() {
+        return proxySendBufferSize;
+    }
+
+    /**
+     * Sets the size of the send buffer (SO_SNDBUF) of the connection to guacd,
+     * in bytes.
+     *
+     * @param proxySendBufferSize
+     *     The size of the send buffer (SO_SNDBUF) of the connection to guacd,
+     *     in bytes, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public void setProxySendBufferSize(Integer proxySendBufferSize) {
+        this.proxySendBufferSize = proxySendBufferSize;
+    }
+
+    /**
+     * Returns the size of the receive buffer (SO_RCVBUF) of the connection to
+     * guacd, in bytes. If the value used by the default guacd configuration
+     * should be used instead, null is returned.
+     *
+     * @return
+     *     The size of the receive buffer (SO_RCVBUF) of the connection to
+     *     guacd, in bytes, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public Integer getProxyReceiveBufferSize() {
+        return proxyReceiveBufferSize;
+    }
+
+    /**
+     * Sets the size of the receive buffer (SO_RCVBUF) of the connection to
+     * guacd, in bytes.
+     *
+     * @param proxyReceiveBufferSize
+     *     The size of the receive buffer (SO_RCVBUF) of the connection to
+     *     guacd, in bytes, or null if the value used by the default guacd
+     *     configuration should be used.
+     */
+    public void setProxyReceiveBufferSize(Integer proxyReceiveBufferSize) {
+        this.proxyReceiveBufferSize = proxyReceiveBufferSize;
+    }
+
     /**
      * Returns the identifiers of all readable sharing profiles associated with
      * this connection. This is set only when the connection is queried, and has
@@ -38,6 +38,7 @@ import org.apache.guacamole.form.Field;
 import org.apache.guacamole.form.Form;
 import org.apache.guacamole.form.NumericField;
 import org.apache.guacamole.form.TextField;
+import org.apache.guacamole.net.GuacamoleSocketOptions;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionRecord;
@@ -90,6 +91,49 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
      */
     public static final String GUACD_ENCRYPTION_VALUE_SSL = "ssl";
 
+    /**
+     * The name of the attribute which overrides the number of milliseconds to
+     * wait when connecting to guacd, and for data from guacd, before timing
+     * out.
+     */
+    public static final String GUACD_TIMEOUT_NAME = "guacd-timeout";
+
+    /**
+     * The name of the attribute which overrides whether Nagle's algorithm
+     * should be disabled (TCP_NODELAY) for the connection to guacd.
+     */
+    public static final String GUACD_TCP_NODELAY_NAME = "guacd-tcp-nodelay";
+
+    /**
+     * The name of the attribute which overrides whether TCP keep-alive should
+     * be enabled (SO_KEEPALIVE) for the connection to guacd.
+     */
+    public static final String GUACD_KEEPALIVE_NAME = "guacd-keepalive";
+
+    /**
+     * The name of the attribute which overrides the size of the send buffer
+     * (SO_SNDBUF) of the connection to guacd, in bytes.
+     */
+    public static final String GUACD_SEND_BUFFER_SIZE_NAME = "guacd-send-buffer-size";
+
+    /**
+     * The name of the attribute which overrides the size of the receive
+     * buffer (SO_RCVBUF) of the connection to guacd, in bytes.
+     */
+    public static final String GUACD_RECEIVE_BUFFER_SIZE_NAME = "guacd-receive-buffer-size";
+
+    /**
+     * The value specified for a boolean guacd socket option attribute if that
+     * option should be enabled.
+     */
+    public static final String GUACD_OPTION_VALUE_TRUE = "true";
+
+    /**
+     * The value specified for a boolean guacd socket option attribute if that
+     * option should be disabled.
+     */
+    public static final String GUACD_OPTION_VALUE_FALSE = "false";
+
     /**
      * All attributes which describe the configuration of the guacd instance
      * which will be used to connect to the remote desktop described by this
@@ -102,7 +146,20 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
             "",
             GUACD_ENCRYPTION_VALUE_NONE,
             GUACD_ENCRYPTION_VALUE_SSL
-        ))
+        )),
+        new NumericField(GUACD_TIMEOUT_NAME),
+        new EnumField(GUACD_TCP_NODELAY_NAME, Arrays.asList(
+            "",
+            GUACD_OPTION_VALUE_TRUE,
+            GUACD_OPTION_VALUE_FALSE
+        )),
+        new EnumField(GUACD_KEEPALIVE_NAME, Arrays.asList(
+            "",
+            GUACD_OPTION_VALUE_TRUE,
+            GUACD_OPTION_VALUE_FALSE
+        )),
+        new NumericField(GUACD_SEND_BUFFER_SIZE_NAME),
+        new NumericField(GUACD_RECEIVE_BUFFER_SIZE_NAME)
     ));
 
     /**
@@ -287,6 +344,13 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
             }
         }
 
+        // Set guacd (proxy) socket options
+        attributes.put(GUACD_TIMEOUT_NAME, NumericField.format(getModel().getProxyTimeout()));
+        attributes.put(GUACD_TCP_NODELAY_NAME, formatOption(getModel().getProxyTcpNoDelay()));
+        attributes.put(GUACD_KEEPALIVE_NAME, formatOption(getModel().getProxyKeepAlive()));
+        attributes.put(GUACD_SEND_BUFFER_SIZE_NAME, NumericField.format(getModel().getProxySendBufferSize()));
+        attributes.put(GUACD_RECEIVE_BUFFER_SIZE_NAME, NumericField.format(getModel().getProxyReceiveBufferSize()));
+
         // Set connection weight
         attributes.put(CONNECTION_WEIGHT, NumericField.format(getModel().getConnectionWeight()));
 
@@ -338,6 +402,31 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
         else
             getModel().setProxyEncryptionMethod(null);
 
+        // Translate guacd timeout
+        try { getModel().setProxyTimeout(NumericField.parse(attributes.get(GUACD_TIMEOUT_NAME))); }
+        catch (NumberFormatException e) {
+            logger.warn("Not setting guacd timeout: {}", e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+        }
+
+        // Translate guacd TCP_NODELAY and SO_KEEPALIVE options
+        getModel().setProxyTcpNoDelay(parseOption(attributes.get(GUACD_TCP_NODELAY_NAME)));
+        getModel().setProxyKeepAlive(parseOption(attributes.get(GUACD_KEEPALIVE_NAME)));
+
+        // Translate guacd send buffer size
+        try { getModel().setProxySendBufferSize(NumericField.parse(attributes.get(GUACD_SEND_BUFFER_SIZE_NAME))); }
+        catch (NumberFormatException e) {
+            logger.warn("Not setting guacd send buffer size: {}", e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+        }
+
+        // Translate guacd receive buffer size
+        try { getModel().setProxyReceiveBufferSize(NumericField.parse(attributes.get(GUACD_RECEIVE_BUFFER_SIZE_NAME))); }
+        catch (NumberFormatException e) {
+            logger.warn("Not setting guacd receive buffer size: {}", e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+        }
+
         // Translate connection weight attribute
         try { getModel().setConnectionWeight(NumericField.parse(attributes.get(CONNECTION_WEIGHT))); }
         catch (NumberFormatException e) {
@@ -399,6 +488,48 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
 
     }
 
+    /**
+     * Formats the given boolean guacd socket option as an attribute value.
+     *
+     * @param value
+     *     The value of the socket option, or null if the default value should
+     *     be used.
+     *
+     * @return
+     *     The attribute value representing the given socket option, or null
+     *     if the default value should be used.
+     */
+    private static String formatOption(Boolean value) {
+
+        if (value == null)
+            return null;
+
+        return value ? GUACD_OPTION_VALUE_TRUE : GUACD_OPTION_VALUE_FALSE;
+
+    }
+
+    /**
+     * Parses the given attribute value as a boolean guacd socket option.
+     *
+     * @param value
+     *     The attribute value to parse.
+     *
+     * @return
+     *     The value of the socket option, or null if the attribute value is
+     *     unspecified or unrecognized, and the default value should be used.
+     */
+    private static Boolean parseOption(String value) {
+
+        if (GUACD_OPTION_VALUE_TRUE.equals(value))
+            return Boolean.TRUE;
+
+        if (GUACD_OPTION_VALUE_FALSE.equals(value))
+            return Boolean.FALSE;
+
+        return null;
+
+    }
+
     /**
      * Returns the connection information which should be used to connect to
      * guacd when establishing a connection to the remote desktop described by
@@ -425,11 +556,35 @@ public class ModeledConnection extends ModeledChildDirectoryObject<ConnectionMod
         Integer port = getModel().getProxyPort();
         EncryptionMethod encryptionMethod = getModel().getProxyEncryptionMethod();
 
+        // Override default socket options with those specified by the model
+        GuacamoleSocketOptions options = defaultConfig.getSocketOptions();
+
+        Integer timeout = getModel().getProxyTimeout();
+        if (timeout != null)
+            options.setTimeout(timeout);
+
+        Boolean tcpNoDelay = getModel().getProxyTcpNoDelay();
+        if (tcpNoDelay != null)
+            options.setTcpNoDelay(tcpNoDelay);
+
+        Boolean keepAlive = getModel().getProxyKeepAlive();
+        if (keepAlive != null)
+            options.setKeepAlive(keepAlive);
+
+        Integer sendBufferSize = getModel().getProxySendBufferSize();
+        if (sendBufferSize != null)
+            options.setSendBufferSize(sendBufferSize);
+
+        Integer receiveBufferSize = getModel().getProxyReceiveBufferSize();
+        if (receiveBufferSize != null)
+            options.setReceiveBufferSize(receiveBufferSize);
+
         // Produce new proxy configuration from model, using defaults where unspecified
         return new GuacamoleProxyConfiguration(
             hostname         != null ? hostname         : defaultConfig.getHostname(),
             port             != null ? port             : defaultConfig.getPort(),
-            encryptionMethod != null ? encryptionMethod : defaultConfig.getEncryptionMethod()
+            encryptionMethod != null ? encryptionMethod : defaultConfig.getEncryptionMethod(),
+            options
         );
     }
 
@@ -21,6 +21,7 @@ package org.apache.guacamole.auth.jdbc.tunnel;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -46,6 +47,7 @@ import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.GuacamoleUpstreamException;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionMapper;
 import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleSocketOptions;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionGroup;
@@ -62,6 +64,7 @@ import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterMapp
 import org.apache.guacamole.auth.jdbc.sharingprofile.SharingProfileParameterModel;
 import org.apache.guacamole.auth.jdbc.user.RemoteAuthenticatedUser;
 import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
+import org.apache.guacamole.net.auth.PooledGuacamoleSocketFactory;
 import org.apache.guacamole.protocol.FailoverGuacamoleSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -115,6 +118,13 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
     @Inject
     private Provider<ActiveConnectionRecord> activeConnectionRecordProvider;
 
+    /**
+     * Factory for sockets connected to guacd, which may keep pre-connected
+     * sockets on hand.
+     */
+    @Inject
+    private PooledGuacamoleSocketFactory socketFactory;
+
     /**
      * All active connections through the tunnel having a given UUID.
      */
@@ -338,24 +348,20 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             GuacamoleProxyConfiguration proxyConfig,
             Runnable socketClosedCallback) throws GuacamoleException {
 
+        // Obtain connected socket, pre-connected if possible
+        Socket sock = socketFactory.acquireSocket(proxyConfig);
+        GuacamoleSocketOptions options = proxyConfig.getSocketOptions();
+
         // Select socket type depending on desired encryption
         switch (proxyConfig.getEncryptionMethod()) {
 
             // Use SSL if requested
             case SSL:
-                return new ManagedSSLGuacamoleSocket(
-                    proxyConfig.getHostname(),
-                    proxyConfig.getPort(),
-                    socketClosedCallback
-                );
+                return new ManagedSSLGuacamoleSocket(sock, options, socketClosedCallback);
 
             // Use straight TCP if unencrypted
             case NONE:
-                return new ManagedInetGuacamoleSocket(
-                    proxyConfig.getHostname(),
-                    proxyConfig.getPort(),
-                    socketClosedCallback
-                );
+                return new ManagedInetGuacamoleSocket(sock, options, socketClosedCallback);
 
         }
 
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.net.auth.PooledGuacamoleSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider which creates the PooledGuacamoleSocketFactory used to connect to
+ * guacd, configured using the guacd-related properties within
+ * guacamole.properties.
+ */
+public class GuacamoleSocketFactoryProvider
+    implements Provider<PooledGuacamoleSocketFactory> {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleSocketFactoryProvider.class);
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    @Override
+    public PooledGuacamoleSocketFactory get() {
+
+        PooledGuacamoleSocketFactory socketFactory;
+
+        // Configure factory using guacamole.properties, falling back to an
+        // unpooled factory using the default SSL/TLS context if the
+        // properties cannot be read
+        try {
+            socketFactory = new PooledGuacamoleSocketFactory(environment);
+            int poolSize = environment.getProperty(Environment.GUACD_POOL_SIZE, 0);
+            if (poolSize > 0)
+                logger.info("Up to {} pre-connected sockets will be kept for "
+                        + "each guacd.", poolSize);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to configure connections to guacd: {}", e.getMessage());
+            logger.debug("Error while reading guacd connection properties.", e);
+            socketFactory = new PooledGuacamoleSocketFactory(0);
+        }
+
+        return socketFactory;
+
+    }
+
+}
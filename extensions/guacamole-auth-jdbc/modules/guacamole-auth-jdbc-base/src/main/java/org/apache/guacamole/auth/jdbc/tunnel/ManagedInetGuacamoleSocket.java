@@ -19,7 +19,10 @@
 
 package org.apache.guacamole.auth.jdbc.tunnel;
 
+import java.net.Socket;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.FlushPolicy;
+import org.apache.guacamole.net.GuacamoleSocketOptions;
 import org.apache.guacamole.net.InetGuacamoleSocket;
 
 /**
@@ -57,6 +60,35 @@ public class ManagedInetGuacamoleSocket extends InetGuacamoleSocket {
         this.socketClosedTask = socketClosedTask;
     }
 
+    /**
+     * Creates a new socket which communicates via TCP over the given socket,
+     * which must already be connected to the Guacamole proxy server. If the
+     * socket is closed for any reason, the given task is run. Data written
+     * to the socket is coalesced until the writer is flushed, as occurs when
+     * write access to the tunnel using the socket is relinquished.
+     *
+     * @param sock
+     *     The connected socket to read from and write to.
+     *
+     * @param options
+     *     The options which were used to configure the given socket, and
+     *     which should be used to configure the underlying reader.
+     *
+     * @param socketClosedTask
+     *     The task to run when the socket is closed. This task will NOT be
+     *     run if an exception occurs during creation, and this
+     *     ManagedInetGuacamoleSocket instance is ultimately not created.
+     *
+     * @throws GuacamoleException
+     *     If the I/O streams of the given socket cannot be retrieved.
+     */
+    public ManagedInetGuacamoleSocket(Socket sock,
+            GuacamoleSocketOptions options, Runnable socketClosedTask)
+            throws GuacamoleException {
+        super(sock, FlushPolicy.COALESCE, options);
+        this.socketClosedTask = socketClosedTask;
+    }
+
     @Override
     public void close() throws GuacamoleException {
         super.close();
@@ -61,6 +61,13 @@ CREATE TABLE `guacamole_connection` (
   `proxy_hostname`          varchar(512),
   `proxy_encryption_method` enum('NONE', 'SSL'),
 
+  -- Guacamole proxy (guacd) socket option overrides
+  `proxy_timeout`             int(11),
+  `proxy_tcp_nodelay`         boolean,
+  `proxy_keepalive`           boolean,
+  `proxy_send_buffer_size`    int(11),
+  `proxy_receive_buffer_size` int(11),
+
   -- Concurrency limits
   `max_connections`          int(11),
   `max_connections_per_user` int(11),
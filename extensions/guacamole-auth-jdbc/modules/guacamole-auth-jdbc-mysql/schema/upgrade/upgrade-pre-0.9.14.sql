@@ -30,3 +30,22 @@ ALTER TABLE guacamole_connection
 
 ALTER TABLE guacamole_connection
     ADD COLUMN failover_only BOOLEAN NOT NULL DEFAULT 0;
+
+--
+-- Add per-connection guacd socket options
+--
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_timeout int(11);
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_tcp_nodelay BOOLEAN;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_keepalive BOOLEAN;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_send_buffer_size int(11);
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_receive_buffer_size int(11);
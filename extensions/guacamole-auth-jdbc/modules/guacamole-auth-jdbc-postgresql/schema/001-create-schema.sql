@@ -115,6 +115,13 @@ CREATE TABLE guacamole_connection (
   proxy_hostname          varchar(512),
   proxy_encryption_method guacamole_proxy_encryption_method,
 
+  -- Guacamole proxy (guacd) socket option overrides
+  proxy_timeout             integer,
+  proxy_tcp_nodelay         boolean,
+  proxy_keepalive           boolean,
+  proxy_send_buffer_size    integer,
+  proxy_receive_buffer_size integer,
+
   PRIMARY KEY (connection_id),
 
   CONSTRAINT connection_name_parent
@@ -30,3 +30,22 @@ ALTER TABLE guacamole_connection
 
 ALTER TABLE guacamole_connection
     ADD COLUMN failover_only BOOLEAN NOT NULL DEFAULT FALSE;
+
+--
+-- Add per-connection guacd socket options
+--
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_timeout int;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_tcp_nodelay BOOLEAN;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_keepalive BOOLEAN;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_send_buffer_size int;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN proxy_receive_buffer_size int;
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.io.IOException;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Entry point of the benchmark JAR. All standard JMH command-line options
+ * are accepted, with allocation profiling ("-prof gc") enabled by default,
+ * as the rate of allocation within the protocol stack largely determines
+ * the GC pressure of a busy Guacamole server.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * The name of the GC profiler, as accepted by the "-prof" option.
+     */
+    private static final String GC_PROFILER_NAME = "gc";
+
+    /**
+     * Runs all benchmarks matching the given JMH command-line options, always
+     * including the GC profiler.
+     *
+     * @param args
+     *     The JMH command-line options to use.
+     *
+     * @throws CommandLineOptionException
+     *     If the given command-line options are invalid.
+     *
+     * @throws RunnerException
+     *     If an error occurs while running the benchmarks.
+     *
+     * @throws IOException
+     *     If an error occurs while printing usage information or listing
+     *     benchmarks.
+     */
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException, IOException {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        // Defer to standard JMH behavior if not actually running benchmarks
+        if (commandLineOptions.shouldHelp()
+                || commandLineOptions.shouldList()
+                || commandLineOptions.shouldListWithParams()
+                || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLineOptions);
+
+        // Add GC profiler unless already explicitly requested
+        boolean gcProfiling = false;
+        for (ProfilerConfig profiler : commandLineOptions.getProfilers()) {
+            String name = profiler.getKlass();
+            if (GC_PROFILER_NAME.equals(name)
+                    || GCProfiler.class.getName().equals(name))
+                gcProfiling = true;
+        }
+
+        if (!gcProfiling)
+            options.addProfiler(GCProfiler.class);
+
+        new Runner(options.build()).run();
+
+    }
+
+}
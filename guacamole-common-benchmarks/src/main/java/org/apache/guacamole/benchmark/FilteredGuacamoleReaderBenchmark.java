@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.protocol.CompositeGuacamoleFilter;
+import org.apache.guacamole.protocol.FilteredGuacamoleReader;
+import org.apache.guacamole.protocol.GuacamoleFilter;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
+import org.apache.guacamole.protocol.GuacamoleViewFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading individual instructions through one or more
+ * filters, either stacked as FilteredGuacamoleReaders or combined with
+ * CompositeGuacamoleFilter, as done by the web application when
+ * intercepting streams. Each filter inspects every instruction in the same
+ * manner as stream interception, but allows all instructions through
+ * unmodified.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilteredGuacamoleReaderBenchmark {
+
+    /**
+     * The type of filter to apply to each instruction read.
+     */
+    public enum FilterType {
+
+        /**
+         * A filter which receives each instruction as a parsed
+         * GuacamoleInstruction.
+         */
+        INSTRUCTION,
+
+        /**
+         * A filter which receives each instruction as a
+         * GuacamoleInstructionView of the underlying reader's buffer.
+         */
+        VIEW
+
+    }
+
+    /**
+     * Filter which inspects, but does not modify or drop, each instruction
+     * as a parsed GuacamoleInstruction.
+     */
+    private static class PassthroughFilter implements GuacamoleFilter {
+
+        /**
+         * The number of blob instructions observed, preventing the inspection
+         * of each instruction from being optimized away.
+         */
+        protected int blobs;
+
+        @Override
+        public GuacamoleInstruction filter(GuacamoleInstruction instruction) {
+
+            if (instruction.getKnownOpcode() == GuacamoleOpcode.BLOB
+                    && instruction.getArgs().get(0).length() != 0)
+                blobs++;
+
+            return instruction;
+
+        }
+
+    }
+
+    /**
+     * Filter which inspects, but does not modify or drop, each instruction
+     * as a GuacamoleInstructionView.
+     */
+    private static class PassthroughViewFilter extends PassthroughFilter
+            implements GuacamoleViewFilter {
+
+        @Override
+        public GuacamoleInstructionView filter(GuacamoleInstructionView instruction) {
+
+            if (instruction.getKnownOpcode() == GuacamoleOpcode.BLOB
+                    && !instruction.argEquals(0, ""))
+                blobs++;
+
+            return instruction;
+
+        }
+
+    }
+
+    /**
+     * The instruction mix to read.
+     */
+    @Param
+    public InstructionMix mix;
+
+    /**
+     * The type of filter to apply to each instruction read.
+     */
+    @Param
+    public FilterType filterType;
+
+    /**
+     * The number of filters to apply to each instruction read.
+     */
+    @Param({"1", "2"})
+    public int filterCount;
+
+    /**
+     * Whether all filters should be applied by a single
+     * FilteredGuacamoleReader through a CompositeGuacamoleFilter, rather
+     * than by stacking one FilteredGuacamoleReader per filter.
+     */
+    @Param({"false", "true"})
+    public boolean composite;
+
+    /**
+     * The outermost reader being benchmarked.
+     */
+    private GuacamoleReader reader;
+
+    /**
+     * Creates the requested filters atop a ReaderGuacamoleReader which
+     * endlessly reads the current instruction mix.
+     */
+    @Setup
+    public void setUp() {
+
+        reader = new ReaderGuacamoleReader(new RepeatingReader(mix.getData()));
+
+        GuacamoleFilter[] filters = new GuacamoleFilter[filterCount];
+        for (int i = 0; i < filterCount; i++)
+            filters[i] = (filterType == FilterType.VIEW)
+                    ? new PassthroughViewFilter() : new PassthroughFilter();
+
+        // Apply all filters in a single pass
+        if (composite)
+            reader = new FilteredGuacamoleReader(reader,
+                    new CompositeGuacamoleFilter(filters));
+
+        // Apply each filter with its own reader
+        else {
+            for (GuacamoleFilter filter : filters)
+                reader = new FilteredGuacamoleReader(reader, filter);
+        }
+
+    }
+
+    /**
+     * Reads a single filtered instruction as a newly-allocated character
+     * array.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the instruction.
+     */
+    @Benchmark
+    public char[] read() throws GuacamoleException {
+        return reader.read();
+    }
+
+    /**
+     * Reads and parses a single filtered instruction.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the instruction.
+     */
+    @Benchmark
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+        return reader.readInstruction();
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for converting GuacamoleInstructions into their protocol form.
+ * As GuacamoleInstruction caches its protocol form, each operation converts
+ * a newly-created instruction having the same content as the next
+ * instruction in the mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuacamoleInstructionBenchmark {
+
+    /**
+     * The instruction mix to convert.
+     */
+    @Param
+    public InstructionMix mix;
+
+    /**
+     * All instructions within the current instruction mix.
+     */
+    private List<GuacamoleInstruction> instructions;
+
+    /**
+     * The index of the next instruction to convert.
+     */
+    private int index;
+
+    /**
+     * Resets the position within the current instruction mix.
+     */
+    @Setup
+    public void setUp() {
+        instructions = mix.getInstructions();
+        index = 0;
+    }
+
+    /**
+     * Converts a single newly-created instruction into its protocol form.
+     *
+     * @return
+     *     The protocol form of the instruction.
+     */
+    @Benchmark
+    public String toProtocolString() {
+
+        GuacamoleInstruction instruction = instructions.get(index);
+
+        // Wrap back around to the beginning once all instructions are used
+        if (++index == instructions.size())
+            index = 0;
+
+        return new GuacamoleInstruction(instruction.getOpcode(),
+                instruction.getArgs()).toString();
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for parsing instructions using GuacamoleParser. Each operation
+ * appends data until exactly one instruction has been parsed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuacamoleParserBenchmark {
+
+    /**
+     * The instruction mix to parse.
+     */
+    @Param
+    public InstructionMix mix;
+
+    /**
+     * The parser being benchmarked.
+     */
+    private GuacamoleParser parser;
+
+    /**
+     * The Guacamole protocol data being parsed.
+     */
+    private char[] data;
+
+    /**
+     * The offset within the data of the next character to append.
+     */
+    private int offset;
+
+    /**
+     * Creates a new GuacamoleParser and resets the position within the
+     * current instruction mix.
+     */
+    @Setup
+    public void setUp() {
+        parser = new GuacamoleParser();
+        data = mix.getData();
+        offset = 0;
+    }
+
+    /**
+     * Appends data to the parser until a single instruction is parsed.
+     *
+     * @return
+     *     The instruction parsed.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while parsing the instruction.
+     */
+    @Benchmark
+    public GuacamoleInstruction append() throws GuacamoleException {
+
+        // Append all available data until an instruction is parsed
+        while (!parser.hasNext())
+            offset += parser.append(data, offset, data.length - offset);
+
+        // Wrap back around to the beginning once all data is parsed
+        if (offset == data.length)
+            offset = 0;
+
+        return parser.next();
+
+    }
+
+}
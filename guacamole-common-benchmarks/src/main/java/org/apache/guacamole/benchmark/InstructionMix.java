@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * Representative sequences of Guacamole instructions, as would be received
+ * from guacd over the course of a typical connection. Each mix is generated
+ * deterministically, such that benchmark results remain comparable across
+ * runs.
+ */
+public enum InstructionMix {
+
+    /**
+     * Instructions dominated by small, frequent updates, such as those sent
+     * while the user is moving the mouse over an otherwise idle display.
+     */
+    INTERACTIVE(true, false),
+
+    /**
+     * Instructions dominated by large base64-encoded image data, such as
+     * those sent while playing video or scrolling a web page.
+     */
+    GRAPHICAL(false, true),
+
+    /**
+     * An even mix of small updates and large base64-encoded image data.
+     */
+    MIXED(true, true);
+
+    /**
+     * The minimum number of characters of Guacamole protocol data to generate
+     * for each mix.
+     */
+    private static final int MIX_LENGTH = 262144;
+
+    /**
+     * The number of mouse instructions included within each frame of an
+     * interactive mix.
+     */
+    private static final int MOUSE_PER_FRAME = 8;
+
+    /**
+     * The number of blob instructions included within each frame of a
+     * graphical mix.
+     */
+    private static final int BLOBS_PER_FRAME = 3;
+
+    /**
+     * The number of base64 characters within each blob instruction. This
+     * matches the size of blobs sent by guacd, remaining well within
+     * GuacamoleParser.INSTRUCTION_MAX_LENGTH.
+     */
+    private static final int BLOB_LENGTH = 8064;
+
+    /**
+     * All characters which may appear within base64-encoded data.
+     */
+    private static final String BASE64_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * All instructions within this mix, in order.
+     */
+    private final List<GuacamoleInstruction> instructions;
+
+    /**
+     * The Guacamole protocol form of each instruction within this mix, in
+     * order.
+     */
+    private final char[][] instructionData;
+
+    /**
+     * The Guacamole protocol form of all instructions within this mix,
+     * concatenated together.
+     */
+    private final char[] data;
+
+    /**
+     * Generates a new InstructionMix containing frames having the given
+     * content.
+     *
+     * @param interactive
+     *     Whether each frame should contain small mouse instructions.
+     *
+     * @param graphical
+     *     Whether each frame should contain an image streamed via large blob
+     *     instructions.
+     */
+    private InstructionMix(boolean interactive, boolean graphical) {
+
+        Random random = new Random(ordinal());
+        List<GuacamoleInstruction> generated = new ArrayList<GuacamoleInstruction>();
+
+        int length = 0;
+        int frame = 0;
+        while (length < MIX_LENGTH) {
+
+            List<GuacamoleInstruction> frameInstructions =
+                    new ArrayList<GuacamoleInstruction>();
+
+            // Pointer movement
+            if (interactive) {
+                for (int i = 0; i < MOUSE_PER_FRAME; i++) {
+                    frameInstructions.add(new GuacamoleInstruction("mouse",
+                            Integer.toString(random.nextInt(1920)),
+                            Integer.toString(random.nextInt(1080))));
+                }
+            }
+
+            // Image data, streamed as a series of blobs
+            if (graphical) {
+
+                String stream = Integer.toString(frame % 64);
+                frameInstructions.add(new GuacamoleInstruction("img",
+                        stream, "14", "0", "image/jpeg",
+                        Integer.toString(random.nextInt(1920)),
+                        Integer.toString(random.nextInt(1080))));
+
+                for (int i = 0; i < BLOBS_PER_FRAME; i++)
+                    frameInstructions.add(new GuacamoleInstruction("blob",
+                            stream, generateBase64(random, BLOB_LENGTH)));
+
+                frameInstructions.add(new GuacamoleInstruction("end", stream));
+
+            }
+
+            // End of frame
+            frameInstructions.add(new GuacamoleInstruction("sync",
+                    Long.toString(1500000000000L + frame * 16L)));
+
+            for (GuacamoleInstruction instruction : frameInstructions) {
+                generated.add(instruction);
+                length += instruction.toString().length();
+            }
+
+            frame++;
+
+        }
+
+        // Pre-render the protocol form of each instruction
+        instructionData = new char[generated.size()][];
+        data = new char[length];
+
+        int offset = 0;
+        for (int i = 0; i < instructionData.length; i++) {
+            char[] instruction = generated.get(i).toString().toCharArray();
+            System.arraycopy(instruction, 0, data, offset, instruction.length);
+            instructionData[i] = instruction;
+            offset += instruction.length;
+        }
+
+        instructions = Collections.unmodifiableList(generated);
+
+    }
+
+    /**
+     * Generates a string of random base64 characters having the given length.
+     *
+     * @param random
+     *     The source of randomness to use when selecting characters.
+     *
+     * @param length
+     *     The number of characters to generate.
+     *
+     * @return
+     *     A string of random base64 characters having the given length.
+     */
+    private static String generateBase64(Random random, int length) {
+
+        char[] base64 = new char[length];
+        for (int i = 0; i < length; i++)
+            base64[i] = BASE64_CHARS.charAt(random.nextInt(BASE64_CHARS.length()));
+
+        return new String(base64);
+
+    }
+
+    /**
+     * Returns all instructions within this mix, in order. Each returned
+     * instruction has already been converted to its protocol form, and thus
+     * has its String representation cached.
+     *
+     * @return
+     *     An unmodifiable list of all instructions within this mix.
+     */
+    public List<GuacamoleInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Returns the Guacamole protocol form of each instruction within this
+     * mix, in order. The returned arrays must not be modified.
+     *
+     * @return
+     *     The Guacamole protocol form of each instruction within this mix.
+     */
+    public char[][] getInstructionData() {
+        return instructionData;
+    }
+
+    /**
+     * Returns the Guacamole protocol form of all instructions within this mix,
+     * concatenated together. The returned array must not be modified.
+     *
+     * @return
+     *     The Guacamole protocol form of all instructions within this mix.
+     */
+    public char[] getData() {
+        return data;
+    }
+
+}
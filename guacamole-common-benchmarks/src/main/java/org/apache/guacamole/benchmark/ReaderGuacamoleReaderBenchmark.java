@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading individual instructions using ReaderGuacamoleReader.
+ * Each operation reads exactly one instruction from an endlessly-repeating
+ * instruction mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderGuacamoleReaderBenchmark {
+
+    /**
+     * The instruction mix to read.
+     */
+    @Param
+    public InstructionMix mix;
+
+    /**
+     * The reader being benchmarked.
+     */
+    private ReaderGuacamoleReader reader;
+
+    /**
+     * Creates a new ReaderGuacamoleReader which endlessly reads the current
+     * instruction mix.
+     */
+    @Setup
+    public void setUp() {
+        reader = new ReaderGuacamoleReader(new RepeatingReader(mix.getData()));
+    }
+
+    /**
+     * Reads a single instruction as a newly-allocated character array.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the instruction.
+     */
+    @Benchmark
+    public char[] read() throws GuacamoleException {
+        return reader.read();
+    }
+
+    /**
+     * Reads and parses a single instruction.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the instruction.
+     */
+    @Benchmark
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+        return reader.readInstruction();
+    }
+
+    /**
+     * Reads a single instruction as a view of the reader's internal buffer,
+     * without copying.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the instruction.
+     */
+    @Benchmark
+    public CharBuffer readBuffer() throws GuacamoleException {
+        return reader.readBuffer();
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.io.Reader;
+
+/**
+ * Reader which endlessly repeats the contents of a character array, never
+ * reaching end-of-stream. As with data read from a socket, each read returns
+ * no more than a single contiguous chunk of the underlying array.
+ */
+public class RepeatingReader extends Reader {
+
+    /**
+     * The data to repeat.
+     */
+    private final char[] data;
+
+    /**
+     * The offset within the data of the next character to read.
+     */
+    private int offset = 0;
+
+    /**
+     * Creates a new RepeatingReader which endlessly repeats the contents of
+     * the given array.
+     *
+     * @param data
+     *     The data to repeat. This array must not be empty.
+     */
+    public RepeatingReader(char[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+
+        // Read no further than the end of the data
+        int length = Math.min(len, data.length - offset);
+        System.arraycopy(data, offset, buffer, off, length);
+
+        // Wrap back around to the beginning once all data is read
+        offset += length;
+        if (offset == data.length)
+            offset = 0;
+
+        return length;
+
+    }
+
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.benchmark;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.FlushPolicy;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for writing instructions using WriterGuacamoleWriter. As with
+ * the sockets provided by guacamole-common, the writer wraps a UTF-8
+ * OutputStreamWriter, here writing to an OutputStream which discards all
+ * data. Each operation writes the entire instruction mix and then flushes
+ * the writer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterGuacamoleWriterBenchmark {
+
+    /**
+     * OutputStream which discards all data written, counting the number of
+     * write operations which reach the stream.
+     */
+    private static class DiscardOutputStream extends OutputStream {
+
+        /**
+         * The number of write operations which have reached this stream.
+         */
+        private long writes;
+
+        @Override
+        public void write(int b) {
+            writes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+        }
+
+    }
+
+    /**
+     * The instruction mix to write.
+     */
+    @Param
+    public InstructionMix mix;
+
+    /**
+     * The name of the FlushPolicy constant defining when the writer sends
+     * data written to it.
+     */
+    @Param({"IMMEDIATE", "COALESCE"})
+    public String flushPolicy;
+
+    /**
+     * The writer being benchmarked.
+     */
+    private WriterGuacamoleWriter writer;
+
+    /**
+     * The Guacamole protocol form of each instruction within the current
+     * instruction mix.
+     */
+    private char[][] instructionData;
+
+    /**
+     * All instructions within the current instruction mix.
+     */
+    private List<GuacamoleInstruction> instructions;
+
+    /**
+     * Creates a new WriterGuacamoleWriter which uses the requested flush
+     * policy.
+     */
+    @Setup
+    public void setUp() {
+
+        FlushPolicy policy = "COALESCE".equals(flushPolicy)
+                ? FlushPolicy.COALESCE : FlushPolicy.IMMEDIATE;
+
+        writer = new WriterGuacamoleWriter(new OutputStreamWriter(
+                new DiscardOutputStream(), Charset.forName("UTF-8")), policy);
+
+        instructionData = mix.getInstructionData();
+        instructions = mix.getInstructions();
+
+    }
+
+    /**
+     * Writes the protocol form of each instruction in the mix, flushing the
+     * writer once all instructions are written.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing the instructions.
+     */
+    @Benchmark
+    public void write() throws GuacamoleException {
+
+        for (char[] instruction : instructionData)
+            writer.write(instruction);
+
+        writer.flush();
+
+    }
+
+    /**
+     * Writes each instruction in the mix, flushing the writer once all
+     * instructions are written. As GuacamoleInstruction caches its protocol
+     * form, this measures only the overhead of writing instructions, not
+     * their conversion.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing the instructions.
+     */
+    @Benchmark
+    public void writeInstruction() throws GuacamoleException {
+
+        for (GuacamoleInstruction instruction : instructions)
+            writer.writeInstruction(instruction);
+
+        writer.flush();
+
+    }
+
+}
@@ -182,8 +182,41 @@ Guacamole.HTTPTunnel = function(tunnelURL, crossDomain) {
     // Default to polling - will be turned off automatically if not needed
     var pollingMode = POLLING_ENABLED;
 
+    /**
+     * Whether a write request is currently outstanding. At most one write
+     * request is outstanding at any time. Messages sent while a request is
+     * outstanding are queued and sent together within the next request.
+     *
+     * @private
+     * @type {Boolean}
+     */
     var sendingMessages = false;
-    var outputMessageBuffer = "";
+
+    /**
+     * All messages queued for the next write request, in order.
+     *
+     * @private
+     * @type {String[]}
+     */
+    var outputMessageBuffer = [];
+
+    /**
+     * The index of the "mouse" instruction at the end of outputMessageBuffer,
+     * or -1 if the last queued message is not a "mouse" instruction.
+     *
+     * @private
+     * @type {Number}
+     */
+    var queuedMouseIndex = -1;
+
+    /**
+     * The button mask of the "mouse" instruction at queuedMouseIndex, if
+     * any.
+     *
+     * @private
+     * @type {String}
+     */
+    var queuedMouseButtons = null;
 
     // If requests are expected to be cross-domain, the cookie that the HTTP
     // tunnel depends on will only be sent if withCredentials is true
@@ -284,8 +317,23 @@ Guacamole.HTTPTunnel = function(tunnelURL, crossDomain) {
         // Final terminator
         message += ";";
 
-        // Add message to buffer
-        outputMessageBuffer += message;
+        // Replace any queued mouse movement with the same button state, as
+        // only the latest position is relevant
+        var buttons = (arguments[0] === "mouse") ? String(arguments[3]) : null;
+        if (buttons !== null && queuedMouseIndex !== -1
+                && queuedMouseButtons === buttons)
+            outputMessageBuffer[queuedMouseIndex] = message;
+
+        // Otherwise, add message to buffer
+        else {
+
+            outputMessageBuffer.push(message);
+
+            // Track trailing mouse instruction, if any
+            queuedMouseIndex = (buttons !== null) ? outputMessageBuffer.length - 1 : -1;
+            queuedMouseButtons = buttons;
+
+        }
 
         // Send if not currently sending
         if (!sendingMessages)
@@ -323,8 +371,13 @@ Guacamole.HTTPTunnel = function(tunnelURL, crossDomain) {
                 }
             };
 
-            message_xmlhttprequest.send(outputMessageBuffer);
-            outputMessageBuffer = ""; // Clear buffer
+            // Send all queued messages within a single request
+            message_xmlhttprequest.send(outputMessageBuffer.join(""));
+
+            // Clear buffer
+            outputMessageBuffer = [];
+            queuedMouseIndex = -1;
+            queuedMouseButtons = null;
 
         }
         else
@@ -617,6 +670,13 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
      */
     var receive_timeout = null;
 
+    /**
+     * Decoder for the UTF-8 data of binary messages, or null if the browser
+     * cannot decode UTF-8, in which case only text messages are requested.
+     * @private
+     */
+    var decoder = window.TextDecoder ? new TextDecoder("utf-8") : null;
+
     /**
      * The WebSocket protocol corresponding to the protocol used for the current
      * location.
@@ -747,8 +807,16 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
         reset_timeout();
 
+        // Prefer binary messages if they can be decoded, such that instruction
+        // data is decoded here with a single TextDecoder rather than by the
+        // browser's own handling of text messages
+        var subprotocols = ["guacamole"];
+        if (decoder)
+            subprotocols.unshift(Guacamole.WebSocketTunnel.BINARY_SUBPROTOCOL);
+
         // Connect socket
-        socket = new WebSocket(tunnelURL + "?" + data, "guacamole");
+        socket = new WebSocket(tunnelURL + "?" + data, subprotocols);
+        socket.binaryType = "arraybuffer";
 
         socket.onopen = function(event) {
             reset_timeout();
@@ -766,7 +834,11 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
             reset_timeout();
 
+            // Binary messages contain UTF-8 instruction data
             var message = event.data;
+            if (typeof message !== "string")
+                message = decoder.decode(message);
+
             var startIndex = 0;
             var elementEnd;
 
@@ -847,6 +919,17 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
 Guacamole.WebSocketTunnel.prototype = new Guacamole.Tunnel();
 
+/**
+ * The WebSocket subprotocol in which the server sends instruction data as
+ * binary messages containing UTF-8, rather than as text messages. This
+ * subprotocol is requested in preference to the "guacamole" subprotocol if
+ * the browser supports TextDecoder.
+ *
+ * @constant
+ * @type {String}
+ */
+Guacamole.WebSocketTunnel.BINARY_SUBPROTOCOL = "guacamole-binary";
+
 /**
  * Guacamole Tunnel which cycles between all specified tunnels until
  * no tunnels are left. Another tunnel is used if an error occurs but
@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.net.TimingHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writer which records Guacamole instruction data to an OutputStream using a
+ * dedicated thread, such that a slow destination never blocks the thread
+ * providing the data. Instruction data is appended to a bounded ring buffer,
+ * from which the writer thread encodes and writes large, sequential chunks of
+ * UTF-8.
+ *
+ * Loss of data is bounded. If the ring buffer is full, the data being
+ * appended is dropped in its entirety, such that only complete instructions
+ * are ever recorded. Once the total amount of dropped data exceeds the
+ * configured limit, recording is aborted, as the recording would no longer
+ * be useful.
+ */
+public class AsyncRecordingWriter {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRecordingWriter.class);
+
+    /**
+     * The character set of all recorded data.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The default capacity of the ring buffer, in characters.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1048576;
+
+    /**
+     * The size of each chunk written to the OutputStream, in bytes.
+     */
+    private static final int WRITE_SIZE = 65536;
+
+    /**
+     * The maximum number of milliseconds that data may remain within the
+     * ring buffer before being written, if less than a full chunk is
+     * available.
+     */
+    private static final long MAX_WRITE_DELAY = 1000;
+
+    /**
+     * The stream receiving the recording.
+     */
+    private final OutputStream output;
+
+    /**
+     * Ring buffer of instruction data which has been appended but not yet
+     * written.
+     */
+    private final char[] ring;
+
+    /**
+     * The maximum number of characters which may be dropped before recording
+     * is aborted.
+     */
+    private final long maxLoss;
+
+    /**
+     * The total number of characters ever appended to the ring buffer. The
+     * next character appended is stored at head modulo the ring size.
+     */
+    private long head = 0;
+
+    /**
+     * The total number of characters ever removed from the ring buffer by
+     * the writer thread. All characters between tail and head are pending.
+     */
+    private long tail = 0;
+
+    /**
+     * Whether close() has been invoked.
+     */
+    private boolean closed = false;
+
+    /**
+     * Whether recording has been aborted, either due to an error writing to
+     * the OutputStream or because too much data has been dropped.
+     */
+    private volatile boolean aborted = false;
+
+    /**
+     * The number of characters appended and recorded (or pending).
+     */
+    private final AtomicLong charactersRecorded = new AtomicLong();
+
+    /**
+     * The number of characters dropped due to the ring buffer being full.
+     */
+    private final AtomicLong charactersDropped = new AtomicLong();
+
+    /**
+     * The number of calls to append() whose data was dropped.
+     */
+    private final AtomicLong appendsDropped = new AtomicLong();
+
+    /**
+     * The number of bytes written to the OutputStream.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * The largest number of characters ever pending within the ring buffer.
+     */
+    private long maxPending = 0;
+
+    /**
+     * The time spent within each write to the OutputStream.
+     */
+    private final TimingHistogram writeTimes = new TimingHistogram();
+
+    /**
+     * The dedicated thread which writes pending data.
+     */
+    private final Thread writerThread;
+
+    /**
+     * Creates a new AsyncRecordingWriter which writes to the given stream,
+     * starting a dedicated writer thread having the given name. The stream
+     * is closed once this writer is closed or recording is aborted.
+     *
+     * @param output
+     *     The stream to write recorded data to.
+     *
+     * @param bufferSize
+     *     The capacity of the ring buffer, in characters.
+     *
+     * @param maxLoss
+     *     The maximum number of characters which may be dropped due to the
+     *     ring buffer being full before recording is aborted.
+     *
+     * @param name
+     *     The name to give to the writer thread.
+     */
+    public AsyncRecordingWriter(OutputStream output, int bufferSize,
+            long maxLoss, String name) {
+
+        this.output = output;
+        this.ring = new char[Math.max(1, bufferSize)];
+        this.maxLoss = maxLoss;
+
+        writerThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writeLoop();
+            }
+
+        }, name);
+
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+    }
+
+    /**
+     * Appends the given instruction data to the recording. The data must
+     * consist of zero or more complete instructions. This function never
+     * blocks on the OutputStream. If there is insufficient space within the
+     * ring buffer, the data is dropped.
+     *
+     * @param buffer
+     *     The buffer containing the data to append.
+     *
+     * @param offset
+     *     The offset of the first character to append.
+     *
+     * @param length
+     *     The number of characters to append.
+     *
+     * @return
+     *     true if the data was appended, false if the data was dropped or
+     *     recording has ended.
+     */
+    public boolean append(char[] buffer, int offset, int length) {
+
+        if (aborted)
+            return false;
+
+        synchronized (this) {
+
+            if (closed)
+                return false;
+
+            // Drop data which does not fit, aborting if too much is lost
+            long pending = head - tail;
+            if (length > ring.length - pending) {
+
+                appendsDropped.incrementAndGet();
+                if (charactersDropped.addAndGet(length) > maxLoss) {
+                    logger.warn("Recording \"{}\" aborted: {} characters of "
+                            + "instruction data could not be written in time.",
+                            writerThread.getName(), charactersDropped.get());
+                    aborted = true;
+                    notifyAll();
+                }
+
+                return false;
+
+            }
+
+            // Copy data into ring, wrapping around the end if necessary
+            int start = (int) (head % ring.length);
+            int firstLength = Math.min(length, ring.length - start);
+            System.arraycopy(buffer, offset, ring, start, firstLength);
+            System.arraycopy(buffer, offset + firstLength, ring, 0, length - firstLength);
+
+            head += length;
+            charactersRecorded.addAndGet(length);
+
+            // Wake writer once a full chunk is available
+            pending += length;
+            maxPending = Math.max(maxPending, pending);
+            if (pending >= WRITE_SIZE && pending - length < WRITE_SIZE)
+                notifyAll();
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Waits until a full chunk of data is pending, data has been pending for
+     * MAX_WRITE_DELAY, or this writer is closed or aborted.
+     *
+     * @return
+     *     The total number of characters which will have been appended once
+     *     all pending data has been written, or -1 if recording should stop.
+     *
+     * @throws InterruptedException
+     *     If the writer thread is interrupted while waiting.
+     */
+    private synchronized long awaitData() throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + MAX_WRITE_DELAY;
+
+        while (!aborted && !closed && head - tail < WRITE_SIZE) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                break;
+            wait(remaining);
+        }
+
+        if (aborted || (closed && head == tail))
+            return -1;
+
+        return head;
+
+    }
+
+    /**
+     * Writes the contents of the given buffer to the OutputStream, clearing
+     * the buffer.
+     *
+     * @param bytes
+     *     The buffer containing the data to write.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the OutputStream.
+     */
+    private void write(ByteBuffer bytes) throws IOException {
+
+        bytes.flip();
+
+        long writeStart = System.nanoTime();
+        output.write(bytes.array(), 0, bytes.limit());
+        writeTimes.record(System.nanoTime() - writeStart);
+
+        bytesWritten.addAndGet(bytes.limit());
+        bytes.clear();
+
+    }
+
+    /**
+     * Encodes the given characters into the given buffer, writing the buffer
+     * to the OutputStream each time it becomes full.
+     *
+     * @param chars
+     *     The characters to encode.
+     *
+     * @param encoder
+     *     The encoder to use to encode the characters.
+     *
+     * @param bytes
+     *     The buffer to encode characters into prior to writing.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the OutputStream.
+     */
+    private void encode(CharBuffer chars, CharsetEncoder encoder,
+            ByteBuffer bytes) throws IOException {
+
+        while (encoder.encode(chars, bytes, false).isOverflow())
+            write(bytes);
+
+    }
+
+    /**
+     * Encodes and writes all characters within the ring buffer between tail
+     * and the given position, freeing that space once written. The ring
+     * buffer is not locked while encoding, as the appending thread never
+     * modifies data between tail and head.
+     *
+     * @param end
+     *     The position up to which data should be written.
+     *
+     * @param encoder
+     *     The encoder to use to encode the written data.
+     *
+     * @param bytes
+     *     The buffer to encode data into prior to writing.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the OutputStream.
+     */
+    private void writePending(long end, CharsetEncoder encoder, ByteBuffer bytes)
+            throws IOException {
+
+        long start;
+        synchronized (this) {
+            start = tail;
+        }
+
+        while (start < end) {
+
+            // Encode contiguous region of ring, up to the end of the array
+            int offset = (int) (start % ring.length);
+            int length = (int) Math.min(end - start, ring.length - offset);
+            CharBuffer chars = CharBuffer.wrap(ring, offset, length);
+            encode(chars, encoder, bytes);
+            start += length - chars.remaining();
+
+            // A surrogate pair split by the end of the array is left
+            // unencoded, and must be encoded from a copy
+            if (chars.hasRemaining()) {
+
+                // Drop any lone (malformed) surrogate at the end of the data
+                if (start + 2 > end) {
+                    start = end;
+                    break;
+                }
+
+                encode(CharBuffer.wrap(new char[] { ring[ring.length - 1], ring[0] }),
+                        encoder, bytes);
+                start += 2;
+
+            }
+
+        }
+
+        // Write any remaining partial chunk
+        if (bytes.position() > 0)
+            write(bytes);
+
+        // Free written space
+        synchronized (this) {
+            tail = start;
+        }
+
+    }
+
+    /**
+     * Writes pending data until this writer is closed or recording is
+     * aborted, closing the OutputStream once writing has finished.
+     */
+    private void writeLoop() {
+
+        CharsetEncoder encoder = UTF8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        ByteBuffer bytes = ByteBuffer.allocate(WRITE_SIZE);
+
+        try {
+
+            long end;
+            while ((end = awaitData()) != -1) {
+                writePending(end, encoder, bytes);
+                output.flush();
+            }
+
+        }
+        catch (InterruptedException e) {
+            logger.debug("Recording \"{}\" interrupted.", writerThread.getName());
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            logger.warn("Recording \"{}\" aborted: {}", writerThread.getName(), e.getMessage());
+            logger.debug("Unable to write recording.", e);
+            aborted = true;
+        }
+
+        // Ensure stream is closed in all cases
+        finally {
+            try {
+                output.close();
+            }
+            catch (IOException e) {
+                logger.debug("Unable to close recording.", e);
+            }
+        }
+
+    }
+
+    /**
+     * Closes this writer, such that no further data may be appended. All
+     * data already appended will continue to be written by the writer thread
+     * unless recording has been aborted, after which the OutputStream is
+     * closed. This function does not block.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits for the writer thread to finish writing all data and close the
+     * OutputStream, after this writer has been closed.
+     *
+     * @param timeout
+     *     The maximum number of milliseconds to wait.
+     *
+     * @return
+     *     true if the writer thread has finished, false otherwise.
+     *
+     * @throws InterruptedException
+     *     If the current thread is interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        writerThread.join(timeout);
+        return !writerThread.isAlive();
+    }
+
+    /**
+     * Returns whether recording has been aborted, either because too much
+     * data was dropped or because the OutputStream could not be written.
+     *
+     * @return
+     *     true if recording has been aborted, false otherwise.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Returns the number of characters of instruction data accepted for
+     * recording.
+     *
+     * @return
+     *     The number of characters of instruction data accepted.
+     */
+    public long getCharactersRecorded() {
+        return charactersRecorded.get();
+    }
+
+    /**
+     * Returns the number of characters of instruction data dropped because
+     * the ring buffer was full.
+     *
+     * @return
+     *     The number of characters of instruction data dropped.
+     */
+    public long getCharactersDropped() {
+        return charactersDropped.get();
+    }
+
+    /**
+     * Returns the number of calls to append() whose data was dropped
+     * because the ring buffer was full.
+     *
+     * @return
+     *     The number of calls to append() whose data was dropped.
+     */
+    public long getAppendsDropped() {
+        return appendsDropped.get();
+    }
+
+    /**
+     * Returns the number of bytes of UTF-8 written to the OutputStream.
+     *
+     * @return
+     *     The number of bytes written.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Returns the largest number of characters ever pending within the ring
+     * buffer at once.
+     *
+     * @return
+     *     The largest number of characters ever pending.
+     */
+    public synchronized long getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Returns the time spent within each write to the OutputStream.
+     *
+     * @return
+     *     A snapshot histogram of the duration of each write.
+     */
+    public TimingHistogram getWriteTimes() {
+        return new TimingHistogram(writeTimes);
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.CharBuffer;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleReader which is able to provide direct access to instructions
+ * within its own internal buffer, avoiding the copy required by read() for
+ * callers which do not need to retain the instruction data beyond the next
+ * read.
+ */
+public interface BufferedGuacamoleReader extends GuacamoleReader {
+
+    /**
+     * Reads exactly one complete Guacamole instruction, returning a view of
+     * that instruction within the internal buffer of this reader. The
+     * returned CharBuffer is backed by the internal buffer, with its position
+     * set to the first character of the instruction and its limit set to the
+     * character following the instruction's terminating semicolon. Neither
+     * the CharBuffer nor the contents of its backing array may be relied upon
+     * after the next call to any read function of this reader, and callers
+     * must not modify either.
+     *
+     * @return
+     *     A view of the next complete instruction within the internal buffer
+     *     of this reader, or null if no more instructions are available for
+     *     reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream.
+     */
+    public CharBuffer readBuffer() throws GuacamoleException;
+
+}
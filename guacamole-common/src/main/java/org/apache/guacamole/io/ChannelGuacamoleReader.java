@@ -0,0 +1,578 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * A GuacamoleReader which reads the Guacamole instruction stream from a
+ * non-blocking channel, parsing instructions directly from the received UTF-8
+ * data. As the lengths of instruction elements are given in Unicode
+ * codepoints rather than bytes, each multibyte UTF-8 sequence within an
+ * element counts as a single character while parsing. Received data is
+ * decoded only if requested through read() or readInstruction(); readUTF8()
+ * provides the received bytes as-is.
+ */
+public class ChannelGuacamoleReader
+        implements UTF8GuacamoleReader, TimedGuacamoleReader, Closeable {
+
+    /**
+     * The charset used by the Guacamole protocol.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The channel from which all instruction data is read.
+     */
+    private final ReadableByteChannel input;
+
+    /**
+     * Selector used to wait for data on the channel, with the channel
+     * registered for read operations.
+     */
+    private final Selector selector;
+
+    /**
+     * The number of milliseconds to wait for data before timing out, or zero
+     * to wait indefinitely.
+     */
+    private final int timeout;
+
+    /**
+     * The buffer holding all received, unparsed data.
+     */
+    private byte[] buffer = new byte[20480];
+
+    /**
+     * View of the internal buffer which is returned by readUTF8(). This view
+     * is reused for each instruction read, and is replaced only when the
+     * internal buffer itself is replaced.
+     */
+    private ByteBuffer view = ByteBuffer.wrap(buffer);
+
+    /**
+     * The location within the received data buffer of the first byte which
+     * has not yet been returned as part of a complete instruction.
+     */
+    private int instructionStart = 0;
+
+    /**
+     * The location within the received data buffer of the next byte to be
+     * parsed. This may point past the end of the received data if the final
+     * UTF-8 sequence received is incomplete.
+     */
+    private int parseStart = 0;
+
+    /**
+     * The number of bytes currently used within the data buffer, including
+     * any bytes preceding instructionStart which belong to instructions that
+     * have already been read.
+     */
+    private int usedLength = 0;
+
+    /**
+     * The length of the element currently being parsed, as read from its
+     * length prefix so far.
+     */
+    private int elementLength = 0;
+
+    /**
+     * The number of characters (Unicode codepoints) of the current element
+     * which have not yet been parsed, or -1 if the length prefix of the
+     * element is still being parsed.
+     */
+    private int elementRemaining = -1;
+
+    /**
+     * Whether the end of stream has been reached while polling for
+     * instructions.
+     */
+    private boolean endOfStream = false;
+
+    /**
+     * Creates a new ChannelGuacamoleReader which reads the Guacamole
+     * instruction stream from the given channel. The channel will be
+     * configured for non-blocking operation, with reads instead blocking
+     * within a dedicated selector for up to the given timeout.
+     *
+     * @param <T>
+     *     The type of the channel. The channel must be both selectable and
+     *     readable.
+     *
+     * @param channel
+     *     The channel to read the Guacamole instruction stream from.
+     *
+     * @param timeout
+     *     The number of milliseconds to wait for data before timing out, or
+     *     zero to wait indefinitely.
+     *
+     * @throws GuacamoleException
+     *     If the channel cannot be configured for non-blocking reads.
+     */
+    public <T extends SelectableChannel & ReadableByteChannel>
+        ChannelGuacamoleReader(T channel, int timeout) throws GuacamoleException {
+
+        this.input = channel;
+        this.timeout = timeout;
+
+        try {
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to prepare channel for reading.", e);
+        }
+
+    }
+
+    /**
+     * Returns the number of bytes within the UTF-8 sequence beginning with the
+     * given byte. Bytes which cannot begin a valid UTF-8 sequence are treated
+     * as single-byte characters, consistent with the replacement behavior of
+     * standard decoders.
+     *
+     * @param lead
+     *     The first byte of the UTF-8 sequence.
+     *
+     * @return
+     *     The total number of bytes within the UTF-8 sequence.
+     */
+    private static int getSequenceLength(byte lead) {
+
+        int value = lead & 0xFF;
+
+        if (value < 0xC0) return 1;
+        if (value < 0xE0) return 2;
+        if (value < 0xF0) return 3;
+        if (value < 0xF8) return 4;
+
+        return 1;
+
+    }
+
+    /**
+     * Ensures there is sufficient free space at the end of the internal
+     * buffer for further reads, moving any unread data to the beginning of
+     * the buffer and resizing the buffer as necessary. Data is moved only if
+     * the free space remaining is less than half the size of the buffer.
+     */
+    private void reclaimBuffer() {
+
+        // Number of bytes received but not yet returned
+        int unreadLength = usedLength - instructionStart;
+
+        // If nothing is pending, simply start over at the beginning of the
+        // buffer
+        if (unreadLength == 0) {
+            parseStart -= instructionStart;
+            instructionStart = 0;
+            usedLength = 0;
+            return;
+        }
+
+        // Do nothing if there is still plenty of free space
+        if (usedLength <= buffer.length/2)
+            return;
+
+        // If past threshold, resize buffer before reading
+        byte[] target = buffer;
+        if (unreadLength > buffer.length/2) {
+            target = new byte[buffer.length*2];
+            view = ByteBuffer.wrap(target);
+        }
+
+        // Move unread data to beginning of buffer
+        System.arraycopy(buffer, instructionStart, target, 0, unreadLength);
+        parseStart -= instructionStart;
+        usedLength = unreadLength;
+        instructionStart = 0;
+        buffer = target;
+
+    }
+
+    /**
+     * Reads as much data as is immediately available from the channel into
+     * the internal buffer, waiting up to the configured timeout for at least
+     * some data to become available.
+     *
+     * @return
+     *     The number of bytes read, or -1 if the end of stream has been
+     *     reached.
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the channel.
+     *
+     * @throws GuacamoleException
+     *     If no data is received within the configured timeout.
+     */
+    private int fillBuffer() throws IOException, GuacamoleException {
+
+        ByteBuffer target = ByteBuffer.wrap(buffer, usedLength,
+                buffer.length - usedLength);
+
+        for (;;) {
+
+            // Read whatever is available without blocking
+            int numRead = input.read(target);
+            if (numRead != 0)
+                return numRead;
+
+            // Otherwise, wait for data
+            if (selector.select(timeout) == 0)
+                throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.");
+
+            selector.selectedKeys().clear();
+
+        }
+
+    }
+
+    @Override
+    public boolean available() throws GuacamoleException {
+
+        // Data is available if unread data remains in the buffer
+        if (usedLength != instructionStart)
+            return true;
+
+        // Otherwise, check whether more data is waiting on the channel
+        try {
+            boolean ready = selector.selectNow() != 0;
+            selector.selectedKeys().clear();
+            return ready;
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public boolean available(int timeout) throws GuacamoleException {
+
+        // Data is available if unread data remains in the buffer
+        if (usedLength != instructionStart)
+            return true;
+
+        if (timeout <= 0)
+            return available();
+
+        // Otherwise, wait for more data to arrive on the channel
+        try {
+            boolean ready = selector.select(timeout) != 0;
+            selector.selectedKeys().clear();
+            return ready;
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    /**
+     * Parses the data already within the internal buffer, returning the next
+     * complete instruction if one has been received. Parsing resumes where it
+     * left off during the previous call, and no data is read from the
+     * channel.
+     *
+     * @return
+     *     A view of the internal buffer containing the next complete
+     *     instruction, or null if no complete instruction has been received.
+     *
+     * @throws GuacamoleException
+     *     If the received data is not valid Guacamole protocol data.
+     */
+    private ByteBuffer parseInstruction() throws GuacamoleException {
+
+        // Parse instruction in buffer
+        while (parseStart < usedLength) {
+
+            // Parse length prefix
+            if (elementRemaining == -1) {
+
+                // Read character
+                byte readByte = buffer[parseStart++];
+
+                // If digit, update length
+                if (readByte >= '0' && readByte <= '9')
+                    elementLength = elementLength * 10 + readByte - '0';
+
+                // If end of length, begin parsing element content
+                else if (readByte == '.') {
+                    elementRemaining = elementLength;
+                    elementLength = 0;
+                }
+
+                // Otherwise, parse error
+                else
+                    throw new GuacamoleServerException("Non-numeric character in element length.");
+
+            }
+
+            // Skip over each character (UTF-8 sequence) of content
+            else if (elementRemaining > 0) {
+                parseStart += getSequenceLength(buffer[parseStart]);
+                elementRemaining--;
+            }
+
+            // Handle terminator following element content
+            else {
+
+                byte terminator = buffer[parseStart++];
+                elementRemaining = -1;
+
+                // If terminator is semicolon, we have a full instruction
+                if (terminator == ';') {
+
+                    // Expose instruction data in place
+                    view.limit(parseStart);
+                    view.position(instructionStart);
+
+                    // Data following this instruction is next
+                    instructionStart = parseStart;
+
+                    return view;
+
+                }
+
+                // Handle invalid terminator characters
+                else if (terminator != ',')
+                    throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+
+            }
+
+        }
+
+        // No complete instruction yet
+        return null;
+
+    }
+
+    /**
+     * Returns whether the end of the stream has been reached while polling
+     * for instructions via pollUTF8(). Once the end of stream has been
+     * reached and pollUTF8() has returned null, no further instructions will
+     * be read.
+     *
+     * @return
+     *     true if the end of stream has been reached, false otherwise.
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * Returns the next complete instruction as UTF-8 data, reading only the
+     * data which is immediately available from the channel. Unlike
+     * readUTF8(), this function never blocks, and is intended for use by
+     * callers which are themselves notified of data by a selector. As with
+     * readUTF8(), the returned buffer is a view of the internal buffer, and
+     * is valid only until the next read.
+     *
+     * @return
+     *     A view of the internal buffer containing the next complete
+     *     instruction, or null if no complete instruction can be read without
+     *     blocking or the end of stream has been reached.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the channel, or if the
+     *     received data is not valid Guacamole protocol data.
+     */
+    public ByteBuffer pollUTF8() throws GuacamoleException {
+
+        try {
+
+            for (;;) {
+
+                // Return any instruction already received
+                ByteBuffer instruction = parseInstruction();
+                if (instruction != null)
+                    return instruction;
+
+                // No further data can be read after end of stream
+                if (endOfStream)
+                    return null;
+
+                // Make room for more data, if necessary
+                reclaimBuffer();
+
+                // Read only what is immediately available
+                int numRead = input.read(ByteBuffer.wrap(buffer, usedLength,
+                        buffer.length - usedLength));
+
+                if (numRead == -1) {
+                    endOfStream = true;
+                    return null;
+                }
+
+                if (numRead == 0)
+                    return null;
+
+                // Update used length
+                usedLength += numRead;
+
+            }
+
+        }
+        catch (ClosedChannelException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public ByteBuffer readUTF8() throws GuacamoleException {
+
+        try {
+
+            // While we're blocking, or input is available
+            for (;;) {
+
+                // Return any instruction already received
+                ByteBuffer instruction = parseInstruction();
+                if (instruction != null)
+                    return instruction;
+
+                // Make room for more data, if necessary
+                reclaimBuffer();
+
+                // Attempt to fill buffer
+                int numRead = fillBuffer();
+                if (numRead == -1)
+                    return null;
+
+                // Update used length
+                usedLength += numRead;
+
+            } // End read loop
+
+        }
+        catch (ClosedChannelException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        // Get instruction
+        ByteBuffer instructionBuffer = readUTF8();
+
+        // If EOF, return EOF
+        if (instructionBuffer == null)
+            return null;
+
+        // Decode instruction data
+        return new String(instructionBuffer.array(),
+                instructionBuffer.arrayOffset() + instructionBuffer.position(),
+                instructionBuffer.remaining(), UTF8).toCharArray();
+
+    }
+
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        // Get instruction
+        ByteBuffer instructionBuffer = readUTF8();
+
+        // If EOF, return EOF
+        if (instructionBuffer == null)
+            return null;
+
+        // Parse directly from internal buffer
+        byte[] instructionData = instructionBuffer.array();
+        int elementStart = instructionBuffer.position();
+
+        // Build list of elements
+        List<String> elements = new ArrayList<String>();
+        for (;;) {
+
+            // Parse length
+            int length = 0;
+            byte readByte;
+            while ((readByte = instructionData[elementStart++]) != '.')
+                length = length * 10 + readByte - '0';
+
+            // Find end of element, counting characters rather than bytes
+            int elementEnd = elementStart;
+            for (int i = 0; i < length; i++)
+                elementEnd += getSequenceLength(instructionData[elementEnd]);
+
+            // Decode element
+            elements.add(new String(instructionData, elementStart,
+                    elementEnd - elementStart, UTF8));
+
+            // Continue reading elements after terminator
+            elementStart = elementEnd + 1;
+
+            // If we've reached the end of the instruction
+            if (instructionData[elementEnd] == ';')
+                break;
+
+        }
+
+        // Create instruction
+        return new GuacamoleInstruction(elements.get(0),
+                elements.subList(1, elements.size()));
+
+    }
+
+    /**
+     * Releases the selector used by this ChannelGuacamoleReader to wait for
+     * data. The underlying channel is not closed.
+     *
+     * @throws IOException
+     *     If an error occurs while closing the selector.
+     */
+    @Override
+    public void close() throws IOException {
+        selector.close();
+    }
+
+}
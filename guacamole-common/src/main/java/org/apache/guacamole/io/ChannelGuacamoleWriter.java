@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * A GuacamoleWriter which writes the Guacamole instruction stream to a
+ * non-blocking channel, encoding all written data as UTF-8 within a reusable
+ * buffer.
+ */
+public class ChannelGuacamoleWriter implements GuacamoleWriter, Closeable {
+
+    /**
+     * The size of the buffer used to hold encoded data prior to writing, in
+     * bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The channel to which all instruction data is written.
+     */
+    private final WritableByteChannel output;
+
+    /**
+     * Selector used to wait for the channel to accept further data, with the
+     * channel registered for write operations.
+     */
+    private final Selector selector;
+
+    /**
+     * The number of milliseconds to wait for the channel to accept data
+     * before timing out, or zero to wait indefinitely.
+     */
+    private final int timeout;
+
+    /**
+     * Encoder which produces the UTF-8 form of written data.
+     */
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Buffer holding encoded data which has not yet been written to the
+     * channel.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Creates a new ChannelGuacamoleWriter which writes the Guacamole
+     * instruction stream to the given channel. The channel will be configured
+     * for non-blocking operation, with writes instead blocking within a
+     * dedicated selector for up to the given timeout.
+     *
+     * @param <T>
+     *     The type of the channel. The channel must be both selectable and
+     *     writable.
+     *
+     * @param channel
+     *     The channel to write the Guacamole instruction stream to.
+     *
+     * @param timeout
+     *     The number of milliseconds to wait for the channel to accept data
+     *     before timing out, or zero to wait indefinitely.
+     *
+     * @throws GuacamoleException
+     *     If the channel cannot be configured for non-blocking writes.
+     */
+    public <T extends SelectableChannel & WritableByteChannel>
+        ChannelGuacamoleWriter(T channel, int timeout) throws GuacamoleException {
+
+        this.output = channel;
+        this.timeout = timeout;
+
+        try {
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_WRITE);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to prepare channel for writing.", e);
+        }
+
+    }
+
+    /**
+     * Writes all encoded data currently within the buffer to the channel,
+     * waiting up to the configured timeout whenever the channel cannot
+     * immediately accept more data. The buffer is left empty and ready for
+     * further encoding.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the channel.
+     *
+     * @throws GuacamoleException
+     *     If the channel does not accept data within the configured timeout.
+     */
+    private void drainBuffer() throws IOException, GuacamoleException {
+
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+
+            // Write as much as possible without blocking
+            if (output.write(buffer) != 0)
+                continue;
+
+            // Otherwise, wait for space
+            if (selector.select(timeout) == 0)
+                throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.");
+
+            selector.selectedKeys().clear();
+
+        }
+
+        buffer.clear();
+
+    }
+
+    @Override
+    public void write(char[] chunk, int off, int len) throws GuacamoleException {
+
+        try {
+
+            CharBuffer data = CharBuffer.wrap(chunk, off, len);
+            encoder.reset();
+
+            // Encode and write all data, draining the buffer whenever full
+            CoderResult result;
+            do {
+                result = encoder.encode(data, buffer, true);
+                drainBuffer();
+            } while (result.isOverflow());
+
+            // Flush any state remaining within encoder
+            while (encoder.flush(buffer).isOverflow())
+                drainBuffer();
+            drainBuffer();
+
+        }
+        catch (ClosedChannelException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public void write(char[] chunk) throws GuacamoleException {
+        write(chunk, 0, chunk.length);
+    }
+
+    @Override
+    public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
+
+        // Instructions too large for the buffer must be written in pieces
+        if (instruction.getEncodedLength() > buffer.capacity()) {
+            write(instruction.toString().toCharArray());
+            return;
+        }
+
+        try {
+
+            // Encode directly into the (empty) buffer
+            instruction.writeTo(buffer);
+            drainBuffer();
+
+        }
+        catch (ClosedChannelException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    /**
+     * Releases the selector used by this ChannelGuacamoleWriter to wait for
+     * the channel to accept data. The underlying channel is not closed.
+     *
+     * @throws IOException
+     *     If an error occurs while closing the selector.
+     */
+    @Override
+    public void close() throws IOException {
+        selector.close();
+    }
+
+}
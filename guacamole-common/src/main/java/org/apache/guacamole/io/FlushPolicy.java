@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * Policy dictating when a FlushableGuacamoleWriter must send the data
+ * written to it. Data may either be sent immediately upon each write, or
+ * coalesced with subsequent writes until the writer is explicitly flushed or
+ * a threshold of pending data or time is reached.
+ */
+public class FlushPolicy {
+
+    /**
+     * The default maximum number of characters which may be coalesced before
+     * a flush is forced.
+     */
+    public static final int DEFAULT_MAX_PENDING_LENGTH = 4096;
+
+    /**
+     * The default maximum amount of time that written data may be coalesced
+     * before a flush is forced, in milliseconds.
+     */
+    public static final int DEFAULT_MAX_DELAY = 10;
+
+    /**
+     * Flush policy which sends all data immediately upon each write.
+     */
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0);
+
+    /**
+     * Flush policy which coalesces written data until the writer is
+     * explicitly flushed, DEFAULT_MAX_PENDING_LENGTH characters are pending,
+     * or DEFAULT_MAX_DELAY milliseconds have elapsed since the oldest pending
+     * data was written.
+     */
+    public static final FlushPolicy COALESCE =
+            new FlushPolicy(DEFAULT_MAX_PENDING_LENGTH, DEFAULT_MAX_DELAY);
+
+    /**
+     * The maximum number of characters which may be coalesced before a flush
+     * is forced.
+     */
+    private final int maxPendingLength;
+
+    /**
+     * The maximum amount of time that written data may be coalesced before a
+     * flush is forced, in milliseconds.
+     */
+    private final int maxDelay;
+
+    /**
+     * Creates a new FlushPolicy which coalesces written data until the writer
+     * is explicitly flushed or either of the given thresholds is reached. If
+     * either threshold is zero, data is sent immediately upon each write.
+     *
+     * @param maxPendingLength
+     *     The maximum number of characters which may be coalesced before a
+     *     flush is forced.
+     *
+     * @param maxDelay
+     *     The maximum amount of time that written data may be coalesced before
+     *     a flush is forced, in milliseconds. As the elapsed time is checked
+     *     only as data is written, data is otherwise held no longer than
+     *     until the writer is explicitly flushed.
+     */
+    public FlushPolicy(int maxPendingLength, int maxDelay) {
+        this.maxPendingLength = maxPendingLength;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Returns whether this policy requires that data be sent immediately upon
+     * each write.
+     *
+     * @return
+     *     true if data must be sent immediately upon each write, false if
+     *     data may be coalesced.
+     */
+    public boolean isImmediate() {
+        return maxPendingLength <= 0 || maxDelay <= 0;
+    }
+
+    /**
+     * Returns whether pending data must be sent now, given the amount of data
+     * pending and the time that data has been pending.
+     *
+     * @param pendingLength
+     *     The number of characters which have been written but not yet sent.
+     *
+     * @param pendingTime
+     *     The number of milliseconds elapsed since the oldest pending data was
+     *     written.
+     *
+     * @return
+     *     true if the pending data must be sent now, false otherwise.
+     */
+    public boolean shouldFlush(int pendingLength, long pendingTime) {
+        return isImmediate()
+            || pendingLength >= maxPendingLength
+            || pendingTime >= maxDelay;
+    }
+
+    /**
+     * Returns the maximum number of characters which may be coalesced before a
+     * flush is forced.
+     *
+     * @return
+     *     The maximum number of characters which may be coalesced.
+     */
+    public int getMaxPendingLength() {
+        return maxPendingLength;
+    }
+
+    /**
+     * Returns the maximum amount of time that written data may be coalesced
+     * before a flush is forced, in milliseconds.
+     *
+     * @return
+     *     The maximum amount of time that written data may be coalesced.
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleWriter which may hold written data internally rather than sending
+ * that data immediately. Any such data is sent when flush() is invoked.
+ * Tunnels automatically flush the writer of their socket when write access is
+ * relinquished.
+ */
+public interface FlushableGuacamoleWriter extends GuacamoleWriter {
+
+    /**
+     * Sends any data which has been written but is being held internally by
+     * this writer. If no such data exists, this function has no effect.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while sending the held data.
+     */
+    public void flush() throws GuacamoleException;
+
+}
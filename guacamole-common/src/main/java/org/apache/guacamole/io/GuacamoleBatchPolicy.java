@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Policy which decides when instruction data read from a tunnel should be
+ * sent to the client as a single message or flushed response. Complete frames
+ * (data ending with a "sync" instruction) are sent once no further data is
+ * immediately available, such that frames which are already waiting are
+ * combined. A partial frame is held until the rest of the frame arrives, the
+ * amount of data accumulated reaches a maximum length, or the data has been
+ * held for a maximum delay, whichever comes first. Waiting for the rest of a
+ * partial frame requires a TimedGuacamoleReader; partial frames read from
+ * other readers are sent as soon as no further data is available.
+ *
+ * A single policy may be shared by any number of tunnels, in which case the
+ * buffers used to accumulate data are sized according to the lengths of the
+ * batches observed across all those tunnels.
+ */
+public class GuacamoleBatchPolicy {
+
+    /**
+     * The default maximum number of characters of instruction data to
+     * accumulate before sending.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 65536;
+
+    /**
+     * The default maximum number of milliseconds to hold data before sending.
+     */
+    public static final int DEFAULT_MAX_DELAY = 5;
+
+    /**
+     * The smallest capacity of any buffer provided by recycle(), in
+     * characters.
+     */
+    private static final int MIN_CAPACITY = 1024;
+
+    /**
+     * The protocol form of the start of every "sync" instruction.
+     */
+    private static final String SYNC_PREFIX = "4.sync,";
+
+    /**
+     * The policy returned by getDefault().
+     */
+    private static final GuacamoleBatchPolicy DEFAULT = new GuacamoleBatchPolicy();
+
+    /**
+     * The maximum number of characters of instruction data to accumulate
+     * before sending.
+     */
+    private final int maxLength;
+
+    /**
+     * The maximum number of milliseconds to hold data before sending.
+     */
+    private final int maxDelay;
+
+    /**
+     * The maximum number of nanoseconds to hold data before sending.
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * Moving average of the lengths of all batches sent under this policy,
+     * in characters. Concurrent updates may occasionally be lost, which is
+     * harmless for an estimate.
+     */
+    private volatile int averageLength = MIN_CAPACITY;
+
+    /**
+     * Creates a new GuacamoleBatchPolicy which uses DEFAULT_MAX_LENGTH and
+     * DEFAULT_MAX_DELAY.
+     */
+    public GuacamoleBatchPolicy() {
+        this(DEFAULT_MAX_LENGTH, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Creates a new GuacamoleBatchPolicy which sends accumulated data at the
+     * end of each frame, or once the given length or delay is reached.
+     *
+     * @param maxLength
+     *     The maximum number of characters of instruction data to accumulate
+     *     before sending.
+     *
+     * @param maxDelay
+     *     The maximum number of milliseconds to hold data before sending,
+     *     whether waiting for the rest of a partial frame or while further
+     *     data continues to be available. If zero, partial frames are not
+     *     held, and data is otherwise held for as long as further data is
+     *     immediately available.
+     */
+    public GuacamoleBatchPolicy(int maxLength, int maxDelay) {
+        this.maxLength = maxLength;
+        this.maxDelay = maxDelay;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    }
+
+    /**
+     * Returns a shared policy which uses DEFAULT_MAX_LENGTH and
+     * DEFAULT_MAX_DELAY.
+     *
+     * @return
+     *     A shared GuacamoleBatchPolicy having default limits.
+     */
+    public static GuacamoleBatchPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the maximum number of characters of instruction data to
+     * accumulate before sending.
+     *
+     * @return
+     *     The maximum number of characters to accumulate before sending.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the maximum number of milliseconds to hold data before
+     * sending.
+     *
+     * @return
+     *     The maximum number of milliseconds to hold data before sending.
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Returns whether the given instruction is a "sync" instruction, and
+     * thus ends a frame. Only the start of the instruction is inspected.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset of the first character of the instruction.
+     *
+     * @param length
+     *     The length of the instruction, in characters.
+     *
+     * @return
+     *     true if the instruction is a "sync" instruction, false otherwise.
+     */
+    public static boolean isFrameEnd(char[] buffer, int offset, int length) {
+
+        if (length < SYNC_PREFIX.length())
+            return false;
+
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (buffer[offset + i] != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns whether the UTF-8 instruction between the position and limit
+     * of the given buffer is a "sync" instruction, and thus ends a frame.
+     * Only the start of the instruction is inspected, and the position of
+     * the buffer is not changed.
+     *
+     * @param instruction
+     *     The buffer containing the UTF-8 instruction.
+     *
+     * @return
+     *     true if the instruction is a "sync" instruction, false otherwise.
+     */
+    public static boolean isFrameEnd(ByteBuffer instruction) {
+
+        if (instruction.remaining() < SYNC_PREFIX.length())
+            return false;
+
+        int position = instruction.position();
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (instruction.get(position + i) != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the number of characters represented by the UTF-8 data between
+     * the position and limit of the given buffer, as would be counted by
+     * String.length() once decoded. The position of the buffer is not
+     * changed. This allows batches of UTF-8 data to be measured against the
+     * maximum length of this policy, which is in characters.
+     *
+     * @param utf8
+     *     The buffer containing valid UTF-8 data.
+     *
+     * @return
+     *     The number of characters represented by the given UTF-8 data.
+     */
+    public static int getCharacterLength(ByteBuffer utf8) {
+
+        int length = 0;
+        for (int i = utf8.position(); i < utf8.limit(); i++) {
+
+            byte b = utf8.get(i);
+
+            // Count each byte beginning a character, counting four-byte
+            // sequences twice (as surrogate pairs)
+            if ((b & 0xC0) != 0x80)
+                length++;
+            if ((b & 0xF8) == 0xF0)
+                length++;
+
+        }
+
+        return length;
+
+    }
+
+    /**
+     * Returns whether accumulated data should be sent now, given the most
+     * recently accumulated instruction. Data is sent once the maximum length
+     * or delay is reached, or once no further data is immediately available
+     * after a complete frame. If the accumulated data ends with a partial
+     * frame and no further data is available, this function waits for
+     * further data until the maximum delay has elapsed, provided the reader
+     * is a TimedGuacamoleReader. This function otherwise never blocks, and
+     * returns false only if further data is available from the given reader.
+     *
+     * @param frameEnd
+     *     Whether the most recently accumulated instruction ends a frame.
+     *
+     * @param batchLength
+     *     The number of characters of data accumulated thus far.
+     *
+     * @param batchStart
+     *     The value of System.nanoTime() when the first of the accumulated
+     *     data was read.
+     *
+     * @param reader
+     *     The reader from which further data would be read.
+     *
+     * @return
+     *     true if accumulated data should be sent now, false if further data
+     *     should be read first.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while checking for available data.
+     */
+    public boolean shouldFlush(boolean frameEnd, int batchLength,
+            long batchStart, GuacamoleReader reader)
+            throws GuacamoleException {
+
+        // Always send full batches
+        if (batchLength >= maxLength)
+            return true;
+
+        // Do not hold data indefinitely, even if more is available
+        long remaining = batchStart + maxDelayNanos - System.nanoTime();
+        if (maxDelayNanos != 0 && remaining <= 0)
+            return true;
+
+        // Continue accumulating while further data is already waiting,
+        // combining any frames received together
+        if (reader.available())
+            return false;
+
+        // Send complete frames as soon as no further data is waiting
+        if (frameEnd || maxDelayNanos == 0)
+            return true;
+
+        // Hold partial frames until the rest of the frame arrives or the
+        // maximum delay elapses, whichever comes first
+        if (!(reader instanceof TimedGuacamoleReader))
+            return true;
+
+        int timeout = (int) Math.max(1,
+                TimeUnit.NANOSECONDS.toMillis(remaining + 999999));
+        return !((TimedGuacamoleReader) reader).available(timeout);
+
+    }
+
+    /**
+     * Returns the number of characters which a buffer used to accumulate
+     * data under this policy should initially be able to hold, based on the
+     * lengths of the batches observed thus far.
+     *
+     * @return
+     *     The suggested initial capacity of an accumulation buffer, in
+     *     characters.
+     */
+    public int getBufferCapacity() {
+        return Math.min(maxLength, Math.max(MIN_CAPACITY, averageLength * 2));
+    }
+
+    /**
+     * Records the length of a batch which has just been sent, such that
+     * future buffers are sized appropriately.
+     *
+     * @param batchLength
+     *     The length of the batch just sent.
+     */
+    public void recordBatch(int batchLength) {
+        int average = averageLength;
+        averageLength = average + (batchLength - average) / 8;
+    }
+
+    /**
+     * Records the length of a batch which has just been sent, returning an
+     * empty buffer which should be used to accumulate the next batch. The
+     * given buffer is reused unless it has grown well beyond the size of
+     * the batches typically observed, in which case it is replaced so that
+     * its memory may be reclaimed.
+     *
+     * @param buffer
+     *     The buffer which contained the batch just sent.
+     *
+     * @param batchLength
+     *     The length of the batch just sent, in characters.
+     *
+     * @return
+     *     An empty buffer to use for the next batch.
+     */
+    public StringBuilder recycle(StringBuilder buffer, int batchLength) {
+
+        recordBatch(batchLength);
+
+        // Release buffers left oversized by unusually large batches
+        int capacity = getBufferCapacity();
+        if (buffer.capacity() > capacity * 4)
+            return new StringBuilder(capacity);
+
+        buffer.setLength(0);
+        return buffer;
+
+    }
+
+}
@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
+
+/**
+ * Bounded queue of instruction data awaiting delivery to a client, aware of
+ * the frames delimited by "sync" instructions. Data is handed to a Sender one
+ * batch at a time, with all data queued while a batch is being sent
+ * coalesced into the next batch. Within a batch, every "sync" other than the
+ * last is dropped, merging the frames they delimit into a single frame, and
+ * "nop" instructions are dropped whenever other data is already on its way
+ * to the client.
+ *
+ * Once the amount of queued data reaches the configured maximum, add() blocks
+ * until the client has received enough data. A reader feeding this queue from
+ * guacd thus stops reading, and as the "sync" instructions of frames not yet
+ * delivered are not acknowledged by the client, guacd observes the resulting
+ * lag and reduces its own frame rate accordingly.
+ */
+public class GuacamoleFrameQueue {
+
+    /**
+     * The default maximum number of characters of instruction data which may
+     * be queued, including data currently being sent.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 262144;
+
+    /**
+     * Destination of the batches of instruction data produced by a
+     * GuacamoleFrameQueue. Sending may be asynchronous, but the
+     * implementation must invoke either sendComplete() or sendFailed() on the
+     * queue once each batch has been sent or cannot be sent.
+     */
+    public interface Sender {
+
+        /**
+         * Begins sending the given batch of instruction data. No further
+         * batches will be provided until sendComplete() has been invoked.
+         *
+         * @param data
+         *     The batch of instruction data to send, consisting only of
+         *     complete instructions.
+         */
+        void send(String data);
+
+    }
+
+    /**
+     * The Sender which receives each batch of instruction data.
+     */
+    private final Sender sender;
+
+    /**
+     * The maximum number of characters of instruction data which may be
+     * queued, including data currently being sent.
+     */
+    private final int maxLength;
+
+    /**
+     * Instruction data which has been queued but not yet handed to the
+     * Sender.
+     */
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * The offset of the most recent "sync" instruction within the pending
+     * data, or -1 if the pending data contains no "sync" instruction.
+     */
+    private int lastSyncOffset = -1;
+
+    /**
+     * The length of the most recent "sync" instruction within the pending
+     * data.
+     */
+    private int lastSyncLength;
+
+    /**
+     * The number of frames within the pending data which have been ended by
+     * a "sync" instruction, including frames merged with later frames.
+     */
+    private int pendingFrames = 0;
+
+    /**
+     * The number of characters of instruction data currently being sent, or
+     * zero if no batch is currently being sent.
+     */
+    private int sendingLength = 0;
+
+    /**
+     * Whether a batch is currently being sent.
+     */
+    private boolean sending = false;
+
+    /**
+     * Whether this queue has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The cause of the failure which closed this queue, if any.
+     */
+    private Throwable failure = null;
+
+    /**
+     * The total number of "sync" and "nop" instructions dropped.
+     */
+    private long droppedInstructions = 0;
+
+    /**
+     * The total number of times add() has blocked waiting for the client to
+     * receive queued data.
+     */
+    private long blockedCount = 0;
+
+    /**
+     * Creates a new GuacamoleFrameQueue which hands batches of instruction
+     * data to the given Sender, allowing up to DEFAULT_MAX_LENGTH characters
+     * to be queued.
+     *
+     * @param sender
+     *     The Sender which should receive each batch of instruction data.
+     */
+    public GuacamoleFrameQueue(Sender sender) {
+        this(sender, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a new GuacamoleFrameQueue which hands batches of instruction
+     * data to the given Sender, allowing up to the given number of characters
+     * to be queued.
+     *
+     * @param sender
+     *     The Sender which should receive each batch of instruction data.
+     *
+     * @param maxLength
+     *     The maximum number of characters of instruction data which may be
+     *     queued, including data currently being sent. A single instruction
+     *     larger than this is still accepted once the queue is empty.
+     */
+    public GuacamoleFrameQueue(Sender sender, int maxLength) {
+        this.sender = sender;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Throws an exception describing why this queue was closed. This function
+     * must only be invoked while synchronized on this queue, after the queue
+     * has been closed.
+     *
+     * @throws GuacamoleConnectionClosedException
+     *     Always.
+     */
+    private void throwClosed() throws GuacamoleConnectionClosedException {
+
+        if (failure != null)
+            throw new GuacamoleConnectionClosedException("Unable to send data to client.", failure);
+
+        throw new GuacamoleConnectionClosedException("Queue is closed.");
+
+    }
+
+    /**
+     * Adds the given complete instruction to the end of this queue, blocking
+     * if the queue is full. The instruction is not sent until flush() is
+     * invoked or the batch currently being sent completes.
+     *
+     * @param buffer
+     *     The buffer containing the instruction data.
+     *
+     * @param offset
+     *     The offset of the first character of the instruction.
+     *
+     * @param length
+     *     The length of the instruction, in characters, including its
+     *     terminating semicolon.
+     *
+     * @param opcode
+     *     The known opcode of the instruction, or null if the opcode is
+     *     unknown or the given data may contain multiple instructions. Only
+     *     instructions with known opcodes are considered for dropping.
+     *
+     * @throws GuacamoleException
+     *     If this queue is closed, or the calling thread is interrupted while
+     *     waiting for space within the queue.
+     */
+    public synchronized void add(char[] buffer, int offset, int length,
+            GuacamoleOpcode opcode) throws GuacamoleException {
+
+        // Wait for the client to receive enough data, unless the queue is
+        // empty (such that oversized instructions are still accepted)
+        if (!closed && isFull(length)) {
+
+            blockedCount++;
+
+            try {
+                do {
+                    wait();
+                } while (!closed && isFull(length));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GuacamoleServerException("Interrupted while waiting for client.", e);
+            }
+
+        }
+
+        if (closed)
+            throwClosed();
+
+        // Keep-alives are redundant if other data is already on its way
+        if (opcode == GuacamoleOpcode.NOP && (sending || pending.length() > 0)) {
+            droppedInstructions++;
+            return;
+        }
+
+        if (opcode == GuacamoleOpcode.SYNC) {
+
+            // Merge with previous unsent frame, such that the client need
+            // only acknowledge the latest "sync"
+            if (lastSyncOffset != -1) {
+                pending.delete(lastSyncOffset, lastSyncOffset + lastSyncLength);
+                droppedInstructions++;
+            }
+
+            lastSyncOffset = pending.length();
+            lastSyncLength = length;
+            pendingFrames++;
+
+        }
+
+        pending.append(buffer, offset, length);
+
+    }
+
+    /**
+     * Returns whether adding the given number of characters would exceed the
+     * maximum length of this queue. An empty queue is never full. This
+     * function must only be invoked while synchronized on this queue.
+     *
+     * @param length
+     *     The number of characters to be added.
+     *
+     * @return
+     *     true if the queue is not empty and adding the given number of
+     *     characters would exceed its maximum length, false otherwise.
+     */
+    private boolean isFull(int length) {
+        int queued = pending.length() + sendingLength;
+        return queued > 0 && queued + length > maxLength;
+    }
+
+    /**
+     * Removes all pending data, marking that data as being sent. This
+     * function must only be invoked while synchronized on this queue.
+     *
+     * @return
+     *     All pending data.
+     */
+    private String takePending() {
+
+        String data = pending.toString();
+        pending.setLength(0);
+        lastSyncOffset = -1;
+        pendingFrames = 0;
+
+        sending = true;
+        sendingLength = data.length();
+
+        return data;
+
+    }
+
+    /**
+     * Hands all pending data to the Sender as a single batch, unless a batch
+     * is already being sent, in which case the pending data will be sent
+     * once that batch completes.
+     */
+    public void flush() {
+
+        String data;
+        synchronized (this) {
+            if (closed || sending || pending.length() == 0)
+                return;
+            data = takePending();
+        }
+
+        sender.send(data);
+
+    }
+
+    /**
+     * Notifies this queue that the batch most recently handed to the Sender
+     * has been sent. Any data queued in the meantime is immediately handed
+     * to the Sender as the next batch.
+     */
+    public void sendComplete() {
+
+        String data;
+        synchronized (this) {
+
+            sending = false;
+            sendingLength = 0;
+            notifyAll();
+
+            if (closed || pending.length() == 0)
+                return;
+
+            data = takePending();
+
+        }
+
+        sender.send(data);
+
+    }
+
+    /**
+     * Notifies this queue that the batch most recently handed to the Sender
+     * could not be sent. The queue is closed, and all pending data is
+     * discarded.
+     *
+     * @param cause
+     *     The reason the batch could not be sent, or null if unknown.
+     */
+    public synchronized void sendFailed(Throwable cause) {
+        failure = cause;
+        close();
+    }
+
+    /**
+     * Closes this queue, discarding all pending data. Any thread blocked
+     * within add() or awaitEmpty() is woken, and future calls to add() will
+     * fail.
+     */
+    public synchronized void close() {
+        closed = true;
+        pending.setLength(0);
+        lastSyncOffset = -1;
+        pendingFrames = 0;
+        notifyAll();
+    }
+
+    /**
+     * Sends any pending data and waits until all queued data has been sent,
+     * this queue is closed, or the given timeout elapses.
+     *
+     * @param timeout
+     *     The maximum number of milliseconds to wait.
+     *
+     * @return
+     *     true if all queued data was sent, false otherwise.
+     *
+     * @throws GuacamoleException
+     *     If the calling thread is interrupted while waiting.
+     */
+    public boolean awaitEmpty(long timeout) throws GuacamoleException {
+
+        flush();
+
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized (this) {
+            try {
+                while (!closed && (sending || pending.length() > 0)) {
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        return false;
+
+                    wait(remaining);
+
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GuacamoleServerException("Interrupted while waiting for client.", e);
+            }
+
+            return !closed;
+        }
+
+    }
+
+    /**
+     * Returns the number of characters of instruction data not yet handed to
+     * the Sender.
+     *
+     * @return
+     *     The number of characters of pending instruction data.
+     */
+    public synchronized int getPendingLength() {
+        return pending.length();
+    }
+
+    /**
+     * Returns the total number of characters of instruction data within this
+     * queue, including data currently being sent. This is the depth of the
+     * queue, and remains high for clients whose network connection cannot
+     * keep up with the data received from guacd.
+     *
+     * @return
+     *     The number of characters of queued instruction data.
+     */
+    public synchronized int getQueuedLength() {
+        return pending.length() + sendingLength;
+    }
+
+    /**
+     * Returns the number of complete frames which have not yet been handed
+     * to the Sender, including frames which have been merged with later
+     * frames.
+     *
+     * @return
+     *     The number of complete frames awaiting sending.
+     */
+    public synchronized int getPendingFrames() {
+        return pendingFrames;
+    }
+
+    /**
+     * Returns the total number of "sync" and "nop" instructions dropped
+     * while coalescing queued data.
+     *
+     * @return
+     *     The total number of instructions dropped.
+     */
+    public synchronized long getDroppedInstructions() {
+        return droppedInstructions;
+    }
+
+    /**
+     * Returns the total number of times adding data to this queue has
+     * blocked because the queue was full.
+     *
+     * @return
+     *     The total number of times add() has blocked.
+     */
+    public synchronized long getBlockedCount() {
+        return blockedCount;
+    }
+
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Reads instructions from a GuacamoleReader, accumulating them into batches
+ * which should each be sent to the client as a single message, as dictated
+ * by a GuacamoleBatchPolicy. Batches may be read either as text or as UTF-8.
+ * A single buffer is used to accumulate every batch of each form. UTF-8 data
+ * is copied as-is only from readers which are themselves
+ * UTF8GuacamoleReaders, such as those of ChannelGuacamoleSocket. Readers of
+ * InetGuacamoleSocket and SSLGuacamoleSocket, and readers wrapped by
+ * FilteredGuacamoleReader or similar, provide only characters, and their
+ * UTF-8 batches are encoded from those characters.
+ */
+public class GuacamoleInstructionBatcher {
+
+    /**
+     * The maximum number of bytes required to encode a single UTF-16 code
+     * unit as UTF-8.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /**
+     * The reader from which instructions are read.
+     */
+    private final GuacamoleReader reader;
+
+    /**
+     * The reader from which instructions are read, if that reader provides
+     * direct access to individual instructions, or null otherwise.
+     */
+    private final BufferedGuacamoleReader bufferedReader;
+
+    /**
+     * The reader from which instructions are read, if that reader provides
+     * direct access to the UTF-8 form of individual instructions, or null
+     * otherwise.
+     */
+    private final UTF8GuacamoleReader utf8Reader;
+
+    /**
+     * The policy dictating when each batch is complete.
+     */
+    private final GuacamoleBatchPolicy policy;
+
+    /**
+     * The buffer accumulating the current text batch.
+     */
+    private StringBuilder buffer;
+
+    /**
+     * The buffer accumulating the current UTF-8 batch, or null if no such
+     * buffer has yet been allocated.
+     */
+    private byte[] utf8Buffer = null;
+
+    /**
+     * Encoder used to produce UTF-8 batches from readers which do not
+     * provide UTF-8 directly, or null if no such encoder has yet been
+     * needed.
+     */
+    private CharsetEncoder encoder = null;
+
+    /**
+     * The buffer containing the instruction data most recently read by
+     * readNext().
+     */
+    private char[] data;
+
+    /**
+     * The offset of the instruction data most recently read by readNext().
+     */
+    private int offset;
+
+    /**
+     * The length of the instruction data most recently read by readNext().
+     */
+    private int length;
+
+    /**
+     * Whether the end of the instruction stream has been reached.
+     */
+    private boolean ended = false;
+
+    /**
+     * Creates a new GuacamoleInstructionBatcher which reads instructions from
+     * the given reader, forming batches as dictated by the given policy.
+     *
+     * @param reader
+     *     The reader to read instructions from.
+     *
+     * @param policy
+     *     The policy dictating when each batch is complete.
+     */
+    public GuacamoleInstructionBatcher(GuacamoleReader reader,
+            GuacamoleBatchPolicy policy) {
+
+        this.reader = reader;
+        this.policy = policy;
+        this.buffer = new StringBuilder(policy.getBufferCapacity());
+
+        if (reader instanceof BufferedGuacamoleReader)
+            this.bufferedReader = (BufferedGuacamoleReader) reader;
+        else
+            this.bufferedReader = null;
+
+        if (reader instanceof UTF8GuacamoleReader)
+            this.utf8Reader = (UTF8GuacamoleReader) reader;
+        else
+            this.utf8Reader = null;
+
+    }
+
+    /**
+     * Reads the next instruction, or the next chunk of instructions if the
+     * reader does not provide direct access to individual instructions,
+     * storing the location of the data read within data, offset and length.
+     *
+     * @return
+     *     true if data was read, false if the end of the instruction stream
+     *     has been reached.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the underlying reader.
+     */
+    private boolean readNext() throws GuacamoleException {
+
+        if (ended)
+            return false;
+
+        // Read individual instructions in place, if possible
+        if (bufferedReader != null) {
+
+            CharBuffer instruction = bufferedReader.readBuffer();
+            if (instruction == null) {
+                ended = true;
+                return false;
+            }
+
+            data = instruction.array();
+            offset = instruction.arrayOffset() + instruction.position();
+            length = instruction.remaining();
+
+        }
+
+        // Otherwise, accumulate whatever was read
+        else {
+
+            data = reader.read();
+            if (data == null) {
+                ended = true;
+                return false;
+            }
+
+            offset = 0;
+            length = data.length;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the contents of the current batch, resetting the buffer for
+     * the next batch.
+     *
+     * @return
+     *     The contents of the current batch.
+     */
+    private String takeBatch() {
+        String batch = buffer.toString();
+        buffer = policy.recycle(buffer, batch.length());
+        return batch;
+    }
+
+    /**
+     * Reads instructions until the next batch is complete, returning that
+     * batch. If the end of the instruction stream is reached, any data
+     * accumulated thus far is returned as the final batch.
+     *
+     * @return
+     *     The next batch of complete instructions, or null if the end of the
+     *     instruction stream has been reached and no data remains.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the underlying reader.
+     */
+    public String readBatch() throws GuacamoleException {
+
+        long batchStart = 0;
+
+        while (readNext()) {
+
+            if (buffer.length() == 0)
+                batchStart = System.nanoTime();
+
+            buffer.append(data, offset, length);
+
+            // Stop once batch is complete
+            if (policy.shouldFlush(GuacamoleBatchPolicy.isFrameEnd(data, offset, length),
+                    buffer.length(), batchStart, reader))
+                return takeBatch();
+
+        }
+
+        // Send any remaining data as the final batch
+        if (buffer.length() == 0)
+            return null;
+
+        return takeBatch();
+
+    }
+
+    /**
+     * Ensures the UTF-8 buffer can hold at least the given number of bytes,
+     * preserving its current contents.
+     *
+     * @param used
+     *     The number of bytes of the current buffer which are in use.
+     *
+     * @param required
+     *     The number of bytes the buffer must be able to hold.
+     */
+    private void ensureUTF8Capacity(int used, int required) {
+
+        if (utf8Buffer != null && utf8Buffer.length >= required)
+            return;
+
+        int capacity = Math.max(required, policy.getBufferCapacity());
+        if (utf8Buffer != null)
+            capacity = Math.max(capacity, utf8Buffer.length * 2);
+
+        byte[] grown = new byte[capacity];
+        if (utf8Buffer != null)
+            System.arraycopy(utf8Buffer, 0, grown, 0, used);
+
+        utf8Buffer = grown;
+
+    }
+
+    /**
+     * Appends the UTF-8 form of the instruction data most recently read by
+     * readNext() to the UTF-8 buffer.
+     *
+     * @param used
+     *     The number of bytes of the UTF-8 buffer already in use.
+     *
+     * @return
+     *     The number of bytes of the UTF-8 buffer in use after the data has
+     *     been appended.
+     */
+    private int encodeNext(int used) {
+
+        // Replace any unpaired surrogates, as done by GuacamoleInstruction
+        if (encoder == null)
+            encoder = Charset.forName("UTF-8").newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .replaceWith(new byte[] { '?' });
+
+        ensureUTF8Capacity(used, used + length * MAX_BYTES_PER_CHAR);
+
+        ByteBuffer out = ByteBuffer.wrap(utf8Buffer, used, utf8Buffer.length - used);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(data, offset, length), out, true);
+        encoder.flush(out);
+
+        return out.position();
+
+    }
+
+    /**
+     * Returns the current UTF-8 batch, releasing the UTF-8 buffer if it has
+     * grown well beyond the size of the batches typically observed.
+     *
+     * @param batchLength
+     *     The length of the current batch, in bytes.
+     *
+     * @return
+     *     A view of the current batch.
+     */
+    private ByteBuffer takeUTF8Batch(int batchLength) {
+
+        ByteBuffer batch = ByteBuffer.wrap(utf8Buffer, 0, batchLength);
+        policy.recordBatch(batchLength);
+
+        // Allocate a new buffer for later batches if this one is oversized
+        if (utf8Buffer.length > policy.getBufferCapacity() * MAX_BYTES_PER_CHAR * 4)
+            utf8Buffer = null;
+
+        return batch;
+
+    }
+
+    /**
+     * Reads instructions until the next batch is complete, returning the
+     * UTF-8 form of that batch. If the underlying reader is a
+     * UTF8GuacamoleReader, the UTF-8 data it provides is copied without
+     * decoding. Otherwise, each instruction is read as characters and
+     * encoded, thus UTF-8 batches cost the server no less than text batches,
+     * and any saving is on the receiving side only. If the end of the instruction stream is reached, any data
+     * accumulated thus far is returned as the final batch. The returned
+     * ByteBuffer must not be relied upon after the next call to any read
+     * function of this batcher.
+     *
+     * @return
+     *     A view of the UTF-8 form of the next batch of complete
+     *     instructions, or null if the end of the instruction stream has been
+     *     reached and no data remains.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the underlying reader.
+     */
+    public ByteBuffer readUTF8Batch() throws GuacamoleException {
+
+        long batchStart = 0;
+        int batchLength = 0;
+
+        // The batch length in characters, as measured by the batch policy
+        int batchCharacters = 0;
+
+        while (!ended) {
+
+            boolean frameEnd;
+            int previousLength = batchLength;
+
+            // Copy UTF-8 data as-is, if available
+            if (utf8Reader != null) {
+
+                ByteBuffer instruction = utf8Reader.readUTF8();
+                if (instruction == null) {
+                    ended = true;
+                    break;
+                }
+
+                int size = instruction.remaining();
+                ensureUTF8Capacity(batchLength, batchLength + size);
+                System.arraycopy(instruction.array(),
+                        instruction.arrayOffset() + instruction.position(),
+                        utf8Buffer, batchLength, size);
+
+                frameEnd = GuacamoleBatchPolicy.isFrameEnd(instruction);
+                batchLength += size;
+                batchCharacters += GuacamoleBatchPolicy.getCharacterLength(instruction);
+
+            }
+
+            // Otherwise, encode instruction data as read
+            else {
+
+                if (!readNext())
+                    break;
+
+                frameEnd = GuacamoleBatchPolicy.isFrameEnd(data, offset, length);
+                batchLength = encodeNext(batchLength);
+                batchCharacters += length;
+
+            }
+
+            if (previousLength == 0)
+                batchStart = System.nanoTime();
+
+            // Stop once batch is complete
+            if (policy.shouldFlush(frameEnd, batchCharacters, batchStart, reader))
+                return takeUTF8Batch(batchLength);
+
+        }
+
+        // Send any remaining data as the final batch
+        if (batchLength == 0)
+            return null;
+
+        return takeUTF8Batch(batchLength);
+
+    }
+
+}
@@ -22,6 +22,8 @@ package org.apache.guacamole.io;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
+import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.Deque;
@@ -31,18 +33,53 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
 
 /**
  * A GuacamoleReader which wraps a standard Java Reader, using that Reader as
  * the Guacamole instruction stream.
+ *
+ * Received data is parsed in place. Instructions are consumed by advancing
+ * the start of the unread region of the buffer rather than by shifting the
+ * remaining data, and any partially-received instruction is moved back to the
+ * beginning of the buffer only once the free space at the end of the buffer
+ * is running low. Complete instructions can thus be exposed directly via
+ * readBuffer() without copying.
+ *
+ * If the socket underlying the Reader is provided, available(int) waits for
+ * data by temporarily shortening the read timeout of that socket. Otherwise,
+ * available(int) cannot wait, and behaves identically to available().
  */
-public class ReaderGuacamoleReader implements GuacamoleReader {
+public class ReaderGuacamoleReader
+        implements BufferedGuacamoleReader, TimedGuacamoleReader {
+
+    /**
+     * The default initial size of the internal buffer, in characters.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 20480;
+
+    /**
+     * The default maximum size of the internal buffer, in characters. By
+     * default, the buffer may grow without bound.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = Integer.MAX_VALUE;
 
     /**
      * Wrapped Reader to be used for all input.
      */
     private Reader input;
 
+    /**
+     * The maximum size of the internal buffer, in characters.
+     */
+    private final int maxBufferSize;
+
+    /**
+     * The socket from which the wrapped Reader reads, or null if the Reader
+     * is not known to read from a socket.
+     */
+    private final Socket socket;
+
     /**
      * Creates a new ReaderGuacamoleReader which will use the given Reader as
      * the Guacamole instruction stream.
@@ -50,7 +87,49 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
      * @param input The Reader to use as the Guacamole instruction stream.
      */
     public ReaderGuacamoleReader(Reader input) {
+        this(input, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new ReaderGuacamoleReader which will use the given Reader as
+     * the Guacamole instruction stream, buffering received data within a
+     * buffer of the given initial size. The buffer grows as necessary to
+     * hold larger instructions, but never beyond the given maximum size.
+     *
+     * @param input The Reader to use as the Guacamole instruction stream.
+     * @param bufferSize The initial size of the internal buffer, in
+     *                   characters.
+     * @param maxBufferSize The maximum size of the internal buffer, in
+     *                      characters. Instructions larger than this size
+     *                      cannot be read.
+     */
+    public ReaderGuacamoleReader(Reader input, int bufferSize,
+            int maxBufferSize) {
+        this(input, bufferSize, maxBufferSize, null);
+    }
+
+    /**
+     * Creates a new ReaderGuacamoleReader which will use the given Reader,
+     * which reads from the given socket, as the Guacamole instruction stream.
+     * The read timeout of the socket is temporarily changed while waiting
+     * for data within available(int), and is otherwise left untouched.
+     *
+     * @param input The Reader to use as the Guacamole instruction stream.
+     * @param bufferSize The initial size of the internal buffer, in
+     *                   characters.
+     * @param maxBufferSize The maximum size of the internal buffer, in
+     *                      characters. Instructions larger than this size
+     *                      cannot be read.
+     * @param socket The socket from which the given Reader reads, or null if
+     *               the Reader does not read from a socket.
+     */
+    public ReaderGuacamoleReader(Reader input, int bufferSize,
+            int maxBufferSize, Socket socket) {
         this.input = input;
+        this.socket = socket;
+        this.maxBufferSize = Math.max(1, maxBufferSize);
+        this.buffer = new char[Math.max(1, Math.min(bufferSize, this.maxBufferSize))];
+        this.view = CharBuffer.wrap(buffer);
     }
 
     /**
@@ -62,19 +141,33 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
     /**
      * The buffer holding all received, unparsed data.
      */
-    private char[] buffer = new char[20480];
+    private char[] buffer;
 
     /**
-     * The number of characters currently used within the data buffer. All
-     * other characters within the buffer are free space available for
-     * future reads.
+     * The location within the received data buffer of the first character
+     * which has not yet been returned as part of a complete instruction.
+     */
+    private int instructionStart = 0;
+
+    /**
+     * The number of characters currently used within the data buffer,
+     * including any characters preceding instructionStart which belong to
+     * instructions that have already been read. All other characters within
+     * the buffer are free space available for future reads.
      */
     private int usedLength = 0;
 
+    /**
+     * View of the internal buffer which is returned by readBuffer(). This
+     * view is reused for each instruction read, and is replaced only when
+     * the internal buffer itself is replaced.
+     */
+    private CharBuffer view;
+
     @Override
     public boolean available() throws GuacamoleException {
         try {
-            return input.ready() || usedLength != 0;
+            return input.ready() || usedLength != instructionStart;
         }
         catch (IOException e) {
             throw new GuacamoleServerException(e);
@@ -82,7 +175,99 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
     }
 
     @Override
-    public char[] read() throws GuacamoleException {
+    public boolean available(int timeout) throws GuacamoleException {
+
+        // Data which has already been received need not be waited for
+        if (available())
+            return true;
+
+        // Without access to the socket, a read cannot be bounded in time
+        if (timeout <= 0 || socket == null)
+            return false;
+
+        try {
+
+            // Wait for data by reading with a shortened timeout, retaining
+            // anything read for the next call to readBuffer()
+            int originalTimeout = socket.getSoTimeout();
+            if (originalTimeout != 0 && originalTimeout < timeout)
+                timeout = originalTimeout;
+
+            socket.setSoTimeout(timeout);
+            try {
+
+                reclaimBuffer();
+                int numRead = input.read(buffer, usedLength, buffer.length - usedLength);
+
+                // The end of stream is immediately available to readBuffer()
+                if (numRead != -1)
+                    usedLength += numRead;
+
+                return true;
+
+            }
+            finally {
+                socket.setSoTimeout(originalTimeout);
+            }
+
+        }
+        catch (SocketTimeoutException e) {
+            return false;
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    /**
+     * Ensures there is sufficient free space at the end of the internal
+     * buffer for further reads, moving any unread data to the beginning of
+     * the buffer and resizing the buffer as necessary. Data is moved only if
+     * the free space remaining is less than half the size of the buffer,
+     * such that the cost of moving data is amortized across many
+     * instructions.
+     */
+    private void reclaimBuffer() {
+
+        // Number of characters received but not yet returned
+        int unreadLength = usedLength - instructionStart;
+
+        // If nothing is pending, simply start over at the beginning of the
+        // buffer
+        if (unreadLength == 0) {
+            parseStart = 0;
+            instructionStart = 0;
+            usedLength = 0;
+            return;
+        }
+
+        // Do nothing if there is still plenty of free space
+        if (usedLength <= buffer.length/2)
+            return;
+
+        // If past threshold, resize buffer before reading, unless the
+        // buffer is already as large as allowed
+        char[] target = buffer;
+        if (unreadLength > buffer.length/2 && buffer.length < maxBufferSize) {
+            target = new char[(int) Math.min((long) buffer.length*2, maxBufferSize)];
+            view = CharBuffer.wrap(target);
+        }
+
+        // Move unread data to beginning of buffer
+        System.arraycopy(buffer, instructionStart, target, 0, unreadLength);
+        parseStart -= instructionStart;
+        usedLength = unreadLength;
+        instructionStart = 0;
+        buffer = target;
+
+    }
+
+    @Override
+    public CharBuffer readBuffer() throws GuacamoleException {
 
         try {
 
@@ -127,16 +312,14 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
                             // instruction.
                             if (terminator == ';') {
 
-                                // Copy instruction data
-                                char[] instruction = new char[i];
-                                System.arraycopy(buffer, 0, instruction, 0, i);
+                                // Expose instruction data in place
+                                view.limit(i);
+                                view.position(instructionStart);
 
-                                // Update buffer
-                                usedLength -= i;
-                                parseStart = 0;
-                                System.arraycopy(buffer, i, buffer, 0, usedLength);
+                                // Data following this instruction is next
+                                instructionStart = i;
 
-                                return instruction;
+                                return view;
 
                             }
 
@@ -158,12 +341,12 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
 
                 }
 
-                // If past threshold, resize buffer before reading
-                if (usedLength > buffer.length/2) {
-                    char[] biggerBuffer = new char[buffer.length*2];
-                    System.arraycopy(buffer, 0, biggerBuffer, 0, usedLength);
-                    buffer = biggerBuffer;
-                }
+                // Make room for more data, if necessary
+                reclaimBuffer();
+                if (usedLength == buffer.length)
+                    throw new GuacamoleServerException("Instruction exceeds "
+                            + "maximum length of " + buffer.length
+                            + " characters.");
 
                 // Attempt to fill buffer
                 int numRead = input.read(buffer, usedLength, buffer.length - usedLength);
@@ -188,27 +371,51 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
 
     }
 
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        // Get instruction
+        CharBuffer instructionBuffer = readBuffer();
+
+        // If EOF, return EOF
+        if (instructionBuffer == null)
+            return null;
+
+        // Copy instruction data
+        char[] instruction = new char[instructionBuffer.remaining()];
+        instructionBuffer.get(instruction);
+        return instruction;
+
+    }
+
     @Override
     public GuacamoleInstruction readInstruction() throws GuacamoleException {
 
         // Get instruction
-        char[] instructionBuffer = read();
+        CharBuffer instructionBuffer = readBuffer();
 
         // If EOF, return EOF
         if (instructionBuffer == null)
             return null;
 
+        // Parse directly from internal buffer
+        char[] instructionData = instructionBuffer.array();
+        int instructionEnd = instructionBuffer.limit();
+
         // Start of element
-        int elementStart = 0;
+        int elementStart = instructionBuffer.position();
+
+        // Known opcode of instruction, if any
+        GuacamoleOpcode knownOpcode = null;
 
         // Build list of elements
         Deque<String> elements = new LinkedList<String>();
-        while (elementStart < instructionBuffer.length) {
+        while (elementStart < instructionEnd) {
 
             // Find end of length
             int lengthEnd = -1;
-            for (int i=elementStart; i<instructionBuffer.length; i++) {
-                if (instructionBuffer[i] == '.') {
+            for (int i=elementStart; i<instructionEnd; i++) {
+                if (instructionData[i] == '.') {
                     lengthEnd = i;
                     break;
                 }
@@ -221,25 +428,35 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
 
             // Parse length
             int length = Integer.parseInt(new String(
-                    instructionBuffer,
+                    instructionData,
                     elementStart,
                     lengthEnd - elementStart
             ));
 
-            // Parse element from just after period
+            // Identify known opcodes without creating a new String
             elementStart = lengthEnd + 1;
-            String element = new String(
-                    instructionBuffer,
-                    elementStart,
-                    length
-            );
+            if (elements.isEmpty())
+                knownOpcode = GuacamoleOpcode.fromValue(instructionData,
+                        elementStart, length);
+
+            // Parse element from just after period, reusing the interned
+            // value of known opcodes
+            String element;
+            if (elements.isEmpty() && knownOpcode != null)
+                element = knownOpcode.getValue();
+            else
+                element = new String(
+                        instructionData,
+                        elementStart,
+                        length
+                );
 
             // Append element to list of elements
             elements.addLast(element);
 
             // Read terminator after element
             elementStart += length;
-            char terminator = instructionBuffer[elementStart];
+            char terminator = instructionData[elementStart];
 
             // Continue reading instructions after terminator
             elementStart++;
@@ -252,12 +469,14 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
 
         // Pull opcode off elements list
         String opcode = elements.removeFirst();
+        String[] args = elements.toArray(new String[elements.size()]);
 
         // Create instruction
-        GuacamoleInstruction instruction = new GuacamoleInstruction(
-                opcode,
-                elements.toArray(new String[elements.size()])
-        );
+        GuacamoleInstruction instruction;
+        if (knownOpcode != null)
+            instruction = new GuacamoleInstruction(knownOpcode, args);
+        else
+            instruction = new GuacamoleInstruction(opcode, args);
 
         // Return parsed instruction
         return instruction;
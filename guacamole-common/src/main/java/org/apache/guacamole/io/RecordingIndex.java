@@ -0,0 +1,665 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the frames within a Guacamole session recording, allowing
+ * playback to seek within the recording without first reading the entire
+ * recording. Each frame is identified by the timestamp of the "sync"
+ * instruction which ends it and the byte offset just past that instruction.
+ * Frames are flagged as keyframes using the same intervals as the JavaScript
+ * Guacamole.SessionRecording, measured in bytes rather than characters.
+ *
+ * The index is stored within a sidecar file alongside the recording, having
+ * the same name plus the ".index" suffix. The sidecar consists of a short
+ * header followed by one fixed-size record per frame, and is only ever
+ * appended to, thus recordings which are still being written can be indexed
+ * incrementally by calling update() as the recording grows.
+ */
+public class RecordingIndex {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RecordingIndex.class);
+
+    /**
+     * The suffix appended to the filename of a recording to produce the
+     * filename of its index.
+     */
+    public static final String INDEX_SUFFIX = ".index";
+
+    /**
+     * The minimum number of bytes of recording between keyframes.
+     */
+    public static final long KEYFRAME_BYTE_INTERVAL = 16384;
+
+    /**
+     * The minimum number of milliseconds of recording between keyframes.
+     */
+    public static final long KEYFRAME_TIME_INTERVAL = 5000;
+
+    /**
+     * The value identifying the start of an index file.
+     */
+    private static final int MAGIC = 0x47524958;
+
+    /**
+     * The version of the index file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the index file header, in bytes.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of each frame record within the index file, in bytes.
+     */
+    private static final int RECORD_SIZE = 17;
+
+    /**
+     * The size of the buffer used to read the recording, in bytes.
+     */
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    /**
+     * Parser state denoting that the length of an element is being read.
+     */
+    private static final int STATE_LENGTH = 0;
+
+    /**
+     * Parser state denoting that the value of an element, or its
+     * terminator, is being read.
+     */
+    private static final int STATE_VALUE = 1;
+
+    /**
+     * The UTF-8 bytes of the opcode of the instruction which ends each frame.
+     */
+    private static final byte[] SYNC_OPCODE = { 's', 'y', 'n', 'c' };
+
+    /**
+     * The recording being indexed.
+     */
+    private final File recording;
+
+    /**
+     * The sidecar file storing the index.
+     */
+    private final File indexFile;
+
+    /**
+     * Whether any existing sidecar has been read.
+     */
+    private boolean loaded = false;
+
+    /**
+     * The number of frames indexed.
+     */
+    private int frameCount = 0;
+
+    /**
+     * The timestamp of each indexed frame, in milliseconds.
+     */
+    private long[] timestamps = new long[256];
+
+    /**
+     * The byte offset just past the end of each indexed frame.
+     */
+    private long[] offsets = new long[256];
+
+    /**
+     * The number of keyframes indexed.
+     */
+    private int keyframeCount = 0;
+
+    /**
+     * The index of the frame corresponding to each keyframe.
+     */
+    private int[] keyframes = new int[16];
+
+    /**
+     * Creates a new RecordingIndex for the given recording. No data is read
+     * until update() is invoked.
+     *
+     * @param recording
+     *     The recording to index.
+     */
+    public RecordingIndex(File recording) {
+        this.recording = recording;
+        this.indexFile = new File(recording.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Adds a frame to this index, flagging the frame as a keyframe if
+     * required by the keyframe intervals or if explicitly requested.
+     *
+     * @param timestamp
+     *     The timestamp of the frame, in milliseconds.
+     *
+     * @param offset
+     *     The byte offset just past the end of the frame.
+     *
+     * @param keyframe
+     *     Whether the frame is known to be a keyframe. If false, the
+     *     keyframe intervals decide.
+     *
+     * @return
+     *     true if the frame was flagged as a keyframe, false otherwise.
+     */
+    private boolean addFrame(long timestamp, long offset, boolean keyframe) {
+
+        // Flag keyframes using the same rules as Guacamole.SessionRecording
+        if (!keyframe) {
+            if (keyframeCount == 0)
+                keyframe = true;
+            else {
+                int last = keyframes[keyframeCount - 1];
+                keyframe = offset - offsets[last] >= KEYFRAME_BYTE_INTERVAL
+                        && timestamp - timestamps[last] >= KEYFRAME_TIME_INTERVAL;
+            }
+        }
+
+        // Grow storage as needed
+        if (frameCount == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, frameCount * 2);
+            offsets = Arrays.copyOf(offsets, frameCount * 2);
+        }
+
+        if (keyframe) {
+            if (keyframeCount == keyframes.length)
+                keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+            keyframes[keyframeCount++] = frameCount;
+        }
+
+        timestamps[frameCount] = timestamp;
+        offsets[frameCount] = offset;
+        frameCount++;
+
+        return keyframe;
+
+    }
+
+    /**
+     * Discards all indexed frames.
+     */
+    private void clear() {
+        frameCount = 0;
+        keyframeCount = 0;
+    }
+
+    /**
+     * Reads all frames from the sidecar file, if it exists and is valid.
+     * If the sidecar is not valid, any frames read are discarded, and the
+     * index will be rebuilt from the start of the recording.
+     *
+     * @return
+     *     The number of bytes of valid index data, or zero if the sidecar
+     *     must be rewritten from the start.
+     */
+    private long load() {
+
+        if (!indexFile.exists())
+            return 0;
+
+        long indexLength = indexFile.length();
+        long recordingLength = recording.length();
+
+        try {
+
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)));
+
+            try {
+
+                // Rebuild index if the format is not recognized
+                if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                    return 0;
+
+                // Read all complete records, ignoring any partial record
+                long records = (indexLength - HEADER_SIZE) / RECORD_SIZE;
+                for (long i = 0; i < records; i++) {
+
+                    long timestamp = input.readLong();
+                    long offset = input.readLong();
+                    boolean keyframe = input.readBoolean();
+
+                    // Rebuild index if it does not match the recording
+                    if (offset > recordingLength
+                            || (frameCount > 0 && offset <= offsets[frameCount - 1])) {
+                        clear();
+                        return 0;
+                    }
+
+                    addFrame(timestamp, offset, keyframe);
+
+                }
+
+                return HEADER_SIZE + records * RECORD_SIZE;
+
+            }
+            finally {
+                input.close();
+            }
+
+        }
+        catch (EOFException e) {
+            clear();
+            return 0;
+        }
+        catch (IOException e) {
+            logger.warn("Recording index \"{}\" cannot be read and will be "
+                    + "rebuilt: {}", indexFile, e.getMessage());
+            logger.debug("Unable to read recording index.", e);
+            clear();
+            return 0;
+        }
+
+    }
+
+    /**
+     * Appends records describing all frames from the given index onward to
+     * the sidecar file, writing the header first if the sidecar is being
+     * rewritten. Failure to write the sidecar is not fatal, as the index
+     * remains available in memory.
+     *
+     * @param validLength
+     *     The number of bytes of valid data within the sidecar, or zero if
+     *     the sidecar must be rewritten from the start.
+     *
+     * @param firstFrame
+     *     The index of the first frame which must be written.
+     */
+    private void store(long validLength, int firstFrame) {
+
+        if (validLength != 0 && firstFrame == frameCount)
+            return;
+
+        try {
+
+            // Drop any trailing partial record before appending
+            if (validLength != 0 && indexFile.length() != validLength) {
+                RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+                try {
+                    file.setLength(validLength);
+                }
+                finally {
+                    file.close();
+                }
+            }
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(indexFile, validLength != 0)));
+
+            try {
+
+                if (validLength == 0) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(VERSION);
+                }
+
+                int keyframe = Arrays.binarySearch(keyframes, 0, keyframeCount, firstFrame);
+                if (keyframe < 0)
+                    keyframe = -keyframe - 1;
+
+                for (int i = firstFrame; i < frameCount; i++) {
+
+                    boolean isKeyframe = keyframe < keyframeCount && keyframes[keyframe] == i;
+                    if (isKeyframe)
+                        keyframe++;
+
+                    output.writeLong(timestamps[i]);
+                    output.writeLong(offsets[i]);
+                    output.writeBoolean(isKeyframe);
+
+                }
+
+            }
+            finally {
+                output.close();
+            }
+
+        }
+        catch (IOException e) {
+            logger.warn("Recording index \"{}\" cannot be written: {}",
+                    indexFile, e.getMessage());
+            logger.debug("Unable to write recording index.", e);
+        }
+
+    }
+
+    /**
+     * Reads the given stream until the end of stream is reached, adding each
+     * complete frame to this index. The stream must begin on an instruction
+     * boundary.
+     *
+     * @param input
+     *     The stream to read.
+     *
+     * @param offset
+     *     The byte offset within the recording of the start of the stream.
+     *
+     * @throws IOException
+     *     If an error occurs while reading the stream.
+     *
+     * @throws GuacamoleException
+     *     If the recording does not contain valid Guacamole instructions.
+     */
+    private void scan(InputStream input, long offset)
+            throws IOException, GuacamoleException {
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        int state = STATE_LENGTH;
+        int elementLength = 0;
+        int remaining = 0;
+        int elementIndex = 0;
+
+        // Opcode and timestamp of the current instruction
+        int opcodeMatched = 0;
+        boolean sync = false;
+        long timestamp = 0;
+
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+
+            for (int i = 0; i < length; i++, offset++) {
+
+                byte b = buffer[i];
+
+                // Parse element length
+                if (state == STATE_LENGTH) {
+
+                    if (b >= '0' && b <= '9')
+                        elementLength = elementLength * 10 + b - '0';
+                    else if (b == '.') {
+                        remaining = elementLength;
+                        state = STATE_VALUE;
+                    }
+                    else
+                        throw new GuacamoleServerException("Invalid "
+                                + "element length at offset " + offset + ".");
+
+                    continue;
+
+                }
+
+                // Continuation bytes of multibyte characters belong to the
+                // value, and are never part of an opcode or timestamp
+                if ((b & 0xC0) == 0x80)
+                    continue;
+
+                // Consume each character of the value
+                if (remaining > 0) {
+
+                    remaining--;
+
+                    // Identify "sync" instructions
+                    if (elementIndex == 0) {
+                        if (opcodeMatched >= 0 && opcodeMatched < SYNC_OPCODE.length
+                                && SYNC_OPCODE[opcodeMatched] == b)
+                            opcodeMatched++;
+                        else
+                            opcodeMatched = -1;
+                    }
+
+                    // Read timestamp of "sync"
+                    else if (elementIndex == 1 && sync && b >= '0' && b <= '9')
+                        timestamp = timestamp * 10 + b - '0';
+
+                    continue;
+
+                }
+
+                // End of opcode
+                if (elementIndex == 0)
+                    sync = (elementLength == SYNC_OPCODE.length
+                            && opcodeMatched == SYNC_OPCODE.length);
+
+                // Move to next element
+                if (b == ',') {
+                    elementIndex++;
+                    elementLength = 0;
+                    state = STATE_LENGTH;
+                }
+
+                // End of instruction, and of frame if "sync"
+                else if (b == ';') {
+
+                    if (sync)
+                        addFrame(timestamp, offset + 1, false);
+
+                    elementIndex = 0;
+                    elementLength = 0;
+                    opcodeMatched = 0;
+                    sync = false;
+                    timestamp = 0;
+                    state = STATE_LENGTH;
+
+                }
+
+                else
+                    throw new GuacamoleServerException("Invalid element "
+                            + "terminator at offset " + offset + ".");
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Updates this index to include all complete frames currently within the
+     * recording. The sidecar is read upon the first call, and the recording
+     * is scanned only from the end of the last indexed frame. Any frames
+     * newly indexed are appended to the sidecar.
+     *
+     * @throws GuacamoleException
+     *     If the recording cannot be read or does not contain valid Guacamole
+     *     instructions.
+     */
+    public synchronized void update() throws GuacamoleException {
+
+        long validLength;
+        if (!loaded) {
+            validLength = load();
+            loaded = true;
+        }
+
+        // Rewrite sidecar if it no longer matches the index in memory
+        else {
+            validLength = HEADER_SIZE + (long) frameCount * RECORD_SIZE;
+            if (indexFile.length() != validLength)
+                validLength = 0;
+        }
+
+        int firstFrame = (validLength == 0) ? 0 : frameCount;
+
+        // Scan recording from end of last indexed frame
+        long start = getLength();
+        try {
+
+            FileInputStream input = new FileInputStream(recording);
+            try {
+
+                if (input.skip(start) != start)
+                    throw new GuacamoleServerException("Recording is shorter than its index.");
+
+                scan(input, start);
+
+            }
+            finally {
+                input.close();
+            }
+
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to read recording.", e);
+        }
+
+        // Persist any new frames, even if scanning failed partway
+        finally {
+            store(validLength, firstFrame);
+        }
+
+    }
+
+    /**
+     * Returns the recording indexed by this RecordingIndex.
+     *
+     * @return
+     *     The recording indexed by this RecordingIndex.
+     */
+    public File getRecording() {
+        return recording;
+    }
+
+    /**
+     * Returns the number of bytes of the recording covered by this index,
+     * which is the byte offset just past the end of the last indexed frame.
+     *
+     * @return
+     *     The number of bytes of the recording covered by this index.
+     */
+    public synchronized long getLength() {
+        return frameCount == 0 ? 0 : offsets[frameCount - 1];
+    }
+
+    /**
+     * Returns the number of frames within this index.
+     *
+     * @return
+     *     The number of frames within this index.
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the timestamp of the given frame, as provided by the "sync"
+     * instruction ending that frame.
+     *
+     * @param frame
+     *     The index of the frame.
+     *
+     * @return
+     *     The timestamp of the given frame, in milliseconds.
+     */
+    public synchronized long getFrameTimestamp(int frame) {
+        return timestamps[frame];
+    }
+
+    /**
+     * Returns the byte offset of the first instruction of the given frame.
+     *
+     * @param frame
+     *     The index of the frame.
+     *
+     * @return
+     *     The byte offset of the start of the given frame.
+     */
+    public synchronized long getFrameStart(int frame) {
+        return frame == 0 ? 0 : offsets[frame - 1];
+    }
+
+    /**
+     * Returns the byte offset just past the "sync" instruction ending the
+     * given frame.
+     *
+     * @param frame
+     *     The index of the frame.
+     *
+     * @return
+     *     The byte offset of the end of the given frame.
+     */
+    public synchronized long getFrameEnd(int frame) {
+        return offsets[frame];
+    }
+
+    /**
+     * Returns the number of keyframes within this index.
+     *
+     * @return
+     *     The number of keyframes within this index.
+     */
+    public synchronized int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * Returns the index of the frame corresponding to the given keyframe.
+     *
+     * @param keyframe
+     *     The index of the keyframe.
+     *
+     * @return
+     *     The index of the frame corresponding to the given keyframe.
+     */
+    public synchronized int getKeyframe(int keyframe) {
+        return keyframes[keyframe];
+    }
+
+    /**
+     * Returns the index of the last frame whose timestamp is not later than
+     * the given timestamp, or the first frame if all frames are later.
+     *
+     * @param timestamp
+     *     The timestamp to search for, in milliseconds.
+     *
+     * @return
+     *     The index of the frame at the given timestamp, or -1 if there are
+     *     no frames.
+     */
+    public synchronized int findFrame(long timestamp) {
+
+        int frame = Arrays.binarySearch(timestamps, 0, frameCount, timestamp);
+
+        // Use the last of any frames sharing the same timestamp
+        if (frame >= 0) {
+            while (frame + 1 < frameCount && timestamps[frame + 1] == timestamp)
+                frame++;
+            return frame;
+        }
+
+        // Otherwise, use the frame preceding the insertion point
+        return Math.min(Math.max(-frame - 2, 0), frameCount - 1);
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleReader which is able to wait a limited amount of time for data to
+ * become available. Unlike available(), which reports only whether data has
+ * already been received, this allows callers to hold partially-received
+ * output for a bounded time without blocking indefinitely within a read and
+ * without repeatedly polling.
+ */
+public interface TimedGuacamoleReader extends GuacamoleReader {
+
+    /**
+     * Returns whether instruction data is available for reading, waiting up
+     * to the given number of milliseconds for data to arrive if none has yet
+     * been received. If this function returns true, the next read will not
+     * block except to receive the remainder of an instruction which has
+     * already partially arrived. Any data received while waiting is retained
+     * for future reads.
+     *
+     * @param timeout
+     *     The maximum number of milliseconds to wait for data. If zero, this
+     *     function behaves identically to available() and does not wait.
+     *
+     * @return
+     *     true if data is available for reading, false if no data arrived
+     *     within the given timeout.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while waiting for data.
+     */
+    public boolean available(int timeout) throws GuacamoleException;
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleReader which operates directly on the UTF-8 encoded form of the
+ * Guacamole instruction stream, and is able to provide that encoded data
+ * as-is. Callers which only need to forward instructions elsewhere in UTF-8
+ * can use readUTF8() to avoid decoding and re-encoding the data.
+ */
+public interface UTF8GuacamoleReader extends GuacamoleReader {
+
+    /**
+     * Reads exactly one complete Guacamole instruction, returning a view of
+     * the UTF-8 encoded form of that instruction within the internal buffer
+     * of this reader. The returned ByteBuffer is backed by an accessible
+     * array, with its position set to the first byte of the instruction and
+     * its limit set to the byte following the instruction's terminating
+     * semicolon. Neither the ByteBuffer nor the contents of its backing array
+     * may be relied upon after the next call to any read function of this
+     * reader, and callers must not modify either.
+     *
+     * @return
+     *     A view of the UTF-8 encoded form of the next complete instruction,
+     *     or null if no more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream.
+     */
+    public ByteBuffer readUTF8() throws GuacamoleException;
+
+}
@@ -32,30 +32,93 @@ import org.apache.guacamole.protocol.GuacamoleInstruction;
 
 /**
  * A GuacamoleWriter which wraps a standard Java Writer, using that Writer as
- * the Guacamole instruction stream.
+ * the Guacamole instruction stream. Depending on the FlushPolicy given, the
+ * wrapped Writer is flushed either after every write, or only once enough
+ * data has been coalesced or flush() is explicitly invoked.
  */
-public class WriterGuacamoleWriter implements GuacamoleWriter {
+public class WriterGuacamoleWriter implements FlushableGuacamoleWriter {
 
     /**
      * Wrapped Writer to be used for all output.
      */
     private Writer output;
 
+    /**
+     * The policy dictating when the wrapped Writer is flushed.
+     */
+    private final FlushPolicy flushPolicy;
+
+    /**
+     * The number of characters written since the wrapped Writer was last
+     * flushed.
+     */
+    private int pendingLength = 0;
+
+    /**
+     * The value of System.nanoTime() when the oldest data not yet flushed was
+     * written.
+     */
+    private long pendingSince;
+
     /**
      * Creates a new WriterGuacamoleWriter which will use the given Writer as
-     * the Guacamole instruction stream.
+     * the Guacamole instruction stream, flushing that Writer after every
+     * write.
      *
      * @param output The Writer to use as the Guacamole instruction stream.
      */
     public WriterGuacamoleWriter(Writer output) {
+        this(output, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Creates a new WriterGuacamoleWriter which will use the given Writer as
+     * the Guacamole instruction stream, flushing that Writer as dictated by
+     * the given FlushPolicy.
+     *
+     * @param output
+     *     The Writer to use as the Guacamole instruction stream.
+     *
+     * @param flushPolicy
+     *     The policy dictating when the given Writer must be flushed.
+     */
+    public WriterGuacamoleWriter(Writer output, FlushPolicy flushPolicy) {
         this.output = output;
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Records that the given number of characters have been written to the
+     * wrapped Writer, flushing that Writer if required by the flush policy.
+     *
+     * @param len
+     *     The number of characters written.
+     *
+     * @throws IOException
+     *     If an error occurs while flushing the wrapped Writer.
+     */
+    private void written(int len) throws IOException {
+
+        // Note time that coalescing began, if not already coalescing
+        long now = System.nanoTime();
+        if (pendingLength == 0)
+            pendingSince = now;
+
+        // Flush only if required by policy
+        pendingLength += len;
+        if (flushPolicy.shouldFlush(pendingLength, (now - pendingSince) / 1000000)) {
+            output.flush();
+            pendingLength = 0;
+        }
+
     }
 
     @Override
     public void write(char[] chunk, int off, int len) throws GuacamoleException {
         try {
+
             output.write(chunk, off, len);
-            output.flush();
+            written(len);
         }
         catch (SocketTimeoutException e) {
             throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
@@ -75,7 +138,45 @@ public class WriterGuacamoleWriter implements GuacamoleWriter {
 
     @Override
     public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
-        write(instruction.toString().toCharArray());
+        try {
+
+            // Serialize directly to the wrapped Writer
+            instruction.writeTo(output);
+            written(instruction.getLength());
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws GuacamoleException {
+
+        // Nothing to do if no data is pending
+        if (pendingLength == 0)
+            return;
+
+        try {
+            output.flush();
+            pendingLength = 0;
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
     }
 
 }
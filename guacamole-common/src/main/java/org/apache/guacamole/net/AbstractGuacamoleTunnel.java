@@ -22,8 +22,11 @@ package org.apache.guacamole.net;
 
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.FlushableGuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Base GuacamoleTunnel implementation which synchronizes access to the
@@ -32,6 +35,11 @@ import org.apache.guacamole.io.GuacamoleWriter;
  */
 public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
 
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AbstractGuacamoleTunnel.class);
+
     /**
      * Lock acquired when a read operation is in progress.
      */
@@ -103,11 +111,34 @@ public abstract class AbstractGuacamoleTunnel implements GuacamoleTunnel {
     /**
      * Relinquishes exclusive write access to the Guacamole instruction
      * stream. This function should be called whenever a thread finishes using
-     * a GuacamoleTunnel's GuacamoleWriter.
+     * a GuacamoleTunnel's GuacamoleWriter. If the writer may be holding data
+     * written while write access was held, that data is flushed, unless other
+     * threads are already waiting for write access, in which case the data is
+     * coalesced with theirs and flushed when they relinquish access.
      */
     @Override
     public void releaseWriter() {
-        writerLock.unlock();
+
+        try {
+
+            // Flush any coalesced data unless another thread will shortly
+            // write more
+            GuacamoleWriter writer = getSocket().getWriter();
+            if (writer instanceof FlushableGuacamoleWriter
+                    && !writerLock.hasQueuedThreads())
+                ((FlushableGuacamoleWriter) writer).flush();
+
+        }
+
+        // Failures will also be reported by any further write
+        catch (GuacamoleException e) {
+            logger.debug("Unable to flush data written to tunnel.", e);
+        }
+
+        finally {
+            writerLock.unlock();
+        }
+
     }
 
     @Override
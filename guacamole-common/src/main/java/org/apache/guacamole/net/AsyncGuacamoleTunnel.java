@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import java.util.UUID;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * Provides a non-blocking, callback-driven alternative to GuacamoleTunnel.
+ * Rather than requiring a dedicated thread to block while reading, each
+ * received instruction is delivered to an AsyncGuacamoleTunnelListener as it
+ * arrives, and writes complete asynchronously. A small number of event loop
+ * threads can thus service a large number of tunnels.
+ */
+public interface AsyncGuacamoleTunnel {
+
+    /**
+     * Returns a unique identifier for this tunnel.
+     *
+     * @return
+     *     A unique identifier for this tunnel.
+     */
+    UUID getUUID();
+
+    /**
+     * Begins delivering received instructions to the given listener. This
+     * function may be invoked only once.
+     *
+     * @param listener
+     *     The listener which should receive all instructions and the close
+     *     event of this tunnel.
+     */
+    void start(AsyncGuacamoleTunnelListener listener);
+
+    /**
+     * Queues the given data for sending along this tunnel, returning
+     * immediately. The data must consist only of complete instructions, and
+     * is not referenced after this function returns.
+     *
+     * @param chunk
+     *     An array of characters containing Guacamole instructions.
+     *
+     * @param offset
+     *     The offset within the array to begin writing from.
+     *
+     * @param length
+     *     The number of characters to write.
+     *
+     * @param callback
+     *     The callback to notify once the data has been sent or cannot be
+     *     sent, or null if no notification is needed.
+     */
+    void write(char[] chunk, int offset, int length,
+            GuacamoleWriteCallback callback);
+
+    /**
+     * Queues the given instruction for sending along this tunnel, returning
+     * immediately.
+     *
+     * @param instruction
+     *     The instruction to write.
+     *
+     * @param callback
+     *     The callback to notify once the instruction has been sent or cannot
+     *     be sent, or null if no notification is needed.
+     */
+    void writeInstruction(GuacamoleInstruction instruction,
+            GuacamoleWriteCallback callback);
+
+    /**
+     * Temporarily stops delivering received instructions to the listener,
+     * such that no further data is read until resumeReading() is invoked.
+     * If invoked by the listener itself, no further instructions are
+     * delivered after the current instruction.
+     */
+    void suspendReading();
+
+    /**
+     * Resumes delivering received instructions to the listener after a prior
+     * call to suspendReading().
+     */
+    void resumeReading();
+
+    /**
+     * Closes this tunnel, releasing the underlying connection. Any queued
+     * writes which have not yet been sent will fail, and the listener will be
+     * notified once the tunnel has closed.
+     */
+    void close();
+
+    /**
+     * Returns whether this tunnel is open, or has been closed.
+     *
+     * @return
+     *     true if this tunnel is open, false if it has been closed.
+     */
+    boolean isOpen();
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import java.nio.ByteBuffer;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Listener which receives the instructions and close events of an
+ * AsyncGuacamoleTunnel. All functions are invoked by the event loop thread
+ * servicing the tunnel, and must not block. Listeners which cannot
+ * immediately accept further instructions should instead invoke
+ * suspendReading() on the tunnel, resuming once ready.
+ */
+public interface AsyncGuacamoleTunnelListener {
+
+    /**
+     * Called when a complete instruction has been received. The instruction
+     * is provided in its raw, UTF-8 encoded form between the position and
+     * limit of the given buffer. The buffer is a view of the tunnel's
+     * internal buffer, and is valid only until this function returns.
+     *
+     * @param instruction
+     *     A buffer containing exactly one complete instruction.
+     *
+     * @throws GuacamoleException
+     *     If the instruction cannot be handled, in which case the tunnel will
+     *     be closed.
+     */
+    void instructionReceived(ByteBuffer instruction) throws GuacamoleException;
+
+    /**
+     * Called exactly once, after the tunnel has been closed, whether due to
+     * an explicit call to close(), the end of the Guacamole instruction
+     * stream, or an error.
+     *
+     * @param cause
+     *     The error which caused the tunnel to close, or null if the tunnel
+     *     closed normally.
+     */
+    void tunnelClosed(GuacamoleException cause);
+
+}
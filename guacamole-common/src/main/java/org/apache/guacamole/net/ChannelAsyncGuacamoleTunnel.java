@@ -0,0 +1,592 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.io.ChannelGuacamoleReader;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AsyncGuacamoleTunnel implementation which services the SocketChannel of a
+ * ChannelGuacamoleSocket using a GuacamoleEventLoop. The socket is typically
+ * first used to perform the Guacamole protocol handshake, for example by
+ * wrapping it with a ConfiguredGuacamoleSocket, and then handed to this
+ * tunnel. Any instructions already received by the socket's reader are
+ * delivered to the listener before any newly-received data. Once handed to
+ * this tunnel, the socket's own reader and writer must no longer be used.
+ */
+public class ChannelAsyncGuacamoleTunnel implements AsyncGuacamoleTunnel {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ChannelAsyncGuacamoleTunnel.class);
+
+    /**
+     * The charset used by the Guacamole protocol.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The default number of milliseconds to wait for data from guacd before
+     * closing the tunnel due to timeout.
+     */
+    public static final int DEFAULT_TIMEOUT = 15000;
+
+    /**
+     * Data queued for sending, along with the callback to notify once sent.
+     */
+    private static class PendingWrite {
+
+        /**
+         * The UTF-8 data remaining to be sent.
+         */
+        private final ByteBuffer data;
+
+        /**
+         * The callback to notify once all data is sent, or null if no
+         * notification is needed.
+         */
+        private final GuacamoleWriteCallback callback;
+
+        /**
+         * Creates a new PendingWrite for the given data and callback.
+         *
+         * @param data
+         *     The UTF-8 data to send.
+         *
+         * @param callback
+         *     The callback to notify once all data is sent, or null if no
+         *     notification is needed.
+         */
+        private PendingWrite(ByteBuffer data, GuacamoleWriteCallback callback) {
+            this.data = data;
+            this.callback = callback;
+        }
+
+    }
+
+    /**
+     * The unique identifier of this tunnel.
+     */
+    private final UUID uuid = UUID.randomUUID();
+
+    /**
+     * The socket whose channel is serviced by this tunnel.
+     */
+    private final ChannelGuacamoleSocket socket;
+
+    /**
+     * The channel connected to guacd.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The reader used to parse received data, which may already contain data
+     * received during the handshake.
+     */
+    private final ChannelGuacamoleReader reader;
+
+    /**
+     * The event loop worker servicing this tunnel.
+     */
+    private final GuacamoleEventLoop.Worker worker;
+
+    /**
+     * The number of nanoseconds to wait for data from guacd before closing
+     * the tunnel due to timeout, or zero to wait indefinitely.
+     */
+    private final long timeout;
+
+    /**
+     * All writes which have not yet been completely sent, in order.
+     */
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<PendingWrite>();
+
+    /**
+     * Whether a task to send pending writes has been scheduled but not yet
+     * run.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    /**
+     * Whether start() has been invoked.
+     */
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /**
+     * Whether this tunnel has been closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * The listener receiving all instructions. This is only accessed by the
+     * event loop thread.
+     */
+    private AsyncGuacamoleTunnelListener listener;
+
+    /**
+     * The selection key of the channel, or null if the channel has not yet
+     * been registered. This is only accessed by the event loop thread.
+     */
+    private SelectionKey key;
+
+    /**
+     * Whether reading is currently suspended. This is only accessed by the
+     * event loop thread.
+     */
+    private boolean readingSuspended = false;
+
+    /**
+     * Whether the listener has been notified that this tunnel is closed. This
+     * is only accessed by the event loop thread.
+     */
+    private boolean closeHandled = false;
+
+    /**
+     * The value of System.nanoTime() when data was last received, or when
+     * reading was last resumed. This is only accessed by the event loop
+     * thread.
+     */
+    private long lastReceived;
+
+    /**
+     * Handler which receives all events affecting the channel.
+     */
+    private final GuacamoleEventLoop.ChannelHandler handler =
+            new GuacamoleEventLoop.ChannelHandler() {
+
+        @Override
+        public void channelReady(SelectionKey key) {
+
+            try {
+
+                // Send pending data once the channel can accept more
+                if (key.isWritable())
+                    flush();
+
+                // Deliver all newly-received instructions
+                if (key.isReadable())
+                    deliverInstructions();
+
+            }
+            catch (CancelledKeyException e) {
+                // The tunnel is closing
+            }
+
+        }
+
+        @Override
+        public void checkIdle(long now) {
+            if (timeout > 0 && !readingSuspended && now - lastReceived > timeout)
+                handleClose(new GuacamoleUpstreamTimeoutException("Connection to guacd timed out."));
+        }
+
+    };
+
+    /**
+     * Creates a new ChannelAsyncGuacamoleTunnel which services the given
+     * socket using the given event loop, closing the tunnel if no data is
+     * received within the given timeout.
+     *
+     * @param eventLoop
+     *     The event loop which should service the tunnel.
+     *
+     * @param socket
+     *     The socket to service, which must not be otherwise used once
+     *     handed to this tunnel.
+     *
+     * @param timeout
+     *     The number of milliseconds to wait for data from guacd before
+     *     closing the tunnel due to timeout, or zero to wait indefinitely.
+     */
+    public ChannelAsyncGuacamoleTunnel(GuacamoleEventLoop eventLoop,
+            ChannelGuacamoleSocket socket, int timeout) {
+        this.socket = socket;
+        this.channel = socket.getChannel();
+        this.reader = socket.getChannelReader();
+        this.worker = eventLoop.nextWorker();
+        this.timeout = timeout * 1000000L;
+    }
+
+    /**
+     * Creates a new ChannelAsyncGuacamoleTunnel which services the given
+     * socket using the given event loop, closing the tunnel if no data is
+     * received within DEFAULT_TIMEOUT milliseconds.
+     *
+     * @param eventLoop
+     *     The event loop which should service the tunnel.
+     *
+     * @param socket
+     *     The socket to service, which must not be otherwise used once
+     *     handed to this tunnel.
+     */
+    public ChannelAsyncGuacamoleTunnel(GuacamoleEventLoop eventLoop,
+            ChannelGuacamoleSocket socket) {
+        this(eventLoop, socket, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Runs the given task on the event loop thread servicing this tunnel,
+     * immediately if already on that thread.
+     *
+     * @param task
+     *     The task to run.
+     */
+    private void runInEventLoop(Runnable task) {
+        if (worker.inEventLoop())
+            task.run();
+        else
+            worker.execute(task);
+    }
+
+    /**
+     * Updates the interest set of the channel to reflect whether reading is
+     * suspended and whether data is waiting to be sent. This function must
+     * be invoked on the event loop thread.
+     */
+    private void updateInterestOps() {
+
+        if (key == null || !key.isValid())
+            return;
+
+        int ops = 0;
+        if (!readingSuspended)
+            ops |= SelectionKey.OP_READ;
+        if (!pendingWrites.isEmpty())
+            ops |= SelectionKey.OP_WRITE;
+
+        key.interestOps(ops);
+
+    }
+
+    /**
+     * Delivers all complete instructions which can be read without blocking
+     * to the listener, stopping early if reading is suspended. If the end of
+     * stream is reached, the tunnel is closed. This function must be invoked
+     * on the event loop thread.
+     */
+    private void deliverInstructions() {
+
+        try {
+
+            ByteBuffer instruction;
+            while (!readingSuspended && !closeHandled
+                    && (instruction = reader.pollUTF8()) != null) {
+                lastReceived = System.nanoTime();
+                listener.instructionReceived(instruction);
+            }
+
+            // Close normally once guacd closes the connection
+            if (reader.isEndOfStream() && !closeHandled)
+                handleClose(null);
+
+        }
+        catch (GuacamoleException e) {
+            handleClose(e);
+        }
+
+    }
+
+    /**
+     * Sends as much pending data as the channel will accept without blocking,
+     * notifying the callback of each completed write. This function must be
+     * invoked on the event loop thread.
+     */
+    private void flush() {
+
+        // Fail any writes which raced with closure of the tunnel
+        if (closeHandled) {
+            failPendingWrites();
+            return;
+        }
+
+        // Data cannot be sent until registered
+        if (key == null)
+            return;
+
+        try {
+
+            PendingWrite write;
+            while ((write = pendingWrites.peek()) != null) {
+
+                // Stop once the channel will accept no more data
+                channel.write(write.data);
+                if (write.data.hasRemaining())
+                    break;
+
+                // Notify callback of completed write
+                pendingWrites.poll();
+                if (write.callback != null)
+                    write.callback.writeCompleted();
+
+            }
+
+            updateInterestOps();
+
+        }
+        catch (ClosedChannelException e) {
+            handleClose(new GuacamoleConnectionClosedException("Connection to guacd is closed.", e));
+        }
+        catch (SocketException e) {
+            handleClose(new GuacamoleConnectionClosedException("Connection to guacd is closed.", e));
+        }
+        catch (IOException e) {
+            handleClose(new GuacamoleServerException(e));
+        }
+
+    }
+
+    /**
+     * Removes all pending writes, notifying their callbacks that the writes
+     * have failed. This function must be invoked on the event loop thread.
+     */
+    private void failPendingWrites() {
+
+        PendingWrite write;
+        GuacamoleException writeError = null;
+        while ((write = pendingWrites.poll()) != null) {
+
+            if (write.callback == null)
+                continue;
+
+            if (writeError == null)
+                writeError = new GuacamoleConnectionClosedException("Tunnel is closed.");
+
+            write.callback.writeFailed(writeError);
+
+        }
+
+    }
+
+    /**
+     * Closes the underlying socket, fails all pending writes, and notifies
+     * the listener that the tunnel has closed, if not already done. This
+     * function must be invoked on the event loop thread.
+     *
+     * @param cause
+     *     The error which caused the tunnel to close, or null if the tunnel
+     *     closed normally.
+     */
+    private void handleClose(GuacamoleException cause) {
+
+        // Close only once
+        if (closeHandled)
+            return;
+
+        closeHandled = true;
+        closed.set(true);
+
+        if (key != null)
+            key.cancel();
+
+        try {
+            socket.close();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to close socket of asynchronous tunnel.", e);
+        }
+
+        failPendingWrites();
+
+        if (listener != null)
+            listener.tunnelClosed(cause);
+
+    }
+
+    @Override
+    public UUID getUUID() {
+        return uuid;
+    }
+
+    @Override
+    public void start(AsyncGuacamoleTunnelListener listener) {
+
+        if (!started.compareAndSet(false, true))
+            throw new IllegalStateException("Tunnel has already been started.");
+
+        this.listener = listener;
+
+        worker.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                // The tunnel may have been closed before being started
+                if (closeHandled)
+                    return;
+
+                try {
+                    key = worker.register(channel, SelectionKey.OP_READ, handler);
+                }
+                catch (ClosedChannelException e) {
+                    handleClose(new GuacamoleConnectionClosedException("Connection to guacd is closed.", e));
+                    return;
+                }
+
+                lastReceived = System.nanoTime();
+
+                // Send anything written prior to start, and deliver anything
+                // received prior to start (such as during the handshake)
+                flush();
+                deliverInstructions();
+
+            }
+
+        });
+
+    }
+
+    @Override
+    public void write(char[] chunk, int offset, int length,
+            GuacamoleWriteCallback callback) {
+
+        // Encode immediately, such that the caller's array is not retained
+        send(UTF8.encode(CharBuffer.wrap(chunk, offset, length)), callback);
+
+    }
+
+    /**
+     * Queues the given encoded instruction data for sending on the event
+     * loop, invoking the given callback once sent.
+     *
+     * @param data
+     *     The encoded instruction data to send, positioned at the first byte
+     *     to send. This buffer must not be modified after being queued.
+     *
+     * @param callback
+     *     The callback to invoke once the data has been sent or the send has
+     *     failed, or null if no notification is needed.
+     */
+    private void send(ByteBuffer data, GuacamoleWriteCallback callback) {
+
+        // Refuse writes once closed
+        if (closed.get()) {
+            if (callback != null)
+                callback.writeFailed(new GuacamoleConnectionClosedException("Tunnel is closed."));
+            return;
+        }
+
+        pendingWrites.add(new PendingWrite(data, callback));
+
+        // Send on event loop, coalescing requests to send
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    flushScheduled.set(false);
+                    flush();
+                }
+
+            });
+        }
+
+    }
+
+    @Override
+    public void writeInstruction(GuacamoleInstruction instruction,
+            GuacamoleWriteCallback callback) {
+
+        // Encode directly into a buffer of exactly the required size
+        ByteBuffer data = ByteBuffer.allocate(instruction.getEncodedLength());
+        instruction.writeTo(data);
+        data.flip();
+
+        send(data, callback);
+
+    }
+
+    @Override
+    public void suspendReading() {
+        runInEventLoop(new Runnable() {
+
+            @Override
+            public void run() {
+                readingSuspended = true;
+                updateInterestOps();
+            }
+
+        });
+    }
+
+    @Override
+    public void resumeReading() {
+        runInEventLoop(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (!readingSuspended)
+                    return;
+
+                readingSuspended = false;
+                lastReceived = System.nanoTime();
+                updateInterestOps();
+
+                // Deliver any instructions received prior to suspension
+                if (key != null)
+                    deliverInstructions();
+
+            }
+
+        });
+    }
+
+    @Override
+    public void close() {
+
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        runInEventLoop(new Runnable() {
+
+            @Override
+            public void run() {
+                handleClose(null);
+            }
+
+        });
+
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+}
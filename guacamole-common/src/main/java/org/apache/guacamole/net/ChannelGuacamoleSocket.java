@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.io.ChannelGuacamoleReader;
+import org.apache.guacamole.io.ChannelGuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides abstract socket-like access to a Guacamole connection over a given
+ * hostname and port, using a non-blocking SocketChannel. Unlike
+ * InetGuacamoleSocket, the Guacamole instruction stream is parsed directly in
+ * its UTF-8 encoded form, and the GuacamoleReader provided by this socket is
+ * a UTF8GuacamoleReader which allows that data to be forwarded without being
+ * decoded.
+ */
+public class ChannelGuacamoleSocket implements GuacamoleSocket {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ChannelGuacamoleSocket.class);
+
+    /**
+     * The number of milliseconds to wait for data on the TCP socket before
+     * timing out.
+     */
+    private static final int SOCKET_TIMEOUT = 15000;
+
+    /**
+     * The channel that the GuacamoleReader and GuacamoleWriter exposed by this
+     * class should affect.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The GuacamoleReader this socket should read from.
+     */
+    private final ChannelGuacamoleReader reader;
+
+    /**
+     * The GuacamoleWriter this socket should write to.
+     */
+    private final ChannelGuacamoleWriter writer;
+
+    /**
+     * Creates a new ChannelGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port.
+     *
+     * @param hostname
+     *     The hostname of the Guacamole proxy server to connect to.
+     *
+     * @param port
+     *     The port of the Guacamole proxy server to connect to.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to the Guacamole proxy server.
+     */
+    public ChannelGuacamoleSocket(String hostname, int port)
+            throws GuacamoleException {
+
+        try {
+
+            logger.debug("Connecting to guacd at {}:{}.", hostname, port);
+
+            // Get address
+            SocketAddress address = new InetSocketAddress(
+                    InetAddress.getByName(hostname),
+                    port
+            );
+
+            // Connect with timeout
+            channel = SocketChannel.open();
+            try {
+                channel.socket().connect(address, SOCKET_TIMEOUT);
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection timed out.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+        // On successful connect, prepare non-blocking reader and writer
+        try {
+            reader = new ChannelGuacamoleReader(channel, SOCKET_TIMEOUT);
+            writer = new ChannelGuacamoleWriter(channel, SOCKET_TIMEOUT);
+        }
+
+        // Do not leave channel open if it cannot be used
+        catch (GuacamoleException e) {
+            try {
+                channel.close();
+            }
+            catch (IOException closeError) {
+                logger.debug("Unable to close unusable channel to guacd.", closeError);
+            }
+            throw e;
+        }
+
+    }
+
+    @Override
+    public void close() throws GuacamoleException {
+        try {
+            logger.debug("Closing socket to guacd.");
+            channel.close();
+            reader.close();
+            writer.close();
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+    }
+
+    /**
+     * Returns the channel underlying this socket.
+     *
+     * @return
+     *     The channel underlying this socket.
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the ChannelGuacamoleReader used by this socket to read
+     * instructions, which may already contain received data.
+     *
+     * @return
+     *     The ChannelGuacamoleReader used by this socket.
+     */
+    ChannelGuacamoleReader getChannelReader() {
+        return reader;
+    }
+
+    @Override
+    public GuacamoleReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public GuacamoleWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+}
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed set of threads which service the non-blocking channels of any
+ * number of AsyncGuacamoleTunnels, each thread multiplexing its channels
+ * using a dedicated Selector. Each tunnel is assigned to a single thread for
+ * its lifetime, and all of its I/O and listener callbacks occur on that
+ * thread.
+ */
+public class GuacamoleEventLoop {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleEventLoop.class);
+
+    /**
+     * The maximum number of milliseconds to wait for channel events before
+     * checking channels for idle timeouts.
+     */
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+
+    /**
+     * Handler which is notified of events affecting a channel registered with
+     * a GuacamoleEventLoop.
+     */
+    interface ChannelHandler {
+
+        /**
+         * Called when the channel associated with the given key is ready for
+         * one or more of the operations within the key's interest set.
+         *
+         * @param key
+         *     The selection key of the channel.
+         */
+        void channelReady(SelectionKey key);
+
+        /**
+         * Called periodically, allowing the handler to close its channel if
+         * it has been idle for too long.
+         *
+         * @param now
+         *     The current value of System.nanoTime().
+         */
+        void checkIdle(long now);
+
+    }
+
+    /**
+     * A single thread of a GuacamoleEventLoop, along with the Selector and
+     * task queue used by that thread.
+     */
+    class Worker implements Runnable {
+
+        /**
+         * The Selector used to wait for events on all channels serviced by
+         * this worker.
+         */
+        private final Selector selector;
+
+        /**
+         * Tasks which must be run by this worker's thread, in order.
+         */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        /**
+         * The thread running this worker.
+         */
+        private final Thread thread;
+
+        /**
+         * Creates a new Worker whose thread has the given name. The thread
+         * is not started.
+         *
+         * @param name
+         *     The name to assign to the worker's thread.
+         *
+         * @throws IOException
+         *     If the worker's Selector cannot be opened.
+         */
+        private Worker(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Returns whether the current thread is this worker's thread.
+         *
+         * @return
+         *     true if the current thread is this worker's thread, false
+         *     otherwise.
+         */
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        /**
+         * Schedules the given task to run on this worker's thread, waking the
+         * thread if necessary. Tasks run in the order scheduled.
+         *
+         * @param task
+         *     The task to run.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (!inEventLoop())
+                selector.wakeup();
+        }
+
+        /**
+         * Registers the given channel with this worker's Selector. This
+         * function must be invoked from this worker's thread.
+         *
+         * @param channel
+         *     The non-blocking channel to register.
+         *
+         * @param ops
+         *     The initial interest set of the channel.
+         *
+         * @param handler
+         *     The handler to notify of events affecting the channel.
+         *
+         * @return
+         *     The selection key of the registered channel.
+         *
+         * @throws ClosedChannelException
+         *     If the channel has already been closed.
+         */
+        SelectionKey register(SelectableChannel channel, int ops,
+                ChannelHandler handler) throws ClosedChannelException {
+            return channel.register(selector, ops, handler);
+        }
+
+        /**
+         * Runs all tasks scheduled thus far.
+         */
+        private void runTasks() {
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                }
+                catch (RuntimeException e) {
+                    logger.error("Event loop task failed: {}", e.getMessage());
+                    logger.debug("Unexpected error within event loop task.", e);
+                }
+            }
+
+        }
+
+        @Override
+        public void run() {
+
+            long lastIdleCheck = System.nanoTime();
+
+            while (running) {
+
+                // Wait for events, unless tasks are already pending (tasks
+                // scheduled from this thread do not wake the selector)
+                try {
+                    if (tasks.isEmpty())
+                        selector.select(IDLE_CHECK_INTERVAL);
+                    else
+                        selector.selectNow();
+                }
+                catch (IOException e) {
+                    logger.error("Event loop unable to wait for events: {}", e.getMessage());
+                    logger.debug("Selector failed within event loop.", e);
+                    break;
+                }
+
+                // Notify handlers of ready channels
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    try {
+                        ((ChannelHandler) key.attachment()).channelReady(key);
+                    }
+                    catch (RuntimeException e) {
+                        logger.error("Event loop channel handler failed: {}", e.getMessage());
+                        logger.debug("Unexpected error within channel handler.", e);
+                    }
+
+                }
+
+                // Run tasks after handling events, such that tasks scheduled
+                // by channel handlers run without waiting for the next event
+                runTasks();
+
+                // Periodically check all channels for idle timeouts
+                long now = System.nanoTime();
+                if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL * 1000000L) {
+
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.isValid())
+                            ((ChannelHandler) key.attachment()).checkIdle(now);
+                    }
+
+                    lastIdleCheck = now;
+
+                }
+
+            }
+
+            // Run any remaining tasks, such as those closing channels
+            runTasks();
+
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                logger.debug("Unable to close event loop selector.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * All workers within this event loop.
+     */
+    private final Worker[] workers;
+
+    /**
+     * The index of the worker to be assigned the next tunnel.
+     */
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    /**
+     * Whether this event loop is running. Once set to false, all workers will
+     * stop after completing their current iteration.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a new GuacamoleEventLoop having the given number of
+     * threads.
+     *
+     * @param threads
+     *     The number of threads to use to service tunnels.
+     *
+     * @throws GuacamoleException
+     *     If the selectors required by the event loop cannot be opened.
+     */
+    public GuacamoleEventLoop(int threads) throws GuacamoleException {
+
+        if (threads <= 0)
+            throw new IllegalArgumentException("At least one thread is required.");
+
+        workers = new Worker[threads];
+
+        try {
+            for (int i = 0; i < threads; i++)
+                workers[i] = new Worker("guacamole-event-loop-" + i);
+        }
+        catch (IOException e) {
+
+            // Close any selectors which were opened successfully
+            for (Worker worker : workers) {
+                if (worker == null)
+                    break;
+                try {
+                    worker.selector.close();
+                }
+                catch (IOException closeError) {
+                    logger.debug("Unable to close event loop selector.", closeError);
+                }
+            }
+
+            throw new GuacamoleServerException("Unable to create event loop.", e);
+
+        }
+
+        for (Worker worker : workers)
+            worker.thread.start();
+
+    }
+
+    /**
+     * Creates and starts a new GuacamoleEventLoop having one thread per
+     * available processor.
+     *
+     * @throws GuacamoleException
+     *     If the selectors required by the event loop cannot be opened.
+     */
+    public GuacamoleEventLoop() throws GuacamoleException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the worker which should be assigned the next tunnel, cycling
+     * through all workers.
+     *
+     * @return
+     *     The worker which should be assigned the next tunnel.
+     */
+    Worker nextWorker() {
+        int index = nextWorker.getAndIncrement() & Integer.MAX_VALUE;
+        return workers[index % workers.length];
+    }
+
+    /**
+     * Stops all threads of this event loop. Tunnels which remain open are not
+     * closed, but will no longer receive data.
+     */
+    public void shutdown() {
+
+        running = false;
+
+        for (Worker worker : workers)
+            worker.selector.wakeup();
+
+    }
+
+}
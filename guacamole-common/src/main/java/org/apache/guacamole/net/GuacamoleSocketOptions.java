@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.Reader;
+import java.net.Socket;
+import java.net.SocketException;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+
+/**
+ * The options which should be applied to a socket connected to guacd, along
+ * with the sizing of the buffer used to read instructions from that socket.
+ * Unless changed, each option takes the same value used by socket
+ * implementations which do not accept GuacamoleSocketOptions.
+ */
+public class GuacamoleSocketOptions {
+
+    /**
+     * The default number of milliseconds to wait when connecting, and for
+     * data on the connected socket, before timing out.
+     */
+    public static final int DEFAULT_TIMEOUT = 15000;
+
+    /**
+     * The number of milliseconds to wait when connecting, and for data on the
+     * connected socket, before timing out.
+     */
+    private int timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Whether Nagle's algorithm should be disabled (TCP_NODELAY).
+     */
+    private boolean tcpNoDelay = false;
+
+    /**
+     * Whether TCP keep-alive should be enabled (SO_KEEPALIVE).
+     */
+    private boolean keepAlive = false;
+
+    /**
+     * The size of the socket's send buffer (SO_SNDBUF), in bytes, or zero to
+     * use the system default.
+     */
+    private int sendBufferSize = 0;
+
+    /**
+     * The size of the socket's receive buffer (SO_RCVBUF), in bytes, or zero
+     * to use the system default.
+     */
+    private int receiveBufferSize = 0;
+
+    /**
+     * The initial size of the buffer used to read instructions, in
+     * characters.
+     */
+    private int readerBufferSize = ReaderGuacamoleReader.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The maximum size of the buffer used to read instructions, in
+     * characters.
+     */
+    private int readerMaxBufferSize = ReaderGuacamoleReader.DEFAULT_MAX_BUFFER_SIZE;
+
+    /**
+     * Creates a new GuacamoleSocketOptions having default values for all
+     * options.
+     */
+    public GuacamoleSocketOptions() {
+    }
+
+    /**
+     * Creates a new GuacamoleSocketOptions having the same values as the
+     * given GuacamoleSocketOptions.
+     *
+     * @param options
+     *     The GuacamoleSocketOptions to copy.
+     */
+    public GuacamoleSocketOptions(GuacamoleSocketOptions options) {
+        this.timeout             = options.timeout;
+        this.tcpNoDelay          = options.tcpNoDelay;
+        this.keepAlive           = options.keepAlive;
+        this.sendBufferSize      = options.sendBufferSize;
+        this.receiveBufferSize   = options.receiveBufferSize;
+        this.readerBufferSize    = options.readerBufferSize;
+        this.readerMaxBufferSize = options.readerMaxBufferSize;
+    }
+
+    /**
+     * Returns the number of milliseconds to wait when connecting, and for
+     * data on the connected socket, before timing out.
+     *
+     * @return
+     *     The socket timeout, in milliseconds.
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait when connecting, and for data
+     * on the connected socket, before timing out.
+     *
+     * @param timeout
+     *     The socket timeout, in milliseconds, or zero to wait indefinitely.
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns whether Nagle's algorithm should be disabled (TCP_NODELAY).
+     *
+     * @return
+     *     true if Nagle's algorithm should be disabled, false otherwise.
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm should be disabled (TCP_NODELAY).
+     * Disabling Nagle's algorithm reduces the latency of small writes, such
+     * as those produced by keyboard and mouse input.
+     *
+     * @param tcpNoDelay
+     *     true if Nagle's algorithm should be disabled, false otherwise.
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Returns whether TCP keep-alive should be enabled (SO_KEEPALIVE).
+     *
+     * @return
+     *     true if TCP keep-alive should be enabled, false otherwise.
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets whether TCP keep-alive should be enabled (SO_KEEPALIVE).
+     *
+     * @param keepAlive
+     *     true if TCP keep-alive should be enabled, false otherwise.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the size of the socket's send buffer (SO_SNDBUF), in bytes.
+     *
+     * @return
+     *     The size of the send buffer, in bytes, or zero if the system
+     *     default should be used.
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Sets the size of the socket's send buffer (SO_SNDBUF), in bytes.
+     *
+     * @param sendBufferSize
+     *     The size of the send buffer, in bytes, or zero if the system
+     *     default should be used.
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Returns the size of the socket's receive buffer (SO_RCVBUF), in bytes.
+     *
+     * @return
+     *     The size of the receive buffer, in bytes, or zero if the system
+     *     default should be used.
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets the size of the socket's receive buffer (SO_RCVBUF), in bytes.
+     * Large receive buffers allow high-bandwidth connections, such as those
+     * carrying video, to make full use of the available bandwidth.
+     *
+     * @param receiveBufferSize
+     *     The size of the receive buffer, in bytes, or zero if the system
+     *     default should be used.
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Returns the initial size of the buffer used to read instructions, in
+     * characters.
+     *
+     * @return
+     *     The initial size of the instruction buffer, in characters.
+     */
+    public int getReaderBufferSize() {
+        return readerBufferSize;
+    }
+
+    /**
+     * Sets the initial size of the buffer used to read instructions, in
+     * characters.
+     *
+     * @param readerBufferSize
+     *     The initial size of the instruction buffer, in characters.
+     */
+    public void setReaderBufferSize(int readerBufferSize) {
+        this.readerBufferSize = readerBufferSize;
+    }
+
+    /**
+     * Returns the maximum size of the buffer used to read instructions, in
+     * characters.
+     *
+     * @return
+     *     The maximum size of the instruction buffer, in characters.
+     */
+    public int getReaderMaxBufferSize() {
+        return readerMaxBufferSize;
+    }
+
+    /**
+     * Sets the maximum size of the buffer used to read instructions, in
+     * characters. Instructions larger than this size cannot be read.
+     *
+     * @param readerMaxBufferSize
+     *     The maximum size of the instruction buffer, in characters.
+     */
+    public void setReaderMaxBufferSize(int readerMaxBufferSize) {
+        this.readerMaxBufferSize = readerMaxBufferSize;
+    }
+
+    /**
+     * Applies these options to the given socket. As the size of the receive
+     * buffer affects the TCP window negotiated during connection, this
+     * function should be invoked before the socket is connected.
+     *
+     * @param sock
+     *     The socket to configure.
+     *
+     * @throws SocketException
+     *     If any option cannot be applied.
+     */
+    public void configure(Socket sock) throws SocketException {
+
+        sock.setSoTimeout(timeout);
+        sock.setTcpNoDelay(tcpNoDelay);
+        sock.setKeepAlive(keepAlive);
+
+        if (sendBufferSize > 0)
+            sock.setSendBufferSize(sendBufferSize);
+
+        if (receiveBufferSize > 0)
+            sock.setReceiveBufferSize(receiveBufferSize);
+
+    }
+
+    /**
+     * Creates a new ReaderGuacamoleReader which reads instructions from the
+     * given Reader using a buffer sized according to these options.
+     *
+     * @param input
+     *     The Reader to read instructions from.
+     *
+     * @return
+     *     A new ReaderGuacamoleReader.
+     */
+    public ReaderGuacamoleReader createReader(Reader input) {
+        return new ReaderGuacamoleReader(input, readerBufferSize,
+                readerMaxBufferSize);
+    }
+
+    /**
+     * Creates a new ReaderGuacamoleReader which reads instructions from the
+     * given Reader using a buffer sized according to these options. As the
+     * socket from which the Reader reads is also provided, the returned
+     * reader is able to wait a limited time for data via available(int).
+     *
+     * @param input
+     *     The Reader to read instructions from.
+     *
+     * @param sock
+     *     The socket from which the given Reader reads.
+     *
+     * @return
+     *     A new ReaderGuacamoleReader.
+     */
+    public ReaderGuacamoleReader createReader(Reader input, Socket sock) {
+        return new ReaderGuacamoleReader(input, readerBufferSize,
+                readerMaxBufferSize, sock);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + timeout;
+        hash = 31 * hash + (tcpNoDelay ? 1 : 0);
+        hash = 31 * hash + (keepAlive ? 1 : 0);
+        hash = 31 * hash + sendBufferSize;
+        hash = 31 * hash + receiveBufferSize;
+        hash = 31 * hash + readerBufferSize;
+        hash = 31 * hash + readerMaxBufferSize;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (!(obj instanceof GuacamoleSocketOptions))
+            return false;
+
+        GuacamoleSocketOptions other = (GuacamoleSocketOptions) obj;
+        return timeout             == other.timeout
+            && tcpNoDelay          == other.tcpNoDelay
+            && keepAlive           == other.keepAlive
+            && sendBufferSize      == other.sendBufferSize
+            && receiveBufferSize   == other.receiveBufferSize
+            && readerBufferSize    == other.readerBufferSize
+            && readerMaxBufferSize == other.readerMaxBufferSize;
+
+    }
+
+}
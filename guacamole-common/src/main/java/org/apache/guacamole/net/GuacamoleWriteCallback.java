@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Callback which is notified of the outcome of an asynchronous write to an
+ * AsyncGuacamoleTunnel. Callbacks are invoked by the event loop thread
+ * servicing the tunnel, and must not block.
+ */
+public interface GuacamoleWriteCallback {
+
+    /**
+     * Called once all data associated with the write has been sent.
+     */
+    void writeCompleted();
+
+    /**
+     * Called if the write cannot be completed, either due to an error or
+     * because the tunnel was closed before all data could be sent.
+     *
+     * @param error
+     *     The error which prevented the write from completing.
+     */
+    void writeFailed(GuacamoleException error);
+
+}
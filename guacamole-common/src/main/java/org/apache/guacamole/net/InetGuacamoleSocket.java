@@ -20,8 +20,8 @@
 package org.apache.guacamole.net;
 
 
+import org.apache.guacamole.io.FlushPolicy;
 import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
 import org.apache.guacamole.io.WriterGuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleWriter;
 import java.io.IOException;
@@ -61,12 +61,6 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
      */
     private GuacamoleWriter writer;
 
-    /**
-     * The number of milliseconds to wait for data on the TCP socket before
-     * timing out.
-     */
-    private static final int SOCKET_TIMEOUT = 15000;
-
     /**
      * The TCP socket that the GuacamoleReader and GuacamoleWriter exposed
      * by this class should affect.
@@ -84,6 +78,46 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
      *                            Guacamole proxy server.
      */
     public InetGuacamoleSocket(String hostname, int port) throws GuacamoleException {
+        this(hostname, port, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Creates a new InetGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port. Data written to the
+     * Guacamole proxy server is sent as dictated by the given FlushPolicy.
+     *
+     * @param hostname The hostname of the Guacamole proxy server to connect to.
+     * @param port The port of the Guacamole proxy server to connect to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @throws GuacamoleException If an error occurs while connecting to the
+     *                            Guacamole proxy server.
+     */
+    public InetGuacamoleSocket(String hostname, int port,
+            FlushPolicy flushPolicy) throws GuacamoleException {
+        this(hostname, port, flushPolicy, new GuacamoleSocketOptions());
+    }
+
+    /**
+     * Creates a new InetGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port, applying the given socket
+     * options. Data written to the Guacamole proxy server is sent as dictated
+     * by the given FlushPolicy.
+     *
+     * @param hostname The hostname of the Guacamole proxy server to connect to.
+     * @param port The port of the Guacamole proxy server to connect to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @param options The options to apply to the underlying TCP socket and
+     *                instruction buffer.
+     * @throws GuacamoleException If an error occurs while connecting to the
+     *                            Guacamole proxy server.
+     */
+    public InetGuacamoleSocket(String hostname, int port,
+            FlushPolicy flushPolicy, GuacamoleSocketOptions options)
+            throws GuacamoleException {
 
         try {
 
@@ -95,16 +129,15 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
                     port
             );
 
-            // Connect with timeout
+            // Connect with timeout, applying options (including read
+            // timeout) beforehand
             sock = new Socket();
-            sock.connect(address, SOCKET_TIMEOUT);
-
-            // Set read timeout
-            sock.setSoTimeout(SOCKET_TIMEOUT);
+            options.configure(sock);
+            sock.connect(address, options.getTimeout());
 
             // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
-            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
+            reader = options.createReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"), sock);
+            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), flushPolicy);
 
         }
         catch (SocketTimeoutException e) {
@@ -116,6 +149,55 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
 
     }
 
+    /**
+     * Creates a new InetGuacamoleSocket which reads and writes instructions to the
+     * Guacamole instruction stream of the Guacamole proxy server at the other
+     * end of the given TCP socket, which must already be connected. The
+     * socket's read timeout is left untouched. Data written to the Guacamole
+     * proxy server is sent as dictated by the given FlushPolicy.
+     *
+     * @param sock The connected socket to read from and write to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @throws GuacamoleException If the I/O streams of the given socket
+     *                            cannot be retrieved.
+     */
+    public InetGuacamoleSocket(Socket sock, FlushPolicy flushPolicy)
+            throws GuacamoleException {
+        this(sock, flushPolicy, new GuacamoleSocketOptions());
+    }
+
+    /**
+     * Creates a new InetGuacamoleSocket which reads and writes instructions to the
+     * Guacamole instruction stream of the Guacamole proxy server at the other
+     * end of the given TCP socket, which must already be connected and
+     * configured. Only the instruction buffer sizes of the given options are
+     * used. Data written to the Guacamole proxy server is sent as dictated by
+     * the given FlushPolicy.
+     *
+     * @param sock The connected socket to read from and write to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @param options The options dictating the size of the instruction
+     *                buffer.
+     * @throws GuacamoleException If the I/O streams of the given socket
+     *                            cannot be retrieved.
+     */
+    public InetGuacamoleSocket(Socket sock, FlushPolicy flushPolicy,
+            GuacamoleSocketOptions options) throws GuacamoleException {
+
+        this.sock = sock;
+
+        try {
+            reader = options.createReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"), sock);
+            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), flushPolicy);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
     @Override
     public void close() throws GuacamoleException {
         try {
@@ -0,0 +1,508 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.TimedGuacamoleReader;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
+
+/**
+ * GuacamoleTunnel implementation which delegates all function calls to an
+ * underlying GuacamoleTunnel while measuring the traffic passing through that
+ * tunnel and the time spent reading from it and awaiting access to it. The
+ * readers and writers returned by this tunnel are lightweight wrappers around
+ * those of the underlying tunnel. If the underlying reader is a
+ * BufferedGuacamoleReader, instructions are read in place, and only the
+ * opcode of each instruction is inspected.
+ */
+public class MeteredGuacamoleTunnel extends DelegatingGuacamoleTunnel
+        implements TunnelMetrics {
+
+    /**
+     * All opcodes defined by the Guacamole protocol, indexed by ordinal.
+     */
+    private static final GuacamoleOpcode[] OPCODES = GuacamoleOpcode.values();
+
+    /**
+     * The index within instructionCounts of the count of instructions whose
+     * opcodes are not defined by the Guacamole protocol.
+     */
+    private static final int UNKNOWN_OPCODE = OPCODES.length;
+
+    /**
+     * The number of characters of instruction data read.
+     */
+    private final AtomicLong charactersRead = new AtomicLong();
+
+    /**
+     * The number of characters of instruction data written.
+     */
+    private final AtomicLong charactersWritten = new AtomicLong();
+
+    /**
+     * The number of instructions read, indexed by the ordinal of their
+     * opcode, with instructions having unknown opcodes counted at
+     * UNKNOWN_OPCODE.
+     */
+    private final AtomicLongArray instructionCounts =
+            new AtomicLongArray(UNKNOWN_OPCODE + 1);
+
+    /**
+     * The duration of each read.
+     */
+    private final TimingHistogram readTimes = new TimingHistogram();
+
+    /**
+     * The time spent awaiting read access.
+     */
+    private final TimingHistogram readerWaitTimes = new TimingHistogram();
+
+    /**
+     * The time for which read access was held.
+     */
+    private final TimingHistogram readerHoldTimes = new TimingHistogram();
+
+    /**
+     * The time spent awaiting write access.
+     */
+    private final TimingHistogram writerWaitTimes = new TimingHistogram();
+
+    /**
+     * The time for which write access was held.
+     */
+    private final TimingHistogram writerHoldTimes = new TimingHistogram();
+
+    /**
+     * The time between successive "sync" instructions.
+     */
+    private final TimingHistogram frameIntervals = new TimingHistogram();
+
+    /**
+     * The value of System.nanoTime() when read access was most recently
+     * acquired. This value is only accessed while read access is held.
+     */
+    private long readerAcquired;
+
+    /**
+     * The value of System.nanoTime() when write access was most recently
+     * acquired. This value is only accessed while write access is held.
+     */
+    private long writerAcquired;
+
+    /**
+     * The value of System.nanoTime() when the most recent "sync" instruction
+     * was read, or zero if no "sync" has yet been read. This value is only
+     * accessed while read access is held.
+     */
+    private long lastSync = 0;
+
+    /**
+     * The metered wrapper around the reader of the underlying tunnel most
+     * recently returned by acquireReader(). This value is only accessed while
+     * read access is held.
+     */
+    private MeteredReader reader;
+
+    /**
+     * The metered wrapper around the writer of the underlying tunnel most
+     * recently returned by acquireWriter(). This value is only accessed while
+     * write access is held.
+     */
+    private MeteredWriter writer;
+
+    /**
+     * Wraps the given tunnel such that all function calls against this tunnel
+     * will be delegated to it, measuring all traffic and access.
+     *
+     * @param tunnel
+     *     The GuacamoleTunnel to wrap.
+     */
+    public MeteredGuacamoleTunnel(GuacamoleTunnel tunnel) {
+        super(tunnel);
+    }
+
+    /**
+     * Counts the given instruction, which must begin at the given offset of
+     * the given buffer. Only the opcode of the instruction is inspected.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset of the first character of the instruction.
+     *
+     * @param end
+     *     The offset of the first character beyond the end of the
+     *     instruction data within the buffer.
+     */
+    private void countInstruction(char[] buffer, int offset, int end) {
+
+        // Parse length of opcode
+        int length = 0;
+        int i = offset;
+        while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+            length = length * 10 + buffer[i++] - '0';
+
+        // Identify opcode, if valid and known
+        GuacamoleOpcode opcode = null;
+        if (i < end && buffer[i] == '.' && i + 1 + length <= end)
+            opcode = GuacamoleOpcode.fromValue(buffer, i + 1, length);
+
+        countInstruction(opcode);
+
+    }
+
+    /**
+     * Counts an instruction having the given opcode, recording the time
+     * since the previous frame if that opcode is "sync".
+     *
+     * @param opcode
+     *     The opcode of the instruction, or null if the opcode is not defined
+     *     by the Guacamole protocol.
+     */
+    private void countInstruction(GuacamoleOpcode opcode) {
+
+        if (opcode == null) {
+            instructionCounts.incrementAndGet(UNKNOWN_OPCODE);
+            return;
+        }
+
+        instructionCounts.incrementAndGet(opcode.ordinal());
+
+        // Measure time taken to produce each frame
+        if (opcode == GuacamoleOpcode.SYNC) {
+            long now = System.nanoTime();
+            if (lastSync != 0)
+                frameIntervals.record(now - lastSync);
+            lastSync = now;
+        }
+
+    }
+
+    /**
+     * Counts each of the instructions within the given buffer, which may
+     * contain any number of complete instructions.
+     *
+     * @param buffer
+     *     The buffer containing the instructions.
+     *
+     * @param offset
+     *     The offset of the first character of the first instruction.
+     *
+     * @param length
+     *     The number of characters of instruction data within the buffer.
+     */
+    private void countInstructions(char[] buffer, int offset, int length) {
+
+        int end = offset + length;
+        int i = offset;
+        boolean instructionStart = true;
+
+        while (i < end) {
+
+            if (instructionStart)
+                countInstruction(buffer, i, end);
+
+            // Parse length of element, in UTF-16 characters, consistent
+            // with the parsers which produced the data
+            int elementLength = 0;
+            while (i < end && buffer[i] != '.')
+                elementLength = elementLength * 10 + buffer[i++] - '0';
+
+            // Skip past element value
+            i += elementLength + 1;
+
+            // The element terminator determines whether another instruction
+            // follows
+            if (i >= end)
+                break;
+
+            instructionStart = (buffer[i++] == ';');
+
+        }
+
+    }
+
+    /**
+     * GuacamoleReader which delegates to the reader of the underlying tunnel,
+     * measuring all data read.
+     */
+    private class MeteredReader
+            implements BufferedGuacamoleReader, TimedGuacamoleReader {
+
+        /**
+         * The reader of the underlying tunnel.
+         */
+        private final GuacamoleReader wrapped;
+
+        /**
+         * Creates a new MeteredReader which measures all data read from the
+         * given reader.
+         *
+         * @param wrapped
+         *     The reader of the underlying tunnel.
+         */
+        public MeteredReader(GuacamoleReader wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public boolean available() throws GuacamoleException {
+            return wrapped.available();
+        }
+
+        @Override
+        public boolean available(int timeout) throws GuacamoleException {
+            if (wrapped instanceof TimedGuacamoleReader)
+                return ((TimedGuacamoleReader) wrapped).available(timeout);
+            return wrapped.available();
+        }
+
+        @Override
+        public CharBuffer readBuffer() throws GuacamoleException {
+
+            // Readers which cannot read in place are metered by read()
+            if (!(wrapped instanceof BufferedGuacamoleReader)) {
+                char[] data = read();
+                if (data == null)
+                    return null;
+                return CharBuffer.wrap(data);
+            }
+
+            long start = System.nanoTime();
+            CharBuffer instruction = ((BufferedGuacamoleReader) wrapped).readBuffer();
+            readTimes.record(System.nanoTime() - start);
+
+            if (instruction == null)
+                return null;
+
+            // Count single instruction in place
+            int offset = instruction.arrayOffset() + instruction.position();
+            charactersRead.addAndGet(instruction.remaining());
+            countInstruction(instruction.array(), offset, offset + instruction.remaining());
+
+            return instruction;
+
+        }
+
+        @Override
+        public char[] read() throws GuacamoleException {
+
+            long start = System.nanoTime();
+            char[] data = wrapped.read();
+            readTimes.record(System.nanoTime() - start);
+
+            if (data == null)
+                return null;
+
+            charactersRead.addAndGet(data.length);
+            countInstructions(data, 0, data.length);
+
+            return data;
+
+        }
+
+        @Override
+        public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+            long start = System.nanoTime();
+            GuacamoleInstruction instruction = wrapped.readInstruction();
+            readTimes.record(System.nanoTime() - start);
+
+            if (instruction == null)
+                return null;
+
+            charactersRead.addAndGet(instruction.getLength());
+            countInstruction(instruction.getKnownOpcode());
+
+            return instruction;
+
+        }
+
+    }
+
+    /**
+     * GuacamoleWriter which delegates to the writer of the underlying tunnel,
+     * measuring all data written.
+     */
+    private class MeteredWriter implements GuacamoleWriter {
+
+        /**
+         * The writer of the underlying tunnel.
+         */
+        private final GuacamoleWriter wrapped;
+
+        /**
+         * Creates a new MeteredWriter which measures all data written to the
+         * given writer.
+         *
+         * @param wrapped
+         *     The writer of the underlying tunnel.
+         */
+        public MeteredWriter(GuacamoleWriter wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public void write(char[] chunk, int off, int len) throws GuacamoleException {
+            wrapped.write(chunk, off, len);
+            charactersWritten.addAndGet(len);
+        }
+
+        @Override
+        public void write(char[] chunk) throws GuacamoleException {
+            wrapped.write(chunk);
+            charactersWritten.addAndGet(chunk.length);
+        }
+
+        @Override
+        public void writeInstruction(GuacamoleInstruction instruction)
+                throws GuacamoleException {
+            wrapped.writeInstruction(instruction);
+            charactersWritten.addAndGet(instruction.getLength());
+        }
+
+    }
+
+    @Override
+    public GuacamoleReader acquireReader() {
+
+        long start = System.nanoTime();
+        GuacamoleReader wrapped = super.acquireReader();
+        readerAcquired = System.nanoTime();
+        readerWaitTimes.record(readerAcquired - start);
+
+        // Reuse existing wrapper unless the underlying reader has changed
+        if (reader == null || reader.wrapped != wrapped)
+            reader = new MeteredReader(wrapped);
+
+        return reader;
+
+    }
+
+    @Override
+    public void releaseReader() {
+        readerHoldTimes.record(System.nanoTime() - readerAcquired);
+        super.releaseReader();
+    }
+
+    @Override
+    public GuacamoleWriter acquireWriter() {
+
+        long start = System.nanoTime();
+        GuacamoleWriter wrapped = super.acquireWriter();
+        writerAcquired = System.nanoTime();
+        writerWaitTimes.record(writerAcquired - start);
+
+        // Reuse existing wrapper unless the underlying writer has changed
+        if (writer == null || writer.wrapped != wrapped)
+            writer = new MeteredWriter(wrapped);
+
+        return writer;
+
+    }
+
+    @Override
+    public void releaseWriter() {
+        writerHoldTimes.record(System.nanoTime() - writerAcquired);
+        super.releaseWriter();
+    }
+
+    @Override
+    public long getCharactersRead() {
+        return charactersRead.get();
+    }
+
+    @Override
+    public long getCharactersWritten() {
+        return charactersWritten.get();
+    }
+
+    @Override
+    public long getInstructionsRead() {
+
+        long total = 0;
+        for (int i = 0; i <= UNKNOWN_OPCODE; i++)
+            total += instructionCounts.get(i);
+
+        return total;
+
+    }
+
+    @Override
+    public Map<String, Long> getInstructionCounts() {
+
+        Map<String, Long> counts = new HashMap<String, Long>();
+
+        // Include only opcodes actually read
+        for (int i = 0; i < UNKNOWN_OPCODE; i++) {
+            long count = instructionCounts.get(i);
+            if (count != 0)
+                counts.put(OPCODES[i].getValue(), count);
+        }
+
+        long unknown = instructionCounts.get(UNKNOWN_OPCODE);
+        if (unknown != 0)
+            counts.put("", unknown);
+
+        return counts;
+
+    }
+
+    @Override
+    public TimingHistogram getReadTimes() {
+        return new TimingHistogram(readTimes);
+    }
+
+    @Override
+    public TimingHistogram getReaderWaitTimes() {
+        return new TimingHistogram(readerWaitTimes);
+    }
+
+    @Override
+    public TimingHistogram getReaderHoldTimes() {
+        return new TimingHistogram(readerHoldTimes);
+    }
+
+    @Override
+    public TimingHistogram getWriterWaitTimes() {
+        return new TimingHistogram(writerWaitTimes);
+    }
+
+    @Override
+    public TimingHistogram getWriterHoldTimes() {
+        return new TimingHistogram(writerHoldTimes);
+    }
+
+    @Override
+    public TimingHistogram getFrameIntervals() {
+        return new TimingHistogram(frameIntervals);
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+
+/**
+ * TunnelReaderExecutor which runs read loops on a bounded pool of reusable
+ * platform threads. New threads are created whenever no idle thread is
+ * available and the pool is below its maximum size, such that a read loop
+ * never waits for a thread while the pool can still grow. Once the pool is
+ * full, further read loops are refused with a GuacamoleServerBusyException.
+ * As read loops run for the lifetime of their tunnels, a read loop waiting
+ * for a thread would receive no data until some other tunnel closed, thus
+ * read loops are queued only if a queue is explicitly requested. Idle
+ * threads exit after a fixed keep-alive period.
+ */
+public class PooledTunnelReaderExecutor implements TunnelReaderExecutor {
+
+    /**
+     * The default maximum number of threads in the pool, and thus the
+     * default maximum number of tunnels which may be read concurrently. Each
+     * thread reserves its own stack (typically 1 MB), thus this default
+     * bounds the address space reserved by reader threads to roughly 512 MB.
+     * Deployments serving more concurrent connections should raise this
+     * limit explicitly.
+     */
+    public static final int DEFAULT_MAX_THREADS = 512;
+
+    /**
+     * The default maximum number of read loops which may wait for a thread.
+     * Read loops are not queued by default, as a queued read loop would not
+     * run until another tunnel closes.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 0;
+
+    /**
+     * The number of seconds an idle thread waits for a new read loop before
+     * exiting.
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    /**
+     * The prefix of the name of each thread in the pool.
+     */
+    private static final String THREAD_NAME_PREFIX = "guacamole-tunnel-reader-";
+
+    /**
+     * Queue which accepts new read loops only if an idle thread will take
+     * them immediately, or if the pool cannot grow further. Otherwise, the
+     * pool is forced to create a new thread rather than leave the read loop
+     * waiting behind long-running tunnels.
+     */
+    private static class ReadLoopQueue extends LinkedBlockingQueue<Runnable> {
+
+        /**
+         * Serial version UID, required by Serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The pool consuming this queue.
+         */
+        private ThreadPoolExecutor pool;
+
+        /**
+         * The number of read loops which have been submitted to the pool but
+         * have not yet finished, including read loops not yet started.
+         */
+        private final AtomicInteger submitted;
+
+        /**
+         * Creates a new ReadLoopQueue which holds up to the given number of
+         * read loops.
+         *
+         * @param capacity
+         *     The maximum number of read loops which may be queued.
+         *
+         * @param submitted
+         *     The number of read loops which have been submitted to the pool
+         *     but have not yet finished.
+         */
+        public ReadLoopQueue(int capacity, AtomicInteger submitted) {
+            super(capacity);
+            this.submitted = submitted;
+        }
+
+        /**
+         * Queues the given read loop regardless of whether the pool could
+         * create a new thread instead.
+         *
+         * @param readLoop
+         *     The read loop to queue.
+         *
+         * @return
+         *     true if the read loop was queued, false if the queue is full.
+         */
+        public boolean force(Runnable readLoop) {
+            return super.offer(readLoop);
+        }
+
+        @Override
+        public boolean offer(Runnable readLoop) {
+
+            // Hand the read loop to an idle thread if enough threads exist
+            // for every unfinished read loop, including this one
+            int poolSize = pool.getPoolSize();
+            if (submitted.get() <= poolSize)
+                return super.offer(readLoop);
+
+            // Otherwise, grow the pool unless already at its maximum size
+            if (poolSize < pool.getMaximumPoolSize())
+                return false;
+
+            return super.offer(readLoop);
+
+        }
+
+    }
+
+    /**
+     * The queue of read loops waiting for a thread, or null if read loops
+     * are never queued.
+     */
+    private final ReadLoopQueue queue;
+
+    /**
+     * The number of read loops which have been submitted to the pool but
+     * have not yet finished, including read loops not yet started.
+     */
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    /**
+     * The pool of threads running read loops.
+     */
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Creates a new PooledTunnelReaderExecutor using the default maximum
+     * number of threads and queued read loops.
+     */
+    public PooledTunnelReaderExecutor() {
+        this(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Creates a new PooledTunnelReaderExecutor with the given limits.
+     *
+     * @param maxThreads
+     *     The maximum number of threads in the pool, and thus the maximum
+     *     number of read loops which may run concurrently.
+     *
+     * @param maxQueued
+     *     The maximum number of read loops which may wait for a thread once
+     *     all threads are busy. If zero, read loops are refused as soon as
+     *     all threads are busy.
+     *
+     * @throws IllegalArgumentException
+     *     If the thread limit is less than one, or the queue limit is
+     *     negative.
+     */
+    public PooledTunnelReaderExecutor(int maxThreads, int maxQueued) {
+
+        if (maxThreads < 1 || maxQueued < 0)
+            throw new IllegalArgumentException("The thread limit must be "
+                    + "positive, and the queue limit must not be negative.");
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        // Without a queue, read loops are only ever handed directly to idle
+        // threads
+        BlockingQueue<Runnable> poolQueue;
+        if (maxQueued > 0) {
+            queue = new ReadLoopQueue(maxQueued, submitted);
+            poolQueue = queue;
+        }
+        else {
+            queue = null;
+            poolQueue = new SynchronousQueue<Runnable>();
+        }
+
+        pool = new ThreadPoolExecutor(0, maxThreads, KEEP_ALIVE,
+                TimeUnit.SECONDS, poolQueue,
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task,
+                                THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+
+                },
+                new RejectedExecutionHandler() {
+
+                    @Override
+                    public void rejectedExecution(Runnable readLoop,
+                            ThreadPoolExecutor executor) {
+
+                        // The pool may have filled after the queue refused
+                        // the read loop - queue it anyway if possible
+                        if (executor.isShutdown() || queue == null
+                                || !queue.force(readLoop))
+                            throw new RejectedExecutionException();
+
+                    }
+
+                });
+
+        if (queue != null)
+            queue.pool = pool;
+
+    }
+
+    @Override
+    public void execute(final Runnable readLoop) throws GuacamoleException {
+
+        // Count the read loop as unfinished until it has run
+        submitted.incrementAndGet();
+        try {
+            pool.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        readLoop.run();
+                    }
+                    finally {
+                        submitted.decrementAndGet();
+                    }
+                }
+
+            });
+        }
+        catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            throw new GuacamoleServerBusyException("Too many tunnels are "
+                    + "already being read.", e);
+        }
+
+    }
+
+    @Override
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return pool.getCompletedTaskCount();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+
+/**
+ * An SSLContext shared by SSL/TLS connections to guacd, along with the
+ * protocols and cipher suites those connections may use. Sessions negotiated
+ * with guacd are cached by the underlying SSLContext, allowing later
+ * connections to the same guacd to resume a session rather than perform a
+ * full handshake. The number of full and resumed handshakes is tracked.
+ */
+public class SSLGuacamoleContext {
+
+    /**
+     * The default maximum number of cached SSL/TLS sessions.
+     */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1024;
+
+    /**
+     * The default number of seconds that a cached SSL/TLS session may be
+     * resumed.
+     */
+    public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+    /**
+     * Lazily-initialized holder of the default SSLGuacamoleContext.
+     */
+    private static class DefaultHolder {
+
+        /**
+         * The default SSLGuacamoleContext, or null if the JVM's default
+         * SSLContext is unavailable.
+         */
+        private static final SSLGuacamoleContext INSTANCE = createDefault();
+
+        /**
+         * Creates a new SSLGuacamoleContext which wraps the JVM's default
+         * SSLContext, using its default protocols and cipher suites.
+         *
+         * @return
+         *     A new SSLGuacamoleContext wrapping the JVM's default SSLContext,
+         *     or null if that SSLContext is unavailable.
+         */
+        private static SSLGuacamoleContext createDefault() {
+            try {
+                return new SSLGuacamoleContext(SSLContext.getDefault(), null, null);
+            }
+            catch (GeneralSecurityException e) {
+                return null;
+            }
+            catch (GuacamoleException e) {
+                return null;
+            }
+        }
+
+    }
+
+    /**
+     * The wrapped SSLContext.
+     */
+    private final SSLContext context;
+
+    /**
+     * The protocols to enable on each socket, or null to use the defaults of
+     * the SSLContext.
+     */
+    private final String[] protocols;
+
+    /**
+     * The cipher suites to enable on each socket, or null to use the defaults
+     * of the SSLContext.
+     */
+    private final String[] cipherSuites;
+
+    /**
+     * The number of handshakes which negotiated a new session.
+     */
+    private final AtomicLong fullHandshakes = new AtomicLong();
+
+    /**
+     * The number of handshakes which resumed a cached session.
+     */
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Creates a new SSLGuacamoleContext which wraps the given SSLContext,
+     * restricting connections to the given protocols and cipher suites.
+     *
+     * @param context
+     *     The SSLContext to wrap. This SSLContext must already be
+     *     initialized.
+     *
+     * @param protocols
+     *     The protocols which may be used, such as "TLSv1.2", or null to use
+     *     the defaults of the given SSLContext.
+     *
+     * @param cipherSuites
+     *     The cipher suites which may be used, or null to use the defaults of
+     *     the given SSLContext.
+     *
+     * @throws GuacamoleException
+     *     If any of the given protocols or cipher suites are not supported by
+     *     the given SSLContext.
+     */
+    public SSLGuacamoleContext(SSLContext context, String[] protocols,
+            String[] cipherSuites) throws GuacamoleException {
+
+        SSLParameters supported = context.getSupportedSSLParameters();
+        requireSupported("protocol", protocols, supported.getProtocols());
+        requireSupported("cipher suite", cipherSuites, supported.getCipherSuites());
+
+        this.context = context;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+
+    }
+
+    /**
+     * Verifies that each requested value is among the given supported
+     * values.
+     *
+     * @param type
+     *     A human-readable name for the type of value being checked.
+     *
+     * @param requested
+     *     The requested values, or null if no values were requested.
+     *
+     * @param supported
+     *     All supported values.
+     *
+     * @throws GuacamoleException
+     *     If any requested value is not supported.
+     */
+    private static void requireSupported(String type, String[] requested,
+            String[] supported) throws GuacamoleException {
+
+        if (requested == null)
+            return;
+
+        List<String> supportedList = Arrays.asList(supported);
+        for (String value : requested) {
+            if (!supportedList.contains(value))
+                throw new GuacamoleServerException("Unsupported SSL/TLS "
+                        + type + ": \"" + value + "\"");
+        }
+
+    }
+
+    /**
+     * Creates a new SSLGuacamoleContext having its own SSLContext, which
+     * caches up to the given number of sessions for the given number of
+     * seconds. The new SSLContext uses the JVM's default trust store and
+     * provides no client certificate.
+     *
+     * @param sessionCacheSize
+     *     The maximum number of sessions to cache, or zero for no limit.
+     *
+     * @param sessionTimeout
+     *     The number of seconds that a cached session may be resumed, or
+     *     zero for no limit.
+     *
+     * @param protocols
+     *     The protocols which may be used, such as "TLSv1.2", or null to use
+     *     the defaults of the JVM.
+     *
+     * @param cipherSuites
+     *     The cipher suites which may be used, or null to use the defaults of
+     *     the JVM.
+     *
+     * @return
+     *     A new SSLGuacamoleContext.
+     *
+     * @throws GuacamoleException
+     *     If the SSLContext cannot be created, or any of the given protocols
+     *     or cipher suites are not supported.
+     */
+    public static SSLGuacamoleContext newInstance(int sessionCacheSize,
+            int sessionTimeout, String[] protocols, String[] cipherSuites)
+            throws GuacamoleException {
+
+        SSLContext context;
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+        }
+        catch (GeneralSecurityException e) {
+            throw new GuacamoleServerException("Unable to create SSL/TLS context.", e);
+        }
+
+        // Configure session cache
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeout);
+
+        return new SSLGuacamoleContext(context, protocols, cipherSuites);
+
+    }
+
+    /**
+     * Returns the default SSLGuacamoleContext, which wraps the JVM's default
+     * SSLContext and is shared by all SSLGuacamoleSockets not given an
+     * SSLGuacamoleContext explicitly.
+     *
+     * @return
+     *     The default SSLGuacamoleContext.
+     *
+     * @throws GuacamoleException
+     *     If the JVM's default SSLContext is unavailable.
+     */
+    public static SSLGuacamoleContext getDefault() throws GuacamoleException {
+
+        SSLGuacamoleContext context = DefaultHolder.INSTANCE;
+        if (context == null)
+            throw new GuacamoleServerException("The default SSL/TLS context is unavailable.");
+
+        return context;
+
+    }
+
+    /**
+     * Returns the SSLContext wrapped by this SSLGuacamoleContext.
+     *
+     * @return
+     *     The wrapped SSLContext.
+     */
+    public SSLContext getSSLContext() {
+        return context;
+    }
+
+    /**
+     * Creates a new, unconnected SSLSocket restricted to the protocols and
+     * cipher suites of this SSLGuacamoleContext.
+     *
+     * @return
+     *     A new, unconnected SSLSocket.
+     *
+     * @throws IOException
+     *     If the socket cannot be created.
+     */
+    public SSLSocket createSocket() throws IOException {
+
+        SSLSocket sock = (SSLSocket) context.getSocketFactory().createSocket();
+
+        if (protocols != null)
+            sock.setEnabledProtocols(protocols);
+
+        if (cipherSuites != null)
+            sock.setEnabledCipherSuites(cipherSuites);
+
+        return sock;
+
+    }
+
+    /**
+     * Performs the SSL/TLS handshake on the given connected socket, which
+     * must have been created by this SSLGuacamoleContext, recording whether
+     * a cached session was resumed.
+     *
+     * @param sock
+     *     The connected socket to perform the handshake on.
+     *
+     * @throws IOException
+     *     If the handshake fails.
+     */
+    public void startHandshake(SSLSocket sock) throws IOException {
+
+        long started = System.currentTimeMillis();
+        sock.startHandshake();
+
+        // Sessions created before the handshake began must have been resumed
+        if (sock.getSession().getCreationTime() < started)
+            resumedHandshakes.incrementAndGet();
+        else
+            fullHandshakes.incrementAndGet();
+
+    }
+
+    /**
+     * Returns the number of handshakes performed through this
+     * SSLGuacamoleContext which negotiated a new session.
+     *
+     * @return
+     *     The number of full handshakes.
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes performed through this
+     * SSLGuacamoleContext which resumed a cached session.
+     *
+     * @return
+     *     The number of resumed handshakes.
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+}
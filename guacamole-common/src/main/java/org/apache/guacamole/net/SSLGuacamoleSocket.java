@@ -27,13 +27,12 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.SSLSocket;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.FlushPolicy;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
 import org.apache.guacamole.io.WriterGuacamoleWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,12 +58,6 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
      */
     private GuacamoleWriter writer;
 
-    /**
-     * The number of milliseconds to wait for data on the TCP socket before
-     * timing out.
-     */
-    private static final int SOCKET_TIMEOUT = 15000;
-
     /**
      * The TCP socket that the GuacamoleReader and GuacamoleWriter exposed
      * by this class should affect.
@@ -82,10 +75,74 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
      *                            Guacamole proxy server.
      */
     public SSLGuacamoleSocket(String hostname, int port) throws GuacamoleException {
+        this(hostname, port, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port using SSL. Data written to the
+     * Guacamole proxy server is sent as dictated by the given FlushPolicy.
+     *
+     * @param hostname The hostname of the Guacamole proxy server to connect to.
+     * @param port The port of the Guacamole proxy server to connect to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @throws GuacamoleException If an error occurs while connecting to the
+     *                            Guacamole proxy server.
+     */
+    public SSLGuacamoleSocket(String hostname, int port,
+            FlushPolicy flushPolicy) throws GuacamoleException {
+        this(hostname, port, flushPolicy, SSLGuacamoleContext.getDefault());
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port using SSL. The SSL/TLS
+     * connection is established using the given SSLGuacamoleContext, allowing
+     * a session cached by that context to be resumed. Data written to the
+     * Guacamole proxy server is sent as dictated by the given FlushPolicy.
+     *
+     * @param hostname The hostname of the Guacamole proxy server to connect to.
+     * @param port The port of the Guacamole proxy server to connect to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @param context The SSLGuacamoleContext to use to establish the SSL/TLS
+     *                connection.
+     * @throws GuacamoleException If an error occurs while connecting to the
+     *                            Guacamole proxy server.
+     */
+    public SSLGuacamoleSocket(String hostname, int port,
+            FlushPolicy flushPolicy, SSLGuacamoleContext context)
+            throws GuacamoleException {
+        this(hostname, port, flushPolicy, context, new GuacamoleSocketOptions());
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port using SSL, applying the given
+     * socket options. The SSL/TLS connection is established using the given
+     * SSLGuacamoleContext, allowing a session cached by that context to be
+     * resumed. Data written to the Guacamole proxy server is sent as dictated
+     * by the given FlushPolicy.
+     *
+     * @param hostname The hostname of the Guacamole proxy server to connect to.
+     * @param port The port of the Guacamole proxy server to connect to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @param context The SSLGuacamoleContext to use to establish the SSL/TLS
+     *                connection.
+     * @param options The options to apply to the underlying TCP socket and
+     *                instruction buffer.
+     * @throws GuacamoleException If an error occurs while connecting to the
+     *                            Guacamole proxy server.
+     */
+    public SSLGuacamoleSocket(String hostname, int port,
+            FlushPolicy flushPolicy, SSLGuacamoleContext context,
+            GuacamoleSocketOptions options) throws GuacamoleException {
 
-        // Get factory for SSL sockets
-        SocketFactory socket_factory = SSLSocketFactory.getDefault();
-        
         try {
 
             logger.debug("Connecting to guacd at {}:{} via SSL/TLS.",
@@ -97,17 +154,81 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
                 port
             );
 
-            // Connect with timeout
-            sock = socket_factory.createSocket();
-            sock.connect(address, SOCKET_TIMEOUT);
+            // Connect with timeout, applying options (including read
+            // timeout) beforehand
+            SSLSocket sslSock = context.createSocket();
+            sock = sslSock;
+            options.configure(sock);
+            sock.connect(address, options.getTimeout());
 
-            // Set read timeout
-            sock.setSoTimeout(SOCKET_TIMEOUT);
+            // Complete handshake, resuming a cached session if possible
+            context.startHandshake(sslSock);
 
             // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
-            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
+            reader = options.createReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"), sock);
+            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), flushPolicy);
+
+        }
+        catch (IOException e) {
+
+            // Do not leak partially-established connections
+            if (sock != null) {
+                try {
+                    sock.close();
+                }
+                catch (IOException closeError) {
+                    logger.debug("Unable to close failed socket.", closeError);
+                }
+            }
+
+            throw new GuacamoleServerException(e);
+
+        }
+
+    }
+
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions to the
+     * Guacamole instruction stream of the Guacamole proxy server at the other
+     * end of the given SSL/TLS socket, which must already be connected. The
+     * socket's read timeout is left untouched. Data written to the Guacamole
+     * proxy server is sent as dictated by the given FlushPolicy.
+     *
+     * @param sock The connected socket to read from and write to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @throws GuacamoleException If the I/O streams of the given socket
+     *                            cannot be retrieved.
+     */
+    public SSLGuacamoleSocket(Socket sock, FlushPolicy flushPolicy)
+            throws GuacamoleException {
+        this(sock, flushPolicy, new GuacamoleSocketOptions());
+    }
 
+    /**
+     * Creates a new SSLGuacamoleSocket which reads and writes instructions to the
+     * Guacamole instruction stream of the Guacamole proxy server at the other
+     * end of the given SSL/TLS socket, which must already be connected and
+     * configured. Only the instruction buffer sizes of the given options are
+     * used. Data written to the Guacamole proxy server is sent as dictated by
+     * the given FlushPolicy.
+     *
+     * @param sock The connected socket to read from and write to.
+     * @param flushPolicy The policy dictating when data written to the
+     *                    Guacamole proxy server must be sent.
+     * @param options The options dictating the size of the instruction
+     *                buffer.
+     * @throws GuacamoleException If the I/O streams of the given socket
+     *                            cannot be retrieved.
+     */
+    public SSLGuacamoleSocket(Socket sock, FlushPolicy flushPolicy,
+            GuacamoleSocketOptions options) throws GuacamoleException {
+
+        this.sock = sock;
+
+        try {
+            reader = options.createReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"), sock);
+            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), flushPolicy);
         }
         catch (IOException e) {
             throw new GuacamoleServerException(e);
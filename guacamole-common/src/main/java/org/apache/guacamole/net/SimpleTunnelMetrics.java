@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TunnelMetrics implementation which aggregates the measurements of any
+ * number of tunnels. Each call to add() adds a snapshot of the measurements
+ * of another tunnel, or of another aggregate.
+ */
+public class SimpleTunnelMetrics implements TunnelMetrics {
+
+    /**
+     * The number of characters of instruction data read.
+     */
+    private long charactersRead;
+
+    /**
+     * The number of characters of instruction data written.
+     */
+    private long charactersWritten;
+
+    /**
+     * The number of instructions read, grouped by opcode.
+     */
+    private final Map<String, Long> instructionCounts = new HashMap<String, Long>();
+
+    /**
+     * The duration of each read.
+     */
+    private final TimingHistogram readTimes = new TimingHistogram();
+
+    /**
+     * The time spent awaiting read access.
+     */
+    private final TimingHistogram readerWaitTimes = new TimingHistogram();
+
+    /**
+     * The time for which read access was held.
+     */
+    private final TimingHistogram readerHoldTimes = new TimingHistogram();
+
+    /**
+     * The time spent awaiting write access.
+     */
+    private final TimingHistogram writerWaitTimes = new TimingHistogram();
+
+    /**
+     * The time for which write access was held.
+     */
+    private final TimingHistogram writerHoldTimes = new TimingHistogram();
+
+    /**
+     * The time between successive "sync" instructions.
+     */
+    private final TimingHistogram frameIntervals = new TimingHistogram();
+
+    /**
+     * Adds the current measurements of the given metrics to this aggregate.
+     *
+     * @param metrics
+     *     The metrics to add.
+     */
+    public synchronized void add(TunnelMetrics metrics) {
+
+        charactersRead += metrics.getCharactersRead();
+        charactersWritten += metrics.getCharactersWritten();
+
+        // Merge instruction counts by opcode
+        for (Map.Entry<String, Long> entry : metrics.getInstructionCounts().entrySet()) {
+            Long count = instructionCounts.get(entry.getKey());
+            if (count == null)
+                instructionCounts.put(entry.getKey(), entry.getValue());
+            else
+                instructionCounts.put(entry.getKey(), count + entry.getValue());
+        }
+
+        readTimes.add(metrics.getReadTimes());
+        readerWaitTimes.add(metrics.getReaderWaitTimes());
+        readerHoldTimes.add(metrics.getReaderHoldTimes());
+        writerWaitTimes.add(metrics.getWriterWaitTimes());
+        writerHoldTimes.add(metrics.getWriterHoldTimes());
+        frameIntervals.add(metrics.getFrameIntervals());
+
+    }
+
+    @Override
+    public synchronized long getCharactersRead() {
+        return charactersRead;
+    }
+
+    @Override
+    public synchronized long getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    @Override
+    public synchronized long getInstructionsRead() {
+
+        long total = 0;
+        for (Long count : instructionCounts.values())
+            total += count;
+
+        return total;
+
+    }
+
+    @Override
+    public synchronized Map<String, Long> getInstructionCounts() {
+        return new HashMap<String, Long>(instructionCounts);
+    }
+
+    @Override
+    public synchronized TimingHistogram getReadTimes() {
+        return new TimingHistogram(readTimes);
+    }
+
+    @Override
+    public synchronized TimingHistogram getReaderWaitTimes() {
+        return new TimingHistogram(readerWaitTimes);
+    }
+
+    @Override
+    public synchronized TimingHistogram getReaderHoldTimes() {
+        return new TimingHistogram(readerHoldTimes);
+    }
+
+    @Override
+    public synchronized TimingHistogram getWriterWaitTimes() {
+        return new TimingHistogram(writerWaitTimes);
+    }
+
+    @Override
+    public synchronized TimingHistogram getWriterHoldTimes() {
+        return new TimingHistogram(writerHoldTimes);
+    }
+
+    @Override
+    public synchronized TimingHistogram getFrameIntervals() {
+        return new TimingHistogram(frameIntervals);
+    }
+
+}
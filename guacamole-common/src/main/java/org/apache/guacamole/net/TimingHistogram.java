@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations. Durations are counted within buckets
+ * whose bounds are successive powers of two microseconds, such that recording
+ * a duration is constant-time and requires no allocation, while percentiles
+ * remain accurate to within a factor of two.
+ */
+public class TimingHistogram {
+
+    /**
+     * The number of buckets within each histogram. The final bucket counts
+     * all durations of 2^(BUCKET_COUNT - 2) microseconds or longer.
+     */
+    public static final int BUCKET_COUNT = 40;
+
+    /**
+     * The number of durations recorded within each bucket. Bucket zero
+     * counts durations shorter than one microsecond, while each bucket N
+     * thereafter counts durations of at least 2^(N - 1) microseconds and less
+     * than 2^N microseconds.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The total number of durations recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all durations recorded, in nanoseconds.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The longest duration recorded, in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a new, empty TimingHistogram.
+     */
+    public TimingHistogram() {
+    }
+
+    /**
+     * Creates a new TimingHistogram which is a copy of the given histogram.
+     *
+     * @param histogram
+     *     The histogram to copy.
+     */
+    public TimingHistogram(TimingHistogram histogram) {
+        add(histogram);
+    }
+
+    /**
+     * Returns the index of the bucket which counts the given duration.
+     *
+     * @param nanos
+     *     The duration, in nanoseconds.
+     *
+     * @return
+     *     The index of the bucket counting the given duration.
+     */
+    private static int getBucket(long nanos) {
+
+        long micros = nanos / 1000;
+        if (micros <= 0)
+            return 0;
+
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+    }
+
+    /**
+     * Returns the exclusive upper bound of the durations counted by the
+     * bucket having the given index.
+     *
+     * @param index
+     *     The index of the bucket.
+     *
+     * @return
+     *     The exclusive upper bound of the bucket, in nanoseconds, or
+     *     Long.MAX_VALUE for the final bucket.
+     */
+    public static long getBucketLimit(int index) {
+
+        if (index >= BUCKET_COUNT - 1)
+            return Long.MAX_VALUE;
+
+        return (1L << index) * 1000;
+
+    }
+
+    /**
+     * Records the given duration.
+     *
+     * @param nanos
+     *     The duration to record, in nanoseconds. Negative durations are
+     *     recorded as zero.
+     */
+    public void record(long nanos) {
+
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(getBucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+
+        // Update maximum, retrying if updated concurrently
+        long currentMax;
+        while (nanos > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, nanos))
+                break;
+        }
+
+    }
+
+    /**
+     * Adds all durations recorded by the given histogram to this histogram.
+     *
+     * @param histogram
+     *     The histogram whose durations should be added.
+     */
+    public void add(TimingHistogram histogram) {
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            buckets.addAndGet(i, histogram.buckets.get(i));
+
+        count.addAndGet(histogram.getCount());
+        total.addAndGet(histogram.getTotal());
+
+        long otherMax = histogram.getMax();
+        long currentMax;
+        while (otherMax > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, otherMax))
+                break;
+        }
+
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return
+     *     The number of durations recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of all durations recorded.
+     *
+     * @return
+     *     The sum of all durations recorded, in nanoseconds.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return
+     *     The longest duration recorded, in nanoseconds, or zero if no
+     *     durations have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all durations recorded.
+     *
+     * @return
+     *     The mean of all durations recorded, in nanoseconds, or zero if no
+     *     durations have been recorded.
+     */
+    public long getMean() {
+
+        long recorded = getCount();
+        if (recorded == 0)
+            return 0;
+
+        return getTotal() / recorded;
+
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of all durations
+     * recorded. The value returned is the upper bound of the bucket
+     * containing the percentile, limited to the longest duration recorded.
+     *
+     * @param percentile
+     *     The percentile to return, between 0 and 100 inclusive.
+     *
+     * @return
+     *     An upper bound of the given percentile, in nanoseconds, or zero if
+     *     no durations have been recorded.
+     */
+    public long getPercentile(double percentile) {
+
+        long recorded = getCount();
+        if (recorded == 0)
+            return 0;
+
+        // Find the bucket containing the requested rank
+        long rank = (long) Math.ceil(recorded * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(getBucketLimit(i), getMax());
+        }
+
+        return getMax();
+
+    }
+
+    /**
+     * Returns the number of durations recorded within each bucket. See
+     * getBucketLimit() for the range of durations counted by each bucket.
+     *
+     * @return
+     *     A new array containing the number of durations recorded within each
+     *     bucket, indexed by bucket.
+     */
+    public long[] getBuckets() {
+
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts[i] = buckets.get(i);
+
+        return counts;
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.Map;
+
+/**
+ * Traffic and timing measurements of one or more tunnels. Instruction data is
+ * measured in characters, as it is read from and written to the tunnel, rather
+ * than in encoded bytes. All histograms returned are snapshots which are not
+ * affected by further traffic.
+ */
+public interface TunnelMetrics {
+
+    /**
+     * Returns the number of characters of instruction data read from the
+     * tunnel, as received from guacd.
+     *
+     * @return
+     *     The number of characters of instruction data read.
+     */
+    long getCharactersRead();
+
+    /**
+     * Returns the number of characters of instruction data written to the
+     * tunnel, to be sent to guacd.
+     *
+     * @return
+     *     The number of characters of instruction data written.
+     */
+    long getCharactersWritten();
+
+    /**
+     * Returns the number of instructions read from the tunnel.
+     *
+     * @return
+     *     The number of instructions read.
+     */
+    long getInstructionsRead();
+
+    /**
+     * Returns the number of instructions read from the tunnel, grouped by
+     * opcode. Instructions whose opcodes are not defined by the Guacamole
+     * protocol are counted together under the empty string.
+     *
+     * @return
+     *     A new map of opcode to the number of instructions read having that
+     *     opcode. Opcodes not read at all are omitted.
+     */
+    Map<String, Long> getInstructionCounts();
+
+    /**
+     * Returns the time spent within each read from the tunnel, including any
+     * time spent blocked awaiting data from guacd.
+     *
+     * @return
+     *     A histogram of the duration of each read.
+     */
+    TimingHistogram getReadTimes();
+
+    /**
+     * Returns the time spent awaiting read access to the tunnel.
+     *
+     * @return
+     *     A histogram of the time spent within each call to acquireReader().
+     */
+    TimingHistogram getReaderWaitTimes();
+
+    /**
+     * Returns the time for which read access to the tunnel was held.
+     *
+     * @return
+     *     A histogram of the time between each call to acquireReader() and
+     *     the corresponding call to releaseReader().
+     */
+    TimingHistogram getReaderHoldTimes();
+
+    /**
+     * Returns the time spent awaiting write access to the tunnel.
+     *
+     * @return
+     *     A histogram of the time spent within each call to acquireWriter().
+     */
+    TimingHistogram getWriterWaitTimes();
+
+    /**
+     * Returns the time for which write access to the tunnel was held.
+     *
+     * @return
+     *     A histogram of the time between each call to acquireWriter() and
+     *     the corresponding call to releaseWriter().
+     */
+    TimingHistogram getWriterHoldTimes();
+
+    /**
+     * Returns the time between each "sync" instruction read from the tunnel,
+     * which is the time taken by guacd to produce each frame.
+     *
+     * @return
+     *     A histogram of the time between successive "sync" instructions.
+     */
+    TimingHistogram getFrameIntervals();
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Runs the long-lived loops which read instructions from a GuacamoleTunnel
+ * and forward them to the client, such as the read loops of WebSocket tunnel
+ * implementations. Implementations decide how such loops are mapped onto
+ * threads, and may refuse new loops once their configured limits have been
+ * reached.
+ */
+public interface TunnelReaderExecutor {
+
+    /**
+     * Runs the given tunnel read loop asynchronously. The loop is expected to
+     * run for the lifetime of its tunnel.
+     *
+     * @param readLoop
+     *     The read loop to run.
+     *
+     * @throws GuacamoleException
+     *     If the read loop cannot be run, such as when too many tunnels are
+     *     already being read.
+     */
+    void execute(Runnable readLoop) throws GuacamoleException;
+
+    /**
+     * Returns the approximate number of read loops which are currently
+     * running.
+     *
+     * @return
+     *     The approximate number of read loops currently running.
+     */
+    int getActiveCount();
+
+    /**
+     * Returns the approximate number of read loops which have been accepted
+     * but are waiting for a thread to become available.
+     *
+     * @return
+     *     The approximate number of read loops waiting to run.
+     */
+    int getQueuedCount();
+
+    /**
+     * Returns the approximate number of read loops which have run to
+     * completion.
+     *
+     * @return
+     *     The approximate number of read loops which have completed.
+     */
+    long getCompletedCount();
+
+    /**
+     * Stops accepting new read loops. Read loops which are already running or
+     * queued are allowed to finish.
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Provides the TunnelReaderExecutor used by tunnel implementations which have
+ * not been given one explicitly.
+ */
+public class TunnelReaderExecutors {
+
+    /**
+     * Lazily-initialized holder of the default TunnelReaderExecutor.
+     */
+    private static class DefaultHolder {
+
+        /**
+         * The default TunnelReaderExecutor.
+         */
+        private static final TunnelReaderExecutor INSTANCE = create(false,
+                PooledTunnelReaderExecutor.DEFAULT_MAX_THREADS,
+                PooledTunnelReaderExecutor.DEFAULT_MAX_QUEUED);
+
+    }
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TunnelReaderExecutors() {
+    }
+
+    /**
+     * Creates a new TunnelReaderExecutor with the given limits, using virtual
+     * threads if requested and supported by the running JVM, and a pool of
+     * platform threads otherwise.
+     *
+     * @param useVirtualThreads
+     *     Whether virtual threads should be used if available.
+     *
+     * @param maxThreads
+     *     The maximum number of read loops which may run concurrently.
+     *
+     * @param maxQueued
+     *     The maximum number of read loops which may wait for a pooled thread,
+     *     or zero if read loops should be refused once all pooled threads are
+     *     busy. This limit does not apply to virtual threads, which never
+     *     wait.
+     *
+     * @return
+     *     A new TunnelReaderExecutor with the given limits.
+     */
+    public static TunnelReaderExecutor create(boolean useVirtualThreads,
+            int maxThreads, int maxQueued) {
+
+        if (useVirtualThreads && VirtualThreadTunnelReaderExecutor.isSupported()) {
+            try {
+                return new VirtualThreadTunnelReaderExecutor(maxThreads);
+            }
+
+            // Fall back to platform threads if virtual threads vanish
+            catch (GuacamoleException e) {
+                // Continue below
+            }
+        }
+
+        return new PooledTunnelReaderExecutor(maxThreads, maxQueued);
+
+    }
+
+    /**
+     * Returns the TunnelReaderExecutor shared by all tunnels which have not
+     * been given an executor explicitly. The default executor uses a pool of
+     * platform threads with the default limits. Virtual threads are not used
+     * by default, as a read loop blocked on a socket read while holding a
+     * monitor pins its carrier thread on many JVMs.
+     *
+     * @return
+     *     The shared default TunnelReaderExecutor.
+     */
+    public static TunnelReaderExecutor getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import org.apache.guacamole.GuacamoleServerException;
+
+/**
+ * TunnelReaderExecutor which runs each read loop on its own virtual thread.
+ * Virtual threads are only available on Java 21 and later, and are therefore
+ * located reflectively; isSupported() should be checked before constructing
+ * an instance. Read loops are never queued, but may be refused once a
+ * configured maximum number are running.
+ */
+public class VirtualThreadTunnelReaderExecutor implements TunnelReaderExecutor {
+
+    /**
+     * The prefix of the name of each virtual thread.
+     */
+    private static final String THREAD_NAME_PREFIX = "guacamole-tunnel-reader-virtual-";
+
+    /**
+     * The factory which creates virtual threads, or null if virtual threads
+     * are not supported by the running JVM.
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = getVirtualThreadFactory();
+
+    /**
+     * The maximum number of read loops which may run concurrently.
+     */
+    private final int maxThreads;
+
+    /**
+     * The number of read loops currently running.
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    /**
+     * The number of read loops which have run to completion.
+     */
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Whether this executor has been shut down.
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a new ThreadFactory which produces virtual threads, using the
+     * Thread.ofVirtual() API introduced in Java 21.
+     *
+     * @return
+     *     A ThreadFactory which produces virtual threads, or null if the
+     *     running JVM does not support virtual threads.
+     */
+    private static ThreadFactory getVirtualThreadFactory() {
+        try {
+
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            Method factory = builderClass.getMethod("factory");
+
+            Object builder = ofVirtual.invoke(null);
+            builder = name.invoke(builder, THREAD_NAME_PREFIX, 1L);
+            return (ThreadFactory) factory.invoke(builder);
+
+        }
+
+        // Virtual threads are unavailable prior to Java 21
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the running JVM supports virtual threads.
+     *
+     * @return
+     *     true if virtual threads are supported, false otherwise.
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates a new VirtualThreadTunnelReaderExecutor which allows at most
+     * the given number of read loops to run concurrently.
+     *
+     * @param maxThreads
+     *     The maximum number of read loops which may run concurrently.
+     *
+     * @throws GuacamoleException
+     *     If the running JVM does not support virtual threads.
+     */
+    public VirtualThreadTunnelReaderExecutor(int maxThreads)
+            throws GuacamoleException {
+
+        if (!isSupported())
+            throw new GuacamoleServerException("Virtual threads are not "
+                    + "supported by this JVM.");
+
+        this.maxThreads = maxThreads;
+
+    }
+
+    @Override
+    public void execute(final Runnable readLoop) throws GuacamoleException {
+
+        if (shutdown)
+            throw new GuacamoleServerBusyException("No further tunnels may "
+                    + "be read.");
+
+        // Reserve a slot for the read loop, refusing if none remain
+        if (activeCount.incrementAndGet() > maxThreads) {
+            activeCount.decrementAndGet();
+            throw new GuacamoleServerBusyException("Too many tunnels are "
+                    + "already being read.");
+        }
+
+        try {
+            VIRTUAL_THREAD_FACTORY.newThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        readLoop.run();
+                    }
+                    finally {
+                        activeCount.decrementAndGet();
+                        completedCount.incrementAndGet();
+                    }
+                }
+
+            }).start();
+        }
+        catch (RuntimeException e) {
+            activeCount.decrementAndGet();
+            throw new GuacamoleServerException("Unable to start virtual "
+                    + "thread.", e);
+        }
+
+    }
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return 0;
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleFilter which applies an ordered chain of filters to each
+ * instruction in a single pass. Unlike stacking several
+ * FilteredGuacamoleReaders, each of which must parse and re-serialize every
+ * instruction, instructions are parsed at most once for any consecutive run
+ * of filters which lack view support, and are serialized only if actually
+ * modified by such a filter. If an instruction is dropped by any filter in
+ * the chain, the remaining filters are not invoked.
+ */
+public class CompositeGuacamoleFilter implements GuacamoleViewFilter {
+
+    /**
+     * All filters within this chain, in the order they are applied.
+     */
+    private final List<GuacamoleFilter> filters;
+
+    /**
+     * Creates a new CompositeGuacamoleFilter which applies each of the given
+     * filters, in order.
+     *
+     * @param filters
+     *     The filters to apply, in the order they should be applied.
+     */
+    public CompositeGuacamoleFilter(List<GuacamoleFilter> filters) {
+        this.filters = Collections.unmodifiableList(
+                new ArrayList<GuacamoleFilter>(filters));
+    }
+
+    /**
+     * Creates a new CompositeGuacamoleFilter which applies each of the given
+     * filters, in order.
+     *
+     * @param filters
+     *     The filters to apply, in the order they should be applied.
+     */
+    public CompositeGuacamoleFilter(GuacamoleFilter... filters) {
+        this(Arrays.asList(filters));
+    }
+
+    /**
+     * Returns all filters within this chain, in the order they are applied.
+     *
+     * @return
+     *     An unmodifiable list of all filters within this chain.
+     */
+    public List<GuacamoleFilter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public GuacamoleInstruction filter(GuacamoleInstruction instruction)
+            throws GuacamoleException {
+
+        // Apply each filter in order, stopping if the instruction is dropped
+        for (GuacamoleFilter filter : filters) {
+            instruction = filter.filter(instruction);
+            if (instruction == null)
+                return null;
+        }
+
+        return instruction;
+
+    }
+
+    @Override
+    public GuacamoleInstructionView filter(GuacamoleInstructionView instruction)
+            throws GuacamoleException {
+
+        // Fully-parsed form of the current instruction, if needed by any
+        // filter which does not support views
+        GuacamoleInstruction parsed = null;
+
+        // Whether the parsed instruction differs from the view
+        boolean modified = false;
+
+        for (GuacamoleFilter filter : filters) {
+
+            // Filter in place where possible
+            if (filter instanceof GuacamoleViewFilter) {
+
+                // Bring view up to date with any prior modifications
+                if (modified) {
+                    instruction.load(parsed);
+                    modified = false;
+                }
+
+                instruction = ((GuacamoleViewFilter) filter).filter(instruction);
+                if (instruction == null)
+                    return null;
+
+                // The view may have been reloaded by the filter
+                parsed = null;
+
+            }
+
+            // Otherwise, filter the parsed instruction, parsing only if not
+            // already parsed
+            else {
+
+                if (parsed == null)
+                    parsed = instruction.toInstruction();
+
+                GuacamoleInstruction filtered = filter.filter(parsed);
+                if (filtered == null)
+                    return null;
+
+                // Note whether view must be reloaded
+                if (filtered != parsed) {
+                    parsed = filtered;
+                    modified = true;
+                }
+
+            }
+
+        }
+
+        // Serialize modified instruction only once all filters are applied
+        if (modified)
+            instruction.load(parsed);
+
+        return instruction;
+
+    }
+
+}
@@ -21,11 +21,15 @@ package org.apache.guacamole.protocol;
 
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.FlushableGuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A GuacamoleSocket which pre-configures the connection based on a given
@@ -39,6 +43,11 @@ import org.apache.guacamole.net.GuacamoleSocket;
  */
 public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
 
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConfiguredGuacamoleSocket.class);
+
     /**
      * The wrapped socket.
      */
@@ -55,6 +64,23 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
      * by the "ready" instruction received from the Guacamole proxy.
      */
     private String id;
+
+    /**
+     * The number of nanoseconds between sending "select" and receiving
+     * "args".
+     */
+    private long selectToArgsTime;
+
+    /**
+     * The number of nanoseconds between sending "connect" and receiving
+     * "ready".
+     */
+    private long connectToReadyTime;
+
+    /**
+     * The number of nanoseconds taken by the entire handshake.
+     */
+    private long handshakeTime;
     
     /**
      * Waits for the instruction having the given opcode, returning that
@@ -83,6 +109,88 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
 
     }
  
+    /**
+     * Flushes the given writer if it may be holding written data, such that
+     * all data written thus far is sent to the Guacamole proxy.
+     *
+     * @param writer
+     *     The writer to flush.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while flushing the writer.
+     */
+    private void flush(GuacamoleWriter writer) throws GuacamoleException {
+        if (writer instanceof FlushableGuacamoleWriter)
+            ((FlushableGuacamoleWriter) writer).flush();
+    }
+
+    /**
+     * Writes the contents of the given buffer using a single write, flushing
+     * the given writer afterwards such that all data is sent to the
+     * Guacamole proxy.
+     *
+     * @param writer
+     *     The writer to write to.
+     *
+     * @param buffer
+     *     The buffer containing the instructions to write.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing or flushing.
+     */
+    private void write(GuacamoleWriter writer, StringBuilder buffer)
+            throws GuacamoleException {
+
+        char[] chunk = new char[buffer.length()];
+        buffer.getChars(0, chunk.length, chunk, 0);
+
+        writer.write(chunk);
+        flush(writer);
+
+    }
+
+    /**
+     * Appends the instructions describing the capabilities of the client to
+     * the given buffer. These are the "size", "audio", "video" and "image"
+     * instructions, in that order.
+     *
+     * @param buffer
+     *     The buffer to append to.
+     *
+     * @param info
+     *     The information describing the client.
+     */
+    private void appendCapabilities(StringBuilder buffer,
+            GuacamoleClientInformation info) {
+
+        // Send size
+        buffer.append(new GuacamoleInstruction(
+            GuacamoleOpcode.SIZE,
+            Integer.toString(info.getOptimalScreenWidth()),
+            Integer.toString(info.getOptimalScreenHeight()),
+            Integer.toString(info.getOptimalResolution())
+        ));
+
+        // Send supported audio formats
+        buffer.append(new GuacamoleInstruction(
+            GuacamoleOpcode.AUDIO,
+            info.getAudioMimetypes().toArray(new String[0])
+        ));
+
+        // Send supported video formats
+        buffer.append(new GuacamoleInstruction(
+            GuacamoleOpcode.VIDEO,
+            info.getVideoMimetypes().toArray(new String[0])
+        ));
+
+        // Send supported image formats
+        buffer.append(new GuacamoleInstruction(
+            GuacamoleOpcode.IMAGE,
+            info.getImageMimetypes().toArray(new String[0])
+        ));
+
+    }
+
     /**
      * Creates a new ConfiguredGuacamoleSocket which uses the given
      * GuacamoleConfiguration to complete the initial protocol handshake over
@@ -116,10 +224,40 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
     public ConfiguredGuacamoleSocket(GuacamoleSocket socket,
             GuacamoleConfiguration config,
             GuacamoleClientInformation info) throws GuacamoleException {
+        this(socket, config, info, false);
+    }
+
+    /**
+     * Creates a new ConfiguredGuacamoleSocket which uses the given
+     * GuacamoleConfiguration and GuacamoleClientInformation to complete the
+     * initial protocol handshake over the given GuacamoleSocket. All
+     * instructions sent after "args" is received are sent in a single write.
+     * If requested, the instructions describing client capabilities ("size",
+     * "audio", "video" and "image") are instead sent along with "select",
+     * before "args" is received, such that only "connect" must be sent after
+     * "args". This saves a round trip, but must only be requested if the
+     * Guacamole proxy buffers instructions received before "args" is sent.
+     *
+     * @param socket The GuacamoleSocket to wrap.
+     * @param config The GuacamoleConfiguration to use to complete the initial
+     *               protocol handshake.
+     * @param info The GuacamoleClientInformation to use to complete the initial
+     *             protocol handshake.
+     * @param sendCapabilitiesEarly Whether client capabilities should be sent
+     *                              along with "select", rather than after
+     *                              "args" is received.
+     * @throws GuacamoleException If an error occurs while completing the
+     *                            initial protocol handshake.
+     */
+    public ConfiguredGuacamoleSocket(GuacamoleSocket socket,
+            GuacamoleConfiguration config, GuacamoleClientInformation info,
+            boolean sendCapabilitiesEarly) throws GuacamoleException {
 
         this.socket = socket;
         this.config = config;
 
+        long handshakeStarted = System.nanoTime();
+
         // Get reader and writer
         GuacamoleReader reader = socket.getReader();
         GuacamoleWriter writer = socket.getWriter();
@@ -129,11 +267,19 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
         if (select_arg == null)
             select_arg = config.getProtocol();
 
-        // Send requested protocol or connection ID
-        writer.writeInstruction(new GuacamoleInstruction("select", select_arg));
+        // Send requested protocol or connection ID, along with client
+        // capabilities if those may be sent early
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(new GuacamoleInstruction(GuacamoleOpcode.SELECT, select_arg));
+        if (sendCapabilitiesEarly)
+            appendCapabilities(buffer, info);
+
+        write(writer, buffer);
+        long selectSent = System.nanoTime();
 
         // Wait for server args
         GuacamoleInstruction args = expect(reader, "args");
+        selectToArgsTime = System.nanoTime() - selectSent;
 
         // Build args list off provided names and config
         List<String> arg_names = args.getArgs();
@@ -154,49 +300,34 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
 
         }
 
-        // Send size
-        writer.writeInstruction(
-            new GuacamoleInstruction(
-                "size",
-                Integer.toString(info.getOptimalScreenWidth()),
-                Integer.toString(info.getOptimalScreenHeight()),
-                Integer.toString(info.getOptimalResolution())
-            )
-        );
-
-        // Send supported audio formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "audio",
-                    info.getAudioMimetypes().toArray(new String[0])
-                ));
-
-        // Send supported video formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "video",
-                    info.getVideoMimetypes().toArray(new String[0])
-                ));
-
-        // Send supported image formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "image",
-                    info.getImageMimetypes().toArray(new String[0])
-                ));
+        // Send any remaining capabilities and args in a single write
+        buffer.setLength(0);
+        if (!sendCapabilitiesEarly)
+            appendCapabilities(buffer, info);
+        buffer.append(new GuacamoleInstruction(GuacamoleOpcode.CONNECT, arg_values));
 
-        // Send args
-        writer.writeInstruction(new GuacamoleInstruction("connect", arg_values));
+        write(writer, buffer);
+        long connectSent = System.nanoTime();
 
         // Wait for ready, store ID
         GuacamoleInstruction ready = expect(reader, "ready");
 
+        long readyReceived = System.nanoTime();
+        connectToReadyTime = readyReceived - connectSent;
+        handshakeTime = readyReceived - handshakeStarted;
+
         List<String> ready_args = ready.getArgs();
         if (ready_args.isEmpty())
             throw new GuacamoleServerException("No connection ID received");
 
         id = ready.getArgs().get(0);
 
+        logger.debug("Handshake for connection \"{}\" completed in {}ms "
+                + "(select to args: {}ms, connect to ready: {}ms).", id,
+                getHandshakeTime(TimeUnit.MILLISECONDS),
+                getSelectToArgsTime(TimeUnit.MILLISECONDS),
+                getConnectToReadyTime(TimeUnit.MILLISECONDS));
+
     }
 
     /**
@@ -221,6 +352,41 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
         return id;
     }
 
+    /**
+     * Returns the time which elapsed between sending the "select"
+     * instruction and receiving the "args" instruction during the handshake.
+     *
+     * @param unit The unit of time to return.
+     * @return The time between "select" and "args", in the given unit.
+     */
+    public long getSelectToArgsTime(TimeUnit unit) {
+        return unit.convert(selectToArgsTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time which elapsed between sending the "connect"
+     * instruction and receiving the "ready" instruction during the
+     * handshake.
+     *
+     * @param unit The unit of time to return.
+     * @return The time between "connect" and "ready", in the given unit.
+     */
+    public long getConnectToReadyTime(TimeUnit unit) {
+        return unit.convert(connectToReadyTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken by the entire handshake, from sending "select"
+     * to receiving "ready". This does not include the time taken to connect
+     * the wrapped socket.
+     *
+     * @param unit The unit of time to return.
+     * @return The duration of the handshake, in the given unit.
+     */
+    public long getHandshakeTime(TimeUnit unit) {
+        return unit.convert(handshakeTime, TimeUnit.NANOSECONDS);
+    }
+
     @Override
     public GuacamoleWriter getWriter() {
         return socket.getWriter();
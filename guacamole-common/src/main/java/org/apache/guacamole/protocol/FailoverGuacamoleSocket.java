@@ -19,14 +19,15 @@
 
 package org.apache.guacamole.protocol;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.GuacamoleUpstreamException;
 import org.apache.guacamole.GuacamoleUpstreamNotFoundException;
 import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
 import org.apache.guacamole.GuacamoleUpstreamUnavailableException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleSocket;
@@ -39,6 +40,12 @@ import org.slf4j.LoggerFactory;
  * exceptions thrown immediately within the FailoverGuacamoleSocket's
  * constructor, allowing a different socket to be substituted prior to
  * fulfilling the connection.
+ *
+ * Instructions read while searching for errors are retained as raw
+ * instruction data within a single buffer, and are replayed from that buffer
+ * without being parsed or serialized again. Only the opcode of each
+ * instruction is inspected, with "error" instructions being the only
+ * instructions whose arguments are examined.
  */
 public class FailoverGuacamoleSocket implements GuacamoleSocket {
 
@@ -61,29 +68,54 @@ public class FailoverGuacamoleSocket implements GuacamoleSocket {
     private final GuacamoleSocket socket;
 
     /**
-     * Queue of all instructions read while this FailoverGuacamoleSocket was
-     * being constructed.
+     * Raw data of all instructions read while this FailoverGuacamoleSocket
+     * was being constructed. This buffer is allocated with room for
+     * INSTRUCTION_QUEUE_LIMIT characters, and is only ever enlarged to fit
+     * the final instruction which crosses that limit.
+     */
+    private char[] instructionQueue = new char[INSTRUCTION_QUEUE_LIMIT];
+
+    /**
+     * The offset of the first instruction within the instruction queue which
+     * has not yet been replayed.
+     */
+    private int queueOffset = 0;
+
+    /**
+     * The number of characters of instruction data within the instruction
+     * queue, including any data which has already been replayed.
+     */
+    private int queueLength = 0;
+
+    /**
+     * Reusable view of instructions within the instruction queue, or read
+     * from the wrapped socket while this FailoverGuacamoleSocket was being
+     * constructed.
+     */
+    private final GuacamoleInstructionView view = new GuacamoleInstructionView();
+
+    /**
+     * CharBuffer backed by the instruction queue, reused by readBuffer() for
+     * each queued instruction.
      */
-    private final Queue<GuacamoleInstruction> instructionQueue =
-            new LinkedList<GuacamoleInstruction>();
+    private CharBuffer replayBuffer = null;
 
     /**
      * Parses the given "error" instruction, throwing an exception if the
      * instruction represents an error from the upstream remote desktop.
      *
      * @param instruction
-     *     The "error" instruction to parse.
+     *     A view of the "error" instruction to parse.
      *
      * @throws GuacamoleUpstreamException
      *     If the "error" instruction represents an error from the upstream
      *     remote desktop.
      */
-    private static void handleUpstreamErrors(GuacamoleInstruction instruction)
+    private static void handleUpstreamErrors(GuacamoleInstructionView instruction)
             throws GuacamoleUpstreamException {
 
         // Ignore error instructions which are missing the status code
-        List<String> args = instruction.getArgs();
-        if (args.size() < 2) {
+        if (instruction.getArgCount() < 2) {
             logger.debug("Received \"error\" instruction without status code.");
             return;
         }
@@ -91,7 +123,7 @@ public class FailoverGuacamoleSocket implements GuacamoleSocket {
         // Parse the status code from the received error instruction
         int statusCode;
         try {
-            statusCode = Integer.parseInt(args.get(1));
+            statusCode = Integer.parseInt(instruction.getArg(1));
         }
         catch (NumberFormatException e) {
             logger.debug("Received \"error\" instruction with non-numeric status code.", e);
@@ -110,22 +142,183 @@ public class FailoverGuacamoleSocket implements GuacamoleSocket {
 
             // Generic upstream error
             case UPSTREAM_ERROR:
-                throw new GuacamoleUpstreamException(args.get(0));
+                throw new GuacamoleUpstreamException(instruction.getArg(0));
 
             // Upstream is unreachable
             case UPSTREAM_NOT_FOUND:
-                throw new GuacamoleUpstreamNotFoundException(args.get(0));
+                throw new GuacamoleUpstreamNotFoundException(instruction.getArg(0));
 
             // Upstream did not respond
             case UPSTREAM_TIMEOUT:
-                throw new GuacamoleUpstreamTimeoutException(args.get(0));
+                throw new GuacamoleUpstreamTimeoutException(instruction.getArg(0));
 
             // Upstream is refusing the connection
             case UPSTREAM_UNAVAILABLE:
-                throw new GuacamoleUpstreamUnavailableException(args.get(0));
+                throw new GuacamoleUpstreamUnavailableException(instruction.getArg(0));
+
+        }
+
+    }
+
+    /**
+     * Returns the length of the first complete instruction within the given
+     * range of the given buffer, including its terminating semicolon. Only
+     * the length prefixes and terminators of each element are inspected.
+     *
+     * @param buffer
+     *     The buffer containing one or more complete instructions.
+     *
+     * @param offset
+     *     The offset of the first character of the first instruction.
+     *
+     * @param end
+     *     The offset of the character following the last character of
+     *     instruction data within the buffer.
+     *
+     * @return
+     *     The length of the first instruction, in characters.
+     *
+     * @throws GuacamoleException
+     *     If the data at the given offset is not a complete, valid
+     *     instruction.
+     */
+    private static int getInstructionLength(char[] buffer, int offset, int end)
+            throws GuacamoleException {
+
+        int i = offset;
+        while (i < end) {
+
+            // Parse length prefix
+            int elementLength = 0;
+            char readChar;
+            while (i < end && (readChar = buffer[i++]) != '.') {
+
+                // Only digits are valid within the length prefix
+                if (readChar < '0' || readChar > '9')
+                    throw new GuacamoleServerException("Non-numeric character in element length.");
+
+                elementLength = elementLength * 10 + readChar - '0';
+
+            }
+
+            // Skip element value, stopping at the end of the instruction
+            i += elementLength;
+            if (i >= end)
+                break;
+
+            char terminator = buffer[i++];
+            if (terminator == ';')
+                return i - offset;
+
+            // Handle invalid terminator characters
+            if (terminator != ',')
+                throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
 
         }
 
+        throw new GuacamoleServerException("Instruction is incomplete.");
+
+    }
+
+    /**
+     * Appends the given instruction data to the end of the instruction
+     * queue, enlarging the queue if necessary.
+     *
+     * @param buffer
+     *     The buffer containing the instruction data to append.
+     *
+     * @param offset
+     *     The offset of the first character to append.
+     *
+     * @param length
+     *     The number of characters to append.
+     */
+    private void enqueue(char[] buffer, int offset, int length) {
+
+        // Enlarge queue only as much as required
+        int requiredLength = queueLength + length;
+        if (requiredLength > instructionQueue.length)
+            instructionQueue = Arrays.copyOf(instructionQueue, requiredLength);
+
+        System.arraycopy(buffer, offset, instructionQueue, queueLength, length);
+        queueLength = requiredLength;
+
+    }
+
+    /**
+     * Inspects the opcode of the given instruction, handling any upstream
+     * error represented by that instruction and determining whether the
+     * search for errors should stop.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset of the first character of the instruction.
+     *
+     * @param length
+     *     The length of the instruction, in characters, including its
+     *     terminating semicolon.
+     *
+     * @return
+     *     true if the instruction was a "sync" or "error" instruction and no
+     *     further instructions should be inspected, false otherwise.
+     *
+     * @throws GuacamoleException
+     *     If the instruction is not a valid instruction.
+     *
+     * @throws GuacamoleUpstreamException
+     *     If the instruction is an "error" instruction representing an error
+     *     from the upstream remote desktop.
+     */
+    private boolean inspect(char[] buffer, int offset, int length)
+            throws GuacamoleException, GuacamoleUpstreamException {
+
+        view.load(buffer, offset, length);
+        GuacamoleOpcode opcode = view.getKnownOpcode();
+
+        // If instruction is a "sync" instruction, stop reading
+        if (opcode == GuacamoleOpcode.SYNC)
+            return true;
+
+        // If instruction is an "error" instruction, parse its contents and
+        // stop reading
+        if (opcode == GuacamoleOpcode.ERROR) {
+            handleUpstreamErrors(view);
+            return true;
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Reads the next block of instruction data from the given reader, reading
+     * directly from the reader's internal buffer if possible.
+     *
+     * @param reader
+     *     The reader to read from.
+     *
+     * @return
+     *     A CharBuffer containing one or more complete instructions, or null
+     *     if no more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the given reader.
+     */
+    private static CharBuffer readBlock(GuacamoleReader reader)
+            throws GuacamoleException {
+
+        // Avoid copying instruction data if the reader allows
+        if (reader instanceof BufferedGuacamoleReader)
+            return ((BufferedGuacamoleReader) reader).readBuffer();
+
+        char[] data = reader.read();
+        if (data == null)
+            return null;
+
+        return CharBuffer.wrap(data);
+
     }
 
     /**
@@ -151,63 +344,145 @@ public class FailoverGuacamoleSocket implements GuacamoleSocket {
     public FailoverGuacamoleSocket(GuacamoleSocket socket)
             throws GuacamoleException, GuacamoleUpstreamException {
 
-        int totalQueueSize = 0;
-
-        GuacamoleInstruction instruction;
+        CharBuffer block;
         GuacamoleReader reader = socket.getReader();
 
         // Continuously read instructions, searching for errors
-        while ((instruction = reader.readInstruction()) != null) {
+        reading:
+        while ((block = readBlock(reader)) != null) {
 
-            // Add instruction to tail of instruction queue
-            instructionQueue.add(instruction);
+            char[] buffer = block.array();
+            int start = block.arrayOffset() + block.position();
+            int end = start + block.remaining();
 
-            // If instruction is a "sync" instruction, stop reading
-            String opcode = instruction.getOpcode();
-            if (opcode.equals("sync"))
-                break;
+            // Add all instructions within block to tail of instruction
+            // queue, retaining them for replay regardless of their content
+            enqueue(buffer, start, end - start);
+
+            // Inspect each instruction within the block
+            int offset = start;
+            while (offset < end) {
+
+                int length = getInstructionLength(buffer, offset, end);
+
+                // Stop if "sync" or "error" is received
+                if (inspect(buffer, offset, length))
+                    break reading;
+
+                offset += length;
 
-            // If instruction is an "error" instruction, parse its contents and
-            // stop reading
-            if (opcode.equals("error")) {
-                handleUpstreamErrors(instruction);
-                break;
             }
 
-            // Otherwise, track total data parsed, and assume connection is
-            // successful if no error encountered within reasonable space
-            totalQueueSize += instruction.toString().length();
-            if (totalQueueSize >= INSTRUCTION_QUEUE_LIMIT)
+            // Otherwise, assume connection is successful if no error
+            // encountered within reasonable space
+            if (queueLength >= INSTRUCTION_QUEUE_LIMIT)
                 break;
 
         }
 
+        // Release instruction queue immediately if nothing was read
+        if (!isQueued())
+            instructionQueue = null;
+
         this.socket = socket;
 
     }
 
+    /**
+     * Returns whether any instruction data read while this
+     * FailoverGuacamoleSocket was being constructed has yet to be replayed.
+     *
+     * @return
+     *     true if queued instruction data remains, false otherwise.
+     */
+    private boolean isQueued() {
+        return queueOffset < queueLength;
+    }
+
+    /**
+     * Marks the given number of characters of queued instruction data as
+     * replayed, releasing the instruction queue once all queued data has
+     * been replayed.
+     *
+     * @param length
+     *     The number of characters replayed.
+     */
+    private void dequeue(int length) {
+
+        queueOffset += length;
+
+        // Instruction queue is no longer needed once fully replayed
+        if (queueOffset >= queueLength) {
+            instructionQueue = null;
+            replayBuffer = null;
+            queueOffset = queueLength = 0;
+        }
+
+    }
+
     /**
      * GuacamoleReader which reads instructions from the queue populated when
      * the FailoverGuacamoleSocket was constructed. Once the queue has been
      * emptied, reads are delegated directly to the reader of the wrapped
      * socket.
      */
-    private final GuacamoleReader queuedReader = new GuacamoleReader() {
+    private final BufferedGuacamoleReader queuedReader = new BufferedGuacamoleReader() {
 
         @Override
         public boolean available() throws GuacamoleException {
-            return !instructionQueue.isEmpty() || socket.getReader().available();
+            return isQueued() || socket.getReader().available();
+        }
+
+        @Override
+        public CharBuffer readBuffer() throws GuacamoleException {
+
+            // Expose queued instructions in place, one at a time
+            if (isQueued()) {
+
+                if (replayBuffer == null)
+                    replayBuffer = CharBuffer.wrap(instructionQueue);
+
+                int length = getInstructionLength(instructionQueue,
+                        queueOffset, queueLength);
+
+                CharBuffer instruction = replayBuffer;
+                instruction.limit(queueOffset + length);
+                instruction.position(queueOffset);
+
+                dequeue(length);
+                return instruction;
+
+            }
+
+            GuacamoleReader reader = socket.getReader();
+
+            // Delegate directly to underlying reader if possible
+            if (reader instanceof BufferedGuacamoleReader)
+                return ((BufferedGuacamoleReader) reader).readBuffer();
+
+            GuacamoleInstruction instruction = reader.readInstruction();
+            if (instruction == null)
+                return null;
+
+            return CharBuffer.wrap(instruction.toString().toCharArray());
+
         }
 
         @Override
         public char[] read() throws GuacamoleException {
 
-            // Read instructions from queue before finally delegating to
-            // underlying reader (received when FailoverGuacamoleSocket was
-            // being constructed)
-            if (!instructionQueue.isEmpty()) {
-                GuacamoleInstruction instruction = instructionQueue.remove();
-                return instruction.toString().toCharArray();
+            // Replay all queued instructions at once before finally
+            // delegating to underlying reader (received when
+            // FailoverGuacamoleSocket was being constructed)
+            if (isQueued()) {
+
+                char[] queued = instructionQueue;
+                if (queueOffset != 0 || queueLength != queued.length)
+                    queued = Arrays.copyOfRange(queued, queueOffset, queueLength);
+
+                dequeue(queueLength - queueOffset);
+                return queued;
+
             }
 
             return socket.getReader().read();
@@ -218,11 +493,21 @@ public class FailoverGuacamoleSocket implements GuacamoleSocket {
         public GuacamoleInstruction readInstruction()
                 throws GuacamoleException {
 
-            // Read instructions from queue before finally delegating to
-            // underlying reader (received when FailoverGuacamoleSocket was
-            // being constructed)
-            if (!instructionQueue.isEmpty())
-                return instructionQueue.remove();
+            // Parse queued instructions one at a time before finally
+            // delegating to underlying reader (received when
+            // FailoverGuacamoleSocket was being constructed)
+            if (isQueued()) {
+
+                int length = getInstructionLength(instructionQueue,
+                        queueOffset, queueLength);
+
+                view.load(instructionQueue, queueOffset, length);
+                GuacamoleInstruction instruction = view.toInstruction();
+
+                dequeue(length);
+                return instruction;
+
+            }
 
             return socket.getReader().readInstruction();
 
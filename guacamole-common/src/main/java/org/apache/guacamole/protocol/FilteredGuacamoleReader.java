@@ -19,15 +19,26 @@
 
 package org.apache.guacamole.protocol;
 
+import java.nio.CharBuffer;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.TimedGuacamoleReader;
 
 /**
  * GuacamoleReader which applies a given GuacamoleFilter to observe or alter all
  * read instructions. Instructions may also be dropped or denied by the the
  * filter.
+ *
+ * If the filter is a GuacamoleViewFilter and the wrapped reader is a
+ * BufferedGuacamoleReader, instructions are filtered through a reusable
+ * GuacamoleInstructionView over the wrapped reader's buffer, and are fully
+ * parsed only if readInstruction() is used. As FilteredGuacamoleReader is
+ * itself a BufferedGuacamoleReader, any number of such readers may be stacked
+ * without parsing or copying the instructions passing through them.
  */
-public class FilteredGuacamoleReader implements GuacamoleReader {
+public class FilteredGuacamoleReader
+        implements BufferedGuacamoleReader, TimedGuacamoleReader {
 
     /**
      * The wrapped GuacamoleReader.
@@ -39,6 +50,24 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
      */
     private final GuacamoleFilter filter;
 
+    /**
+     * Whether instructions should be filtered in place via
+     * GuacamoleInstructionView, rather than fully parsed.
+     */
+    private final boolean viewFiltering;
+
+    /**
+     * Reusable view of the instruction most recently read from the wrapped
+     * reader, if instructions are being filtered in place.
+     */
+    private final GuacamoleInstructionView view = new GuacamoleInstructionView();
+
+    /**
+     * The CharBuffer most recently returned by readBuffer(), reused for
+     * future calls for as long as its backing array remains the same.
+     */
+    private CharBuffer buffer = null;
+
     /**
      * Wraps the given GuacamoleReader, applying the given filter to all read
      * instructions. Future reads will return only instructions which pass
@@ -51,6 +80,8 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
     public FilteredGuacamoleReader(GuacamoleReader reader, GuacamoleFilter filter) {
         this.reader = reader;
         this.filter = filter;
+        this.viewFiltering = filter instanceof GuacamoleViewFilter
+                          && reader instanceof BufferedGuacamoleReader;
     }
     
     @Override
@@ -58,9 +89,99 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
         return reader.available();
     }
 
+    @Override
+    public boolean available(int timeout) throws GuacamoleException {
+        if (reader instanceof TimedGuacamoleReader)
+            return ((TimedGuacamoleReader) reader).available(timeout);
+        return reader.available();
+    }
+
+    /**
+     * Reads and filters instructions in place until an instruction is not
+     * dropped by the filter. This function may only be used if
+     * viewFiltering is true.
+     *
+     * @return
+     *     A view of the next instruction which passed the filter, or null if
+     *     no more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the wrapped reader, or if
+     *     the filter denies an instruction.
+     */
+    private GuacamoleInstructionView readView() throws GuacamoleException {
+
+        BufferedGuacamoleReader bufferedReader = (BufferedGuacamoleReader) reader;
+        GuacamoleViewFilter viewFilter = (GuacamoleViewFilter) filter;
+
+        GuacamoleInstructionView filteredView;
+
+        // Read and filter instructions until no instructions are dropped
+        do {
+
+            // Read next instruction
+            CharBuffer unfilteredInstruction = bufferedReader.readBuffer();
+            if (unfilteredInstruction == null)
+                return null;
+
+            // Apply filter
+            view.load(unfilteredInstruction);
+            filteredView = viewFilter.filter(view);
+
+        } while (filteredView == null);
+
+        return filteredView;
+
+    }
+
+    @Override
+    public CharBuffer readBuffer() throws GuacamoleException {
+
+        // Without in-place filtering, data must be copied from parsed
+        // instructions
+        if (!viewFiltering) {
+            char[] filteredInstruction = read();
+            if (filteredInstruction == null)
+                return null;
+            return CharBuffer.wrap(filteredInstruction);
+        }
+
+        GuacamoleInstructionView filteredView = readView();
+        if (filteredView == null)
+            return null;
+
+        // Reuse existing CharBuffer if the backing array is unchanged
+        char[] data = filteredView.getBuffer();
+        if (buffer == null || buffer.array() != data)
+            buffer = CharBuffer.wrap(data);
+
+        // Expose instruction data in place
+        int offset = filteredView.getOffset();
+        buffer.limit(offset + filteredView.getLength());
+        buffer.position(offset);
+
+        return buffer;
+
+    }
+
     @Override
     public char[] read() throws GuacamoleException {
 
+        // Copy filtered instruction data directly if filtering in place
+        if (viewFiltering) {
+
+            GuacamoleInstructionView filteredView = readView();
+            if (filteredView == null)
+                return null;
+
+            char[] instruction = new char[filteredView.getLength()];
+            System.arraycopy(filteredView.getBuffer(), filteredView.getOffset(),
+                    instruction, 0, instruction.length);
+
+            return instruction;
+
+        }
+
         GuacamoleInstruction filteredInstruction = readInstruction();
         if (filteredInstruction == null)
             return null;
@@ -72,6 +193,17 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
     @Override
     public GuacamoleInstruction readInstruction() throws GuacamoleException {
 
+        // Parse only instructions which pass the filter if filtering in place
+        if (viewFiltering) {
+
+            GuacamoleInstructionView filteredView = readView();
+            if (filteredView == null)
+                return null;
+
+            return filteredView.toInstruction();
+
+        }
+
         GuacamoleInstruction filteredInstruction;
 
         // Read and filter instructions until no instructions are dropped
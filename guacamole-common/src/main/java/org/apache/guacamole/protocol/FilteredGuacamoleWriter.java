@@ -21,14 +21,16 @@ package org.apache.guacamole.protocol;
 
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.FlushableGuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleWriter;
 
 /**
  * GuacamoleWriter which applies a given GuacamoleFilter to observe or alter
  * all written instructions. Instructions may also be dropped or denied by
- * the filter.
+ * the filter. If the wrapped GuacamoleWriter is a FlushableGuacamoleWriter,
+ * calls to flush() are passed through to that writer.
  */
-public class FilteredGuacamoleWriter implements GuacamoleWriter {
+public class FilteredGuacamoleWriter implements FlushableGuacamoleWriter {
 
     /**
      * The wrapped GuacamoleWriter.
@@ -99,4 +101,13 @@ public class FilteredGuacamoleWriter implements GuacamoleWriter {
 
     }
 
+    @Override
+    public void flush() throws GuacamoleException {
+
+        // Flush wrapped writer only if it may be holding data
+        if (writer instanceof FlushableGuacamoleWriter)
+            ((FlushableGuacamoleWriter) writer).flush();
+
+    }
+
 }
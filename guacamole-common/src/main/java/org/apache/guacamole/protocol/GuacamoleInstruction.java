@@ -20,6 +20,10 @@
 package org.apache.guacamole.protocol;
 
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -35,6 +39,12 @@ public class GuacamoleInstruction {
      */
     private final String opcode;
 
+    /**
+     * The GuacamoleOpcode corresponding to the opcode of this instruction, or
+     * null if the opcode is not defined by the Guacamole protocol.
+     */
+    private final GuacamoleOpcode knownOpcode;
+
     /**
      * All arguments of this instruction, in order.
      */
@@ -56,6 +66,7 @@ public class GuacamoleInstruction {
      */
     public GuacamoleInstruction(String opcode, String... args) {
         this.opcode = opcode;
+        this.knownOpcode = GuacamoleOpcode.fromValue(opcode);
         this.args = Collections.unmodifiableList(Arrays.asList(args));
     }
 
@@ -70,6 +81,42 @@ public class GuacamoleInstruction {
      */
     public GuacamoleInstruction(String opcode, List<String> args) {
         this.opcode = opcode;
+        this.knownOpcode = GuacamoleOpcode.fromValue(opcode);
+        this.args = Collections.unmodifiableList(args);
+    }
+
+    /**
+     * Creates a new GuacamoleInstruction having the given known opcode and
+     * list of arguments values.
+     *
+     * @param opcode
+     *     The opcode of the instruction to create.
+     *
+     * @param args
+     *     The list of argument values to provide in the new instruction, if
+     *     any.
+     */
+    public GuacamoleInstruction(GuacamoleOpcode opcode, String... args) {
+        this.opcode = opcode.getValue();
+        this.knownOpcode = opcode;
+        this.args = Collections.unmodifiableList(Arrays.asList(args));
+    }
+
+    /**
+     * Creates a new GuacamoleInstruction having the given known opcode and
+     * list of arguments values. The list given will be used to back the
+     * internal list of arguments and the list returned by getArgs().
+     *
+     * @param opcode
+     *     The opcode of the instruction to create.
+     *
+     * @param args
+     *     The list of argument values to provide in the new instruction, if
+     *     any.
+     */
+    public GuacamoleInstruction(GuacamoleOpcode opcode, List<String> args) {
+        this.opcode = opcode.getValue();
+        this.knownOpcode = opcode;
         this.args = Collections.unmodifiableList(args);
     }
 
@@ -81,6 +128,21 @@ public class GuacamoleInstruction {
         return opcode;
     }
 
+    /**
+     * Returns the GuacamoleOpcode corresponding to the opcode of this
+     * GuacamoleInstruction, if that opcode is defined by the Guacamole
+     * protocol. Unlike the String returned by getOpcode(), the returned value
+     * may be compared by identity or used within a switch statement.
+     *
+     * @return
+     *     The GuacamoleOpcode corresponding to the opcode of this
+     *     GuacamoleInstruction, or null if the opcode is not defined by the
+     *     Guacamole protocol.
+     */
+    public GuacamoleOpcode getKnownOpcode() {
+        return knownOpcode;
+    }
+
     /**
      * Returns a List of all argument values specified for this
      * GuacamoleInstruction. Note that the List returned is immutable.
@@ -93,6 +155,380 @@ public class GuacamoleInstruction {
         return args;
     }
 
+    /**
+     * Returns the number of decimal digits in the given non-negative value.
+     *
+     * @param value
+     *     The value to measure.
+     *
+     * @return
+     *     The number of decimal digits required to represent the given value.
+     */
+    private static int getDigitCount(int value) {
+
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
+
+    }
+
+    /**
+     * Returns the value of the most significant decimal digit place of the
+     * given non-negative value, such as 100 for any value from 100 through
+     * 999.
+     *
+     * @param value
+     *     The value whose most significant digit place should be determined.
+     *
+     * @return
+     *     The value of the most significant decimal digit place of the given
+     *     value.
+     */
+    private static int getMostSignificantPlace(int value) {
+
+        int place = 1;
+        while (value / place >= 10)
+            place *= 10;
+
+        return place;
+
+    }
+
+    /**
+     * Returns the number of bytes required to represent the given String as
+     * UTF-8. Unpaired surrogates are counted as the single byte of the '?'
+     * character which replaces them when encoded by putUTF8().
+     *
+     * @param value
+     *     The String to measure.
+     *
+     * @return
+     *     The number of bytes within the UTF-8 representation of the given
+     *     String.
+     */
+    private static int getEncodedLength(String value) {
+
+        int length = 0;
+        int count = value.length();
+
+        for (int i = 0; i < count; i++) {
+
+            char c = value.charAt(i);
+
+            if (c < 0x80)
+                length += 1;
+            else if (c < 0x800)
+                length += 2;
+
+            // Surrogate pairs are encoded as a single four-byte sequence
+            else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+
+            // Unpaired surrogates are replaced with '?'
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+                length += 1;
+
+            else
+                length += 3;
+
+        }
+
+        return length;
+
+    }
+
+    /**
+     * Writes the UTF-8 representation of the given String to the given
+     * ByteBuffer. Unpaired surrogates are replaced with '?'. The buffer must
+     * have sufficient space remaining, as determined by getEncodedLength().
+     *
+     * @param buffer
+     *     The buffer to write to.
+     *
+     * @param value
+     *     The String to encode.
+     */
+    private static void putUTF8(ByteBuffer buffer, String value) {
+
+        int count = value.length();
+        for (int i = 0; i < count; i++) {
+
+            char c = value.charAt(i);
+
+            // Single byte (ASCII)
+            if (c < 0x80)
+                buffer.put((byte) c);
+
+            // Two bytes
+            else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+
+            // Four bytes (surrogate pair)
+            else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codepoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 |  (codepoint >> 18)));
+                buffer.put((byte) (0x80 | ((codepoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codepoint >> 6)  & 0x3F)));
+                buffer.put((byte) (0x80 |  (codepoint        & 0x3F)));
+            }
+
+            // Unpaired surrogate
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+                buffer.put((byte) '?');
+
+            // Three bytes
+            else {
+                buffer.put((byte) (0xE0 |  (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 |  (c       & 0x3F)));
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns the length of the given element in the form it would be sent
+     * over the Guacamole protocol, including its length prefix and the
+     * following terminator.
+     *
+     * @param value
+     *     The value of the element.
+     *
+     * @return
+     *     The length of the given element in protocol form, in characters.
+     */
+    private static int getElementLength(String value) {
+        return getDigitCount(value.length()) + value.length() + 2;
+    }
+
+    /**
+     * Returns the length of this GuacamoleInstruction in the form it would be
+     * sent over the Guacamole protocol, in characters. The protocol form
+     * itself is not produced.
+     *
+     * @return
+     *     The length of this GuacamoleInstruction in protocol form, in
+     *     characters.
+     */
+    public int getLength() {
+
+        if (protocolForm != null)
+            return protocolForm.length();
+
+        int length = getElementLength(opcode);
+        for (String value : args)
+            length += getElementLength(value);
+
+        return length;
+
+    }
+
+    /**
+     * Returns the length of this GuacamoleInstruction in the form it would be
+     * sent over the Guacamole protocol, once encoded as UTF-8, in bytes. The
+     * protocol form itself is not produced.
+     *
+     * @return
+     *     The length of the UTF-8 encoded protocol form of this
+     *     GuacamoleInstruction, in bytes.
+     */
+    public int getEncodedLength() {
+
+        // Length prefixes and terminators are all ASCII
+        int length = getDigitCount(opcode.length()) + getEncodedLength(opcode) + 2;
+        for (String value : args)
+            length += getDigitCount(value.length()) + getEncodedLength(value) + 2;
+
+        return length;
+
+    }
+
+    /**
+     * Appends the length prefix of the given element, including the
+     * following period, to the given Appendable.
+     *
+     * @param output
+     *     The Appendable to write to.
+     *
+     * @param value
+     *     The value of the element.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the Appendable.
+     */
+    private static void appendPrefix(Appendable output, String value)
+            throws IOException {
+
+        int length = value.length();
+        for (int place = getMostSignificantPlace(length); place > 0; place /= 10)
+            output.append((char) ('0' + (length / place) % 10));
+
+        output.append('.');
+
+    }
+
+    /**
+     * Writes the length prefix of the given element, including the following
+     * period, to the given CharBuffer.
+     *
+     * @param buffer
+     *     The CharBuffer to write to.
+     *
+     * @param value
+     *     The value of the element.
+     */
+    private static void putPrefix(CharBuffer buffer, String value) {
+
+        int length = value.length();
+        for (int place = getMostSignificantPlace(length); place > 0; place /= 10)
+            buffer.put((char) ('0' + (length / place) % 10));
+
+        buffer.put('.');
+
+    }
+
+    /**
+     * Writes the length prefix of the given element, including the following
+     * period, to the given ByteBuffer.
+     *
+     * @param buffer
+     *     The ByteBuffer to write to.
+     *
+     * @param value
+     *     The value of the element.
+     */
+    private static void putPrefix(ByteBuffer buffer, String value) {
+
+        int length = value.length();
+        for (int place = getMostSignificantPlace(length); place > 0; place /= 10)
+            buffer.put((byte) ('0' + (length / place) % 10));
+
+        buffer.put((byte) '.');
+
+    }
+
+    /**
+     * Writes this GuacamoleInstruction to the given Appendable in the form it
+     * would be sent over the Guacamole protocol, without first producing that
+     * form as a String.
+     *
+     * @param output
+     *     The Appendable to write to, such as a Writer or StringBuilder.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the Appendable.
+     */
+    public void writeTo(Appendable output) throws IOException {
+
+        // Reuse protocol form if already known
+        if (protocolForm != null) {
+            output.append(protocolForm);
+            return;
+        }
+
+        // Write opcode
+        appendPrefix(output, opcode);
+        output.append(opcode);
+
+        // Write argument values
+        for (String value : args) {
+            output.append(',');
+            appendPrefix(output, value);
+            output.append(value);
+        }
+
+        // Write terminator
+        output.append(';');
+
+    }
+
+    /**
+     * Writes this GuacamoleInstruction to the given CharBuffer in the form it
+     * would be sent over the Guacamole protocol, without first producing that
+     * form as a String. The position of the buffer is advanced by the length
+     * of the instruction. If insufficient space remains, nothing is written.
+     *
+     * @param buffer
+     *     The CharBuffer to write to.
+     *
+     * @throws BufferOverflowException
+     *     If the space remaining within the buffer is less than the value
+     *     returned by getLength().
+     */
+    public void writeTo(CharBuffer buffer) throws BufferOverflowException {
+
+        if (buffer.remaining() < getLength())
+            throw new BufferOverflowException();
+
+        // Reuse protocol form if already known
+        if (protocolForm != null) {
+            buffer.put(protocolForm);
+            return;
+        }
+
+        // Write opcode
+        putPrefix(buffer, opcode);
+        buffer.put(opcode);
+
+        // Write argument values
+        for (String value : args) {
+            buffer.put(',');
+            putPrefix(buffer, value);
+            buffer.put(value);
+        }
+
+        // Write terminator
+        buffer.put(';');
+
+    }
+
+    /**
+     * Writes this GuacamoleInstruction to the given ByteBuffer in the form it
+     * would be sent over the Guacamole protocol, encoded as UTF-8, without
+     * first producing that form as a String. Unpaired surrogates within the
+     * opcode or arguments are encoded as '?'. The position of the buffer is
+     * advanced by the encoded length of the instruction. If insufficient
+     * space remains, nothing is written.
+     *
+     * @param buffer
+     *     The ByteBuffer to write to.
+     *
+     * @throws BufferOverflowException
+     *     If the space remaining within the buffer is less than the value
+     *     returned by getEncodedLength().
+     */
+    public void writeTo(ByteBuffer buffer) throws BufferOverflowException {
+
+        if (buffer.remaining() < getEncodedLength())
+            throw new BufferOverflowException();
+
+        // Write opcode
+        putPrefix(buffer, opcode);
+        putUTF8(buffer, opcode);
+
+        // Write argument values
+        for (String value : args) {
+            buffer.put((byte) ',');
+            putPrefix(buffer, value);
+            putUTF8(buffer, value);
+        }
+
+        // Write terminator
+        buffer.put((byte) ';');
+
+    }
+
     /**
      * Returns this GuacamoleInstruction in the form it would be sent over the
      * Guacamole protocol.
@@ -108,7 +544,7 @@ public class GuacamoleInstruction {
         // known
         if (protocolForm == null) {
 
-            StringBuilder buff = new StringBuilder();
+            StringBuilder buff = new StringBuilder(getLength());
 
             // Write opcode
             buff.append(opcode.length());
@@ -0,0 +1,461 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+
+/**
+ * A reusable, read-only view of a single Guacamole instruction within a
+ * buffer of raw instruction data. Loading an instruction into the view only
+ * records the location of each element within the buffer; the values of
+ * individual elements are converted to Strings only when requested, and
+ * comparisons against known values can be performed without creating any
+ * objects at all. The view is valid only for as long as the contents of the
+ * underlying buffer remain unchanged.
+ */
+public class GuacamoleInstructionView {
+
+    /**
+     * The number of elements for which space is initially reserved. Space
+     * for additional elements is allocated as needed.
+     */
+    private static final int INITIAL_ELEMENT_CAPACITY = 16;
+
+    /**
+     * The buffer containing the raw instruction data.
+     */
+    private char[] buffer;
+
+    /**
+     * The offset of the first character of the instruction within the buffer.
+     */
+    private int offset;
+
+    /**
+     * The total length of the instruction, in characters, including its
+     * terminating semicolon.
+     */
+    private int length;
+
+    /**
+     * The number of elements within the instruction, including the opcode.
+     */
+    private int elementCount;
+
+    /**
+     * The known opcode of the current instruction, or null if the opcode is
+     * not defined by the Guacamole protocol.
+     */
+    private GuacamoleOpcode knownOpcode;
+
+    /**
+     * The offset of the value of each element within the buffer.
+     */
+    private int[] elementOffsets = new int[INITIAL_ELEMENT_CAPACITY];
+
+    /**
+     * The length of the value of each element, in characters.
+     */
+    private int[] elementLengths = new int[INITIAL_ELEMENT_CAPACITY];
+
+    /**
+     * The String values of each element which have been requested thus far,
+     * or null for elements whose values have not been requested.
+     */
+    private String[] elementValues = new String[INITIAL_ELEMENT_CAPACITY];
+
+    /**
+     * Records the location of an additional element of the current
+     * instruction, reserving additional space if necessary.
+     *
+     * @param elementOffset
+     *     The offset of the value of the element within the buffer.
+     *
+     * @param elementLength
+     *     The length of the value of the element, in characters.
+     */
+    private void addElement(int elementOffset, int elementLength) {
+
+        // Reserve more space for elements if necessary
+        if (elementCount == elementOffsets.length) {
+            int capacity = elementOffsets.length * 2;
+            elementOffsets = Arrays.copyOf(elementOffsets, capacity);
+            elementLengths = Arrays.copyOf(elementLengths, capacity);
+            elementValues  = Arrays.copyOf(elementValues,  capacity);
+        }
+
+        elementOffsets[elementCount] = elementOffset;
+        elementLengths[elementCount] = elementLength;
+        elementCount++;
+
+    }
+
+    /**
+     * Loads the single, complete instruction at the given location within the
+     * given buffer into this view, replacing any previously-loaded
+     * instruction. The buffer is not copied, and must not be modified while
+     * this view is in use.
+     *
+     * @param buffer
+     *     The buffer containing the raw instruction data.
+     *
+     * @param offset
+     *     The offset of the first character of the instruction within the
+     *     buffer.
+     *
+     * @param length
+     *     The length of the instruction, in characters, including its
+     *     terminating semicolon.
+     *
+     * @throws GuacamoleException
+     *     If the given data is not exactly one complete, valid instruction.
+     */
+    public void load(char[] buffer, int offset, int length)
+            throws GuacamoleException {
+
+        // Forget any previously-loaded instruction
+        Arrays.fill(elementValues, 0, elementCount, null);
+        elementCount = 0;
+        knownOpcode = null;
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+
+        int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+
+            // Parse length prefix
+            int elementLength = 0;
+            char readChar;
+            while (i < end && (readChar = buffer[i++]) != '.') {
+
+                // Only digits are valid within the length prefix
+                if (readChar < '0' || readChar > '9')
+                    throw new GuacamoleServerException("Non-numeric character in element length.");
+
+                elementLength = elementLength * 10 + readChar - '0';
+
+            }
+
+            // Element and its terminator must be entirely present
+            if (i + elementLength >= end)
+                throw new GuacamoleServerException("Instruction is incomplete.");
+
+            addElement(i, elementLength);
+            i += elementLength;
+
+            // Verify terminator
+            char terminator = buffer[i++];
+            if (terminator == ';') {
+
+                // Semicolon must be the final character
+                if (i != end)
+                    throw new GuacamoleServerException("Data follows end of instruction.");
+
+                // Identify known opcodes without creating a new String
+                knownOpcode = GuacamoleOpcode.fromValue(buffer,
+                        elementOffsets[0], elementLengths[0]);
+
+                return;
+
+            }
+
+            // Handle invalid terminator characters
+            else if (terminator != ',')
+                throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+
+        }
+
+        throw new GuacamoleServerException("Instruction is incomplete.");
+
+    }
+
+    /**
+     * Loads the single, complete instruction between the position and limit
+     * of the given CharBuffer into this view, replacing any
+     * previously-loaded instruction. The CharBuffer must be backed by an
+     * accessible array, which is not copied, and must not be modified while
+     * this view is in use.
+     *
+     * @param instruction
+     *     The CharBuffer containing exactly one complete instruction.
+     *
+     * @throws GuacamoleException
+     *     If the given data is not exactly one complete, valid instruction.
+     */
+    public void load(CharBuffer instruction) throws GuacamoleException {
+        load(instruction.array(),
+                instruction.arrayOffset() + instruction.position(),
+                instruction.remaining());
+    }
+
+    /**
+     * Loads the given, fully-parsed instruction into this view, replacing
+     * any previously-loaded instruction.
+     *
+     * @param instruction
+     *     The instruction to load.
+     *
+     * @throws GuacamoleException
+     *     If the protocol form of the given instruction cannot be parsed.
+     */
+    public void load(GuacamoleInstruction instruction)
+            throws GuacamoleException {
+        char[] data = instruction.toString().toCharArray();
+        load(data, 0, data.length);
+    }
+
+    /**
+     * Returns the buffer containing the raw data of the current instruction.
+     *
+     * @return
+     *     The buffer containing the raw data of the current instruction.
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset of the first character of the current instruction
+     * within the buffer returned by getBuffer().
+     *
+     * @return
+     *     The offset of the first character of the current instruction.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the current instruction, in characters, including
+     * its terminating semicolon.
+     *
+     * @return
+     *     The length of the current instruction.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns whether the value of the element at the given index is equal to
+     * the given String. No objects are created by this comparison.
+     *
+     * @param index
+     *     The index of the element to compare, where the opcode is element
+     *     zero.
+     *
+     * @param value
+     *     The value to compare against.
+     *
+     * @return
+     *     true if the element has the given value, false otherwise.
+     */
+    private boolean elementEquals(int index, String value) {
+
+        int elementLength = elementLengths[index];
+        if (elementLength != value.length())
+            return false;
+
+        int elementOffset = elementOffsets[index];
+        for (int i = 0; i < elementLength; i++) {
+            if (buffer[elementOffset + i] != value.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the value of the element at the given index, converting that
+     * value to a String only if it has not already been requested.
+     *
+     * @param index
+     *     The index of the element to return, where the opcode is element
+     *     zero.
+     *
+     * @return
+     *     The value of the element at the given index.
+     */
+    private String getElement(int index) {
+
+        String value = elementValues[index];
+        if (value == null) {
+            value = new String(buffer, elementOffsets[index], elementLengths[index]);
+            elementValues[index] = value;
+        }
+
+        return value;
+
+    }
+
+    /**
+     * Returns whether the opcode of the current instruction is equal to the
+     * given opcode. No objects are created by this comparison.
+     *
+     * @param opcode
+     *     The opcode to compare against.
+     *
+     * @return
+     *     true if the current instruction has the given opcode, false
+     *     otherwise.
+     */
+    public boolean opcodeEquals(String opcode) {
+        return elementEquals(0, opcode);
+    }
+
+    /**
+     * Returns the opcode of the current instruction. Unless the opcode is a
+     * known opcode, it is converted to a String only upon the first call to
+     * this function for the current instruction. Callers which need only
+     * test the opcode should use getKnownOpcode() or opcodeEquals() instead.
+     *
+     * @return
+     *     The opcode of the current instruction.
+     */
+    public String getOpcode() {
+
+        // Known opcodes need not be converted
+        if (knownOpcode != null)
+            return knownOpcode.getValue();
+
+        return getElement(0);
+
+    }
+
+    /**
+     * Returns the GuacamoleOpcode corresponding to the opcode of the current
+     * instruction, if that opcode is defined by the Guacamole protocol. The
+     * opcode is identified when the instruction is loaded, thus no objects
+     * are created by this call.
+     *
+     * @return
+     *     The GuacamoleOpcode corresponding to the opcode of the current
+     *     instruction, or null if the opcode is not defined by the Guacamole
+     *     protocol.
+     */
+    public GuacamoleOpcode getKnownOpcode() {
+        return knownOpcode;
+    }
+
+    /**
+     * Returns the number of arguments of the current instruction, excluding
+     * the opcode.
+     *
+     * @return
+     *     The number of arguments of the current instruction.
+     */
+    public int getArgCount() {
+        return elementCount - 1;
+    }
+
+    /**
+     * Returns whether the argument at the given index is equal to the given
+     * value. No objects are created by this comparison.
+     *
+     * @param index
+     *     The index of the argument to compare, where the first argument
+     *     following the opcode is argument zero.
+     *
+     * @param value
+     *     The value to compare against.
+     *
+     * @return
+     *     true if the argument at the given index has the given value, false
+     *     otherwise.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If the current instruction has no argument at the given index.
+     */
+    public boolean argEquals(int index, String value) {
+
+        if (index < 0 || index >= getArgCount())
+            throw new IndexOutOfBoundsException("No such argument: " + index);
+
+        return elementEquals(index + 1, value);
+
+    }
+
+    /**
+     * Returns the value of the argument at the given index. Each argument is
+     * converted to a String only upon the first request for that argument
+     * for the current instruction.
+     *
+     * @param index
+     *     The index of the argument to return, where the first argument
+     *     following the opcode is argument zero.
+     *
+     * @return
+     *     The value of the argument at the given index.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If the current instruction has no argument at the given index.
+     */
+    public String getArg(int index) {
+
+        if (index < 0 || index >= getArgCount())
+            throw new IndexOutOfBoundsException("No such argument: " + index);
+
+        return getElement(index + 1);
+
+    }
+
+    /**
+     * Converts the current instruction into a fully-parsed, independent
+     * GuacamoleInstruction. Unlike this view, the returned instruction
+     * remains valid regardless of future changes to the underlying buffer.
+     *
+     * @return
+     *     A GuacamoleInstruction equivalent to the current instruction.
+     */
+    public GuacamoleInstruction toInstruction() {
+
+        String[] args = new String[getArgCount()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = getElement(i + 1);
+
+        if (knownOpcode != null)
+            return new GuacamoleInstruction(knownOpcode, args);
+
+        return new GuacamoleInstruction(getOpcode(), args);
+
+    }
+
+    /**
+     * Returns the current instruction in the form it would be sent over the
+     * Guacamole protocol.
+     *
+     * @return
+     *     The current instruction in the form it would be sent over the
+     *     Guacamole protocol.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+
+}
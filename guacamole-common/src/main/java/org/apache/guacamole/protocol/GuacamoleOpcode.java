@@ -0,0 +1,442 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All opcodes defined by the Guacamole protocol. Parsed instructions having
+ * a known opcode share the interned String value of that opcode, and their
+ * opcode may be compared by identity or used within a switch statement
+ * rather than compared character by character.
+ */
+public enum GuacamoleOpcode {
+
+    /**
+     * Acknowledges the receipt of a blob or the success or failure of a stream.
+     */
+    ACK("ack"),
+
+    /**
+     * Adds an arc to the current path of a layer.
+     */
+    ARC("arc"),
+
+    /**
+     * Lists the parameters accepted by a protocol during the handshake.
+     */
+    ARGS("args"),
+
+    /**
+     * Declares supported audio mimetypes or allocates an audio stream.
+     */
+    AUDIO("audio"),
+
+    /**
+     * Sends a chunk of base64-encoded data along a stream.
+     */
+    BLOB("blob"),
+
+    /**
+     * Allocates a stream containing the contents of an object.
+     */
+    BODY("body"),
+
+    /**
+     * Fills the current path of a layer with a color.
+     */
+    CFILL("cfill"),
+
+    /**
+     * Clips all future drawing operations of a layer to its current path.
+     */
+    CLIP("clip"),
+
+    /**
+     * Allocates a stream containing clipboard data.
+     */
+    CLIPBOARD("clipboard"),
+
+    /**
+     * Closes the current path of a layer.
+     */
+    CLOSE("close"),
+
+    /**
+     * Completes the handshake, providing values for each protocol parameter.
+     */
+    CONNECT("connect"),
+
+    /**
+     * Copies image data from one layer to another.
+     */
+    COPY("copy"),
+
+    /**
+     * Strokes the current path of a layer with a color.
+     */
+    CSTROKE("cstroke"),
+
+    /**
+     * Sets the mouse cursor to image data from a layer.
+     */
+    CURSOR("cursor"),
+
+    /**
+     * Adds a cubic bezier curve to the current path of a layer.
+     */
+    CURVE("curve"),
+
+    /**
+     * Ends the connection.
+     */
+    DISCONNECT("disconnect"),
+
+    /**
+     * Removes a layer.
+     */
+    DISPOSE("dispose"),
+
+    /**
+     * Sets the transformation matrix of a layer.
+     */
+    DISTORT("distort"),
+
+    /**
+     * Closes a stream.
+     */
+    END("end"),
+
+    /**
+     * Reports an error, closing the connection.
+     */
+    ERROR("error"),
+
+    /**
+     * Allocates a stream containing a file.
+     */
+    FILE("file"),
+
+    /**
+     * Exposes a filesystem object.
+     */
+    FILESYSTEM("filesystem"),
+
+    /**
+     * Requests the contents of a stream within an object.
+     */
+    GET("get"),
+
+    /**
+     * Resets the transformation matrix of a layer.
+     */
+    IDENTITY("identity"),
+
+    /**
+     * Declares supported image mimetypes during the handshake.
+     */
+    IMAGE("image"),
+
+    /**
+     * Allocates a stream containing image data to be drawn to a layer.
+     */
+    IMG("img"),
+
+    /**
+     * Reports a key press or release.
+     */
+    KEY("key"),
+
+    /**
+     * Fills the current path of a layer with image data from another layer.
+     */
+    LFILL("lfill"),
+
+    /**
+     * Adds a line segment to the current path of a layer.
+     */
+    LINE("line"),
+
+    /**
+     * Strokes the current path of a layer with image data from another layer.
+     */
+    LSTROKE("lstroke"),
+
+    /**
+     * Reports or updates the position and button state of the mouse.
+     */
+    MOUSE("mouse"),
+
+    /**
+     * Moves a layer relative to another layer.
+     */
+    MOVE("move"),
+
+    /**
+     * Sets the human-readable name of the connection.
+     */
+    NAME("name"),
+
+    /**
+     * Encapsulates an instruction within an independent stream.
+     */
+    NEST("nest"),
+
+    /**
+     * Performs no operation, keeping the connection alive.
+     */
+    NOP("nop"),
+
+    /**
+     * Allocates a named pipe stream.
+     */
+    PIPE("pipe"),
+
+    /**
+     * Restores the previously-saved state of a layer.
+     */
+    POP("pop"),
+
+    /**
+     * Saves the current state of a layer.
+     */
+    PUSH("push"),
+
+    /**
+     * Allocates a stream to be written to an object.
+     */
+    PUT("put"),
+
+    /**
+     * Completes the handshake, providing the connection ID.
+     */
+    READY("ready"),
+
+    /**
+     * Adds a rectangle to the current path of a layer.
+     */
+    RECT("rect"),
+
+    /**
+     * Resets the state of a layer.
+     */
+    RESET("reset"),
+
+    /**
+     * Begins the handshake, selecting a protocol or connection.
+     */
+    SELECT("select"),
+
+    /**
+     * Sets a property of a layer.
+     */
+    SET("set"),
+
+    /**
+     * Sets the opacity of a layer.
+     */
+    SHADE("shade"),
+
+    /**
+     * Declares or changes the size of the display or a layer.
+     */
+    SIZE("size"),
+
+    /**
+     * Adds the initial point of a new subpath to a layer.
+     */
+    START("start"),
+
+    /**
+     * Marks the end of a frame.
+     */
+    SYNC("sync"),
+
+    /**
+     * Transfers image data between layers using a binary operation.
+     */
+    TRANSFER("transfer"),
+
+    /**
+     * Applies a transformation matrix to a layer.
+     */
+    TRANSFORM("transform"),
+
+    /**
+     * Undefines an object.
+     */
+    UNDEFINE("undefine"),
+
+    /**
+     * Declares supported video mimetypes or allocates a video stream.
+     */
+    VIDEO("video");
+
+    /**
+     * The value of this opcode, as it appears within the Guacamole protocol.
+     */
+    private final String value;
+
+    /**
+     * The length of the longest opcode value, in characters.
+     */
+    private static final int MAX_LENGTH;
+
+    /**
+     * All opcodes, grouped by the length of their values. The opcodes having
+     * values of a particular length are stored at the index equal to that
+     * length.
+     */
+    private static final GuacamoleOpcode[][] opcodesByLength;
+
+    /**
+     * Map of opcode values to their corresponding GuacamoleOpcode.
+     */
+    private static final Map<String, GuacamoleOpcode> opcodesByValue;
+
+    static {
+
+        // Determine length of longest opcode
+        int maxLength = 0;
+        for (GuacamoleOpcode opcode : values())
+            maxLength = Math.max(maxLength, opcode.value.length());
+
+        MAX_LENGTH = maxLength;
+
+        // Count opcodes of each length
+        int[] counts = new int[MAX_LENGTH + 1];
+        for (GuacamoleOpcode opcode : values())
+            counts[opcode.value.length()]++;
+
+        // Group opcodes by length
+        opcodesByLength = new GuacamoleOpcode[MAX_LENGTH + 1][];
+        for (int i = 0; i <= MAX_LENGTH; i++)
+            opcodesByLength[i] = new GuacamoleOpcode[counts[i]];
+
+        opcodesByValue = new HashMap<String, GuacamoleOpcode>();
+        for (GuacamoleOpcode opcode : values()) {
+            int length = opcode.value.length();
+            opcodesByLength[length][--counts[length]] = opcode;
+            opcodesByValue.put(opcode.value, opcode);
+        }
+
+    }
+
+    /**
+     * Initializes a GuacamoleOpcode having the given value.
+     *
+     * @param value
+     *     The value of the opcode, as it appears within the Guacamole
+     *     protocol.
+     */
+    private GuacamoleOpcode(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the value of this opcode, as it appears within the Guacamole
+     * protocol. The returned String is interned, and is the same instance
+     * returned by GuacamoleInstruction.getOpcode() for all parsed
+     * instructions having this opcode.
+     *
+     * @return
+     *     The value of this opcode.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns whether the value of this opcode is stored at the given
+     * location within the given buffer. The buffer must contain at least as
+     * many characters past the given offset as the length of this opcode.
+     *
+     * @param buffer
+     *     The buffer to compare against.
+     *
+     * @param offset
+     *     The offset of the first character to compare within the buffer.
+     *
+     * @return
+     *     true if the characters at the given location match the value of
+     *     this opcode, false otherwise.
+     */
+    private boolean valueEquals(char[] buffer, int offset) {
+
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[offset + i] != value.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the GuacamoleOpcode having the given value, if any.
+     *
+     * @param value
+     *     The value of the opcode to return.
+     *
+     * @return
+     *     The GuacamoleOpcode having the given value, or null if no such
+     *     opcode is defined.
+     */
+    public static GuacamoleOpcode fromValue(String value) {
+        return opcodesByValue.get(value);
+    }
+
+    /**
+     * Returns the GuacamoleOpcode whose value is stored at the given location
+     * within the given buffer, if any. No objects are created by this
+     * lookup.
+     *
+     * @param buffer
+     *     The buffer containing the value of the opcode.
+     *
+     * @param offset
+     *     The offset of the first character of the value within the buffer.
+     *
+     * @param length
+     *     The length of the value, in characters.
+     *
+     * @return
+     *     The GuacamoleOpcode having the given value, or null if no such
+     *     opcode is defined.
+     */
+    public static GuacamoleOpcode fromValue(char[] buffer, int offset,
+            int length) {
+
+        // No opcodes are longer than the longest opcode
+        if (length > MAX_LENGTH)
+            return null;
+
+        // Compare against only those opcodes having the same length
+        for (GuacamoleOpcode opcode : opcodesByLength[length]) {
+            if (opcode.valueEquals(buffer, offset))
+                return opcode;
+        }
+
+        // No such opcode
+        return null;
+
+    }
+
+}
@@ -96,6 +96,12 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
      */
     private int elementCount = 0;
 
+    /**
+     * The known opcode of the instruction currently being parsed, or null if
+     * the opcode has not yet been parsed or is not a known opcode.
+     */
+    private GuacamoleOpcode knownOpcode;
+
     /**
      * All currently parsed elements.
      */
@@ -163,8 +169,17 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
         // Parse element content, if available
         if (state == State.PARSING_CONTENT && charsParsed + elementLength + 1 <= length) {
 
-            // Read element
-            String element = new String(chunk, offset + charsParsed, elementLength);
+            // Identify known opcodes without creating a new String
+            if (elementCount == 0)
+                knownOpcode = GuacamoleOpcode.fromValue(chunk,
+                        offset + charsParsed, elementLength);
+
+            // Read element, reusing the interned value of known opcodes
+            String element;
+            if (elementCount == 0 && knownOpcode != null)
+                element = knownOpcode.getValue();
+            else
+                element = new String(chunk, offset + charsParsed, elementLength);
             charsParsed += elementLength;
             elementLength = 0;
 
@@ -177,8 +192,11 @@ public class GuacamoleParser implements Iterator<GuacamoleInstruction> {
             // If semicolon, store end-of-instruction
             if (terminator == ';') {
                 state = State.COMPLETE;
-                parsedInstruction = new GuacamoleInstruction(elements[0],
-                        Arrays.asList(elements).subList(1, elementCount));
+                List<String> args = Arrays.asList(elements).subList(1, elementCount);
+                if (knownOpcode != null)
+                    parsedInstruction = new GuacamoleInstruction(knownOpcode, args);
+                else
+                    parsedInstruction = new GuacamoleInstruction(elements[0], args);
             }
 
             // If comma, move on to next element
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * GuacamoleFilter which is additionally able to filter instructions in their
+ * raw form, through a GuacamoleInstructionView. Readers which support this
+ * form of filtering will use filter(GuacamoleInstructionView) in preference to
+ * filter(GuacamoleInstruction), such that instructions which the filter simply
+ * allows through need never be fully parsed. Implementations must behave
+ * identically regardless of which function is invoked.
+ */
+public interface GuacamoleViewFilter extends GuacamoleFilter {
+
+    /**
+     * Applies the filter to the instruction currently loaded within the given
+     * view, returning the same view, the same view reloaded with a modified
+     * version of the original instruction, or null, depending on the
+     * implementation.
+     *
+     * @param instruction
+     *     A view of the instruction to filter. The view may be reloaded with
+     *     a different instruction if the instruction is to be overridden.
+     *
+     * @return
+     *     The given view, if the instruction is to be allowed or has been
+     *     overridden, or null if the instruction is to be dropped.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs filtering the instruction, or if the instruction
+     *     must be explicitly denied.
+     */
+    public GuacamoleInstructionView filter(GuacamoleInstructionView instruction)
+            throws GuacamoleException;
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleInstructionBatcher;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads from a single tunnel on behalf of HTTP tunnel read requests which are
+ * held open without occupying a servlet container thread, such as Servlet 3.0
+ * asynchronous requests. The tunnel is read by a blocking read loop running
+ * on a TunnelReaderExecutor, thus data is written as soon as it is received
+ * from guacd, regardless of whether the tunnel's reader is able to report
+ * that data is available (the readers of SSL connections cannot). As with
+ * synchronous reads, only one read request is written to at any time, and
+ * that request is ended only once the client has made another read request,
+ * which then takes its place.
+ *
+ * @param <T>
+ *     The type of object representing each held-open read request.
+ */
+public abstract class AsyncHTTPTunnelReader<T> implements Runnable {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHTTPTunnelReader.class);
+
+    /**
+     * The special instruction which denotes the end of the response to a
+     * read request.
+     */
+    private static final byte[] END_OF_INSTRUCTIONS = { '0', '.', ';' };
+
+    /**
+     * The tunnel being read.
+     */
+    private final GuacamoleTunnel tunnel;
+
+    /**
+     * Batcher producing the UTF-8 data written to each read request.
+     */
+    private final GuacamoleInstructionBatcher batcher;
+
+    /**
+     * The executor which runs the read loop of this reader.
+     */
+    private final TunnelReaderExecutor executor;
+
+    /**
+     * The read request currently being written to, or null if there is no
+     * such request. Once the read loop has started, this is accessed only by
+     * the read loop.
+     */
+    private T current;
+
+    /**
+     * The output stream of the response to the current read request.
+     */
+    private OutputStream out;
+
+    /**
+     * The read request which should replace the current request once the
+     * read loop next has data to write, or null if there is no such request.
+     */
+    private T next;
+
+    /**
+     * Whether the read loop has been started.
+     */
+    private boolean started = false;
+
+    /**
+     * Whether the tunnel has been closed and all read requests ended.
+     */
+    private boolean finished = false;
+
+    /**
+     * Creates a new AsyncHTTPTunnelReader which reads from the given tunnel
+     * using a read loop run by the given executor. The read loop is started
+     * when the first read request is added.
+     *
+     * @param tunnel
+     *     The tunnel to read from.
+     *
+     * @param policy
+     *     The policy dictating when data written to each read request is
+     *     flushed.
+     *
+     * @param executor
+     *     The executor which should run the read loop.
+     */
+    public AsyncHTTPTunnelReader(GuacamoleTunnel tunnel,
+            GuacamoleBatchPolicy policy, TunnelReaderExecutor executor) {
+
+        this.tunnel = tunnel;
+        this.executor = executor;
+
+        // The reader is retrieved once and reused for all reads, with the
+        // tunnel's reader lock acquired for the duration of the read loop
+        this.batcher = new GuacamoleInstructionBatcher(tunnel.acquireReader(), policy);
+        tunnel.releaseReader();
+
+    }
+
+    /**
+     * Returns the tunnel being read.
+     *
+     * @return
+     *     The tunnel being read.
+     */
+    public GuacamoleTunnel getTunnel() {
+        return tunnel;
+    }
+
+    /**
+     * Returns the output stream of the response to the given read request.
+     *
+     * @param request
+     *     The read request whose response output stream should be returned.
+     *
+     * @return
+     *     The output stream of the response to the given read request.
+     *
+     * @throws IOException
+     *     If the output stream cannot be obtained.
+     */
+    protected abstract OutputStream getOutputStream(T request) throws IOException;
+
+    /**
+     * Completes the response to the given read request, after all data
+     * (including the end-of-instructions marker) has been written.
+     *
+     * @param request
+     *     The read request to complete.
+     */
+    protected abstract void complete(T request);
+
+    /**
+     * Completes the response to the given read request with an error
+     * describing the given cause, if no data has yet been sent in that
+     * response.
+     *
+     * @param request
+     *     The read request to complete.
+     *
+     * @param cause
+     *     The error which caused the tunnel to close.
+     *
+     * @return
+     *     true if the error was sent and the request completed, false if
+     *     data has already been sent and the request must instead be ended
+     *     normally.
+     */
+    protected abstract boolean sendError(T request, GuacamoleException cause);
+
+    /**
+     * Called once, when the tunnel is about to be closed due to the end of
+     * the instruction stream, an error, or the client disconnecting. The
+     * tunnel should be deregistered such that no further read requests are
+     * added to this reader.
+     */
+    protected abstract void tunnelClosed();
+
+    /**
+     * Ends the given read request, writing the end-of-instructions marker to
+     * its response.
+     *
+     * @param request
+     *     The read request to end.
+     */
+    private void end(T request) {
+
+        try {
+            OutputStream stream = getOutputStream(request);
+            stream.write(END_OF_INSTRUCTIONS);
+            stream.flush();
+        }
+        catch (IOException e) {
+            logger.debug("Error writing to servlet output stream", e);
+        }
+        finally {
+            complete(request);
+        }
+
+    }
+
+    /**
+     * Ends the current read request, if any, such that all further data is
+     * written to the given read request. Once the read loop has started,
+     * this function may only be invoked by the read loop.
+     *
+     * @param request
+     *     The read request which should become the current request.
+     *
+     * @throws IOException
+     *     If the output stream of the given request cannot be obtained.
+     */
+    private void handOver(T request) throws IOException {
+
+        if (current != null)
+            end(current);
+
+        current = request;
+        out = getOutputStream(request);
+
+    }
+
+    /**
+     * Closes the tunnel, ending all pending read requests. If an error caused
+     * the tunnel to close, that error is reported in the response to the
+     * current read request if no data has yet been sent.
+     *
+     * @param cause
+     *     The error which caused the tunnel to close, or null if the tunnel
+     *     closed normally or due to an I/O error.
+     */
+    private synchronized void finish(GuacamoleException cause) {
+
+        finished = true;
+
+        tunnelClosed();
+        try {
+            tunnel.close();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to close HTTP tunnel.", e);
+        }
+
+        // Report error if still possible, otherwise end normally
+        if (current != null) {
+            if (cause == null || !sendError(current, cause))
+                end(current);
+        }
+
+        if (next != null)
+            end(next);
+
+        current = null;
+        next = null;
+
+    }
+
+    /**
+     * Adds the given read request. The first read request added starts the
+     * read loop. Later requests replace the current request as soon as the
+     * read loop next has data to write, ending the request they replace. If
+     * the tunnel has already closed, the given request is ended immediately.
+     *
+     * @param request
+     *     The new read request.
+     */
+    public synchronized void addRequest(T request) {
+
+        // End immediately if the tunnel has already closed
+        if (finished) {
+            end(request);
+            return;
+        }
+
+        // Leave hand over to the running read loop, replacing any older
+        // request which is still waiting
+        if (started) {
+            if (next != null)
+                end(next);
+            next = request;
+            return;
+        }
+
+        // Otherwise, this is the first request - start reading
+        try {
+            handOver(request);
+        }
+        catch (IOException e) {
+            logger.debug("Error writing to servlet output stream", e);
+            finish(null);
+            return;
+        }
+
+        started = true;
+        try {
+            executor.execute(this);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("HTTP tunnel \"{}\" cannot be read: {}",
+                    tunnel.getUUID(), e.getMessage());
+            logger.debug("Unable to start read loop of HTTP tunnel.", e);
+            finish(e);
+        }
+
+    }
+
+    @Override
+    public void run() {
+
+        GuacamoleException cause = null;
+
+        tunnel.acquireReader();
+        try {
+
+            // Block until each batch of instructions is received, writing
+            // each batch as soon as it is complete
+            for (;;) {
+
+                ByteBuffer batch = batcher.readUTF8Batch();
+                if (batch == null)
+                    throw new GuacamoleConnectionClosedException("Tunnel reached end of stream.");
+
+                // Hand over to any newly-arrived read request, ending the
+                // request it replaces
+                T waiting;
+                synchronized (this) {
+                    waiting = next;
+                    next = null;
+                }
+
+                if (waiting != null)
+                    handOver(waiting);
+
+                out.write(batch.array(), batch.arrayOffset() + batch.position(),
+                        batch.remaining());
+                out.flush();
+
+            }
+
+        }
+        catch (GuacamoleConnectionClosedException e) {
+            logger.debug("Connection to guacd closed.", e);
+        }
+        catch (GuacamoleException e) {
+            logger.error("HTTP tunnel read failed: {}", e.getMessage());
+            logger.debug("Internal error in HTTP tunnel.", e);
+            cause = e;
+        }
+        catch (IOException e) {
+            logger.debug("Error writing to servlet output stream", e);
+        }
+        finally {
+            tunnel.releaseReader();
+        }
+
+        finish(cause);
+
+    }
+
+}
@@ -19,6 +19,15 @@
 
 package org.apache.guacamole.servlet;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
 import org.apache.guacamole.net.GuacamoleTunnel;
 
@@ -34,21 +43,65 @@ import org.apache.guacamole.net.GuacamoleTunnel;
  */
 class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
 
+    /**
+     * The size of the buffers used to decode the bodies of write requests,
+     * in bytes and characters respectively.
+     */
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    /**
+     * The character set used by the bodies of write requests.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     /**
      * The last time this tunnel was accessed.
      */
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime;
+
+    /**
+     * The number of milliseconds to allow between accesses to this tunnel
+     * before it is considered unused.
+     */
+    private final long timeout;
+
+    /**
+     * Buffer receiving the UTF-8 encoded body of each write request, reused
+     * for all write requests to this tunnel. This buffer is allocated upon
+     * the first write request, and is only accessed while the writer of this
+     * tunnel is acquired.
+     */
+    private ByteBuffer writeBytes;
+
+    /**
+     * Buffer receiving the characters decoded from writeBytes, reused for
+     * all write requests to this tunnel.
+     */
+    private CharBuffer writeChars;
+
+    /**
+     * Decoder which converts writeBytes into writeChars, reused for all
+     * write requests to this tunnel.
+     */
+    private CharsetDecoder writeDecoder;
 
     /**
      * Creates a new GuacamoleHTTPTunnel which wraps the given tunnel.
      * Absolutely all function calls on this new GuacamoleHTTPTunnel will be
-     * delegated to the underlying GuacamoleTunnel.
+     * delegated to the underlying GuacamoleTunnel. The new tunnel is
+     * initially marked as accessed.
      *
      * @param wrappedTunnel
      *     The GuacamoleTunnel to wrap within this GuacamoleHTTPTunnel.
+     *
+     * @param timeout
+     *     The number of milliseconds to allow between accesses to the tunnel
+     *     before it is considered unused.
      */
-    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel) {
+    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel, long timeout) {
         super(wrappedTunnel);
+        this.timeout = timeout;
+        access();
     }
 
     /**
@@ -70,4 +123,99 @@ class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
         return lastAccessedTime;
     }
 
+    /**
+     * Returns the number of milliseconds to allow between accesses to this
+     * tunnel before it is considered unused.
+     *
+     * @return
+     *     The number of milliseconds to allow between accesses to this
+     *     tunnel.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Decodes the bytes currently within writeBytes, writing the resulting
+     * characters to the given writer. Any incomplete UTF-8 sequence at the
+     * end of writeBytes is retained for the next call.
+     *
+     * @param writer
+     *     The writer to which the decoded characters should be written.
+     *
+     * @param endOfInput
+     *     Whether no further bytes will follow those within writeBytes.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing to the given writer.
+     */
+    private void decodeAndWrite(GuacamoleWriter writer, boolean endOfInput)
+            throws GuacamoleException {
+
+        // Decode all complete characters. As UTF-8 never encodes a character
+        // using fewer bytes than its UTF-16 length, writeChars cannot
+        // overflow.
+        writeBytes.flip();
+        writeChars.clear();
+        writeDecoder.decode(writeBytes, writeChars, endOfInput);
+        if (endOfInput)
+            writeDecoder.flush(writeChars);
+        writeBytes.compact();
+
+        // Write decoded characters, if any
+        if (writeChars.position() > 0)
+            writer.write(writeChars.array(), 0, writeChars.position());
+
+    }
+
+    /**
+     * Transfers the UTF-8 encoded instructions within the given stream to
+     * the given writer, until the end of the stream is reached or this tunnel
+     * is closed. The stream may contain any number of instructions, which
+     * need not end on an instruction boundary within each read from the
+     * stream. The same buffers are reused for each call to this function,
+     * thus the writer of this tunnel must be acquired for the duration of the
+     * call.
+     *
+     * @param input
+     *     The stream containing the UTF-8 encoded body of a write request.
+     *
+     * @param writer
+     *     The writer of this tunnel, as returned by acquireWriter().
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the given stream.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing to the given writer.
+     */
+    public void write(InputStream input, GuacamoleWriter writer)
+            throws IOException, GuacamoleException {
+
+        // Allocate buffers upon first use
+        if (writeBytes == null) {
+            writeBytes = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            writeChars = CharBuffer.allocate(WRITE_BUFFER_SIZE);
+            writeDecoder = UTF8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        writeBytes.clear();
+        writeDecoder.reset();
+
+        // Transfer data using buffers
+        int length;
+        while (isOpen() && (length = input.read(writeBytes.array(),
+                writeBytes.position(), writeBytes.remaining())) != -1) {
+            writeBytes.position(writeBytes.position() + length);
+            decodeAndWrite(writer, false);
+        }
+
+        // Write any remaining (malformed) data
+        if (isOpen())
+            decodeAndWrite(writer, true);
+
+    }
+
 }
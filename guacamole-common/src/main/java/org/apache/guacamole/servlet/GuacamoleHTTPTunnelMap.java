@@ -19,15 +19,12 @@
 
 package org.apache.guacamole.servlet;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.util.ExpirationHandler;
+import org.apache.guacamole.util.ExpirationWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,17 +42,17 @@ class GuacamoleHTTPTunnelMap {
     private static final Logger logger = LoggerFactory.getLogger(GuacamoleHTTPTunnelMap.class);
 
     /**
-     * The number of seconds to wait between tunnel accesses before timing out
-     * Note that this will be enforced only within a factor of 2. If a tunnel
-     * is unused, it will take between TUNNEL_TIMEOUT and TUNNEL_TIMEOUT*2
-     * seconds before that tunnel is closed and removed.
+     * The number of milliseconds between each check for unused tunnels.
+     * Unused tunnels are closed within this long of timing out.
      */
-    private static final int TUNNEL_TIMEOUT = 15;
+    private static final long TIMEOUT_RESOLUTION = 1000;
 
     /**
-     * Executor service which runs the periodic tunnel timeout task.
+     * The number of milliseconds to wait between tunnel accesses before
+     * timing out, unless a different timeout is given when the tunnel is
+     * registered.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    public static final long DEFAULT_TUNNEL_TIMEOUT = 15000;
 
     /**
      * Map of all tunnels that are using HTTP, indexed by tunnel UUID.
@@ -64,79 +61,50 @@ class GuacamoleHTTPTunnelMap {
             new ConcurrentHashMap<String, GuacamoleHTTPTunnel>();
 
     /**
-     * Creates a new GuacamoleHTTPTunnelMap which automatically closes and
-     * removes HTTP tunnels which are no longer in use.
+     * Timer wheel which closes and removes tunnels once they have not been
+     * accessed for their timeout.
      */
-    public GuacamoleHTTPTunnelMap() {
-
-        // Check for unused tunnels every few seconds
-        executor.scheduleAtFixedRate(
-            new TunnelTimeoutTask(TUNNEL_TIMEOUT * 1000l),
-            TUNNEL_TIMEOUT, TUNNEL_TIMEOUT, TimeUnit.SECONDS);
-
-    }
+    private final ExpirationWheel<String> expirationWheel =
+            new ExpirationWheel<String>(new TunnelExpirationHandler(),
+                    TIMEOUT_RESOLUTION, DEFAULT_TUNNEL_TIMEOUT);
 
     /**
-     * Task which iterates through all registered tunnels, removing and those
-     * tunnels which have not been accessed for a given number of milliseconds.
+     * Handler which closes and removes tunnels which have not been accessed
+     * within their timeout.
      */
-    private class TunnelTimeoutTask implements Runnable {
-
-        /**
-         * The maximum amount of time to allow between accesses to any one
-         * HTTP tunnel, in milliseconds.
-         */
-        private final long tunnelTimeout;
-
-        /**
-         * Creates a new task which automatically closes and removes tunnels
-         * which have not been accessed for at least the given number of
-         * milliseconds.
-         *
-         * @param tunnelTimeout
-         *     The maximum amount of time to allow between separate tunnel
-         *     read/write requests, in milliseconds.
-         */
-        public TunnelTimeoutTask(long tunnelTimeout) {
-            this.tunnelTimeout = tunnelTimeout;
-        }
+    private class TunnelExpirationHandler implements ExpirationHandler<String> {
 
         @Override
-        public void run() {
-
-            // Get current time
-            long now = System.currentTimeMillis();
+        public long getExpirationTime(String uuid) {
 
-            // For each tunnel, close and remove any tunnels which have expired
-            Iterator<Map.Entry<String, GuacamoleHTTPTunnel>> entries = tunnelMap.entrySet().iterator();
-            while (entries.hasNext()) {
+            // Tunnels which are already removed need no further action
+            GuacamoleHTTPTunnel tunnel = tunnelMap.get(uuid);
+            if (tunnel == null)
+                return 0;
 
-                Map.Entry<String, GuacamoleHTTPTunnel> entry = entries.next();
-                GuacamoleHTTPTunnel tunnel = entry.getValue();
+            return tunnel.getLastAccessedTime() + tunnel.getTimeout();
 
-                // Get elapsed time since last access
-                long age = now - tunnel.getLastAccessedTime();
-
-                // If tunnel is too old, close and remove it
-                if (age >= tunnelTimeout) {
+        }
 
-                    // Remove old entry
-                    logger.debug("HTTP tunnel \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
+        @Override
+        public void expire(String uuid) {
 
-                    // Attempt to close tunnel
-                    try {
-                        tunnel.close();
-                    }
-                    catch (GuacamoleException e) {
-                        logger.debug("Unable to close expired HTTP tunnel.", e);
-                    }
+            // Remove old entry
+            GuacamoleHTTPTunnel tunnel = tunnelMap.remove(uuid);
+            if (tunnel == null)
+                return;
 
-                }
+            logger.debug("HTTP tunnel \"{}\" has timed out.", uuid);
 
-            } // end for each tunnel
+            // Attempt to close tunnel
+            try {
+                tunnel.close();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to close expired HTTP tunnel.", e);
+            }
 
-        } // end timeout task run()
+        }
 
     }
 
@@ -175,9 +143,15 @@ class GuacamoleHTTPTunnelMap {
      * @param tunnel
      *     The GuacamoleTunnel being registered, its associated connection
      *     having just been established via HTTP.
+     *
+     * @param timeout
+     *     The number of milliseconds to wait between accesses to the tunnel
+     *     before closing and removing it.
      */
-    public void put(String uuid, GuacamoleTunnel tunnel) {
-        tunnelMap.put(uuid, new GuacamoleHTTPTunnel(tunnel));
+    public void put(String uuid, GuacamoleTunnel tunnel, long timeout) {
+        GuacamoleHTTPTunnel httpTunnel = new GuacamoleHTTPTunnel(tunnel, timeout);
+        tunnelMap.put(uuid, httpTunnel);
+        expirationWheel.schedule(uuid, httpTunnel.getLastAccessedTime() + timeout);
     }
 
     /**
@@ -194,6 +168,7 @@ class GuacamoleHTTPTunnelMap {
      *     exists and no removal was performed.
      */
     public GuacamoleHTTPTunnel remove(String uuid) {
+        expirationWheel.cancel(uuid);
         return tunnelMap.remove(uuid);
     }
 
@@ -202,7 +177,7 @@ class GuacamoleHTTPTunnelMap {
      * registered and reclaiming any resources.
      */
     public void shutdown() {
-        executor.shutdownNow();
+        expirationWheel.shutdown();
     }
 
 }
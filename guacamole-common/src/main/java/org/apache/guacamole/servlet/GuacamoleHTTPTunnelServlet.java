@@ -19,12 +19,15 @@
 
 package org.apache.guacamole.servlet;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,8 +37,10 @@ import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.UTF8GuacamoleReader;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
@@ -82,6 +87,12 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      */
     private static final int UUID_LENGTH = 36;
 
+    /**
+     * The UTF-8 encoded marker which denotes the end of the instructions
+     * within a read response.
+     */
+    private static final byte[] END_OF_INSTRUCTIONS = { '0', '.', ';' };
+
     /**
      * Registers the given tunnel such that future read/write requests to that
      * tunnel will be properly directed.
@@ -90,7 +101,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      *     The tunnel to register.
      */
     protected void registerTunnel(GuacamoleTunnel tunnel) {
-        tunnels.put(tunnel.getUUID().toString(), tunnel);
+        tunnels.put(tunnel.getUUID().toString(), tunnel, getTunnelTimeout());
         logger.debug("Registered tunnel \"{}\".", tunnel.getUUID());
     }
 
@@ -290,6 +301,181 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
     protected abstract GuacamoleTunnel doConnect(HttpServletRequest request)
             throws GuacamoleException;
 
+    /**
+     * Returns the number of milliseconds to wait between read or write
+     * requests to a tunnel before that tunnel is considered unused, closed,
+     * and deregistered. The timeout is read once as each tunnel is
+     * registered. By default, tunnels time out after 15 seconds.
+     *
+     * @return
+     *     The number of milliseconds to allow between requests to each
+     *     tunnel.
+     */
+    protected long getTunnelTimeout() {
+        return GuacamoleHTTPTunnelMap.DEFAULT_TUNNEL_TIMEOUT;
+    }
+
+    /**
+     * Returns the policy dictating when instruction data written to the
+     * response of a read request is flushed to the client. By default, the
+     * shared policy returned by GuacamoleBatchPolicy.getDefault() is used.
+     *
+     * @return
+     *     The policy dictating when instruction data is flushed to the
+     *     client.
+     */
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return GuacamoleBatchPolicy.getDefault();
+    }
+
+    /**
+     * Transfers instructions from the given reader to the given output stream
+     * as UTF-8, flushing the response as dictated by the batch policy returned
+     * by getBatchPolicy(). Transfer continues until another request is
+     * waiting to read from the tunnel, the tunnel is closed, or the end of the
+     * instruction stream is reached. At least one instruction is always
+     * transferred.
+     *
+     * @param tunnel
+     *     The tunnel being read from.
+     *
+     * @param reader
+     *     The reader of the tunnel, which must already have been acquired.
+     *
+     * @param response
+     *     The HttpServletResponse associated with the read request received.
+     *
+     * @param out
+     *     The output stream of the given response.
+     *
+     * @return
+     *     true if the end of the instruction stream was reached, false
+     *     otherwise.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the tunnel, or if the end of
+     *     the instruction stream is reached before any data is read.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the response.
+     */
+    private boolean transfer(GuacamoleTunnel tunnel, GuacamoleReader reader,
+            HttpServletResponse response, OutputStream out)
+            throws GuacamoleException, IOException {
+
+        // Get writer for response
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+
+        // Deregister tunnel and throw error if we reach EOF without
+        // having ever sent any data
+        char[] message = reader.read();
+        if (message == null)
+            throw new GuacamoleConnectionClosedException("Tunnel reached end of stream.");
+
+        GuacamoleBatchPolicy policy = getBatchPolicy();
+        long batchStart = 0;
+        int batchLength = 0;
+
+        // For all messages, until another stream is ready (we send at least one message)
+        do {
+
+            if (batchLength == 0)
+                batchStart = System.nanoTime();
+
+            // Get message output bytes
+            writer.write(message, 0, message.length);
+            batchLength += message.length;
+
+            // Flush at frame boundaries, or as dictated by the batch policy
+            if (policy.shouldFlush(GuacamoleBatchPolicy.isFrameEnd(message, 0, message.length),
+                    batchLength, batchStart, reader)) {
+                writer.flush();
+                response.flushBuffer();
+                batchLength = 0;
+            }
+
+            // No more messages another stream can take over
+            if (tunnel.hasQueuedReaderThreads())
+                break;
+
+        } while (tunnel.isOpen() && (message = reader.read()) != null);
+
+        writer.flush();
+        return message == null;
+
+    }
+
+    /**
+     * Transfers instructions from the given reader to the given output stream
+     * exactly as received, without decoding or re-encoding their UTF-8 data.
+     * Transfer otherwise behaves identically to transfer().
+     *
+     * @param tunnel
+     *     The tunnel being read from.
+     *
+     * @param reader
+     *     The reader of the tunnel, which must already have been acquired.
+     *
+     * @param response
+     *     The HttpServletResponse associated with the read request received.
+     *
+     * @param out
+     *     The output stream of the given response.
+     *
+     * @return
+     *     true if the end of the instruction stream was reached, false
+     *     otherwise.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the tunnel, or if the end of
+     *     the instruction stream is reached before any data is read.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the response.
+     */
+    private boolean transferUTF8(GuacamoleTunnel tunnel,
+            UTF8GuacamoleReader reader, HttpServletResponse response,
+            OutputStream out) throws GuacamoleException, IOException {
+
+        // Deregister tunnel and throw error if we reach EOF without
+        // having ever sent any data
+        ByteBuffer message = reader.readUTF8();
+        if (message == null)
+            throw new GuacamoleConnectionClosedException("Tunnel reached end of stream.");
+
+        GuacamoleBatchPolicy policy = getBatchPolicy();
+        long batchStart = 0;
+        int batchLength = 0;
+
+        // For all messages, until another stream is ready (we send at least one message)
+        do {
+
+            if (batchLength == 0)
+                batchStart = System.nanoTime();
+
+            // Write message bytes directly from reader buffer
+            out.write(message.array(), message.arrayOffset() + message.position(),
+                    message.remaining());
+            batchLength += GuacamoleBatchPolicy.getCharacterLength(message);
+
+            // Flush at frame boundaries, or as dictated by the batch policy
+            if (policy.shouldFlush(GuacamoleBatchPolicy.isFrameEnd(message),
+                    batchLength, batchStart, reader)) {
+                out.flush();
+                response.flushBuffer();
+                batchLength = 0;
+            }
+
+            // No more messages another stream can take over
+            if (tunnel.hasQueuedReaderThreads())
+                break;
+
+        } while (tunnel.isOpen() && (message = reader.readUTF8()) != null);
+
+        return message == null;
+
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a read request.
      * This function should in general not be overridden, as it already
@@ -333,45 +519,28 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
             response.setContentType("application/octet-stream");
             response.setHeader("Cache-Control", "no-cache");
 
-            // Get writer for response
-            Writer out = new BufferedWriter(new OutputStreamWriter(
-                    response.getOutputStream(), "UTF-8"));
+            // Get output stream for response
+            OutputStream out = new BufferedOutputStream(response.getOutputStream());
 
             // Stream data to response, ensuring output stream is closed
             try {
 
-                // Deregister tunnel and throw error if we reach EOF without
-                // having ever sent any data
-                char[] message = reader.read();
-                if (message == null)
-                    throw new GuacamoleConnectionClosedException("Tunnel reached end of stream.");
-
-                // For all messages, until another stream is ready (we send at least one message)
-                do {
-
-                    // Get message output bytes
-                    out.write(message, 0, message.length);
-
-                    // Flush if we expect to wait
-                    if (!reader.available()) {
-                        out.flush();
-                        response.flushBuffer();
-                    }
-
-                    // No more messages another stream can take over
-                    if (tunnel.hasQueuedReaderThreads())
-                        break;
-
-                } while (tunnel.isOpen() && (message = reader.read()) != null);
+                // Forward UTF-8 instruction data as-is if the reader allows,
+                // otherwise encode the data read
+                boolean endOfStream;
+                if (reader instanceof UTF8GuacamoleReader)
+                    endOfStream = transferUTF8(tunnel, (UTF8GuacamoleReader) reader, response, out);
+                else
+                    endOfStream = transfer(tunnel, reader, response, out);
 
                 // Close tunnel immediately upon EOF
-                if (message == null) {
+                if (endOfStream) {
                     deregisterTunnel(tunnel);
                     tunnel.close();
                 }
 
                 // End-of-instructions marker
-                out.write("0.;");
+                out.write(END_OF_INSTRUCTIONS);
                 out.flush();
                 response.flushBuffer();
             }
@@ -384,7 +553,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
                 tunnel.close();
 
                 // End-of-instructions marker
-                out.write("0.;");
+                out.write(END_OF_INSTRUCTIONS);
                 out.flush();
                 response.flushBuffer();
 
@@ -462,22 +631,32 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
             // Get writer from tunnel
             GuacamoleWriter writer = tunnel.acquireWriter();
 
-            // Get input reader for HTTP stream
-            Reader input = new InputStreamReader(
-                    request.getInputStream(), "UTF-8");
+            // Get HTTP stream, which may contain any number of instructions
+            InputStream input = request.getInputStream();
 
             // Transfer data from input stream to tunnel output, ensuring
             // input is always closed
             try {
 
-                // Buffer
-                int length;
-                char[] buffer = new char[8192];
+                // Reuse the buffers of registered tunnels
+                if (tunnel instanceof GuacamoleHTTPTunnel)
+                    ((GuacamoleHTTPTunnel) tunnel).write(input, writer);
+
+                // Otherwise, decode using a temporary buffer
+                else {
 
-                // Transfer data using buffer
-                while (tunnel.isOpen() &&
-                        (length = input.read(buffer, 0, buffer.length)) != -1)
-                    writer.write(buffer, 0, length);
+                    Reader reader = new InputStreamReader(input, "UTF-8");
+
+                    // Buffer
+                    int length;
+                    char[] buffer = new char[8192];
+
+                    // Transfer data using buffer
+                    while (tunnel.isOpen() &&
+                            (length = reader.read(buffer, 0, buffer.length)) != -1)
+                        writer.write(buffer, 0, length);
+
+                }
 
             }
 
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.util;
+
+/**
+ * Callback which decides whether entries scheduled within an ExpirationWheel
+ * have actually expired, and which performs the expiration of those that
+ * have. As entries are not rescheduled each time they are accessed, the
+ * handler is consulted whenever an entry's scheduled expiration time passes,
+ * and may postpone its expiration.
+ *
+ * @param <K>
+ *     The type of key identifying each entry.
+ */
+public interface ExpirationHandler<K> {
+
+    /**
+     * Returns the time at which the entry having the given key should
+     * expire. This function is invoked once the time for which the entry was
+     * last scheduled has passed. If the returned time has also passed, the
+     * entry is expired with expire(). Otherwise, the entry is rescheduled to
+     * the returned time.
+     *
+     * @param key
+     *     The key of the entry whose expiration time has passed.
+     *
+     * @return
+     *     The time at which the entry should expire, in milliseconds since
+     *     midnight January 1, 1970 GMT.
+     */
+    long getExpirationTime(K key);
+
+    /**
+     * Expires the entry having the given key. The entry is no longer
+     * scheduled when this function is invoked. If the entry no longer exists,
+     * this function should have no effect.
+     *
+     * @param key
+     *     The key of the entry to expire.
+     */
+    void expire(K key);
+
+}
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.net.TimingHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel which expires entries once their scheduled expiration
+ * times have passed. Each entry is placed within the slot of the wheel
+ * corresponding to its expiration time, and each tick of the wheel examines
+ * only the slots whose time has passed since the previous tick. The cost of
+ * each tick is therefore proportional to the number of entries which are due
+ * to expire, rather than the total number of entries.
+ *
+ * Entries are not moved within the wheel each time they are accessed.
+ * Instead, the ExpirationHandler is consulted once an entry's expiration time
+ * passes, and the entry is either expired or rescheduled to the time returned
+ * by the handler. An entry which is accessed continuously is thus examined
+ * roughly once per timeout period.
+ *
+ * @param <K>
+ *     The type of key identifying each entry.
+ */
+public class ExpirationWheel<K> {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ExpirationWheel.class);
+
+    /**
+     * The handler which decides whether entries have expired and which
+     * expires them.
+     */
+    private final ExpirationHandler<K> handler;
+
+    /**
+     * The number of milliseconds between each tick of the wheel. Entries
+     * expire up to this long after their expiration time.
+     */
+    private final long tickDuration;
+
+    /**
+     * The slots of the wheel, each containing the keys of all entries whose
+     * expiration times fall within that slot. An entry whose expiration time
+     * is further away than one full rotation of the wheel remains within its
+     * slot until the rotation in which it is due.
+     */
+    private final List<Set<K>> slots;
+
+    /**
+     * The times at which all scheduled entries will be checked for
+     * expiration, in milliseconds since midnight January 1, 1970 GMT, stored
+     * by key. These times are never earlier than the tick following the
+     * scheduling of each entry.
+     */
+    private final Map<K, Long> expirationTimes = new HashMap<K, Long>();
+
+    /**
+     * The index of the most recent tick, as the number of tick durations
+     * since midnight January 1, 1970 GMT.
+     */
+    private long lastTick;
+
+    /**
+     * The total number of entries expired.
+     */
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * The total number of entries rescheduled after their expiration time
+     * passed.
+     */
+    private final AtomicLong rescheduled = new AtomicLong();
+
+    /**
+     * The time spent within each tick of the wheel, including time spent
+     * within the ExpirationHandler.
+     */
+    private final TimingHistogram tickTimes = new TimingHistogram();
+
+    /**
+     * Executor service which runs each tick of the wheel.
+     */
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+
+    /**
+     * Creates a new ExpirationWheel which ticks at the given interval,
+     * consulting the given handler for all entries whose expiration times
+     * have passed.
+     *
+     * @param handler
+     *     The handler which decides whether entries have expired and which
+     *     expires them.
+     *
+     * @param tickDuration
+     *     The number of milliseconds between each tick of the wheel.
+     *
+     * @param span
+     *     The typical number of milliseconds between scheduling an entry and
+     *     its expiration time, used to size the wheel. Entries may be
+     *     scheduled further in the future, but will then be examined once
+     *     per rotation until due.
+     */
+    public ExpirationWheel(ExpirationHandler<K> handler, long tickDuration,
+            long span) {
+
+        this.handler = handler;
+        this.tickDuration = Math.max(1, tickDuration);
+        this.lastTick = System.currentTimeMillis() / this.tickDuration;
+
+        // Allocate one slot per tick within the span
+        int slotCount = (int) Math.min(Integer.MAX_VALUE / 2,
+                Math.max(1, span / this.tickDuration + 1));
+        slots = new ArrayList<Set<K>>(slotCount);
+        for (int i = 0; i < slotCount; i++)
+            slots.add(new HashSet<K>());
+
+        executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                tick(System.currentTimeMillis());
+            }
+
+        }, this.tickDuration, this.tickDuration, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Returns the slot which should contain entries having the given
+     * expiration time.
+     *
+     * @param expirationTime
+     *     The expiration time of an entry, in milliseconds since midnight
+     *     January 1, 1970 GMT.
+     *
+     * @return
+     *     The slot which should contain entries having the given expiration
+     *     time.
+     */
+    private Set<K> getSlot(long expirationTime) {
+        return slots.get((int) ((expirationTime / tickDuration) % slots.size()));
+    }
+
+    /**
+     * Schedules the entry having the given key to be checked for expiration
+     * at the given time. If the entry is already scheduled, it is moved to
+     * the given time.
+     *
+     * @param key
+     *     The key of the entry to schedule.
+     *
+     * @param expirationTime
+     *     The time at which the entry should be checked for expiration, in
+     *     milliseconds since midnight January 1, 1970 GMT.
+     */
+    public synchronized void schedule(K key, long expirationTime) {
+
+        // Expire on the next tick if already due
+        expirationTime = Math.max(expirationTime, (lastTick + 1) * tickDuration);
+
+        // Remove from any previous slot
+        Long previous = expirationTimes.put(key, expirationTime);
+        if (previous != null)
+            getSlot(previous).remove(key);
+
+        getSlot(expirationTime).add(key);
+
+    }
+
+    /**
+     * Cancels any scheduled expiration of the entry having the given key.
+     *
+     * @param key
+     *     The key of the entry whose expiration should be cancelled.
+     */
+    public synchronized void cancel(K key) {
+
+        Long expirationTime = expirationTimes.remove(key);
+        if (expirationTime != null)
+            getSlot(expirationTime).remove(key);
+
+    }
+
+    /**
+     * Removes and returns the keys of all entries whose expiration times
+     * have passed as of the given time, advancing the wheel to that time.
+     *
+     * @param now
+     *     The current time, in milliseconds since midnight January 1, 1970
+     *     GMT.
+     *
+     * @return
+     *     A new list of the keys of all entries whose expiration times have
+     *     passed.
+     */
+    private synchronized List<K> advance(long now) {
+
+        List<K> due = new ArrayList<K>();
+
+        // Examine each slot passed since the last tick, visiting each slot at
+        // most once even if ticks were delayed by a full rotation or more
+        long tick = now / tickDuration;
+        long firstTick = Math.max(lastTick + 1, tick - slots.size() + 1);
+        for (long current = firstTick; current <= tick; current++) {
+
+            Iterator<K> keys = slots.get((int) (current % slots.size())).iterator();
+            while (keys.hasNext()) {
+
+                // Leave entries due within later rotations
+                K key = keys.next();
+                if (expirationTimes.get(key) >= (tick + 1) * tickDuration)
+                    continue;
+
+                keys.remove();
+                expirationTimes.remove(key);
+                due.add(key);
+
+            }
+
+        }
+
+        lastTick = Math.max(lastTick, tick);
+        return due;
+
+    }
+
+    /**
+     * Advances the wheel to the given time, expiring or rescheduling all
+     * entries whose expiration times have passed.
+     *
+     * @param now
+     *     The current time, in milliseconds since midnight January 1, 1970
+     *     GMT.
+     */
+    public void tick(long now) {
+
+        long start = System.nanoTime();
+
+        // Consult handler for each entry that is due, outside of the lock
+        // such that the handler may freely schedule or cancel entries
+        for (K key : advance(now)) {
+
+            try {
+
+                // Reschedule entries which are not yet due
+                long expirationTime = handler.getExpirationTime(key);
+                if (expirationTime > now) {
+                    schedule(key, expirationTime);
+                    rescheduled.incrementAndGet();
+                    continue;
+                }
+
+                handler.expire(key);
+                expired.incrementAndGet();
+
+            }
+            catch (RuntimeException e) {
+                logger.warn("Unable to expire entry: {}", e.getMessage());
+                logger.debug("Error expiring entry.", e);
+            }
+
+        }
+
+        tickTimes.record(System.nanoTime() - start);
+
+    }
+
+    /**
+     * Returns the number of entries currently scheduled.
+     *
+     * @return
+     *     The number of entries currently scheduled.
+     */
+    public synchronized int size() {
+        return expirationTimes.size();
+    }
+
+    /**
+     * Returns the total number of entries expired by this wheel.
+     *
+     * @return
+     *     The total number of entries expired.
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * Returns the total number of entries rescheduled by this wheel after
+     * their expiration times passed, due to the ExpirationHandler providing
+     * a later expiration time.
+     *
+     * @return
+     *     The total number of entries rescheduled.
+     */
+    public long getRescheduledCount() {
+        return rescheduled.get();
+    }
+
+    /**
+     * Returns the time spent within each tick of this wheel, including the
+     * time spent expiring and rescheduling entries.
+     *
+     * @return
+     *     A snapshot histogram of the duration of each tick.
+     */
+    public TimingHistogram getTickTimes() {
+        return new TimingHistogram(tickTimes);
+    }
+
+    /**
+     * Stops this wheel, such that no further entries are expired, and
+     * reclaims any resources.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
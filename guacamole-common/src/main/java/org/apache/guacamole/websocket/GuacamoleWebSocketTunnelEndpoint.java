@@ -20,23 +20,37 @@
 package org.apache.guacamole.websocket;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCode;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
+import javax.websocket.Extension;
 import javax.websocket.MessageHandler;
 import javax.websocket.OnClose;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleFrameQueue;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutors;
 import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,20 +64,44 @@ import org.slf4j.LoggerFactory;
 public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
     /**
-     * The default, minimum buffer size for instructions.
+     * The WebSocket subprotocol in which instruction data is sent to the
+     * client as binary messages containing UTF-8, rather than as text
+     * messages. Clients which support this subprotocol request it in
+     * preference to the "guacamole" subprotocol. Binary messages spare the
+     * browser from validating and decoding text frames itself. They do not
+     * generally spare the server any work: unless the tunnel's reader
+     * provides UTF-8 directly (see UTF8GuacamoleReader), instruction data is
+     * still decoded from guacd and re-encoded for each message.
      */
-    private static final int BUFFER_SIZE = 8192;
+    public static final String BINARY_SUBPROTOCOL = "guacamole-binary";
+
+    /**
+     * The charset of all instruction data within binary messages.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     /**
      * Logger for this class.
      */
     private final Logger logger = LoggerFactory.getLogger(GuacamoleWebSocketTunnelEndpoint.class);
 
+    /**
+     * The maximum number of milliseconds to wait for queued data to be sent
+     * to the client once the connection to guacd has ended.
+     */
+    private static final long DRAIN_TIMEOUT = 5000;
+
     /**
      * The underlying GuacamoleTunnel. WebSocket reads/writes will be handled
      * as reads/writes to this tunnel.
      */
     private GuacamoleTunnel tunnel;
+
+    /**
+     * The queue of data read from the tunnel and awaiting delivery to the
+     * client, or null if the tunnel has not yet been created.
+     */
+    private volatile GuacamoleFrameQueue outboundQueue;
     
     /**
      * Sends the given status on the given WebSocket connection and closes the
@@ -100,6 +138,54 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     protected abstract GuacamoleTunnel createTunnel(Session session, EndpointConfig config)
             throws GuacamoleException;
 
+    /**
+     * Returns the TunnelReaderExecutor which should run the loop reading from
+     * the tunnel of this endpoint. By default, the shared executor returned
+     * by TunnelReaderExecutors.getDefault() is used.
+     *
+     * @return The TunnelReaderExecutor which should run this endpoint's read
+     *         loop.
+     */
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return TunnelReaderExecutors.getDefault();
+    }
+
+    /**
+     * Returns the maximum number of characters of instruction data which may
+     * be queued for delivery to the client before reads from the tunnel
+     * block. By default, GuacamoleFrameQueue.DEFAULT_MAX_LENGTH is used.
+     *
+     * @return The maximum number of characters of instruction data which may
+     *         be queued for delivery to the client.
+     */
+    protected int getMaxQueuedLength() {
+        return GuacamoleFrameQueue.DEFAULT_MAX_LENGTH;
+    }
+
+    /**
+     * Returns the policy dictating when instruction data read from the tunnel
+     * is sent to the client. By default, the shared policy returned by
+     * GuacamoleBatchPolicy.getDefault() is used.
+     *
+     * @return The policy dictating when instruction data is sent to the
+     *         client.
+     */
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return GuacamoleBatchPolicy.getDefault();
+    }
+
+    /**
+     * Returns the queue of data read from the tunnel of this endpoint and
+     * awaiting delivery to the client. The depth of this queue reflects how
+     * far the client has fallen behind guacd.
+     *
+     * @return The queue of data awaiting delivery to the client, or null if
+     *         the tunnel of this endpoint has not yet been created.
+     */
+    protected GuacamoleFrameQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
     @Override
     @OnOpen
     public void onOpen(final Session session, EndpointConfig config) {
@@ -121,7 +207,14 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
             return;
         }
 
-        // Manually register message handler
+        // Note whether the container will compress this tunnel's messages
+        for (Extension extension : session.getNegotiatedExtensions()) {
+            if (WebSocketCompressionPolicy.EXTENSION_NAME.equals(extension.getName()))
+                logger.debug("WebSocket tunnel \"{}\" will be compressed using "
+                        + "\"{}\".", tunnel.getUUID(), WebSocketCompressionPolicy.EXTENSION_NAME);
+        }
+
+        // Manually register message handlers
         session.addMessageHandler(new MessageHandler.Whole<String>() {
 
             @Override
@@ -131,79 +224,253 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
         });
 
-        // Prepare read transfer thread
-        Thread readThread = new Thread() {
+        session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+
+            @Override
+            public void onMessage(ByteBuffer message) {
+                GuacamoleWebSocketTunnelEndpoint.this.onMessage(UTF8.decode(message).toString());
+            }
+
+        });
+
+        // Determine whether data should be sent as binary messages
+        final boolean binary = BINARY_SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
+
+        // Queue outbound data, sending asynchronously such that a slow
+        // client does not stall reads from guacd until the queue is full.
+        // Binary messages pass through the same queue, and thus receive the
+        // same backpressure and frame merging as text.
+        final RemoteEndpoint.Async remote = session.getAsyncRemote();
+        final GuacamoleFrameQueue queue = new GuacamoleFrameQueue(new GuacamoleFrameQueue.Sender() {
+
+            /**
+             * Handler which notifies the queue once each batch is sent.
+             */
+            private final SendHandler handler = new SendHandler() {
+
+                @Override
+                public void onResult(SendResult result) {
+                    if (result.isOK())
+                        outboundQueue.sendComplete();
+                    else {
+                        logger.debug("Unable to send data to WebSocket client.", result.getException());
+                        outboundQueue.sendFailed(result.getException());
+                    }
+                }
+
+            };
+
+            /**
+             * Encoder for batches sent as binary messages. As only one batch
+             * is sent at a time, the encoder and its output buffer are reused
+             * for every batch.
+             */
+            private final CharsetEncoder encoder = UTF8.newEncoder();
 
             /**
-             * Remote (client) side of this connection
+             * Reusable buffer containing the UTF-8 encoding of the batch
+             * currently being sent as a binary message.
              */
-            private final RemoteEndpoint.Basic remote = session.getBasicRemote();
-                
+            private ByteBuffer encoded = ByteBuffer.allocate(0);
+
+            /**
+             * Encodes the given batch as UTF-8 within the reusable output
+             * buffer, growing that buffer if necessary.
+             *
+             * @param data
+             *     The batch to encode.
+             *
+             * @return
+             *     A buffer containing the UTF-8 encoding of the given batch.
+             */
+            private ByteBuffer encode(String data) {
+
+                int maxLength = (int) (data.length() * encoder.maxBytesPerChar());
+                if (encoded.capacity() < maxLength)
+                    encoded = ByteBuffer.allocate(maxLength);
+
+                // Batches consist only of complete instructions, and thus
+                // never end with a partial surrogate pair
+                encoded.clear();
+                encoder.reset();
+                encoder.encode(CharBuffer.wrap(data), encoded, true);
+                encoder.flush(encoded);
+                encoded.flip();
+
+                return encoded;
+
+            }
+
             @Override
-            public void run() {
+            public void send(String data) {
+                if (binary)
+                    remote.sendBinary(encode(data), handler);
+                else
+                    remote.sendText(data, handler);
+            }
 
-                StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
-                GuacamoleReader reader = tunnel.acquireReader();
-                char[] readMessage;
+        }, getMaxQueuedLength());
+
+        outboundQueue = queue;
+
+        // Prepare read transfer loop
+        Runnable readLoop = new Runnable() {
+
+            /**
+             * Sends any remaining queued data, then closes the WebSocket
+             * connection with the given status.
+             *
+             * @param status
+             *     The status to send when closing the connection.
+             */
+            private void finish(GuacamoleStatus status) {
 
                 try {
+                    if (!queue.awaitEmpty(DRAIN_TIMEOUT))
+                        logger.debug("Closing WebSocket connection with data still queued.");
+                }
+                catch (GuacamoleException e) {
+                    logger.debug("Interrupted while sending remaining data.", e);
+                }
 
-                    // Send tunnel UUID
-                    remote.sendText(new GuacamoleInstruction(
-                        GuacamoleTunnel.INTERNAL_DATA_OPCODE,
-                        tunnel.getUUID().toString()
-                    ).toString());
+                queue.close();
+                closeConnection(session, status);
 
-                    try {
+            }
 
-                        // Attempt to read
-                        while ((readMessage = reader.read()) != null) {
+            /**
+             * Sends the tunnel UUID followed by all instructions read from
+             * the given reader, queueing that data such that reads continue
+             * while the client receives data.
+             *
+             * @param reader
+             *     The reader of the tunnel.
+             *
+             * @throws GuacamoleException
+             *     If an error occurs while reading from the tunnel, or if the
+             *     client cannot receive further data.
+             */
+            private void transfer(GuacamoleReader reader)
+                    throws GuacamoleException {
 
-                            // Buffer message
-                            buffer.append(readMessage);
+                GuacamoleInstructionView view = new GuacamoleInstructionView();
 
-                            // Flush if we expect to wait or buffer is getting full
-                            if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                remote.sendText(buffer.toString());
-                                buffer.setLength(0);
-                            }
+                // Read individual instructions in place if possible, such
+                // that frame boundaries can be identified
+                BufferedGuacamoleReader bufferedReader = null;
+                if (reader instanceof BufferedGuacamoleReader)
+                    bufferedReader = (BufferedGuacamoleReader) reader;
 
-                        }
+                // Send tunnel UUID
+                char[] uuid = new GuacamoleInstruction(
+                    GuacamoleTunnel.INTERNAL_DATA_OPCODE,
+                    tunnel.getUUID().toString()
+                ).toString().toCharArray();
 
-                        // No more data
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
+                queue.add(uuid, 0, uuid.length, null);
+                queue.flush();
 
-                    }
+                GuacamoleBatchPolicy policy = getBatchPolicy();
+                long batchStart = 0;
+
+                // Attempt to read
+                for (;;) {
+
+                    char[] data;
+                    int offset;
+                    int length;
+                    GuacamoleOpcode opcode = null;
+
+                    // Read exactly one instruction, noting its opcode
+                    if (bufferedReader != null) {
+
+                        CharBuffer instruction = bufferedReader.readBuffer();
+                        if (instruction == null)
+                            break;
+
+                        view.load(instruction);
+                        opcode = view.getKnownOpcode();
+
+                        data = instruction.array();
+                        offset = instruction.arrayOffset() + instruction.position();
+                        length = instruction.remaining();
 
-                    // Catch any thrown guacamole exception and attempt
-                    // to pass within the WebSocket connection, logging
-                    // each error appropriately.
-                    catch (GuacamoleClientException e) {
-                        logger.info("WebSocket connection terminated: {}", e.getMessage());
-                        logger.debug("WebSocket connection terminated due to client error.", e);
-                        closeConnection(session, e.getStatus());
-                    }
-                    catch (GuacamoleConnectionClosedException e) {
-                        logger.debug("Connection to guacd closed.", e);
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
                     }
-                    catch (GuacamoleException e) {
-                        logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
-                        logger.debug("Internal error during connection to guacd.", e);
-                        closeConnection(session, e.getStatus());
+
+                    // Otherwise, queue whatever was read as-is
+                    else {
+
+                        data = reader.read();
+                        if (data == null)
+                            break;
+
+                        offset = 0;
+                        length = data.length;
+
                     }
 
+                    if (queue.getPendingLength() == 0)
+                        batchStart = System.nanoTime();
+
+                    // Queue instruction data, waiting if the client has
+                    // fallen too far behind
+                    queue.add(data, offset, length, opcode);
+
+                    // Send at frame boundaries, or as dictated by the
+                    // batch policy
+                    if (policy.shouldFlush(opcode == GuacamoleOpcode.SYNC,
+                            queue.getPendingLength(), batchStart, reader))
+                        queue.flush();
+
+                }
+
+            }
+
+            @Override
+            public void run() {
+
+                GuacamoleReader reader = tunnel.acquireReader();
+
+                try {
+
+                    transfer(reader);
+
+                    // No more data
+                    finish(GuacamoleStatus.SUCCESS);
+
+                }
+
+                // Catch any thrown guacamole exception and attempt
+                // to pass within the WebSocket connection, logging
+                // each error appropriately.
+                catch (GuacamoleClientException e) {
+                    logger.info("WebSocket connection terminated: {}", e.getMessage());
+                    logger.debug("WebSocket connection terminated due to client error.", e);
+                    finish(e.getStatus());
+                }
+                catch (GuacamoleConnectionClosedException e) {
+                    logger.debug("Connection to guacd closed.", e);
+                    finish(GuacamoleStatus.SUCCESS);
                 }
-                catch (IOException e) {
-                    logger.debug("I/O error prevents further reads.", e);
-                    closeConnection(session, GuacamoleStatus.SERVER_ERROR);
+                catch (GuacamoleException e) {
+                    logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
+                    logger.debug("Internal error during connection to guacd.", e);
+                    finish(e.getStatus());
                 }
 
             }
 
         };
 
-        readThread.start();
+        // Run read loop using the configured executor
+        try {
+            getReaderExecutor().execute(readLoop);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to start WebSocket tunnel read loop: {}", e.getMessage());
+            logger.debug("WebSocket tunnel read loop refused.", e);
+            closeConnection(session, e.getStatus());
+        }
 
     }
 
@@ -235,6 +502,11 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     @OnClose
     public void onClose(Session session, CloseReason closeReason) {
 
+        // Wake read loop if waiting on the client
+        GuacamoleFrameQueue queue = outboundQueue;
+        if (queue != null)
+            queue.close();
+
         try {
             if (tunnel != null)
                 tunnel.close();
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.websocket.Extension;
+
+/**
+ * Policy which decides whether, and how, the "permessage-deflate" WebSocket
+ * extension defined by RFC 7692 may be negotiated for WebSocket tunnels.
+ * Compression itself is performed by the servlet container; this policy only
+ * restricts the offers the container is allowed to accept, and may be used
+ * by any JSR-356 ServerEndpointConfig.Configurator via
+ * getNegotiatedExtensions().
+ *
+ * Guacamole instruction streams typically compress well, but compression
+ * costs CPU time on both ends of the connection and, unless context takeover
+ * is disabled, memory for the compression history of each connection.
+ */
+public class WebSocketCompressionPolicy {
+
+    /**
+     * The name of the WebSocket extension which provides compression.
+     */
+    public static final String EXTENSION_NAME = "permessage-deflate";
+
+    /**
+     * The smallest LZ77 window size, in bits, allowed by RFC 7692.
+     */
+    public static final int MIN_WINDOW_BITS = 8;
+
+    /**
+     * The largest LZ77 window size, in bits, allowed by RFC 7692. This is the
+     * window size used when no smaller window is negotiated.
+     */
+    public static final int MAX_WINDOW_BITS = 15;
+
+    /**
+     * The extension parameter which limits the window used by the client
+     * when compressing messages.
+     */
+    private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    /**
+     * The extension parameter which requires the server to compress each
+     * message independently.
+     */
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    /**
+     * The extension parameter which requires the client to compress each
+     * message independently.
+     */
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    /**
+     * The policy returned by getDefault().
+     */
+    private static final WebSocketCompressionPolicy DEFAULT =
+            new WebSocketCompressionPolicy(true, MAX_WINDOW_BITS, true);
+
+    /**
+     * Whether compression may be negotiated at all.
+     */
+    private final boolean enabled;
+
+    /**
+     * The maximum LZ77 window size, in bits, which the client may use when
+     * compressing messages.
+     */
+    private final int windowBits;
+
+    /**
+     * Whether either side may retain compression history between messages.
+     */
+    private final boolean contextTakeover;
+
+    /**
+     * Creates a new WebSocketCompressionPolicy which allows or refuses
+     * compression as specified, restricting accepted offers as dictated by
+     * the given window size and context takeover setting.
+     *
+     * @param enabled
+     *     Whether compression may be negotiated at all. If false, all offers
+     *     of compression by the client are refused.
+     *
+     * @param windowBits
+     *     The maximum LZ77 window size, in bits, which the client may use
+     *     when compressing messages, between MIN_WINDOW_BITS and
+     *     MAX_WINDOW_BITS inclusive. A window smaller than MAX_WINDOW_BITS is
+     *     requested only if the client indicates it supports a reduced window.
+     *
+     * @param contextTakeover
+     *     Whether either side may retain compression history between
+     *     messages. Disabling context takeover reduces the memory required by
+     *     each connection at the expense of compression ratio.
+     *
+     * @throws IllegalArgumentException
+     *     If the given window size is outside the range allowed by RFC 7692.
+     */
+    public WebSocketCompressionPolicy(boolean enabled, int windowBits,
+            boolean contextTakeover) {
+
+        if (windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS)
+            throw new IllegalArgumentException("Window size must be between "
+                    + MIN_WINDOW_BITS + " and " + MAX_WINDOW_BITS + " bits.");
+
+        this.enabled = enabled;
+        this.windowBits = windowBits;
+        this.contextTakeover = contextTakeover;
+
+    }
+
+    /**
+     * Returns a shared policy which allows compression to be negotiated
+     * exactly as the servlet container would by default.
+     *
+     * @return
+     *     A shared WebSocketCompressionPolicy which does not restrict
+     *     compression.
+     */
+    public static WebSocketCompressionPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns whether compression may be negotiated at all.
+     *
+     * @return
+     *     true if compression may be negotiated, false if all offers of
+     *     compression are refused.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the maximum LZ77 window size, in bits, which the client may use
+     * when compressing messages.
+     *
+     * @return
+     *     The maximum window size which the client may use, in bits.
+     */
+    public int getWindowBits() {
+        return windowBits;
+    }
+
+    /**
+     * Returns whether either side may retain compression history between
+     * messages.
+     *
+     * @return
+     *     true if context takeover is allowed, false if each message must be
+     *     compressed independently.
+     */
+    public boolean isContextTakeover() {
+        return contextTakeover;
+    }
+
+    /**
+     * Returns the extensions which should be negotiated for a WebSocket
+     * connection, given the extensions installed within the servlet
+     * container and those requested by the client. As with the default
+     * behavior of JSR-356 containers, only requested extensions which are
+     * installed are returned, in the order requested. Offers of
+     * "permessage-deflate" are removed if compression is disabled, and
+     * otherwise amended to reflect the window size and context takeover
+     * settings of this policy. The container remains responsible for
+     * choosing the first acceptable offer.
+     *
+     * @param installed
+     *     The extensions installed within the servlet container.
+     *
+     * @param requested
+     *     The extensions requested by the client, in order of preference.
+     *
+     * @return
+     *     The extensions which should be negotiated, in order of preference.
+     */
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed,
+            List<Extension> requested) {
+
+        // Note names of all installed extensions
+        Set<String> installedNames = new HashSet<String>();
+        for (Extension extension : installed)
+            installedNames.add(extension.getName());
+
+        List<Extension> negotiated = new ArrayList<Extension>(requested.size());
+        for (Extension extension : requested) {
+
+            // Skip any extensions not supported by the container
+            if (!installedNames.contains(extension.getName()))
+                continue;
+
+            // Restrict offers of compression
+            if (EXTENSION_NAME.equals(extension.getName())) {
+                if (enabled)
+                    negotiated.add(restrict(extension));
+            }
+
+            // Allow all other extensions as-is
+            else
+                negotiated.add(extension);
+
+        }
+
+        return negotiated;
+
+    }
+
+    /**
+     * Amends the given offer of "permessage-deflate" to reflect the window
+     * size and context takeover settings of this policy. Parameters of the
+     * offer which are not affected by this policy are preserved.
+     *
+     * @param offer
+     *     The offer of "permessage-deflate" received from the client.
+     *
+     * @return
+     *     An equivalent offer, restricted as dictated by this policy.
+     */
+    private Extension restrict(Extension offer) {
+
+        List<Extension.Parameter> parameters =
+                new ArrayList<Extension.Parameter>(offer.getParameters().size() + 2);
+
+        for (Extension.Parameter parameter : offer.getParameters()) {
+
+            String name = parameter.getName();
+
+            // Request a smaller window of the client, if it is able to
+            // comply and has not already chosen a smaller window
+            if (CLIENT_MAX_WINDOW_BITS.equals(name) && windowBits < MAX_WINDOW_BITS) {
+
+                int clientBits = MAX_WINDOW_BITS;
+                try {
+                    if (parameter.getValue() != null)
+                        clientBits = Integer.parseInt(parameter.getValue());
+                }
+                catch (NumberFormatException e) {
+                    // Malformed values are left for the container to refuse
+                    parameters.add(parameter);
+                    continue;
+                }
+
+                parameters.add(new SimpleParameter(name,
+                        Integer.toString(Math.min(clientBits, windowBits))));
+
+            }
+
+            // Context takeover parameters are added below if required
+            else if (contextTakeover || (!SERVER_NO_CONTEXT_TAKEOVER.equals(name)
+                    && !CLIENT_NO_CONTEXT_TAKEOVER.equals(name)))
+                parameters.add(parameter);
+
+        }
+
+        // Require each message be compressed independently, if history
+        // should not be retained
+        if (!contextTakeover) {
+            parameters.add(new SimpleParameter(SERVER_NO_CONTEXT_TAKEOVER, null));
+            parameters.add(new SimpleParameter(CLIENT_NO_CONTEXT_TAKEOVER, null));
+        }
+
+        return new SimpleExtension(offer.getName(), parameters);
+
+    }
+
+    /**
+     * Extension implementation which simply stores the name and parameters
+     * provided at construction time.
+     */
+    private static class SimpleExtension implements Extension {
+
+        /**
+         * The name of this extension.
+         */
+        private final String name;
+
+        /**
+         * The parameters of this extension.
+         */
+        private final List<Extension.Parameter> parameters;
+
+        /**
+         * Creates a new SimpleExtension having the given name and
+         * parameters.
+         *
+         * @param name
+         *     The name of the extension.
+         *
+         * @param parameters
+         *     The parameters of the extension.
+         */
+        public SimpleExtension(String name, List<Extension.Parameter> parameters) {
+            this.name = name;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Extension.Parameter> getParameters() {
+            return parameters;
+        }
+
+    }
+
+    /**
+     * Extension parameter implementation which simply stores the name and
+     * value provided at construction time.
+     */
+    private static class SimpleParameter implements Extension.Parameter {
+
+        /**
+         * The name of this parameter.
+         */
+        private final String name;
+
+        /**
+         * The value of this parameter, or null if this parameter has no
+         * value.
+         */
+        private final String value;
+
+        /**
+         * Creates a new SimpleParameter having the given name and value.
+         *
+         * @param name
+         *     The name of the parameter.
+         *
+         * @param value
+         *     The value of the parameter, or null if the parameter has no
+         *     value.
+         */
+        public SimpleParameter(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests AsyncRecordingWriter, validating that appended data is written in
+ * order as UTF-8, and that data is dropped rather than blocking once the
+ * ring buffer is full.
+ */
+public class AsyncRecordingWriterTest {
+
+    /**
+     * OutputStream which blocks all writes until released.
+     */
+    private static class BlockingOutputStream extends OutputStream {
+
+        /**
+         * Latch which is released once writes may proceed.
+         */
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                released.await();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Allows all pending and future writes to proceed.
+         */
+        public void release() {
+            released.countDown();
+        }
+
+    }
+
+    /**
+     * Appends the given string, retrying until space is available within
+     * the ring buffer.
+     *
+     * @param writer
+     *     The writer to append to.
+     *
+     * @param data
+     *     The data to append.
+     *
+     * @throws InterruptedException
+     *     If the test is interrupted while waiting for space.
+     */
+    private void appendWhenPossible(AsyncRecordingWriter writer, String data)
+            throws InterruptedException {
+
+        char[] chars = data.toCharArray();
+        while (!writer.append(chars, 0, chars.length))
+            Thread.sleep(10);
+
+    }
+
+    /**
+     * Verifies that all appended data is written in order as UTF-8,
+     * including surrogate pairs which are split by the end of the ring
+     * buffer.
+     *
+     * @throws Exception
+     *     If the writer thread does not finish, or the UTF-8 output cannot
+     *     be decoded.
+     */
+    @Test
+    public void testWrite() throws Exception {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AsyncRecordingWriter writer = new AsyncRecordingWriter(output, 8, Long.MAX_VALUE, "test");
+
+        // Each instruction is 5 characters, thus the second wraps around the
+        // end of the 8-character ring within the surrogate pair
+        String first = "2.éè;";
+        String second = "1.😀;";
+        appendWhenPossible(writer, first);
+        appendWhenPossible(writer, second);
+
+        writer.close();
+        assertTrue(writer.awaitTermination(10000));
+
+        assertFalse(writer.isAborted());
+        assertEquals(first + second, new String(output.toByteArray(), "UTF-8"));
+        assertEquals(10, writer.getCharactersRecorded());
+        assertEquals(output.size(), writer.getBytesWritten());
+
+    }
+
+    /**
+     * Verifies that appended data is dropped while the ring buffer is full,
+     * and that recording is aborted once more than the allowed amount of
+     * data has been dropped.
+     *
+     * @throws Exception
+     *     If the writer thread does not finish.
+     */
+    @Test
+    public void testBoundedLoss() throws Exception {
+
+        BlockingOutputStream output = new BlockingOutputStream();
+        AsyncRecordingWriter writer = new AsyncRecordingWriter(output, 8, 10, "test");
+
+        char[] instruction = "1.a,;".toCharArray();
+        assertTrue(writer.append(instruction, 0, instruction.length));
+
+        // Further data cannot fit until the first is written
+        assertFalse(writer.append(instruction, 0, instruction.length));
+        assertFalse(writer.append(instruction, 0, instruction.length));
+        assertFalse(writer.isAborted());
+
+        // Exceeding the allowed loss aborts recording entirely
+        assertFalse(writer.append(instruction, 0, instruction.length));
+        assertTrue(writer.isAborted());
+        assertEquals(3, writer.getAppendsDropped());
+        assertEquals(15, writer.getCharactersDropped());
+
+        output.release();
+        assertTrue(writer.awaitTermination(10000));
+
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.Charset;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ChannelGuacamoleReader implementation of GuacamoleReader,
+ * validating that instructions containing multibyte UTF-8 characters are
+ * parsed correctly.
+ */
+public class ChannelGuacamoleReaderTest {
+
+    /**
+     * The charset used by the Guacamole protocol.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Test of ChannelGuacamoleReader parsing, with data arriving in pieces
+     * that split multibyte characters.
+     *
+     * @throws Exception If a parse error occurs while parsing the known-good
+     *                   test string, or if the test pipe cannot be used.
+     */
+    @Test
+    public void testReader() throws Exception {
+
+        // Test string, where lengths are in characters (codepoints), and the
+        // final instruction includes a character outside the BMP
+        final String test = "4.test,2.éü,3.日本語;"
+                          + "3.foo,2.😀x;0.;";
+
+        byte[] data = test.getBytes(UTF8);
+
+        Pipe pipe = Pipe.open();
+        ChannelGuacamoleReader reader = new ChannelGuacamoleReader(pipe.source(), 1000);
+
+        // Write first half of data, splitting a multibyte character
+        pipe.sink().write(ByteBuffer.wrap(data, 0, 10));
+
+        // Write remaining data, splitting the remaining data into single bytes
+        for (int i = 10; i < data.length; i++)
+            pipe.sink().write(ByteBuffer.wrap(data, i, 1));
+
+        pipe.sink().close();
+
+        GuacamoleInstruction instruction;
+
+        // Validate first test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals("test", instruction.getOpcode());
+        assertEquals(2, instruction.getArgs().size());
+        assertEquals("éü", instruction.getArgs().get(0));
+        assertEquals("日本語", instruction.getArgs().get(1));
+
+        // Validate raw form of second test instruction
+        ByteBuffer raw = reader.readUTF8();
+        assertNotNull(raw);
+        assertEquals("3.foo,2.😀x;", new String(raw.array(),
+                raw.arrayOffset() + raw.position(), raw.remaining(), UTF8));
+
+        // Validate decoded form of third test instruction
+        char[] chars = reader.read();
+        assertNotNull(chars);
+        assertEquals("0.;", new String(chars));
+
+        // There should be no more instructions
+        assertNull(reader.readInstruction());
+
+        reader.close();
+        pipe.source().close();
+
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests GuacamoleFrameQueue, validating that queued frames are coalesced,
+ * that redundant instructions are dropped, and that adding data blocks while
+ * the queue is full.
+ */
+public class GuacamoleFrameQueueTest {
+
+    /**
+     * Sender which records each batch, completing each send only when
+     * explicitly requested.
+     */
+    private static class RecordingSender implements GuacamoleFrameQueue.Sender {
+
+        /**
+         * All batches sent, in order.
+         */
+        private final List<String> batches = new ArrayList<String>();
+
+        @Override
+        public synchronized void send(String data) {
+            batches.add(data);
+        }
+
+        /**
+         * Returns all batches sent thus far.
+         *
+         * @return
+         *     A copy of the list of batches sent thus far.
+         */
+        public synchronized List<String> getBatches() {
+            return new ArrayList<String>(batches);
+        }
+
+    }
+
+    /**
+     * Adds the given instruction to the given queue.
+     *
+     * @param queue
+     *     The queue to add the instruction to.
+     *
+     * @param instruction
+     *     The instruction to add.
+     *
+     * @param opcode
+     *     The known opcode of the instruction.
+     *
+     * @throws GuacamoleException
+     *     If the instruction cannot be added.
+     */
+    private static void add(GuacamoleFrameQueue queue, String instruction,
+            GuacamoleOpcode opcode) throws GuacamoleException {
+        char[] data = instruction.toCharArray();
+        queue.add(data, 0, data.length, opcode);
+    }
+
+    /**
+     * Verifies that frames queued while a batch is being sent are merged
+     * into the next batch, keeping only the final "sync" and dropping
+     * "nop".
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while adding data.
+     */
+    @Test
+    public void testCoalesce() throws GuacamoleException {
+
+        RecordingSender sender = new RecordingSender();
+        GuacamoleFrameQueue queue = new GuacamoleFrameQueue(sender);
+
+        add(queue, "4.sync,1.1;", GuacamoleOpcode.SYNC);
+        queue.flush();
+
+        // Queue two frames while first is still being sent
+        add(queue, "3.img,1.0;", null);
+        add(queue, "4.sync,1.2;", GuacamoleOpcode.SYNC);
+        add(queue, "3.nop;", GuacamoleOpcode.NOP);
+        add(queue, "3.img,1.1;", null);
+        add(queue, "4.sync,1.3;", GuacamoleOpcode.SYNC);
+        queue.flush();
+
+        assertEquals(2, queue.getPendingFrames());
+        assertEquals(1, sender.getBatches().size());
+
+        // Completion sends both frames as one
+        queue.sendComplete();
+        List<String> batches = sender.getBatches();
+        assertEquals(2, batches.size());
+        assertEquals("4.sync,1.1;", batches.get(0));
+        assertEquals("3.img,1.0;3.img,1.1;4.sync,1.3;", batches.get(1));
+        assertEquals(2, queue.getDroppedInstructions());
+
+        queue.sendComplete();
+        assertEquals(0, queue.getQueuedLength());
+
+    }
+
+    /**
+     * Verifies that adding data blocks while the queue is full, and resumes
+     * once the client has received queued data.
+     *
+     * @throws Exception
+     *     If an error occurs while adding data, or the test is interrupted.
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+
+        RecordingSender sender = new RecordingSender();
+        final GuacamoleFrameQueue queue = new GuacamoleFrameQueue(sender, 16);
+
+        add(queue, "4.sync,2.10;", GuacamoleOpcode.SYNC);
+        queue.flush();
+
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    add(queue, "4.sync,2.11;", GuacamoleOpcode.SYNC);
+                    added.countDown();
+                }
+                catch (GuacamoleException e) {
+                    // Test fails through latch timeout
+                }
+            }
+
+        };
+
+        reader.start();
+
+        // Adding must block while the first frame is still being sent
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.getBlockedCount());
+
+        queue.sendComplete();
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        reader.join();
+
+    }
+
+    /**
+     * Verifies that closing the queue causes further additions to fail.
+     *
+     * @throws GuacamoleException
+     *     Always, as the queue is closed.
+     */
+    @Test(expected = GuacamoleConnectionClosedException.class)
+    public void testClose() throws GuacamoleException {
+        GuacamoleFrameQueue queue = new GuacamoleFrameQueue(new RecordingSender());
+        queue.close();
+        add(queue, "3.nop;", GuacamoleOpcode.NOP);
+    }
+
+}
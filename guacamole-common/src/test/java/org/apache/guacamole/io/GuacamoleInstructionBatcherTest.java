@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.apache.guacamole.GuacamoleException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests GuacamoleInstructionBatcher, validating that batches end at frame
+ * boundaries and within the limits of the batch policy.
+ */
+public class GuacamoleInstructionBatcherTest {
+
+    /**
+     * Test instruction stream containing two complete frames followed by a
+     * partial frame.
+     */
+    private static final String FRAMES =
+              "4.size,1.0,2.64,2.64;4.sync,1.1;"
+            + "3.nop;4.sync,1.2;"
+            + "4.size,1.0,2.32,2.32;";
+
+    /**
+     * A single frame, split into the chunks in which it is received,
+     * including a chunk boundary within the data of an "img" instruction.
+     */
+    private static final String[] CHUNKED_FRAME = {
+        "4.size,1.0,2.64,2.64;3.img,1.1,2.12,1.0,9.ima",
+        "ge/png,1.0,1.0;4.blob,1.1,8.AAAA",
+        "AAAA;3.end,1.1;",
+        "4.sync,1.1;"
+    };
+
+    /**
+     * The number of milliseconds to wait between each chunk of
+     * CHUNKED_FRAME.
+     */
+    private static final int CHUNK_INTERVAL = 50;
+
+    /**
+     * The read timeout of each test socket, in milliseconds, ensuring tests
+     * fail rather than hang if expected data never arrives.
+     */
+    private static final int SOCKET_TIMEOUT = 10000;
+
+    /**
+     * Creates a ReaderGuacamoleReader which reads from the given connected
+     * socket, and is thus able to wait for data via available(int).
+     *
+     * @param socket
+     *     The socket to read from.
+     *
+     * @return
+     *     A new ReaderGuacamoleReader reading from the given socket.
+     *
+     * @throws IOException
+     *     If the socket cannot be configured or read from.
+     */
+    private static ReaderGuacamoleReader createReader(Socket socket)
+            throws IOException {
+        socket.setSoTimeout(SOCKET_TIMEOUT);
+        return new ReaderGuacamoleReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"),
+                ReaderGuacamoleReader.DEFAULT_BUFFER_SIZE,
+                ReaderGuacamoleReader.DEFAULT_MAX_BUFFER_SIZE, socket);
+    }
+
+    /**
+     * Starts a thread which writes each of the given chunks of data to the
+     * given socket, waiting CHUNK_INTERVAL milliseconds before each chunk.
+     *
+     * @param socket
+     *     The socket to write to.
+     *
+     * @param chunks
+     *     The chunks of data to write.
+     *
+     * @return
+     *     The started thread.
+     */
+    private static Thread startSender(final Socket socket, final String... chunks) {
+
+        Thread sender = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    OutputStream output = socket.getOutputStream();
+                    for (String chunk : chunks) {
+                        Thread.sleep(CHUNK_INTERVAL);
+                        output.write(chunk.getBytes("UTF-8"));
+                        output.flush();
+                    }
+                }
+                catch (IOException e) {
+                    // The reading side will time out
+                }
+                catch (InterruptedException e) {
+                    // The reading side will time out
+                }
+            }
+
+        };
+
+        sender.start();
+        return sender;
+
+    }
+
+    /**
+     * Verifies that frames which have already been received are combined
+     * into a single batch rather than being sent one frame at a time, and
+     * that any remaining partial frame is returned at the end of the stream.
+     *
+     * @throws GuacamoleException
+     *     If the instruction stream cannot be read.
+     */
+    @Test
+    public void testCombinedFrames() throws GuacamoleException {
+
+        GuacamoleInstructionBatcher batcher = new GuacamoleInstructionBatcher(
+                new ReaderGuacamoleReader(new StringReader(FRAMES)),
+                new GuacamoleBatchPolicy(GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH, 0));
+
+        assertEquals(FRAMES, batcher.readBatch());
+        assertNull(batcher.readBatch());
+
+    }
+
+    /**
+     * Verifies that a frame received in several chunks, with idle periods
+     * between those chunks, is held until the frame is complete and then
+     * sent as a single batch.
+     *
+     * @throws Exception
+     *     If the test sockets cannot be created, or the instruction stream
+     *     cannot be read.
+     */
+    @Test
+    public void testChunkedFrame() throws Exception {
+
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try {
+
+            Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+            Socket peer = server.accept();
+            try {
+
+                Thread sender = startSender(peer, CHUNKED_FRAME);
+
+                GuacamoleInstructionBatcher batcher = new GuacamoleInstructionBatcher(
+                        createReader(client),
+                        new GuacamoleBatchPolicy(GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH,
+                                SOCKET_TIMEOUT / 2));
+
+                StringBuilder frame = new StringBuilder();
+                for (String chunk : CHUNKED_FRAME)
+                    frame.append(chunk);
+
+                assertEquals(frame.toString(), batcher.readBatch());
+                sender.join();
+
+            }
+            finally {
+                peer.close();
+                client.close();
+            }
+
+        }
+        finally {
+            server.close();
+        }
+
+    }
+
+    /**
+     * Verifies that a partial frame is held for the maximum delay of the
+     * batch policy, and is sent once that delay elapses even though the
+     * frame remains incomplete.
+     *
+     * @throws Exception
+     *     If the test sockets cannot be created, or the instruction stream
+     *     cannot be read.
+     */
+    @Test
+    public void testPartialFrameDelay() throws Exception {
+
+        int maxDelay = 100;
+
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try {
+
+            Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+            Socket peer = server.accept();
+            try {
+
+                Thread sender = startSender(peer, "3.nop;");
+
+                GuacamoleInstructionBatcher batcher = new GuacamoleInstructionBatcher(
+                        createReader(client),
+                        new GuacamoleBatchPolicy(GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH,
+                                maxDelay));
+
+                long start = System.nanoTime();
+                assertEquals("3.nop;", batcher.readBatch());
+                long elapsed = (System.nanoTime() - start) / 1000000;
+
+                // The partial frame must have been held after it arrived
+                assertTrue(elapsed >= CHUNK_INTERVAL + maxDelay / 2);
+                sender.join();
+
+            }
+            finally {
+                peer.close();
+                client.close();
+            }
+
+        }
+        finally {
+            server.close();
+        }
+
+    }
+
+    /**
+     * Verifies that batches are ended early once the maximum length is
+     * reached, even if the current frame is incomplete.
+     *
+     * @throws GuacamoleException
+     *     If the instruction stream cannot be read.
+     */
+    @Test
+    public void testMaxLength() throws GuacamoleException {
+
+        GuacamoleInstructionBatcher batcher = new GuacamoleInstructionBatcher(
+                new ReaderGuacamoleReader(new StringReader(FRAMES)),
+                new GuacamoleBatchPolicy(10, GuacamoleBatchPolicy.DEFAULT_MAX_DELAY));
+
+        assertEquals("4.size,1.0,2.64,2.64;", batcher.readBatch());
+        assertEquals("4.sync,1.1;", batcher.readBatch());
+        assertEquals("3.nop;4.sync,1.2;", batcher.readBatch());
+
+    }
+
+    /**
+     * Verifies that UTF-8 batches contain the UTF-8 form of the instructions
+     * read, including non-ASCII characters.
+     *
+     * @throws GuacamoleException
+     *     If the instruction stream cannot be read.
+     */
+    @Test
+    public void testUTF8Batches() throws GuacamoleException {
+
+        Charset utf8 = Charset.forName("UTF-8");
+        String frame = "4.name,4.caf\u00e9;4.sync,1.1;";
+
+        GuacamoleInstructionBatcher batcher = new GuacamoleInstructionBatcher(
+                new ReaderGuacamoleReader(new StringReader(frame + "3.nop;")),
+                new GuacamoleBatchPolicy(GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH, 0));
+
+        ByteBuffer batch = batcher.readUTF8Batch();
+        assertEquals(frame + "3.nop;", utf8.decode(batch).toString());
+
+        assertNull(batcher.readUTF8Batch());
+
+    }
+
+    /**
+     * Verifies that only "sync" instructions are recognized as ending a
+     * frame.
+     */
+    @Test
+    public void testFrameEnd() {
+
+        char[] sync = "4.sync,1.1;".toCharArray();
+        char[] size = "4.size,1.0,1.1,1.1;".toCharArray();
+        char[] nop = "3.nop;".toCharArray();
+
+        assertTrue(GuacamoleBatchPolicy.isFrameEnd(sync, 0, sync.length));
+        assertFalse(GuacamoleBatchPolicy.isFrameEnd(size, 0, size.length));
+        assertFalse(GuacamoleBatchPolicy.isFrameEnd(nop, 0, nop.length));
+
+    }
+
+    /**
+     * Verifies that the length of UTF-8 data is measured in the same
+     * characters as the maximum length of the batch policy, counting
+     * characters outside the Basic Multilingual Plane as surrogate pairs.
+     */
+    @Test
+    public void testCharacterLength() {
+
+        String text = "a\u00e9\u20ac\ud83d\ude00;";
+        ByteBuffer utf8 = Charset.forName("UTF-8").encode(text);
+
+        assertEquals(11, utf8.remaining());
+        assertEquals(text.length(), GuacamoleBatchPolicy.getCharacterLength(utf8));
+        assertEquals(0, utf8.position());
+
+    }
+
+}
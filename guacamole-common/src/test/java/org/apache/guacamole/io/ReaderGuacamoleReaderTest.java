@@ -20,7 +20,9 @@
 package org.apache.guacamole.io;
 
 import java.io.StringReader;
+import java.nio.CharBuffer;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -81,6 +83,100 @@ public class ReaderGuacamoleReaderTest {
 
     }
 
+    /**
+     * Test of ReaderGuacamoleReader providing instructions in place via
+     * readBuffer(), interleaved with calls to read() and readInstruction(),
+     * over enough data to require that the internal buffer be reclaimed.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testReadBuffer() throws GuacamoleException {
+
+        // Build test string large enough to wrap the internal buffer several
+        // times over
+        StringBuilder test = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            String value = Integer.toString(i);
+            test.append("4.sync,").append(value.length()).append('.')
+                .append(value).append(';');
+        }
+
+        BufferedGuacamoleReader reader = new ReaderGuacamoleReader(new StringReader(test.toString()));
+
+        for (int i = 0; i < 10000; i++) {
+
+            String value = Integer.toString(i);
+            String expected = "4.sync," + value.length() + "." + value + ";";
+
+            // Alternate between each method of reading
+            switch (i % 3) {
+
+                // Views of internal buffer
+                case 0:
+                    CharBuffer buffer = reader.readBuffer();
+                    assertNotNull(buffer);
+                    assertEquals(expected, buffer.toString());
+                    break;
+
+                // Copies of internal buffer
+                case 1:
+                    char[] instruction = reader.read();
+                    assertNotNull(instruction);
+                    assertEquals(expected, new String(instruction));
+                    break;
+
+                // Fully-parsed instructions
+                default:
+                    GuacamoleInstruction parsed = reader.readInstruction();
+                    assertNotNull(parsed);
+                    assertEquals("sync", parsed.getOpcode());
+                    assertEquals(1, parsed.getArgs().size());
+                    assertEquals(value, parsed.getArgs().get(0));
+
+            }
+
+        }
+
+        // There should be no more instructions
+        assertNull(reader.readBuffer());
+
+    }
+
+
+    /**
+     * Test that the internal buffer grows to hold large instructions, but
+     * never beyond its maximum size.
+     *
+     * @throws GuacamoleException If a parse error occurs.
+     */
+    @Test
+    public void testMaxBufferSize() throws GuacamoleException {
+
+        // Build an instruction which fits only after the buffer has grown
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 40; i++)
+            data.append('x');
+
+        String large = "4.blob,1.0,40." + data + ";";
+        String tooLarge = "4.blob,1.0,80." + data + data + ";";
+
+        ReaderGuacamoleReader reader = new ReaderGuacamoleReader(
+                new StringReader(large + tooLarge), 16, 64);
+
+        // Instruction of 55 characters fits within the maximum of 64
+        assertEquals(large, new String(reader.read()));
+
+        // Instruction of 95 characters does not
+        try {
+            reader.read();
+            fail("Instruction should have exceeded the maximum buffer size.");
+        }
+        catch (GuacamoleServerException e) {
+            // Expected
+        }
+
+    }
 
-   
 }
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests RecordingIndex, validating that frames and keyframes are located
+ * correctly, that recordings can be indexed incrementally, and that indexes
+ * are reloaded from their sidecar files.
+ */
+public class RecordingIndexTest {
+
+    /**
+     * Temporary directory containing all test recordings.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Appends the given instruction data to the given file as UTF-8.
+     *
+     * @param file
+     *     The file to append to.
+     *
+     * @param data
+     *     The instruction data to append.
+     *
+     * @throws IOException
+     *     If the file cannot be written.
+     */
+    private void append(File file, String data) throws IOException {
+        FileOutputStream output = new FileOutputStream(file, true);
+        try {
+            output.write(data.getBytes("UTF-8"));
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Returns a "blob" instruction whose data consists of the given number
+     * of two-byte characters.
+     *
+     * @param length
+     *     The number of characters within the blob.
+     *
+     * @return
+     *     A "blob" instruction of the given length.
+     */
+    private String blob(int length) {
+        StringBuilder instruction = new StringBuilder("4.blob,1.0,");
+        instruction.append(length).append('.');
+        for (int i = 0; i < length; i++)
+            instruction.append('\u00e9');
+        return instruction.append(';').toString();
+    }
+
+    /**
+     * Verifies that a recording which is written in stages is indexed
+     * incrementally, that keyframes are flagged according to the keyframe
+     * intervals, and that the resulting sidecar can be reloaded.
+     *
+     * @throws Exception
+     *     If the recording cannot be written or indexed.
+     */
+    @Test
+    public void testIncrementalIndex() throws Exception {
+
+        File recording = folder.newFile("recording");
+        RecordingIndex index = new RecordingIndex(recording);
+
+        // Two frames, followed by an incomplete instruction
+        String first = "4.size,1.0,4.1024,3.768;4.sync,4.1000;";
+        String second = blob(2) + "4.sync,4.2000;";
+        append(recording, first + second + "4.sy");
+
+        index.update();
+        assertEquals(2, index.getFrameCount());
+        assertEquals(1000, index.getFrameTimestamp(0));
+        assertEquals(first.length(), index.getFrameEnd(0));
+        assertEquals(first.length(), index.getFrameStart(1));
+        assertEquals(first.length() + second.length() + 2, index.getFrameEnd(1));
+        assertEquals(1, index.getKeyframeCount());
+
+        // Complete the partial instruction, adding enough data for a second
+        // keyframe only once enough time has also passed
+        String third = blob(8192);
+        append(recording, "nc,4.3000;" + third + "4.sync,4.4000;4.sync,4.7000;");
+
+        index.update();
+        assertEquals(5, index.getFrameCount());
+        assertEquals(2, index.getKeyframeCount());
+        assertEquals(0, index.getKeyframe(0));
+        assertEquals(4, index.getKeyframe(1));
+        assertEquals(recording.length(), index.getLength());
+
+        assertEquals(3, index.findFrame(4500));
+        assertEquals(4, index.findFrame(7000));
+        assertEquals(0, index.findFrame(0));
+
+        // A new index must be read from the sidecar
+        File sidecar = new File(recording.getPath() + RecordingIndex.INDEX_SUFFIX);
+        long sidecarLength = sidecar.length();
+        assertTrue(sidecarLength > 0);
+
+        RecordingIndex reloaded = new RecordingIndex(recording);
+        reloaded.update();
+        assertEquals(sidecarLength, sidecar.length());
+        assertEquals(5, reloaded.getFrameCount());
+        assertEquals(2, reloaded.getKeyframeCount());
+        assertEquals(4, reloaded.getKeyframe(1));
+        assertEquals(index.getFrameEnd(3), reloaded.getFrameEnd(3));
+
+    }
+
+    /**
+     * Verifies that data which is not valid Guacamole instruction data is
+     * rejected.
+     *
+     * @throws Exception
+     *     If the recording cannot be written.
+     */
+    @Test
+    public void testMalformed() throws Exception {
+
+        File recording = folder.newFile("malformed");
+        append(recording, "4.sync,4.1000;x.abc;");
+
+        RecordingIndex index = new RecordingIndex(recording);
+        try {
+            index.update();
+            fail("Malformed recording was indexed.");
+        }
+        catch (GuacamoleServerException e) {
+            // Expected
+        }
+
+        // Frames preceding the malformed data remain indexed
+        assertEquals(1, index.getFrameCount());
+
+    }
+
+}
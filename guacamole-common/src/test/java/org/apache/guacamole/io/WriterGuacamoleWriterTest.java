@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the WriterGuacamoleWriter implementation of GuacamoleWriter,
+ * validating that written data is flushed as dictated by its FlushPolicy.
+ */
+public class WriterGuacamoleWriterTest {
+
+    /**
+     * Writer which counts the number of times it has been flushed.
+     */
+    private static class CountingWriter extends StringWriter {
+
+        /**
+         * The number of times this writer has been flushed.
+         */
+        private int flushes = 0;
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+
+    }
+
+    /**
+     * Test that the default policy flushes after every write.
+     *
+     * @throws GuacamoleException If an error occurs while writing.
+     */
+    @Test
+    public void testImmediate() throws GuacamoleException {
+
+        CountingWriter output = new CountingWriter();
+        WriterGuacamoleWriter writer = new WriterGuacamoleWriter(output);
+
+        writer.writeInstruction(new GuacamoleInstruction("mouse", "1", "2", "0"));
+        writer.writeInstruction(new GuacamoleInstruction("mouse", "3", "4", "0"));
+        assertEquals(2, output.flushes);
+
+        // Nothing remains to be flushed
+        writer.flush();
+        assertEquals(2, output.flushes);
+
+    }
+
+    /**
+     * Test that written data is coalesced until explicitly flushed or until
+     * the pending length threshold is reached.
+     *
+     * @throws GuacamoleException If an error occurs while writing.
+     * @throws IOException If the test writer cannot be closed.
+     */
+    @Test
+    public void testCoalesce() throws GuacamoleException, IOException {
+
+        CountingWriter output = new CountingWriter();
+        WriterGuacamoleWriter writer = new WriterGuacamoleWriter(output,
+                new FlushPolicy(32, 60000));
+
+        // Small writes are coalesced
+        writer.write("5.mouse,1.1,1.2,1.0;".toCharArray());
+        assertEquals(0, output.flushes);
+
+        // Exceeding threshold forces a flush
+        writer.write("5.mouse,1.3,1.4,1.0;".toCharArray());
+        assertEquals(1, output.flushes);
+
+        // Explicit flush sends any remaining data
+        writer.write("4.sync,1.5;".toCharArray());
+        writer.flush();
+        assertEquals(2, output.flushes);
+        assertEquals("5.mouse,1.1,1.2,1.0;5.mouse,1.3,1.4,1.0;4.sync,1.5;",
+                output.toString());
+
+        output.close();
+
+    }
+
+}
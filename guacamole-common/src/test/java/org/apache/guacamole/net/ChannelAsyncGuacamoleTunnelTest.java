@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.guacamole.net;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ChannelAsyncGuacamoleTunnel against a local server standing in for
+ * guacd, validating that instructions are delivered to the listener, that
+ * writes complete, and that the listener is notified once the connection
+ * closes.
+ */
+public class ChannelAsyncGuacamoleTunnelTest {
+
+    /**
+     * The charset used by the Guacamole protocol.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Listener which records all received instructions as Strings, as well
+     * as whether the tunnel has closed.
+     */
+    private static class RecordingListener implements AsyncGuacamoleTunnelListener {
+
+        /**
+         * All received instructions, in order.
+         */
+        private final BlockingQueue<String> instructions = new LinkedBlockingQueue<String>();
+
+        /**
+         * Latch which is released once the tunnel has closed.
+         */
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void instructionReceived(ByteBuffer instruction) {
+            instructions.add(UTF8.decode(instruction).toString());
+        }
+
+        @Override
+        public void tunnelClosed(GuacamoleException cause) {
+            closed.countDown();
+        }
+
+    }
+
+    /**
+     * Callback which records the successful completion of a write.
+     */
+    private static class RecordingCallback implements GuacamoleWriteCallback {
+
+        /**
+         * Latch which is released once the write has completed.
+         */
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void writeCompleted() {
+            completed.countDown();
+        }
+
+        @Override
+        public void writeFailed(GuacamoleException error) {
+            // Leave latch unreleased, failing the test
+        }
+
+    }
+
+    /**
+     * Test of reading, writing, and closure of ChannelAsyncGuacamoleTunnel.
+     *
+     * @throws Exception
+     *     If the local server or tunnel cannot be used.
+     */
+    @Test
+    public void testTunnel() throws Exception {
+
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        GuacamoleEventLoop eventLoop = new GuacamoleEventLoop(1);
+
+        try {
+
+            ChannelGuacamoleSocket socket = new ChannelGuacamoleSocket(
+                    "127.0.0.1", server.getLocalPort());
+            Socket guacd = server.accept();
+
+            // Data sent prior to start() must still be delivered
+            OutputStream guacdOutput = guacd.getOutputStream();
+            guacdOutput.write("4.sync,1.1;3.foo,2.éü;".getBytes(UTF8));
+            guacdOutput.flush();
+
+            RecordingListener listener = new RecordingListener();
+            AsyncGuacamoleTunnel tunnel = new ChannelAsyncGuacamoleTunnel(eventLoop, socket);
+            tunnel.start(listener);
+
+            assertEquals("4.sync,1.1;", listener.instructions.poll(5, TimeUnit.SECONDS));
+            assertEquals("3.foo,2.éü;", listener.instructions.poll(5, TimeUnit.SECONDS));
+
+            // Verify writes arrive at guacd
+            RecordingCallback callback = new RecordingCallback();
+            tunnel.writeInstruction(new GuacamoleInstruction("key", "65307", "1"), callback);
+            assertTrue(callback.completed.await(5, TimeUnit.SECONDS));
+
+            byte[] expected = "3.key,5.65307,1.1;".getBytes(UTF8);
+            byte[] received = new byte[expected.length];
+            InputStream guacdInput = guacd.getInputStream();
+            int length = 0;
+            while (length < received.length) {
+                int numRead = guacdInput.read(received, length, received.length - length);
+                assertTrue(numRead != -1);
+                length += numRead;
+            }
+            assertArrayEquals(expected, received);
+
+            // Verify closure is detected
+            guacd.close();
+            assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+            assertFalse(tunnel.isOpen());
+
+        }
+        finally {
+            eventLoop.shutdown();
+            server.close();
+        }
+
+    }
+
+}
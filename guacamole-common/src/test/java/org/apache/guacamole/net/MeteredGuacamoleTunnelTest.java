@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests MeteredGuacamoleTunnel, validating that the traffic passing through
+ * the tunnel is measured accurately.
+ */
+public class MeteredGuacamoleTunnelTest {
+
+    /**
+     * Test instruction stream containing two frames. Element lengths are in
+     * UTF-16 characters, including that of the surrogate pair within the
+     * "nop" instruction.
+     */
+    private static final String INSTRUCTIONS =
+              "4.size,1.0,2.64,2.64;4.sync,1.1;"
+            + "3.nop,2.\uD83D\uDE00;7.unknown;4.sync,1.2;";
+
+    /**
+     * GuacamoleSocket which reads a fixed instruction stream and writes to a
+     * StringWriter.
+     */
+    private static class FixedSocket implements GuacamoleSocket {
+
+        /**
+         * Reader which returns the fixed instructions.
+         */
+        private final GuacamoleReader reader =
+                new ReaderGuacamoleReader(new StringReader(INSTRUCTIONS));
+
+        /**
+         * Writer which writes to a StringWriter.
+         */
+        private final GuacamoleWriter writer =
+                new WriterGuacamoleWriter(new StringWriter());
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Verifies that characters and instructions read in place are counted,
+     * grouped by opcode, and that the time between frames is measured.
+     *
+     * @throws GuacamoleException
+     *     If the test instructions cannot be read.
+     */
+    @Test
+    public void testBufferedRead() throws GuacamoleException {
+
+        MeteredGuacamoleTunnel tunnel =
+                new MeteredGuacamoleTunnel(new SimpleGuacamoleTunnel(new FixedSocket()));
+
+        GuacamoleReader reader = tunnel.acquireReader();
+        assertTrue(reader instanceof BufferedGuacamoleReader);
+        while (((BufferedGuacamoleReader) reader).readBuffer() != null);
+        tunnel.releaseReader();
+
+        assertEquals(INSTRUCTIONS.length(), tunnel.getCharactersRead());
+        assertEquals(5, tunnel.getInstructionsRead());
+
+        Map<String, Long> counts = tunnel.getInstructionCounts();
+        assertEquals(Long.valueOf(1), counts.get("size"));
+        assertEquals(Long.valueOf(2), counts.get("sync"));
+        assertEquals(Long.valueOf(1), counts.get("nop"));
+        assertEquals(Long.valueOf(1), counts.get(""));
+
+        assertEquals(1, tunnel.getFrameIntervals().getCount());
+        assertEquals(1, tunnel.getReaderWaitTimes().getCount());
+        assertEquals(1, tunnel.getReaderHoldTimes().getCount());
+        assertEquals(6, tunnel.getReadTimes().getCount());
+
+    }
+
+    /**
+     * Verifies that data written is counted, and that measurements are
+     * aggregated by SimpleTunnelMetrics.
+     *
+     * @throws GuacamoleException
+     *     If the test instructions cannot be read or written.
+     */
+    @Test
+    public void testWriteAndAggregate() throws GuacamoleException {
+
+        MeteredGuacamoleTunnel tunnel =
+                new MeteredGuacamoleTunnel(new SimpleGuacamoleTunnel(new FixedSocket()));
+
+        GuacamoleInstruction instruction = new GuacamoleInstruction("mouse", "1", "2");
+        GuacamoleWriter writer = tunnel.acquireWriter();
+        writer.writeInstruction(instruction);
+        writer.write("3.nop;".toCharArray());
+        tunnel.releaseWriter();
+
+        assertEquals(instruction.getLength() + 6, tunnel.getCharactersWritten());
+
+        GuacamoleReader reader = tunnel.acquireReader();
+        while (reader.read() != null);
+        tunnel.releaseReader();
+
+        SimpleTunnelMetrics aggregate = new SimpleTunnelMetrics();
+        aggregate.add(tunnel);
+        aggregate.add(tunnel);
+
+        assertEquals(2 * INSTRUCTIONS.length(), aggregate.getCharactersRead());
+        assertEquals(2 * tunnel.getCharactersWritten(), aggregate.getCharactersWritten());
+        assertEquals(10, aggregate.getInstructionsRead());
+        assertEquals(Long.valueOf(4), aggregate.getInstructionCounts().get("sync"));
+        assertEquals(2, aggregate.getWriterHoldTimes().getCount());
+
+    }
+
+    /**
+     * Verifies that percentiles are reported as the upper bound of the
+     * bucket containing them, limited to the longest duration recorded.
+     */
+    @Test
+    public void testHistogram() {
+
+        TimingHistogram histogram = new TimingHistogram();
+        for (int i = 0; i < 99; i++)
+            histogram.record(1500);
+        histogram.record(5000000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5000000, histogram.getMax());
+        assertEquals(2000, histogram.getPercentile(50));
+        assertEquals(5000000, histogram.getPercentile(100));
+
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests PooledTunnelReaderExecutor, validating that read loops are queued
+ * once all threads are busy, refused once the queue is full, and that
+ * threads are reused once read loops complete.
+ */
+public class PooledTunnelReaderExecutorTest {
+
+    /**
+     * Read loop which blocks until released, recording when it has started.
+     */
+    private static class BlockingReadLoop implements Runnable {
+
+        /**
+         * Latch which is released once the read loop has started.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Latch which must be released for the read loop to complete.
+         */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    /**
+     * Verifies that read loops beyond the thread limit are queued, that read
+     * loops beyond the queue limit are refused, and that queued read loops
+     * run once a thread becomes free.
+     *
+     * @throws Exception
+     *     If the test is interrupted or a read loop is unexpectedly refused.
+     */
+    @Test
+    public void testLimits() throws Exception {
+
+        PooledTunnelReaderExecutor executor = new PooledTunnelReaderExecutor(1, 1);
+
+        BlockingReadLoop first = new BlockingReadLoop();
+        BlockingReadLoop second = new BlockingReadLoop();
+
+        // First read loop occupies the only thread
+        executor.execute(first);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getActiveCount());
+
+        // Second read loop must wait for that thread
+        executor.execute(second);
+        assertEquals(1, executor.getQueuedCount());
+
+        // Third read loop has nowhere to go
+        try {
+            executor.execute(new BlockingReadLoop());
+            fail("Read loop should have been refused.");
+        }
+        catch (GuacamoleServerBusyException e) {
+            // Expected
+        }
+
+        // Queued read loop runs once the first completes
+        first.release.countDown();
+        assertTrue(second.started.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueuedCount());
+
+        second.release.countDown();
+        executor.shutdown();
+
+    }
+
+    /**
+     * Verifies that, without a queue, read loops beyond the thread limit are
+     * refused immediately rather than waiting for a thread, and that a freed
+     * thread accepts new read loops.
+     *
+     * @throws Exception
+     *     If the test is interrupted or a read loop is unexpectedly refused.
+     */
+    @Test
+    public void testRefused() throws Exception {
+
+        PooledTunnelReaderExecutor executor = new PooledTunnelReaderExecutor(1, 0);
+
+        BlockingReadLoop first = new BlockingReadLoop();
+        BlockingReadLoop second = new BlockingReadLoop();
+
+        // First read loop occupies the only thread
+        executor.execute(first);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+
+        // Second read loop must not wait for that thread
+        try {
+            executor.execute(second);
+            fail("Read loop should have been refused.");
+        }
+        catch (GuacamoleServerBusyException e) {
+            // Expected
+        }
+
+        assertEquals(0, executor.getQueuedCount());
+
+        // Once the first read loop completes, its thread is free again
+        // (though it may take a moment to begin waiting for more work)
+        first.release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                executor.execute(second);
+                break;
+            }
+            catch (GuacamoleServerBusyException e) {
+                if (System.currentTimeMillis() > deadline)
+                    throw e;
+                Thread.sleep(10);
+            }
+        }
+
+        assertTrue(second.started.await(5, TimeUnit.SECONDS));
+
+        second.release.countDown();
+        executor.shutdown();
+
+    }
+
+    /**
+     * Verifies that an idle thread is reused rather than a new thread being
+     * created for each read loop.
+     *
+     * @throws Exception
+     *     If the test is interrupted or a read loop is unexpectedly refused.
+     */
+    @Test
+    public void testReuse() throws Exception {
+
+        PooledTunnelReaderExecutor executor = new PooledTunnelReaderExecutor(8, 1);
+
+        final Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+
+            final int index = i;
+            final CountDownLatch done = new CountDownLatch(1);
+
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    threads[index] = Thread.currentThread();
+                    done.countDown();
+                }
+
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            // Wait for the thread to return to the pool
+            while (executor.getActiveCount() > 0)
+                Thread.sleep(10);
+
+        }
+
+        assertSame(threads[0], threads[1]);
+        assertEquals(2, executor.getCompletedCount());
+        executor.shutdown();
+
+    }
+
+    /**
+     * Verifies that a burst of read loops submitted faster than threads start
+     * is never queued while the pool is below its maximum size.
+     *
+     * @throws Exception
+     *     If the test is interrupted or a read loop is unexpectedly refused.
+     */
+    @Test
+    public void testBurst() throws Exception {
+
+        PooledTunnelReaderExecutor executor = new PooledTunnelReaderExecutor(16, 0);
+
+        // Submit all read loops without waiting for any to start
+        BlockingReadLoop[] readLoops = new BlockingReadLoop[16];
+        for (int i = 0; i < readLoops.length; i++) {
+            readLoops[i] = new BlockingReadLoop();
+            executor.execute(readLoops[i]);
+        }
+
+        // Every read loop must run concurrently
+        for (BlockingReadLoop readLoop : readLoops)
+            assertTrue(readLoop.started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, executor.getQueuedCount());
+
+        for (BlockingReadLoop readLoop : readLoops)
+            readLoop.release.countDown();
+
+        executor.shutdown();
+
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the handshake performed by ConfiguredGuacamoleSocket, validating
+ * that instructions are sent in as few writes as possible.
+ */
+public class ConfiguredGuacamoleSocketTest {
+
+    /**
+     * The client capabilities sent for the client described by
+     * getClientInformation().
+     */
+    private static final String CAPABILITIES = "4.size,4.1024,3.768,2.96;"
+            + "5.audio,9.audio/L16;5.video;5.image,9.image/png;";
+
+    /**
+     * The instructions sent by a Guacamole proxy in response to the
+     * handshake.
+     */
+    private static final String SERVER_RESPONSE =
+            "4.args,8.hostname,4.port;5.ready,4.$abc;";
+
+    /**
+     * GuacamoleSocket which reads a fixed response and records each write
+     * as a separate String.
+     */
+    private static class RecordingSocket implements GuacamoleSocket {
+
+        /**
+         * The data of each write, in order.
+         */
+        private final List<String> writes = new ArrayList<String>();
+
+        /**
+         * Reader which returns the fixed server response.
+         */
+        private final GuacamoleReader reader =
+                new ReaderGuacamoleReader(new StringReader(SERVER_RESPONSE));
+
+        /**
+         * Writer which records each write.
+         */
+        private final GuacamoleWriter writer = new GuacamoleWriter() {
+
+            @Override
+            public void write(char[] chunk, int off, int len) {
+                writes.add(new String(chunk, off, len));
+            }
+
+            @Override
+            public void write(char[] chunk) {
+                write(chunk, 0, chunk.length);
+            }
+
+            @Override
+            public void writeInstruction(GuacamoleInstruction instruction) {
+                writes.add(instruction.toString());
+            }
+
+        };
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Returns a configuration for a connection to the given hostname on
+     * port 5900 using VNC.
+     *
+     * @return
+     *     A new GuacamoleConfiguration.
+     */
+    private GuacamoleConfiguration getConfiguration() {
+        GuacamoleConfiguration config = new GuacamoleConfiguration();
+        config.setProtocol("vnc");
+        config.setParameter("hostname", "localhost");
+        config.setParameter("port", "5900");
+        return config;
+    }
+
+    /**
+     * Returns client information describing a client which supports a
+     * single audio and image format.
+     *
+     * @return
+     *     A new GuacamoleClientInformation.
+     */
+    private GuacamoleClientInformation getClientInformation() {
+        GuacamoleClientInformation info = new GuacamoleClientInformation();
+        info.getAudioMimetypes().add("audio/L16");
+        info.getImageMimetypes().add("image/png");
+        return info;
+    }
+
+    /**
+     * Test that all instructions following "args" are sent in one write.
+     *
+     * @throws GuacamoleException If the handshake fails.
+     */
+    @Test
+    public void testPipelined() throws GuacamoleException {
+
+        RecordingSocket socket = new RecordingSocket();
+        ConfiguredGuacamoleSocket configured = new ConfiguredGuacamoleSocket(
+                socket, getConfiguration(), getClientInformation());
+
+        assertEquals("$abc", configured.getConnectionID());
+        assertEquals(2, socket.writes.size());
+        assertEquals("6.select,3.vnc;", socket.writes.get(0));
+        assertEquals(CAPABILITIES + "7.connect,9.localhost,4.5900;",
+                socket.writes.get(1));
+
+        assertTrue(configured.getHandshakeTime(TimeUnit.NANOSECONDS)
+                >= configured.getSelectToArgsTime(TimeUnit.NANOSECONDS)
+                 + configured.getConnectToReadyTime(TimeUnit.NANOSECONDS));
+
+    }
+
+    /**
+     * Test that client capabilities are sent with "select" when requested.
+     *
+     * @throws GuacamoleException If the handshake fails.
+     */
+    @Test
+    public void testCapabilitiesEarly() throws GuacamoleException {
+
+        RecordingSocket socket = new RecordingSocket();
+        ConfiguredGuacamoleSocket configured = new ConfiguredGuacamoleSocket(
+                socket, getConfiguration(), getClientInformation(), true);
+
+        assertEquals("$abc", configured.getConnectionID());
+        assertEquals(2, socket.writes.size());
+        assertEquals("6.select,3.vnc;" + CAPABILITIES, socket.writes.get(0));
+        assertEquals("7.connect,9.localhost,4.5900;", socket.writes.get(1));
+
+    }
+
+}
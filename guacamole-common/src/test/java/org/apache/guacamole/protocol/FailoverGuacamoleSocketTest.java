@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleUpstreamNotFoundException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests FailoverGuacamoleSocket, validating that upstream errors are detected
+ * and that all queued instruction data is replayed exactly as received.
+ */
+public class FailoverGuacamoleSocketTest {
+
+    /**
+     * Instructions received from guacd prior to the first "sync".
+     */
+    private static final String QUEUED = "4.size,1.0,4.1024,3.768;"
+            + "4.name,7.Desktop;4.sync,4.1234;";
+
+    /**
+     * Instructions received from guacd following the first "sync".
+     */
+    private static final String REMAINING = "3.nop;";
+
+    /**
+     * GuacamoleSocket which reads a fixed sequence of instructions and
+     * ignores all writes.
+     */
+    private static class FixedSocket implements GuacamoleSocket {
+
+        /**
+         * Reader which returns the fixed instructions.
+         */
+        private final GuacamoleReader reader;
+
+        /**
+         * Creates a new FixedSocket which reads the given instructions.
+         *
+         * @param instructions
+         *     The instructions to read.
+         */
+        public FixedSocket(String instructions) {
+            reader = new ReaderGuacamoleReader(new StringReader(instructions));
+        }
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Verifies that instructions read prior to "sync" are replayed by read()
+     * without alteration, followed by the remaining instructions.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    @Test
+    public void testReplay() throws GuacamoleException {
+
+        GuacamoleReader reader = new FailoverGuacamoleSocket(
+                new FixedSocket(QUEUED + REMAINING)).getReader();
+
+        assertTrue(reader.available());
+        assertEquals(QUEUED, new String(reader.read()));
+        assertEquals(REMAINING, new String(reader.read()));
+        assertNull(reader.read());
+
+    }
+
+    /**
+     * Verifies that queued instructions are replayed one at a time by
+     * readBuffer() and readInstruction().
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    @Test
+    public void testReplayInstructions() throws GuacamoleException {
+
+        BufferedGuacamoleReader reader = (BufferedGuacamoleReader)
+                new FailoverGuacamoleSocket(new FixedSocket(QUEUED + REMAINING)).getReader();
+
+        CharBuffer size = reader.readBuffer();
+        assertEquals("4.size,1.0,4.1024,3.768;", size.toString());
+
+        GuacamoleInstruction name = reader.readInstruction();
+        assertEquals("name", name.getOpcode());
+        assertEquals("Desktop", name.getArgs().get(0));
+
+        assertEquals("4.sync,4.1234;", reader.readBuffer().toString());
+        assertEquals("nop", reader.readInstruction().getOpcode());
+        assertNull(reader.readInstruction());
+
+    }
+
+    /**
+     * Verifies that an upstream error received prior to "sync" is thrown
+     * from the constructor.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    @Test(expected = GuacamoleUpstreamNotFoundException.class)
+    public void testUpstreamError() throws GuacamoleException {
+        new FailoverGuacamoleSocket(new FixedSocket(
+                "4.name,7.Desktop;5.error,9.Not found,3.519;"));
+    }
+
+    /**
+     * Verifies that non-upstream errors are replayed rather than thrown.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    @Test
+    public void testOtherError() throws GuacamoleException {
+
+        String error = "5.error,6.Denied,3.769;";
+        GuacamoleReader reader = new FailoverGuacamoleSocket(
+                new FixedSocket(error)).getReader();
+
+        assertEquals(error, new String(reader.read()));
+
+    }
+
+}
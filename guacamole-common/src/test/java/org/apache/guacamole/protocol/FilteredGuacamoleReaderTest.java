@@ -21,6 +21,7 @@ package org.apache.guacamole.protocol;
 
 import java.io.StringReader;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.ReaderGuacamoleReader;
 import static org.junit.Assert.*;
@@ -49,6 +50,32 @@ public class FilteredGuacamoleReaderTest {
 
     }
     
+    /**
+     * Filter which allows through "yes" instructions, replaces "maybe"
+     * instructions with "yes" instructions, and drops all others, operating
+     * on instructions in place where possible.
+     */
+    private static class TestViewFilter extends TestFilter
+            implements GuacamoleViewFilter {
+
+        @Override
+        public GuacamoleInstructionView filter(GuacamoleInstructionView instruction)
+                throws GuacamoleException {
+
+            if (instruction.opcodeEquals("yes"))
+                return instruction;
+
+            if (instruction.opcodeEquals("maybe")) {
+                instruction.load(new GuacamoleInstruction("yes", instruction.getArg(0)));
+                return instruction;
+            }
+
+            return null;
+
+        }
+
+    }
+
     @Test
     public void testFilter() throws Exception {
 
@@ -87,4 +114,60 @@ public class FilteredGuacamoleReaderTest {
 
     }
     
+    @Test
+    public void testViewFilter() throws Exception {
+
+        // Test string
+        final String test = "3.yes,1.A;2.no,1.B;5.maybe,1.C;3.yes,1.D;4.nope,1.E;";
+
+        // Stack multiple filters, all of which can filter in place
+        GuacamoleReader reader = new ReaderGuacamoleReader(new StringReader(test));
+        reader = new FilteredGuacamoleReader(reader, new TestViewFilter());
+        reader = new FilteredGuacamoleReader(reader, new TestViewFilter());
+
+        // Validate first instruction
+        assertEquals("3.yes,1.A;", new String(reader.read()));
+
+        // Validate second instruction, which was rewritten by the first filter
+        GuacamoleInstruction instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals("yes", instruction.getOpcode());
+        assertEquals(1, instruction.getArgs().size());
+        assertEquals("C", instruction.getArgs().get(0));
+
+        // Validate third instruction
+        assertEquals("3.yes,1.D;", ((BufferedGuacamoleReader) reader).readBuffer().toString());
+
+        // Should be done now
+        assertNull(reader.read());
+
+    }
+
+    @Test
+    public void testCompositeFilter() throws Exception {
+
+        // Test string
+        final String test = "3.yes,1.A;2.no,1.B;5.maybe,1.C;3.yes,1.D;4.nope,1.E;";
+
+        // Rewrite "maybe" to "yes" before a filter lacking view support
+        GuacamoleReader reader = new FilteredGuacamoleReader(
+                new ReaderGuacamoleReader(new StringReader(test)),
+                new CompositeGuacamoleFilter(new TestViewFilter(), new TestFilter()));
+
+        assertEquals("3.yes,1.A;", new String(reader.read()));
+        assertEquals("3.yes,1.C;", new String(reader.read()));
+        assertEquals("3.yes,1.D;", ((BufferedGuacamoleReader) reader).readBuffer().toString());
+        assertNull(reader.read());
+
+        // Drop "maybe" before it can be rewritten
+        reader = new FilteredGuacamoleReader(
+                new ReaderGuacamoleReader(new StringReader(test)),
+                new CompositeGuacamoleFilter(new TestFilter(), new TestViewFilter()));
+
+        assertEquals("3.yes,1.A;", new String(reader.read()));
+        assertEquals("3.yes,1.D;", reader.readInstruction().toString());
+        assertNull(reader.readInstruction());
+
+    }
+
 }
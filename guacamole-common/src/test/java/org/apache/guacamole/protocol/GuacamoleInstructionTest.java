@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the serialization of GuacamoleInstruction, validating that each
+ * writeTo() variant produces exactly the protocol form of the instruction.
+ */
+public class GuacamoleInstructionTest {
+
+    /**
+     * The UTF-8 charset.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Instructions covering empty, multi-digit, multi-byte, and
+     * supplementary-plane element values.
+     */
+    private static final GuacamoleInstruction[] INSTRUCTIONS = {
+        new GuacamoleInstruction("nop"),
+        new GuacamoleInstruction(GuacamoleOpcode.BLOB, "0", ""),
+        new GuacamoleInstruction(GuacamoleOpcode.ACK, "12", "R\u00e9sum\u00e9 \u2713", "0"),
+        new GuacamoleInstruction("name", "\uD83D\uDE00 0123456789 0123456789")
+    };
+
+    /**
+     * Verifies that getLength() and writeTo(Appendable) match toString().
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the StringBuilder.
+     */
+    @Test
+    public void testWriteToAppendable() throws IOException {
+        for (GuacamoleInstruction instruction : INSTRUCTIONS) {
+
+            StringBuilder output = new StringBuilder();
+            instruction.writeTo(output);
+
+            String expected = instruction.toString();
+            assertEquals(expected, output.toString());
+            assertEquals(expected.length(), instruction.getLength());
+
+        }
+    }
+
+    /**
+     * Verifies that writeTo(CharBuffer) matches toString(), and that nothing
+     * is written if the buffer is too small.
+     */
+    @Test
+    public void testWriteToCharBuffer() {
+        for (GuacamoleInstruction instruction : INSTRUCTIONS) {
+
+            String expected = instruction.toString();
+
+            CharBuffer buffer = CharBuffer.allocate(expected.length());
+            instruction.writeTo(buffer);
+            buffer.flip();
+            assertEquals(expected, buffer.toString());
+
+            CharBuffer small = CharBuffer.allocate(expected.length() - 1);
+            try {
+                instruction.writeTo(small);
+                fail("Expected BufferOverflowException");
+            }
+            catch (BufferOverflowException e) {
+                assertEquals(0, small.position());
+            }
+
+        }
+    }
+
+    /**
+     * Verifies that getEncodedLength() and writeTo(ByteBuffer) match the
+     * UTF-8 encoding of toString().
+     */
+    @Test
+    public void testWriteToByteBuffer() {
+        for (GuacamoleInstruction instruction : INSTRUCTIONS) {
+
+            byte[] expected = instruction.toString().getBytes(UTF8);
+            assertEquals(expected.length, instruction.getEncodedLength());
+
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            instruction.writeTo(buffer);
+            assertFalse(buffer.hasRemaining());
+            assertArrayEquals(expected, buffer.array());
+
+        }
+    }
+
+}
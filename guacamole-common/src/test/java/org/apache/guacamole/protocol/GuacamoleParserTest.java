@@ -118,4 +118,49 @@ public class GuacamoleParserTest {
 
     }
 
+    /**
+     * Verifies that instructions having known opcodes are parsed with the
+     * corresponding GuacamoleOpcode and interned opcode value, while
+     * instructions having unknown opcodes are not.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test string.
+     */
+    @Test
+    public void testKnownOpcodes() throws GuacamoleException {
+
+        // Test string
+        char buffer[] = "4.sync,4.1234;4.blob,1.0,4.AAAA;5.blobs;".toCharArray();
+        int offset = 0;
+        int length = buffer.length;
+
+        GuacamoleOpcode[] expected = {
+            GuacamoleOpcode.SYNC,
+            GuacamoleOpcode.BLOB,
+            null
+        };
+
+        for (GuacamoleOpcode opcode : expected) {
+
+            // Parse more data
+            int parsed;
+            while (length > 0 && (parsed = parser.append(buffer, offset, length)) != 0) {
+                offset += parsed;
+                length -= parsed;
+            }
+
+            // Validate known opcode
+            assertTrue(parser.hasNext());
+            GuacamoleInstruction instruction = parser.next();
+            assertSame(opcode, instruction.getKnownOpcode());
+            if (opcode != null)
+                assertSame(opcode.getValue(), instruction.getOpcode());
+
+        }
+
+        // There should be no more instructions
+        assertFalse(parser.hasNext());
+
+    }
+
 }
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringWriter;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.PooledTunnelReaderExecutor;
+import org.apache.guacamole.net.SimpleGuacamoleTunnel;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests AsyncHTTPTunnelReader, validating that data is written to held-open
+ * read requests as soon as it is received.
+ */
+public class AsyncHTTPTunnelReaderTest {
+
+    /**
+     * The maximum number of milliseconds to wait for expected data. This is
+     * well below the time a polling implementation would take to give up on
+     * a reader which never reports available data.
+     */
+    private static final long TIMEOUT = 2000;
+
+    /**
+     * GuacamoleReader which, like the reader of an SSL connection, never
+     * reports that data is available, even when a read would not block.
+     */
+    private static class UnreportedDataReader implements GuacamoleReader {
+
+        /**
+         * The reader providing all data.
+         */
+        private final GuacamoleReader wrapped;
+
+        /**
+         * Creates a new UnreportedDataReader which reads from the given
+         * reader without ever reporting available data.
+         *
+         * @param wrapped
+         *     The reader providing all data.
+         */
+        public UnreportedDataReader(GuacamoleReader wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public boolean available() {
+            return false;
+        }
+
+        @Override
+        public char[] read() throws GuacamoleException {
+            return wrapped.read();
+        }
+
+        @Override
+        public GuacamoleInstruction readInstruction() throws GuacamoleException {
+            return wrapped.readInstruction();
+        }
+
+    }
+
+    /**
+     * GuacamoleSocket which reads using a given GuacamoleReader and writes to
+     * a StringWriter.
+     */
+    private static class TestSocket implements GuacamoleSocket {
+
+        /**
+         * The reader of this socket.
+         */
+        private final GuacamoleReader reader;
+
+        /**
+         * Writer which writes to a StringWriter.
+         */
+        private final GuacamoleWriter writer =
+                new WriterGuacamoleWriter(new StringWriter());
+
+        /**
+         * Whether this socket is open.
+         */
+        private volatile boolean open = true;
+
+        /**
+         * Creates a new TestSocket which reads using the given reader.
+         *
+         * @param reader
+         *     The reader of the new socket.
+         */
+        public TestSocket(GuacamoleReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+    }
+
+    /**
+     * Read request which records all data written to its response.
+     */
+    private static class TestRequest extends ByteArrayOutputStream {
+
+        /**
+         * Whether the response to this request has been completed.
+         */
+        private boolean completed = false;
+
+        @Override
+        public synchronized void flush() {
+            notifyAll();
+        }
+
+        /**
+         * Marks the response to this request as completed.
+         */
+        public synchronized void complete() {
+            completed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits up to TIMEOUT milliseconds for the response to this request
+         * to contain the given data.
+         *
+         * @param expected
+         *     The data expected to have been written.
+         *
+         * @return
+         *     The data written to the response to this request.
+         *
+         * @throws Exception
+         *     If interrupted while waiting.
+         */
+        public synchronized String await(String expected) throws Exception {
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (size() < expected.length()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                wait(remaining);
+            }
+
+            return toString("UTF-8");
+
+        }
+
+        /**
+         * Waits up to TIMEOUT milliseconds for the response to this request
+         * to be completed.
+         *
+         * @return
+         *     true if the response was completed, false otherwise.
+         *
+         * @throws Exception
+         *     If interrupted while waiting.
+         */
+        public synchronized boolean awaitCompletion() throws Exception {
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!completed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                wait(remaining);
+            }
+
+            return completed;
+
+        }
+
+    }
+
+    /**
+     * AsyncHTTPTunnelReader which writes to TestRequests.
+     */
+    private static class TestTunnelReader extends AsyncHTTPTunnelReader<TestRequest> {
+
+        /**
+         * Whether tunnelClosed() has been invoked.
+         */
+        private volatile boolean closed = false;
+
+        /**
+         * Creates a new TestTunnelReader which reads from the given tunnel
+         * using the given executor.
+         *
+         * @param tunnel
+         *     The tunnel to read from.
+         *
+         * @param executor
+         *     The executor which should run the read loop.
+         */
+        public TestTunnelReader(GuacamoleTunnel tunnel,
+                PooledTunnelReaderExecutor executor) {
+            super(tunnel, GuacamoleBatchPolicy.getDefault(), executor);
+        }
+
+        @Override
+        protected OutputStream getOutputStream(TestRequest request) {
+            return request;
+        }
+
+        @Override
+        protected void complete(TestRequest request) {
+            request.complete();
+        }
+
+        @Override
+        protected boolean sendError(TestRequest request, GuacamoleException cause) {
+            return false;
+        }
+
+        @Override
+        protected void tunnelClosed() {
+            closed = true;
+        }
+
+    }
+
+    /**
+     * Verifies that data from a reader which never reports available data is
+     * written as soon as it is received, that each read request is ended
+     * once replaced by another, and that all requests are ended once the
+     * tunnel reaches the end of its instruction stream.
+     *
+     * @throws Exception
+     *     If the test instruction stream cannot be written, or if
+     *     interrupted while waiting for data.
+     */
+    @Test
+    public void testUnreportedData() throws Exception {
+
+        PipedWriter guacd = new PipedWriter();
+        GuacamoleReader reader = new UnreportedDataReader(
+                new ReaderGuacamoleReader(new PipedReader(guacd)));
+
+        GuacamoleTunnel tunnel = new SimpleGuacamoleTunnel(new TestSocket(reader));
+        PooledTunnelReaderExecutor executor = new PooledTunnelReaderExecutor();
+        try {
+
+            TestTunnelReader tunnelReader = new TestTunnelReader(tunnel, executor);
+
+            // Data must arrive without waiting for available() to report it
+            TestRequest first = new TestRequest();
+            tunnelReader.addRequest(first);
+            guacd.write("4.sync,1.1;");
+            guacd.flush();
+            assertEquals("4.sync,1.1;", first.await("4.sync,1.1;"));
+
+            // Replaced requests end once data arrives for their replacement
+            TestRequest second = new TestRequest();
+            tunnelReader.addRequest(second);
+            guacd.write("4.sync,1.2;");
+            guacd.flush();
+            assertEquals("4.sync,1.2;", second.await("4.sync,1.2;"));
+            assertTrue(first.awaitCompletion());
+            assertEquals("4.sync,1.1;0.;", first.toString("UTF-8"));
+
+            // All requests end with the instruction stream
+            guacd.close();
+            assertTrue(second.awaitCompletion());
+            assertEquals("4.sync,1.2;0.;", second.toString("UTF-8"));
+            assertTrue(tunnelReader.closed);
+            assertFalse(tunnel.isOpen());
+
+        }
+        finally {
+            executor.shutdown();
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ExpirationWheel, validating that entries are expired only once their
+ * expiration times have passed, and that entries are rescheduled or cancelled
+ * as required.
+ */
+public class ExpirationWheelTest {
+
+    /**
+     * The duration of each tick of the wheel under test, in milliseconds.
+     * This is long enough that the wheel's own ticks will not occur during
+     * the test, leaving all ticks to be invoked explicitly.
+     */
+    private static final long TICK = 60000;
+
+    /**
+     * ExpirationHandler which records all expired entries, and which expires
+     * each entry at the time stored within a map.
+     */
+    private static class TestHandler implements ExpirationHandler<String> {
+
+        /**
+         * The time at which each entry should expire, by key.
+         */
+        private final Map<String, Long> expirationTimes = new HashMap<String, Long>();
+
+        /**
+         * The keys of all expired entries, in order of expiration.
+         */
+        private final List<String> expired = new ArrayList<String>();
+
+        @Override
+        public long getExpirationTime(String key) {
+            return expirationTimes.get(key);
+        }
+
+        @Override
+        public void expire(String key) {
+            expired.add(key);
+        }
+
+    }
+
+    /**
+     * Verifies that entries are expired on the first tick after their
+     * expiration times, and that entries whose expiration times have been
+     * postponed by the handler are rescheduled rather than expired.
+     */
+    @Test
+    public void testExpiration() {
+
+        long start = System.currentTimeMillis();
+
+        TestHandler handler = new TestHandler();
+        ExpirationWheel<String> wheel = new ExpirationWheel<String>(handler, TICK, TICK * 4);
+
+        try {
+
+            handler.expirationTimes.put("a", start + TICK * 2);
+            handler.expirationTimes.put("b", start + TICK * 3);
+            handler.expirationTimes.put("c", start + TICK * 10);
+            for (Map.Entry<String, Long> entry : handler.expirationTimes.entrySet())
+                wheel.schedule(entry.getKey(), entry.getValue());
+
+            assertEquals(3, wheel.size());
+
+            // Nothing is due yet
+            wheel.tick(start + TICK);
+            assertTrue(handler.expired.isEmpty());
+
+            // "b" is accessed and thus postponed before it is due
+            handler.expirationTimes.put("b", start + TICK * 6);
+
+            wheel.tick(start + TICK * 2);
+            wheel.tick(start + TICK * 3);
+            assertEquals(1, handler.expired.size());
+            assertEquals("a", handler.expired.get(0));
+            assertEquals(1, wheel.getRescheduledCount());
+
+            // "c" is further away than one rotation of the wheel, and must
+            // not expire when its slot is first reached
+            wheel.tick(start + TICK * 6);
+            assertEquals(2, handler.expired.size());
+            assertEquals("b", handler.expired.get(1));
+
+            wheel.tick(start + TICK * 10);
+            assertEquals(3, handler.expired.size());
+            assertEquals("c", handler.expired.get(2));
+
+            assertEquals(3, wheel.getExpiredCount());
+            assertEquals(0, wheel.size());
+            assertEquals(5, wheel.getTickTimes().getCount());
+
+        }
+        finally {
+            wheel.shutdown();
+        }
+
+    }
+
+    /**
+     * Verifies that cancelled entries are never expired, even if ticks of
+     * the wheel are delayed beyond their expiration times.
+     */
+    @Test
+    public void testCancel() {
+
+        long start = System.currentTimeMillis();
+
+        TestHandler handler = new TestHandler();
+        ExpirationWheel<String> wheel = new ExpirationWheel<String>(handler, TICK, TICK * 4);
+
+        try {
+
+            handler.expirationTimes.put("a", start + TICK);
+            handler.expirationTimes.put("b", start + TICK);
+            wheel.schedule("a", start + TICK);
+            wheel.schedule("b", start + TICK);
+            wheel.cancel("a");
+
+            // A single late tick must still expire all remaining entries
+            wheel.tick(start + TICK * 20);
+            assertEquals(1, handler.expired.size());
+            assertEquals("b", handler.expired.get(0));
+            assertEquals(0, wheel.size());
+
+        }
+        finally {
+            wheel.shutdown();
+        }
+
+    }
+
+}
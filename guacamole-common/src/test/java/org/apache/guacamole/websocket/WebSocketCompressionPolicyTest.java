@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.websocket.Extension;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests WebSocketCompressionPolicy, validating that offers of compression
+ * are refused or restricted as configured, and that other extensions are
+ * negotiated as they would be by default.
+ */
+public class WebSocketCompressionPolicyTest {
+
+    /**
+     * Extension implementation having a name and any number of parameters,
+     * each given as a name/value pair.
+     */
+    private static class TestExtension implements Extension {
+
+        /**
+         * The name of this extension.
+         */
+        private final String name;
+
+        /**
+         * The parameters of this extension.
+         */
+        private final List<Extension.Parameter> parameters =
+                new ArrayList<Extension.Parameter>();
+
+        /**
+         * Creates a new TestExtension having the given name and parameters.
+         *
+         * @param name
+         *     The name of the extension.
+         *
+         * @param parameters
+         *     Alternating parameter names and values. Values may be null.
+         */
+        public TestExtension(String name, final String... parameters) {
+            this.name = name;
+            for (int i = 0; i < parameters.length; i += 2) {
+                final int index = i;
+                this.parameters.add(new Extension.Parameter() {
+
+                    @Override
+                    public String getName() {
+                        return parameters[index];
+                    }
+
+                    @Override
+                    public String getValue() {
+                        return parameters[index + 1];
+                    }
+
+                });
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Extension.Parameter> getParameters() {
+            return parameters;
+        }
+
+    }
+
+    /**
+     * Returns the value of the parameter having the given name within the
+     * given extension.
+     *
+     * @param extension
+     *     The extension to search.
+     *
+     * @param name
+     *     The name of the parameter to retrieve.
+     *
+     * @return
+     *     The value of the parameter, "" if the parameter has no value, or
+     *     null if there is no such parameter.
+     */
+    private static String getParameter(Extension extension, String name) {
+
+        for (Extension.Parameter parameter : extension.getParameters()) {
+            if (parameter.getName().equals(name))
+                return parameter.getValue() != null ? parameter.getValue() : "";
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Extensions installed within the hypothetical servlet container.
+     */
+    private final List<Extension> installed = Arrays.<Extension>asList(
+        new TestExtension("permessage-deflate"),
+        new TestExtension("x-test")
+    );
+
+    /**
+     * Verifies that the default policy negotiates requested extensions
+     * exactly as requested, omitting those which are not installed.
+     */
+    @Test
+    public void testDefault() {
+
+        List<Extension> requested = Arrays.<Extension>asList(
+            new TestExtension("x-unknown"),
+            new TestExtension("permessage-deflate", "client_max_window_bits", null),
+            new TestExtension("x-test")
+        );
+
+        List<Extension> negotiated = WebSocketCompressionPolicy.getDefault()
+                .getNegotiatedExtensions(installed, requested);
+
+        assertEquals(2, negotiated.size());
+        assertEquals("permessage-deflate", negotiated.get(0).getName());
+        assertEquals("", getParameter(negotiated.get(0), "client_max_window_bits"));
+        assertEquals(1, negotiated.get(0).getParameters().size());
+        assertEquals("x-test", negotiated.get(1).getName());
+
+    }
+
+    /**
+     * Verifies that all offers of compression are refused if compression is
+     * disabled.
+     */
+    @Test
+    public void testDisabled() {
+
+        List<Extension> requested = Arrays.<Extension>asList(
+            new TestExtension("permessage-deflate", "client_max_window_bits", null),
+            new TestExtension("permessage-deflate"),
+            new TestExtension("x-test")
+        );
+
+        List<Extension> negotiated = new WebSocketCompressionPolicy(false, 15, true)
+                .getNegotiatedExtensions(installed, requested);
+
+        assertEquals(1, negotiated.size());
+        assertEquals("x-test", negotiated.get(0).getName());
+
+    }
+
+    /**
+     * Verifies that offers of compression are restricted to the configured
+     * window size and context takeover settings.
+     */
+    @Test
+    public void testRestricted() {
+
+        List<Extension> requested = Arrays.<Extension>asList(
+            new TestExtension("permessage-deflate", "client_max_window_bits", null),
+            new TestExtension("permessage-deflate", "client_max_window_bits", "9",
+                    "client_no_context_takeover", null),
+            new TestExtension("permessage-deflate")
+        );
+
+        List<Extension> negotiated = new WebSocketCompressionPolicy(true, 10, false)
+                .getNegotiatedExtensions(installed, requested);
+
+        assertEquals(3, negotiated.size());
+
+        // A smaller window should be requested only if supported, and should
+        // never exceed the window chosen by the client
+        assertEquals("10", getParameter(negotiated.get(0), "client_max_window_bits"));
+        assertEquals("9", getParameter(negotiated.get(1), "client_max_window_bits"));
+        assertNull(getParameter(negotiated.get(2), "client_max_window_bits"));
+
+        // Existing context takeover parameters should not be duplicated
+        assertEquals(3, negotiated.get(0).getParameters().size());
+        assertEquals(3, negotiated.get(1).getParameters().size());
+        assertEquals(2, negotiated.get(2).getParameters().size());
+
+        // Context takeover should be disabled on both sides for every offer
+        for (Extension extension : negotiated) {
+            assertEquals("", getParameter(extension, "server_no_context_takeover"));
+            assertEquals("", getParameter(extension, "client_no_context_takeover"));
+        }
+
+    }
+
+}
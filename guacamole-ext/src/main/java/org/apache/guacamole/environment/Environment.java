@@ -66,6 +66,139 @@ public interface Environment {
 
     };
 
+    /**
+     * The maximum number of idle, pre-connected sockets to keep for each
+     * guacd instance. If zero or unset, sockets are not pooled.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-size"; }
+
+    };
+
+    /**
+     * The number of milliseconds to wait when connecting to guacd, and for
+     * data from guacd, before timing out.
+     */
+    public static final IntegerGuacamoleProperty GUACD_TIMEOUT = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-timeout"; }
+
+    };
+
+    /**
+     * Whether Nagle's algorithm should be disabled (TCP_NODELAY) for
+     * connections to guacd.
+     */
+    public static final BooleanGuacamoleProperty GUACD_TCP_NODELAY = new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-tcp-nodelay"; }
+
+    };
+
+    /**
+     * Whether TCP keep-alive should be enabled (SO_KEEPALIVE) for
+     * connections to guacd.
+     */
+    public static final BooleanGuacamoleProperty GUACD_KEEPALIVE = new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-keepalive"; }
+
+    };
+
+    /**
+     * The size of the send buffer (SO_SNDBUF) of connections to guacd, in
+     * bytes. If unset, the system default is used.
+     */
+    public static final IntegerGuacamoleProperty GUACD_SEND_BUFFER_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-send-buffer-size"; }
+
+    };
+
+    /**
+     * The size of the receive buffer (SO_RCVBUF) of connections to guacd, in
+     * bytes. If unset, the system default is used.
+     */
+    public static final IntegerGuacamoleProperty GUACD_RECEIVE_BUFFER_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-receive-buffer-size"; }
+
+    };
+
+    /**
+     * The initial size of the buffer used to read instructions from guacd,
+     * in characters.
+     */
+    public static final IntegerGuacamoleProperty GUACD_READER_BUFFER_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-reader-buffer-size"; }
+
+    };
+
+    /**
+     * The maximum size of the buffer used to read instructions from guacd,
+     * in characters. Instructions from guacd larger than this size will
+     * close the connection.
+     */
+    public static final IntegerGuacamoleProperty GUACD_READER_MAX_BUFFER_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-reader-max-buffer-size"; }
+
+    };
+
+    /**
+     * A comma-separated list of the SSL/TLS protocols which may be used for
+     * connections to guacd. If unset, the JVM defaults are used.
+     */
+    public static final StringGuacamoleProperty GUACD_SSL_PROTOCOLS = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-protocols"; }
+
+    };
+
+    /**
+     * A comma-separated list of the SSL/TLS cipher suites which may be used
+     * for connections to guacd. If unset, the JVM defaults are used.
+     */
+    public static final StringGuacamoleProperty GUACD_SSL_CIPHER_SUITES = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-cipher-suites"; }
+
+    };
+
+    /**
+     * The maximum number of SSL/TLS sessions with guacd to cache for
+     * resumption. If zero, the number of cached sessions is unlimited.
+     */
+    public static final IntegerGuacamoleProperty GUACD_SSL_SESSION_CACHE_SIZE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-session-cache-size"; }
+
+    };
+
+    /**
+     * The number of seconds that a cached SSL/TLS session with guacd may be
+     * resumed. If zero, cached sessions may be resumed indefinitely.
+     */
+    public static final IntegerGuacamoleProperty GUACD_SSL_SESSION_TIMEOUT = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-ssl-session-timeout"; }
+
+    };
+
     /**
      * Returns the Guacamole home directory as determined when this Environment
      * object was created. The Guacamole home directory is found by checking, in
@@ -30,6 +30,7 @@ import java.util.Properties;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.net.GuacamoleSocketOptions;
 import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
 import org.apache.guacamole.properties.GuacamoleProperty;
 import org.apache.guacamole.protocols.ProtocolInfo;
@@ -336,11 +337,25 @@ public class LocalEnvironment implements Environment {
     public GuacamoleProxyConfiguration getDefaultGuacamoleProxyConfiguration()
             throws GuacamoleException {
 
+        // Parse socket options, using defaults where unspecified
+        GuacamoleSocketOptions defaults = new GuacamoleSocketOptions();
+        GuacamoleSocketOptions options = new GuacamoleSocketOptions();
+        options.setTimeout(getProperty(Environment.GUACD_TIMEOUT, defaults.getTimeout()));
+        options.setTcpNoDelay(getProperty(Environment.GUACD_TCP_NODELAY, defaults.isTcpNoDelay()));
+        options.setKeepAlive(getProperty(Environment.GUACD_KEEPALIVE, defaults.isKeepAlive()));
+        options.setSendBufferSize(getProperty(Environment.GUACD_SEND_BUFFER_SIZE, defaults.getSendBufferSize()));
+        options.setReceiveBufferSize(getProperty(Environment.GUACD_RECEIVE_BUFFER_SIZE, defaults.getReceiveBufferSize()));
+        options.setReaderBufferSize(getProperty(Environment.GUACD_READER_BUFFER_SIZE, defaults.getReaderBufferSize()));
+        options.setReaderMaxBufferSize(getProperty(Environment.GUACD_READER_MAX_BUFFER_SIZE, defaults.getReaderMaxBufferSize()));
+
         // Parse guacd hostname/port/ssl properties
         return new GuacamoleProxyConfiguration(
             getProperty(Environment.GUACD_HOSTNAME, DEFAULT_GUACD_HOSTNAME),
             getProperty(Environment.GUACD_PORT, DEFAULT_GUACD_PORT),
             getProperty(Environment.GUACD_SSL, DEFAULT_GUACD_SSL)
+                    ? GuacamoleProxyConfiguration.EncryptionMethod.SSL
+                    : GuacamoleProxyConfiguration.EncryptionMethod.NONE,
+            options
         );
 
     }
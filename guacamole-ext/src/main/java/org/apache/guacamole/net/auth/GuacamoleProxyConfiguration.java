@@ -19,6 +19,8 @@
 
 package org.apache.guacamole.net.auth;
 
+import org.apache.guacamole.net.GuacamoleSocketOptions;
+
 /**
  * Information which describes how the connection to guacd should be
  * established. This includes the hostname and port which guacd is listening on,
@@ -60,6 +62,11 @@ public class GuacamoleProxyConfiguration {
      */
     private final EncryptionMethod encryptionMethod;
 
+    /**
+     * The options which should be applied to sockets connected to guacd.
+     */
+    private final GuacamoleSocketOptions socketOptions;
+
     /**
      * Creates a new GuacamoleProxyConfiguration having the given hostname,
      * port, and encryption method.
@@ -76,9 +83,35 @@ public class GuacamoleProxyConfiguration {
      */
     public GuacamoleProxyConfiguration(String hostname, int port,
             EncryptionMethod encryptionMethod) {
+        this(hostname, port, encryptionMethod, new GuacamoleSocketOptions());
+    }
+
+    /**
+     * Creates a new GuacamoleProxyConfiguration having the given hostname,
+     * port, encryption method, and socket options.
+     *
+     * @param hostname
+     *     The hostname or address of the machine where guacd is running.
+     *
+     * @param port
+     *     The port that guacd is listening on.
+     *
+     * @param encryptionMethod
+     *     The type of encryption required by the instance of guacd running at
+     *     the given hostname and port.
+     *
+     * @param socketOptions
+     *     The options which should be applied to sockets connected to guacd.
+     *     The given options are copied, such that later changes to the given
+     *     object do not affect this configuration.
+     */
+    public GuacamoleProxyConfiguration(String hostname, int port,
+            EncryptionMethod encryptionMethod,
+            GuacamoleSocketOptions socketOptions) {
         this.hostname = hostname;
         this.port = port;
         this.encryptionMethod = encryptionMethod;
+        this.socketOptions = new GuacamoleSocketOptions(socketOptions);
     }
 
     /**
@@ -129,4 +162,42 @@ public class GuacamoleProxyConfiguration {
         return encryptionMethod;
     }
 
+    /**
+     * Returns a copy of the options which should be applied to sockets
+     * connected to guacd. Changes to the returned object do not affect this
+     * configuration.
+     *
+     * @return
+     *     The options which should be applied to sockets connected to guacd.
+     */
+    public GuacamoleSocketOptions getSocketOptions() {
+        return new GuacamoleSocketOptions(socketOptions);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + (hostname != null ? hostname.hashCode() : 0);
+        hash = 31 * hash + port;
+        hash = 31 * hash + (encryptionMethod != null ? encryptionMethod.hashCode() : 0);
+        hash = 31 * hash + socketOptions.hashCode();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (!(obj instanceof GuacamoleProxyConfiguration))
+            return false;
+
+        // Configurations are equal only if they describe the same guacd,
+        // connected using the same socket options
+        GuacamoleProxyConfiguration other = (GuacamoleProxyConfiguration) obj;
+        return port == other.port
+            && encryptionMethod == other.encryptionMethod
+            && socketOptions.equals(other.socketOptions)
+            && (hostname == null ? other.hostname == null : hostname.equals(other.hostname));
+
+    }
+
 }
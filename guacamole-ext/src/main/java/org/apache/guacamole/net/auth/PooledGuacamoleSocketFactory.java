@@ -0,0 +1,745 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLSocket;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.FlushPolicy;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleSocketOptions;
+import org.apache.guacamole.net.InetGuacamoleSocket;
+import org.apache.guacamole.net.SSLGuacamoleContext;
+import org.apache.guacamole.net.SSLGuacamoleSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which produces sockets connected to guacd, keeping a small pool of
+ * idle, pre-connected sockets for each GuacamoleProxyConfiguration so that
+ * the TCP connection and any SSL/TLS handshake need not occur while a user
+ * waits. The size of each pool follows recent demand for sockets to the
+ * corresponding guacd, up to a fixed maximum. Idle sockets are periodically
+ * checked for health and are discarded before guacd would give up waiting
+ * for the "select" instruction which begins the Guacamole protocol
+ * handshake. Pools for configurations which are no longer in demand are
+ * removed once empty.
+ *
+ * Every factory which pools sockets maintains them using a background
+ * thread until shutdown() is invoked. The web application invokes
+ * shutdownAll() when it is undeployed, stopping all such factories,
+ * including those created by extensions.
+ */
+public class PooledGuacamoleSocketFactory {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PooledGuacamoleSocketFactory.class);
+
+    /**
+     * The default maximum number of milliseconds that a socket may remain
+     * idle within the pool. As guacd closes any connection which does not
+     * send "select" within 15 seconds, this must be comfortably less than
+     * 15 seconds.
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = 10000;
+
+    /**
+     * The number of milliseconds between each pass which evicts, checks and
+     * replenishes idle sockets.
+     */
+    private static final long MAINTENANCE_INTERVAL = 1000;
+
+    /**
+     * The weight given to past demand when updating the demand estimate of a
+     * pool after each maintenance pass. Larger values react more slowly to
+     * changes in demand.
+     */
+    private static final double DEMAND_DECAY = 0.75;
+
+    /**
+     * The demand estimate below which a pool is emptied entirely.
+     */
+    private static final double MIN_DEMAND = 0.05;
+
+    /**
+     * All factories which pool sockets and have not yet been shut down.
+     */
+    private static final Set<PooledGuacamoleSocketFactory> instances =
+            Collections.newSetFromMap(new ConcurrentHashMap<PooledGuacamoleSocketFactory, Boolean>());
+
+    /**
+     * An idle, connected socket, along with the time it was connected.
+     */
+    private static class IdleSocket {
+
+        /**
+         * The connected socket.
+         */
+        private final Socket socket;
+
+        /**
+         * The value of System.currentTimeMillis() when the socket was
+         * connected.
+         */
+        private final long connected = System.currentTimeMillis();
+
+        /**
+         * Creates a new IdleSocket wrapping the given connected socket.
+         *
+         * @param socket
+         *     The connected socket.
+         */
+        public IdleSocket(Socket socket) {
+            this.socket = socket;
+        }
+
+    }
+
+    /**
+     * The idle sockets and recent demand associated with a single
+     * GuacamoleProxyConfiguration.
+     */
+    private static class Pool {
+
+        /**
+         * Idle sockets, oldest first.
+         */
+        private final Queue<IdleSocket> idle = new ConcurrentLinkedQueue<IdleSocket>();
+
+        /**
+         * The number of sockets requested since the last maintenance pass.
+         */
+        private final AtomicInteger requested = new AtomicInteger();
+
+        /**
+         * Estimate of the number of sockets requested per maintenance
+         * interval. This value is only accessed by the maintenance thread.
+         */
+        private double demand = 0;
+
+    }
+
+    /**
+     * The maximum number of idle sockets to keep for each
+     * GuacamoleProxyConfiguration.
+     */
+    private final int maxIdle;
+
+    /**
+     * The maximum number of milliseconds that a socket may remain idle.
+     */
+    private final long maxIdleTime;
+
+    /**
+     * The context used to establish SSL/TLS connections, or null if the
+     * default SSLGuacamoleContext should be used.
+     */
+    private final SSLGuacamoleContext sslContext;
+
+    /**
+     * All pools, keyed by the GuacamoleProxyConfiguration whose sockets they
+     * contain.
+     */
+    private final ConcurrentMap<GuacamoleProxyConfiguration, Pool> pools =
+            new ConcurrentHashMap<GuacamoleProxyConfiguration, Pool>();
+
+    /**
+     * Executor which runs the periodic maintenance pass, or null if pooling
+     * is disabled.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Whether shutdown() has been invoked. Once shut down, sockets are
+     * always connected on demand.
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a new PooledGuacamoleSocketFactory which keeps at most the
+     * given number of idle sockets for each GuacamoleProxyConfiguration,
+     * discarding sockets which have been idle for longer than
+     * DEFAULT_MAX_IDLE_TIME.
+     *
+     * @param maxIdle
+     *     The maximum number of idle sockets to keep for each
+     *     GuacamoleProxyConfiguration. If zero, sockets are not pooled, and
+     *     each requested socket is connected on demand.
+     */
+    public PooledGuacamoleSocketFactory(int maxIdle) {
+        this(maxIdle, DEFAULT_MAX_IDLE_TIME);
+    }
+
+    /**
+     * Creates a new PooledGuacamoleSocketFactory configured using the
+     * "guacd-pool-size" property and the SSL/TLS properties of the given
+     * environment. If no SSL/TLS properties are specified, the default
+     * SSLGuacamoleContext is used.
+     *
+     * @param environment
+     *     The environment to use when configuring the factory.
+     *
+     * @throws GuacamoleException
+     *     If the properties of the given environment cannot be parsed, or
+     *     specify unsupported SSL/TLS protocols or cipher suites.
+     */
+    public PooledGuacamoleSocketFactory(Environment environment)
+            throws GuacamoleException {
+        this(environment.getProperty(Environment.GUACD_POOL_SIZE, 0),
+                DEFAULT_MAX_IDLE_TIME, createSSLContext(environment));
+    }
+
+    /**
+     * Creates a new PooledGuacamoleSocketFactory which keeps at most the
+     * given number of idle sockets for each GuacamoleProxyConfiguration,
+     * discarding sockets which have been idle for longer than the given
+     * duration.
+     *
+     * @param maxIdle
+     *     The maximum number of idle sockets to keep for each
+     *     GuacamoleProxyConfiguration. If zero, sockets are not pooled, and
+     *     each requested socket is connected on demand.
+     *
+     * @param maxIdleTime
+     *     The maximum number of milliseconds that a socket may remain idle.
+     *     This must be less than the time guacd waits for "select".
+     */
+    public PooledGuacamoleSocketFactory(int maxIdle, long maxIdleTime) {
+        this(maxIdle, maxIdleTime, null);
+    }
+
+    /**
+     * Creates a new PooledGuacamoleSocketFactory which keeps at most the
+     * given number of idle sockets for each GuacamoleProxyConfiguration,
+     * discarding sockets which have been idle for longer than the given
+     * duration. SSL/TLS connections are established using the given
+     * SSLGuacamoleContext.
+     *
+     * @param maxIdle
+     *     The maximum number of idle sockets to keep for each
+     *     GuacamoleProxyConfiguration. If zero, sockets are not pooled, and
+     *     each requested socket is connected on demand.
+     *
+     * @param maxIdleTime
+     *     The maximum number of milliseconds that a socket may remain idle.
+     *     This must be less than the time guacd waits for "select".
+     *
+     * @param sslContext
+     *     The context to use to establish SSL/TLS connections, or null if the
+     *     default SSLGuacamoleContext should be used.
+     */
+    public PooledGuacamoleSocketFactory(int maxIdle, long maxIdleTime,
+            SSLGuacamoleContext sslContext) {
+
+        this.maxIdle = Math.max(0, maxIdle);
+        this.maxIdleTime = maxIdleTime;
+        this.sslContext = sslContext;
+
+        // Maintenance is only needed if sockets are pooled
+        if (this.maxIdle == 0) {
+            executor = null;
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "guacd-socket-pool");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                maintain();
+            }
+
+        }, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        instances.add(this);
+
+    }
+
+    /**
+     * Splits the given comma-separated list into its non-empty, trimmed
+     * elements.
+     *
+     * @param list
+     *     The comma-separated list to split, or null.
+     *
+     * @return
+     *     The elements of the given list, or null if the list is null or
+     *     contains no elements.
+     */
+    private static String[] split(String list) {
+
+        if (list == null)
+            return null;
+
+        List<String> elements = new ArrayList<String>();
+        for (String element : list.split(",")) {
+            element = element.trim();
+            if (!element.isEmpty())
+                elements.add(element);
+        }
+
+        if (elements.isEmpty())
+            return null;
+
+        return elements.toArray(new String[elements.size()]);
+
+    }
+
+    /**
+     * Creates the SSLGuacamoleContext described by the SSL/TLS properties of
+     * the given environment.
+     *
+     * @param environment
+     *     The environment to read SSL/TLS properties from.
+     *
+     * @return
+     *     A new SSLGuacamoleContext, or null if no SSL/TLS properties are
+     *     specified and the default SSLGuacamoleContext should be used.
+     *
+     * @throws GuacamoleException
+     *     If the properties cannot be parsed, or specify unsupported
+     *     protocols or cipher suites.
+     */
+    private static SSLGuacamoleContext createSSLContext(Environment environment)
+            throws GuacamoleException {
+
+        String[] protocols = split(environment.getProperty(Environment.GUACD_SSL_PROTOCOLS));
+        String[] cipherSuites = split(environment.getProperty(Environment.GUACD_SSL_CIPHER_SUITES));
+        Integer sessionCacheSize = environment.getProperty(Environment.GUACD_SSL_SESSION_CACHE_SIZE);
+        Integer sessionTimeout = environment.getProperty(Environment.GUACD_SSL_SESSION_TIMEOUT);
+
+        // Use the default context unless told otherwise
+        if (protocols == null && cipherSuites == null
+                && sessionCacheSize == null && sessionTimeout == null)
+            return null;
+
+        return SSLGuacamoleContext.newInstance(
+            sessionCacheSize != null ? sessionCacheSize : SSLGuacamoleContext.DEFAULT_SESSION_CACHE_SIZE,
+            sessionTimeout != null ? sessionTimeout : SSLGuacamoleContext.DEFAULT_SESSION_TIMEOUT,
+            protocols, cipherSuites
+        );
+
+    }
+
+    /**
+     * Returns the context used to establish SSL/TLS connections, allowing
+     * the number of full and resumed handshakes to be inspected.
+     *
+     * @return
+     *     The context used to establish SSL/TLS connections.
+     *
+     * @throws GuacamoleException
+     *     If no context was specified and the default SSLGuacamoleContext is
+     *     unavailable.
+     */
+    public SSLGuacamoleContext getSSLContext() throws GuacamoleException {
+
+        if (sslContext == null)
+            return SSLGuacamoleContext.getDefault();
+
+        return sslContext;
+
+    }
+
+    /**
+     * Connects a new socket to the guacd described by the given
+     * GuacamoleProxyConfiguration, completing the SSL/TLS handshake if
+     * encryption is required.
+     *
+     * @param config
+     *     The configuration describing the guacd to connect to.
+     *
+     * @return
+     *     A new, connected socket.
+     *
+     * @throws GuacamoleException
+     *     If the socket cannot be connected, or the encryption method is
+     *     unknown.
+     */
+    private Socket connect(GuacamoleProxyConfiguration config)
+            throws GuacamoleException {
+
+        Socket sock;
+        GuacamoleSocketOptions options = config.getSocketOptions();
+
+        // Select socket type depending on desired encryption
+        switch (config.getEncryptionMethod()) {
+
+            case SSL:
+                try {
+                    sock = getSSLContext().createSocket();
+                }
+                catch (IOException e) {
+                    throw new GuacamoleServerException(e);
+                }
+                break;
+
+            case NONE:
+                sock = new Socket();
+                break;
+
+            default:
+                throw new GuacamoleServerException("Unimplemented encryption method.");
+
+        }
+
+        try {
+
+            logger.debug("Connecting to guacd at {}:{}.",
+                    config.getHostname(), config.getPort());
+
+            // Apply socket options, including read timeout, prior to connect
+            options.configure(sock);
+
+            // Connect with timeout
+            sock.connect(new InetSocketAddress(
+                InetAddress.getByName(config.getHostname()),
+                config.getPort()
+            ), options.getTimeout());
+
+            // Complete SSL/TLS handshake now, rather than upon first write
+            if (sock instanceof SSLSocket)
+                getSSLContext().startHandshake((SSLSocket) sock);
+
+            return sock;
+
+        }
+        catch (IOException e) {
+
+            close(sock);
+
+            if (e instanceof SocketTimeoutException)
+                throw new GuacamoleUpstreamTimeoutException("Connection timed out.", e);
+
+            throw new GuacamoleServerException(e);
+
+        }
+
+    }
+
+    /**
+     * Closes the given socket, ignoring any errors.
+     *
+     * @param sock
+     *     The socket to close.
+     */
+    private static void close(Socket sock) {
+        try {
+            sock.close();
+        }
+        catch (IOException e) {
+            logger.debug("Unable to close idle socket to guacd.", e);
+        }
+    }
+
+    /**
+     * Returns whether the given idle socket is still usable, without
+     * blocking. As guacd sends nothing until "select" is received, any
+     * received data indicates the socket cannot be used. Closure of the
+     * connection by guacd is not detected unless data was also received,
+     * but guacd closes idle connections only after they would have expired
+     * from the pool anyway.
+     *
+     * @param sock
+     *     The idle socket to check.
+     *
+     * @return
+     *     true if the socket appears usable, false otherwise.
+     */
+    private static boolean isHealthy(Socket sock) {
+
+        if (sock.isClosed() || sock.isInputShutdown())
+            return false;
+
+        try {
+            return sock.getInputStream().available() == 0;
+        }
+        catch (IOException e) {
+            logger.debug("Idle socket to guacd failed health check.", e);
+            return false;
+        }
+
+    }
+
+    /**
+     * Returns whether the given idle socket has been idle for too long to be
+     * used.
+     *
+     * @param socket
+     *     The idle socket to check.
+     *
+     * @param now
+     *     The current value of System.currentTimeMillis().
+     *
+     * @return
+     *     true if the socket has been idle for too long, false otherwise.
+     */
+    private boolean isExpired(IdleSocket socket, long now) {
+        return now - socket.connected > maxIdleTime;
+    }
+
+    /**
+     * Returns the pool associated with the given GuacamoleProxyConfiguration,
+     * creating that pool if necessary.
+     *
+     * @param config
+     *     The configuration whose pool should be returned.
+     *
+     * @return
+     *     The pool associated with the given configuration.
+     */
+    private Pool getPool(GuacamoleProxyConfiguration config) {
+
+        Pool pool = pools.get(config);
+        if (pool == null) {
+            Pool newPool = new Pool();
+            pool = pools.putIfAbsent(config, newPool);
+            if (pool == null)
+                pool = newPool;
+        }
+
+        return pool;
+
+    }
+
+    /**
+     * Returns a socket connected to the guacd described by the given
+     * GuacamoleProxyConfiguration. An idle socket from the pool is returned if
+     * available, and a new socket is connected otherwise. The returned socket
+     * belongs to the caller, has a read timeout set, and has completed any
+     * required SSL/TLS handshake. Nothing will have been sent over the socket.
+     *
+     * @param config
+     *     The configuration describing the guacd to connect to.
+     *
+     * @return
+     *     A connected socket.
+     *
+     * @throws GuacamoleException
+     *     If no idle socket is available and a new socket cannot be
+     *     connected.
+     */
+    public Socket acquireSocket(GuacamoleProxyConfiguration config)
+            throws GuacamoleException {
+
+        // Connect on demand if pooling is disabled
+        if (maxIdle == 0 || shutdown)
+            return connect(config);
+
+        Pool pool = getPool(config);
+        pool.requested.incrementAndGet();
+
+        // Use oldest idle socket which has not yet expired
+        long now = System.currentTimeMillis();
+        IdleSocket idle;
+        while ((idle = pool.idle.poll()) != null) {
+
+            if (!isExpired(idle, now) && !idle.socket.isClosed())
+                return idle.socket;
+
+            close(idle.socket);
+
+        }
+
+        // Fall back to connecting on demand
+        logger.debug("No idle socket available for guacd at {}:{}.",
+                config.getHostname(), config.getPort());
+        return connect(config);
+
+    }
+
+    /**
+     * Returns a GuacamoleSocket connected to the guacd described by the given
+     * GuacamoleProxyConfiguration, using SSL/TLS if required by that
+     * configuration. The underlying socket is obtained using
+     * acquireSocket(). Data written to the returned socket is coalesced
+     * until its writer is flushed, as occurs when write access to the tunnel
+     * using the socket is relinquished.
+     *
+     * @param config
+     *     The configuration describing the guacd to connect to.
+     *
+     * @return
+     *     A connected GuacamoleSocket.
+     *
+     * @throws GuacamoleException
+     *     If no idle socket is available and a new socket cannot be
+     *     connected.
+     */
+    public GuacamoleSocket getGuacamoleSocket(GuacamoleProxyConfiguration config)
+            throws GuacamoleException {
+
+        Socket sock = acquireSocket(config);
+        GuacamoleSocketOptions options = config.getSocketOptions();
+
+        try {
+            if (sock instanceof SSLSocket)
+                return new SSLGuacamoleSocket(sock, FlushPolicy.COALESCE, options);
+            return new InetGuacamoleSocket(sock, FlushPolicy.COALESCE, options);
+        }
+        catch (GuacamoleException e) {
+            close(sock);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Evicts expired or unhealthy idle sockets from all pools, updates the
+     * demand estimate of each pool, and connects or discards idle sockets
+     * until each pool matches its estimated demand.
+     */
+    private void maintain() {
+
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<GuacamoleProxyConfiguration, Pool> entry : pools.entrySet()) {
+
+            // Do not connect further sockets once shut down
+            if (shutdown)
+                return;
+
+            GuacamoleProxyConfiguration config = entry.getKey();
+            Pool pool = entry.getValue();
+
+            // Drop expired and unhealthy sockets, removing each socket from
+            // the pool while checked so it cannot be acquired mid-check
+            List<IdleSocket> healthy = new ArrayList<IdleSocket>();
+            for (int remaining = pool.idle.size(); remaining > 0; remaining--) {
+
+                IdleSocket idle = pool.idle.poll();
+                if (idle == null)
+                    break;
+
+                if (!isExpired(idle, now) && isHealthy(idle.socket))
+                    healthy.add(idle);
+                else
+                    close(idle.socket);
+
+            }
+
+            pool.idle.addAll(healthy);
+
+            // Size pool to cover the requests expected before next pass
+            pool.demand = pool.demand * DEMAND_DECAY
+                        + pool.requested.getAndSet(0) * (1 - DEMAND_DECAY);
+
+            int target = 0;
+            if (pool.demand >= MIN_DEMAND)
+                target = Math.min(maxIdle, (int) Math.ceil(pool.demand));
+
+            // Discard surplus sockets, oldest first
+            while (pool.idle.size() > target) {
+                IdleSocket idle = pool.idle.poll();
+                if (idle == null)
+                    break;
+                close(idle.socket);
+            }
+
+            // Remove pools which are no longer in demand, such that pools
+            // for configurations that are no longer used do not accumulate
+            if (target == 0) {
+                if (pool.idle.isEmpty())
+                    pools.remove(config, pool);
+                continue;
+            }
+
+            // Replenish pool, giving up until next pass if guacd is unreachable
+            try {
+                while (pool.idle.size() < target)
+                    pool.idle.add(new IdleSocket(connect(config)));
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to pre-connect to guacd at {}:{}: {}",
+                        config.getHostname(), config.getPort(), e.getMessage());
+            }
+
+        }
+
+    }
+
+    /**
+     * Stops maintaining idle sockets and closes all sockets currently within
+     * the pool. Sockets already returned by this factory are unaffected, and
+     * any further sockets are connected on demand.
+     */
+    public void shutdown() {
+
+        shutdown = true;
+        instances.remove(this);
+
+        if (executor != null)
+            executor.shutdownNow();
+
+        for (Pool pool : pools.values()) {
+            IdleSocket idle;
+            while ((idle = pool.idle.poll()) != null)
+                close(idle.socket);
+        }
+
+        pools.clear();
+
+    }
+
+    /**
+     * Shuts down every PooledGuacamoleSocketFactory which pools sockets and
+     * has not yet been shut down, stopping their maintenance threads and
+     * closing all idle sockets. This function should be invoked when the
+     * web application is undeployed.
+     */
+    public static void shutdownAll() {
+        for (PooledGuacamoleSocketFactory factory : instances)
+            factory.shutdown();
+    }
+
+}
@@ -23,17 +23,15 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.environment.LocalEnvironment;
 import org.apache.guacamole.net.GuacamoleSocket;
 import org.apache.guacamole.net.GuacamoleTunnel;
-import org.apache.guacamole.net.InetGuacamoleSocket;
-import org.apache.guacamole.net.SSLGuacamoleSocket;
 import org.apache.guacamole.net.SimpleGuacamoleTunnel;
 import org.apache.guacamole.net.auth.AbstractConnection;
 import org.apache.guacamole.net.auth.ConnectionRecord;
 import org.apache.guacamole.net.auth.GuacamoleProxyConfiguration;
+import org.apache.guacamole.net.auth.PooledGuacamoleSocketFactory;
 import org.apache.guacamole.protocol.ConfiguredGuacamoleSocket;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
 import org.apache.guacamole.protocol.GuacamoleConfiguration;
@@ -48,6 +46,12 @@ public class SimpleConnection extends AbstractConnection {
      */
     private GuacamoleConfiguration config;
 
+    /**
+     * Factory which produces sockets connected to guacd, shared by all
+     * SimpleConnections. This factory is created upon first connection.
+     */
+    private static PooledGuacamoleSocketFactory socketFactory;
+
     /**
      * Creates a completely uninitialized SimpleConnection.
      */
@@ -93,6 +97,31 @@ public class SimpleConnection extends AbstractConnection {
         // Do nothing - there are no attributes
     }
 
+    /**
+     * Returns the factory which produces sockets connected to guacd, creating
+     * that factory using the pool size and SSL/TLS settings specified within
+     * the given environment if it does not yet exist.
+     *
+     * @param environment
+     *     The environment to use when creating the factory.
+     *
+     * @return
+     *     The factory shared by all SimpleConnections.
+     *
+     * @throws GuacamoleException
+     *     If the pool size or SSL/TLS settings within guacamole.properties
+     *     cannot be parsed or are invalid.
+     */
+    private static synchronized PooledGuacamoleSocketFactory getSocketFactory(
+            Environment environment) throws GuacamoleException {
+
+        if (socketFactory == null)
+            socketFactory = new PooledGuacamoleSocketFactory(environment);
+
+        return socketFactory;
+
+    }
+
     @Override
     public GuacamoleTunnel connect(GuacamoleClientInformation info)
             throws GuacamoleException {
@@ -101,36 +130,11 @@ public class SimpleConnection extends AbstractConnection {
         Environment environment = new LocalEnvironment();
         GuacamoleProxyConfiguration proxyConfig = environment.getDefaultGuacamoleProxyConfiguration();
 
-        // Get guacd connection parameters
-        String hostname = proxyConfig.getHostname();
-        int port = proxyConfig.getPort();
-
-        GuacamoleSocket socket;
-
-        // Determine socket type based on required encryption method
-        switch (proxyConfig.getEncryptionMethod()) {
-
-            // If guacd requires SSL, use it
-            case SSL:
-                socket = new ConfiguredGuacamoleSocket(
-                    new SSLGuacamoleSocket(hostname, port),
-                    config, info
-                );
-                break;
-
-            // Connect directly via TCP if encryption is not enabled
-            case NONE:
-                socket = new ConfiguredGuacamoleSocket(
-                    new InetGuacamoleSocket(hostname, port),
-                    config, info
-                );
-                break;
-
-            // Abort if encryption method is unknown
-            default:
-                throw new GuacamoleServerException("Unimplemented encryption method.");
-
-        }
+        // Connect to guacd, reusing a pre-connected socket if available
+        GuacamoleSocket socket = new ConfiguredGuacamoleSocket(
+            getSocketFactory(environment).getGuacamoleSocket(proxyConfig),
+            config, info
+        );
 
         return new SimpleGuacamoleTunnel(socket);
         
@@ -20,6 +20,8 @@
 package org.apache.guacamole;
 
 import org.apache.guacamole.tunnel.TunnelModule;
+import org.apache.guacamole.tunnel.TunnelBatchPolicyFactory;
+import org.apache.guacamole.tunnel.TunnelReaderExecutorFactory;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Stage;
@@ -29,6 +31,9 @@ import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.environment.LocalEnvironment;
 import org.apache.guacamole.extension.ExtensionModule;
 import org.apache.guacamole.log.LogModule;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.auth.PooledGuacamoleSocketFactory;
 import org.apache.guacamole.rest.RESTServiceModule;
 import org.apache.guacamole.rest.auth.HashTokenSessionMap;
 import org.apache.guacamole.rest.auth.TokenSessionMap;
@@ -56,12 +61,24 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
      */
     private TokenSessionMap sessionMap;
 
+    /**
+     * Singleton instance of the executor running WebSocket tunnel read loops.
+     */
+    private TunnelReaderExecutor readerExecutor;
+
+    /**
+     * Singleton instance of the policy dictating when tunnel data is sent.
+     */
+    private GuacamoleBatchPolicy batchPolicy;
+
     @Override
     public void contextInitialized(ServletContextEvent servletContextEvent) {
 
         try {
             environment = new LocalEnvironment();
             sessionMap = new HashTokenSessionMap(environment);
+            readerExecutor = TunnelReaderExecutorFactory.create(environment);
+            batchPolicy = TunnelBatchPolicyFactory.create(environment);
         }
         catch (GuacamoleException e) {
             logger.error("Unable to read guacamole.properties: {}", e.getMessage());
@@ -80,7 +97,7 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
             new LogModule(environment),
             new ExtensionModule(environment),
             new RESTServiceModule(sessionMap),
-            new TunnelModule()
+            new TunnelModule(readerExecutor, batchPolicy)
         );
     }
 
@@ -93,6 +110,14 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
         if (sessionMap != null)
             sessionMap.shutdown();
 
+        // Stop accepting new WebSocket tunnel read loops
+        if (readerExecutor != null)
+            readerExecutor.shutdown();
+
+        // Close all pooled connections to guacd, including those pooled by
+        // extensions
+        PooledGuacamoleSocketFactory.shutdownAll();
+
     }
 
 }
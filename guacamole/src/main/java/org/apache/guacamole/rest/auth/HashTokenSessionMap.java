@@ -19,17 +19,14 @@
 
 package org.apache.guacamole.rest.auth;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.util.ExpirationHandler;
+import org.apache.guacamole.util.ExpirationWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,11 +41,6 @@ public class HashTokenSessionMap implements TokenSessionMap {
      */
     private static final Logger logger = LoggerFactory.getLogger(HashTokenSessionMap.class);
 
-    /**
-     * Executor service which runs the period session eviction task.
-     */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-    
     /**
      * Keeps track of the authToken to GuacamoleSession mapping.
      */
@@ -66,6 +58,38 @@ public class HashTokenSessionMap implements TokenSessionMap {
 
     };
 
+    /**
+     * The number of seconds between each check for expired sessions.
+     */
+    private final IntegerGuacamoleProperty API_SESSION_TIMEOUT_RESOLUTION =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "api-session-timeout-resolution"; }
+
+    };
+
+    /**
+     * The default number of seconds between each check for expired sessions.
+     */
+    private static final int DEFAULT_SESSION_TIMEOUT_RESOLUTION = 60;
+
+    /**
+     * The maximum allowed age of any inactive session, in milliseconds.
+     */
+    private final long sessionTimeout;
+
+    /**
+     * The number of milliseconds between each check for expired sessions.
+     */
+    private final long sessionTimeoutResolution;
+
+    /**
+     * Timer wheel which evicts sessions once they have been inactive for
+     * longer than the session timeout.
+     */
+    private final ExpirationWheel<String> expirationWheel;
+
     /**
      * Create a new HashTokenSessionMap configured using the given environment.
      *
@@ -75,84 +99,91 @@ public class HashTokenSessionMap implements TokenSessionMap {
     public HashTokenSessionMap(Environment environment) {
         
         int sessionTimeoutValue;
+        int sessionTimeoutResolution;
 
         // Read session timeout from guacamole.properties
         try {
             sessionTimeoutValue = environment.getProperty(API_SESSION_TIMEOUT, 60);
+            sessionTimeoutResolution = environment.getProperty(API_SESSION_TIMEOUT_RESOLUTION,
+                    DEFAULT_SESSION_TIMEOUT_RESOLUTION);
         }
         catch (GuacamoleException e) {
             logger.error("Unable to read guacamole.properties: {}", e.getMessage());
             logger.debug("Error while reading session timeout value.", e);
             sessionTimeoutValue = 60;
+            sessionTimeoutResolution = DEFAULT_SESSION_TIMEOUT_RESOLUTION;
+        }
+
+        // Ignore nonsensical resolutions
+        if (sessionTimeoutResolution <= 0) {
+            logger.warn("The value of \"{}\" must be positive. Sessions will "
+                    + "be checked for expiration every {} seconds.",
+                    API_SESSION_TIMEOUT_RESOLUTION.getName(),
+                    DEFAULT_SESSION_TIMEOUT_RESOLUTION);
+            sessionTimeoutResolution = DEFAULT_SESSION_TIMEOUT_RESOLUTION;
         }
         
-        // Check for expired sessions every minute
+        // Check for expired sessions as often as configured
         logger.info("Sessions will expire after {} minutes of inactivity.", sessionTimeoutValue);
-        executor.scheduleAtFixedRate(new SessionEvictionTask(sessionTimeoutValue * 60000l), 1, 1, TimeUnit.MINUTES);
+        this.sessionTimeout = sessionTimeoutValue * 60000l;
+        this.sessionTimeoutResolution = sessionTimeoutResolution * 1000l;
+        expirationWheel = new ExpirationWheel<String>(new SessionEvictionHandler(),
+                this.sessionTimeoutResolution, sessionTimeout);
         
     }
 
     /**
-     * Task which iterates through all active sessions, evicting those sessions
-     * which are beyond the session timeout.
+     * Handler which evicts sessions which are beyond the session timeout.
+     * Sessions which have active tunnels are never evicted, but are checked
+     * again at the next tick, such that a session whose last tunnel has
+     * closed is evicted based on its last activity.
      */
-    private class SessionEvictionTask implements Runnable {
-
-        /**
-         * The maximum allowed age of any session, in milliseconds.
-         */
-        private final long sessionTimeout;
-
-        /**
-         * Creates a new task which automatically evicts sessions which are
-         * older than the specified timeout.
-         * 
-         * @param sessionTimeout The maximum age of any session, in
-         *                       milliseconds.
-         */
-        public SessionEvictionTask(long sessionTimeout) {
-            this.sessionTimeout = sessionTimeout;
-        }
-        
-        @Override
-        public void run() {
+    private class SessionEvictionHandler implements ExpirationHandler<String> {
 
-            // Get start time of session check time
-            long sessionCheckStart = System.currentTimeMillis();
+        @Override
+        public long getExpirationTime(String authToken) {
 
-            logger.debug("Checking for expired sessions...");
+            // Sessions which are already removed need no further action
+            GuacamoleSession session = sessionMap.get(authToken);
+            if (session == null)
+                return 0;
 
-            // For each session, remove sesions which have expired
-            Iterator<Map.Entry<String, GuacamoleSession>> entries = sessionMap.entrySet().iterator();
-            while (entries.hasNext()) {
+            // Do not expire sessions which are active, checking again once
+            // their tunnels may have closed
+            long expirationTime = session.getLastAccessedTime() + sessionTimeout;
+            if (session.hasTunnels())
+                return Math.max(expirationTime, System.currentTimeMillis() + sessionTimeoutResolution);
 
-                Map.Entry<String, GuacamoleSession> entry = entries.next();
-                GuacamoleSession session = entry.getValue();
+            return expirationTime;
 
-                // Do not expire sessions which are active
-                if (session.hasTunnels())
-                    continue;
+        }
 
-                // Get elapsed time since last access
-                long age = sessionCheckStart - session.getLastAccessedTime();
+        @Override
+        public void expire(String authToken) {
 
-                // If session is too old, evict it and check the next one
-                if (age >= sessionTimeout) {
-                    logger.debug("Session \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
-                    session.invalidate();
-                }
+            GuacamoleSession session = sessionMap.remove(authToken);
+            if (session == null)
+                return;
 
-            }
+            logger.debug("Session \"{}\" has timed out.", authToken);
+            session.invalidate();
 
-            // Log completion and duration
-            logger.debug("Session check completed in {} ms.",
-                    System.currentTimeMillis() - sessionCheckStart);
-            
         }
 
     }
 
+    /**
+     * Returns the timer wheel which evicts inactive sessions, from which the
+     * number of sessions evicted and the time spent checking for expired
+     * sessions may be retrieved.
+     *
+     * @return
+     *     The timer wheel which evicts inactive sessions.
+     */
+    public ExpirationWheel<String> getExpirationWheel() {
+        return expirationWheel;
+    }
+
     @Override
     public GuacamoleSession get(String authToken) {
         
@@ -172,6 +203,7 @@ public class HashTokenSessionMap implements TokenSessionMap {
     @Override
     public void put(String authToken, GuacamoleSession session) {
         sessionMap.put(authToken, session);
+        expirationWheel.schedule(authToken, session.getLastAccessedTime() + sessionTimeout);
     }
 
     @Override
@@ -182,13 +214,14 @@ public class HashTokenSessionMap implements TokenSessionMap {
             return null;
 
         // Attempt to retrieve only if non-null
+        expirationWheel.cancel(authToken);
         return sessionMap.remove(authToken);
 
     }
 
     @Override
     public void shutdown() {
-        executor.shutdownNow();
+        expirationWheel.shutdown();
     }
 
 }
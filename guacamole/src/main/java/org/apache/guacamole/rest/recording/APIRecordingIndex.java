@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.recording;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.io.RecordingIndex;
+
+/**
+ * A summary of the index of a tunnel recording which may be exposed through
+ * the REST endpoints. Only complete frames are included, thus the indexed
+ * length may be less than the size of a recording still being written.
+ */
+public class APIRecordingIndex {
+
+    /**
+     * The number of bytes of the recording covered by the index.
+     */
+    private final long length;
+
+    /**
+     * The number of complete frames within the recording.
+     */
+    private final int frameCount;
+
+    /**
+     * The timestamp of the first frame, in milliseconds.
+     */
+    private final long startTime;
+
+    /**
+     * The difference between the timestamps of the last and first frames,
+     * in milliseconds.
+     */
+    private final long duration;
+
+    /**
+     * All keyframes within the recording, in order.
+     */
+    private final List<APIRecordingKeyframe> keyframes;
+
+    /**
+     * Creates a new APIRecordingIndex summarizing the current state of the
+     * given RecordingIndex.
+     *
+     * @param index
+     *     The RecordingIndex to summarize.
+     */
+    public APIRecordingIndex(RecordingIndex index) {
+
+        synchronized (index) {
+
+            this.length = index.getLength();
+            this.frameCount = index.getFrameCount();
+
+            // Timestamps are meaningful only if at least one frame exists
+            if (frameCount > 0) {
+                this.startTime = index.getFrameTimestamp(0);
+                this.duration = index.getFrameTimestamp(frameCount - 1) - startTime;
+            }
+            else {
+                this.startTime = 0;
+                this.duration = 0;
+            }
+
+            // Include all keyframes
+            int keyframeCount = index.getKeyframeCount();
+            this.keyframes = new ArrayList<APIRecordingKeyframe>(keyframeCount);
+            for (int i = 0; i < keyframeCount; i++) {
+                int frame = index.getKeyframe(i);
+                keyframes.add(new APIRecordingKeyframe(frame,
+                        index.getFrameTimestamp(frame),
+                        index.getFrameStart(frame)));
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns the number of bytes of the recording covered by the index.
+     * Only this many bytes of the recording may be retrieved.
+     *
+     * @return
+     *     The number of bytes of the recording covered by the index.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of complete frames within the recording.
+     *
+     * @return
+     *     The number of complete frames within the recording.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the timestamp of the first frame.
+     *
+     * @return
+     *     The timestamp of the first frame, in milliseconds, or zero if the
+     *     recording contains no complete frames.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the difference between the timestamps of the last and first
+     * frames.
+     *
+     * @return
+     *     The duration of the recording, in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns all keyframes within the recording, in order.
+     *
+     * @return
+     *     A list of all keyframes within the recording.
+     */
+    public List<APIRecordingKeyframe> getKeyframes() {
+        return keyframes;
+    }
+
+}
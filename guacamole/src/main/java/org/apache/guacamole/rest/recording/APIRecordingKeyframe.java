@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.recording;
+
+/**
+ * A keyframe within the index of a tunnel recording, which may be exposed
+ * through the REST endpoints. Playback of a recording may begin at any
+ * keyframe.
+ */
+public class APIRecordingKeyframe {
+
+    /**
+     * The index of the frame at which this keyframe begins.
+     */
+    private final int frame;
+
+    /**
+     * The timestamp of the frame at which this keyframe begins, in
+     * milliseconds.
+     */
+    private final long timestamp;
+
+    /**
+     * The byte offset within the recording at which this keyframe begins.
+     */
+    private final long offset;
+
+    /**
+     * Creates a new APIRecordingKeyframe with the given frame, timestamp,
+     * and byte offset.
+     *
+     * @param frame
+     *     The index of the frame at which this keyframe begins.
+     *
+     * @param timestamp
+     *     The timestamp of the frame at which this keyframe begins, in
+     *     milliseconds.
+     *
+     * @param offset
+     *     The byte offset within the recording at which this keyframe begins.
+     */
+    public APIRecordingKeyframe(int frame, long timestamp, long offset) {
+        this.frame = frame;
+        this.timestamp = timestamp;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the index of the frame at which this keyframe begins.
+     *
+     * @return
+     *     The index of the frame at which this keyframe begins.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the timestamp of the frame at which this keyframe begins.
+     *
+     * @return
+     *     The timestamp of the frame at which this keyframe begins, in
+     *     milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the byte offset within the recording at which this keyframe
+     * begins.
+     *
+     * @return
+     *     The byte offset within the recording at which this keyframe begins.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.recording;
+
+import java.util.List;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.tunnel.TunnelRecordingService;
+
+/**
+ * A REST resource which exposes all tunnel recordings written by the web
+ * application.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class RecordingCollectionResource {
+
+    /**
+     * The service which records tunnels and provides access to their
+     * recordings.
+     */
+    private final TunnelRecordingService recordingService;
+
+    /**
+     * Creates a new RecordingCollectionResource which exposes the recordings
+     * available through the given TunnelRecordingService.
+     *
+     * @param recordingService
+     *     The service providing access to all tunnel recordings.
+     */
+    public RecordingCollectionResource(TunnelRecordingService recordingService) {
+        this.recordingService = recordingService;
+    }
+
+    /**
+     * Returns the names of all available tunnel recordings.
+     *
+     * @return
+     *     A list of the names of all available tunnel recordings.
+     *
+     * @throws GuacamoleException
+     *     If tunnel recording is not enabled, or if guacamole.properties
+     *     cannot be read.
+     */
+    @GET
+    public List<String> getRecordings() throws GuacamoleException {
+        return recordingService.getRecordingNames();
+    }
+
+    /**
+     * Retrieves a resource representing the tunnel recording having the
+     * given name. The index of that recording is updated to include all
+     * frames written thus far.
+     *
+     * @param name
+     *     The name of the recording to retrieve.
+     *
+     * @return
+     *     A resource representing the recording having the given name.
+     *
+     * @throws GuacamoleException
+     *     If no such recording exists, if tunnel recording is not enabled, or
+     *     if the recording cannot be indexed.
+     */
+    @Path("{recording}")
+    public RecordingResource getRecording(@PathParam("recording") String name)
+            throws GuacamoleException {
+        return new RecordingResource(recordingService.getRecordingIndex(name));
+    }
+
+}
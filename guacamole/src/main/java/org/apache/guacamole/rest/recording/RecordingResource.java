@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.recording;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.io.RecordingIndex;
+
+/**
+ * A REST resource providing indexed access to a single tunnel recording.
+ * Recordings may be retrieved in their entirety, as arbitrary byte ranges,
+ * or beginning at any keyframe, allowing playback to seek without first
+ * downloading the entire recording.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class RecordingResource {
+
+    /**
+     * The size of the buffer used when copying recording contents to the
+     * response, in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The index of the recording exposed through this RecordingResource.
+     */
+    private final RecordingIndex index;
+
+    /**
+     * Creates a new RecordingResource which provides access to the recording
+     * covered by the given index.
+     *
+     * @param index
+     *     The up-to-date index of the recording to expose.
+     */
+    public RecordingResource(RecordingIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns a summary of the index of the recording, including all
+     * keyframes at which playback may begin.
+     *
+     * @return
+     *     A summary of the index of the recording.
+     */
+    @GET
+    @Path("index")
+    public APIRecordingIndex getIndex() {
+        return new APIRecordingIndex(index);
+    }
+
+    /**
+     * Returns the contents of the recording, optionally limited to a range
+     * of bytes. Only complete frames covered by the index are ever sent.
+     *
+     * @param keyframe
+     *     The index of the keyframe at which the returned contents should
+     *     begin, or null if the offset parameter (if any) should be used
+     *     instead.
+     *
+     * @param offset
+     *     The byte offset at which the returned contents should begin, or
+     *     null to begin at the start of the recording. This parameter is
+     *     ignored if a keyframe is specified.
+     *
+     * @param length
+     *     The maximum number of bytes to return, or null to return all
+     *     indexed contents following the starting offset.
+     *
+     * @return
+     *     A response through which the requested contents of the recording
+     *     will be sent.
+     *
+     * @throws GuacamoleException
+     *     If the requested keyframe does not exist, or if the requested
+     *     offset or length is invalid.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getContents(@QueryParam("keyframe") Integer keyframe,
+            @QueryParam("offset") Long offset,
+            @QueryParam("length") Long length) throws GuacamoleException {
+
+        final long start;
+        final long end;
+
+        synchronized (index) {
+
+            long indexedLength = index.getLength();
+
+            // Begin at requested keyframe, if any
+            if (keyframe != null) {
+                if (keyframe < 0 || keyframe >= index.getKeyframeCount())
+                    throw new GuacamoleResourceNotFoundException("No such keyframe.");
+                start = index.getFrameStart(index.getKeyframe(keyframe));
+            }
+
+            // Otherwise, begin at requested offset, if any
+            else if (offset != null) {
+                if (offset < 0 || offset > indexedLength)
+                    throw new GuacamoleClientException("Invalid offset.");
+                start = offset;
+            }
+
+            else
+                start = 0;
+
+            // Limit range to indexed contents
+            if (length != null) {
+                if (length < 0)
+                    throw new GuacamoleClientException("Invalid length.");
+                end = Math.min(indexedLength, start + length);
+            }
+            else
+                end = indexedLength;
+
+        }
+
+        // Copy requested range directly from the recording
+        StreamingOutput stream = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException {
+
+                RandomAccessFile file = new RandomAccessFile(index.getRecording(), "r");
+                try {
+
+                    file.seek(start);
+
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    long remaining = end - start;
+                    while (remaining > 0) {
+
+                        int read = file.read(buffer, 0,
+                                (int) Math.min(buffer.length, remaining));
+                        if (read == -1)
+                            break;
+
+                        output.write(buffer, 0, read);
+                        remaining -= read;
+
+                    }
+
+                }
+                finally {
+                    file.close();
+                }
+
+            }
+
+        };
+
+        return Response.ok(stream, MediaType.APPLICATION_OCTET_STREAM)
+                .header("Content-Length", end - start)
+                .build();
+
+    }
+
+}
@@ -29,10 +29,14 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.net.auth.UserContext;
+import org.apache.guacamole.net.auth.permission.SystemPermission;
+import org.apache.guacamole.rest.recording.RecordingCollectionResource;
 import org.apache.guacamole.rest.tunnel.TunnelCollectionResource;
 import org.apache.guacamole.rest.tunnel.TunnelCollectionResourceFactory;
+import org.apache.guacamole.tunnel.TunnelRecordingService;
 
 /**
  * A REST resource which exposes all data associated with a Guacamole user's
@@ -61,6 +65,12 @@ public class SessionResource {
     @Inject
     private TunnelCollectionResourceFactory tunnelCollectionResourceFactory;
 
+    /**
+     * Service which records tunnels and provides access to their recordings.
+     */
+    @Inject
+    private TunnelRecordingService recordingService;
+
     /**
      * Creates a new SessionResource which exposes the data within the given
      * GuacamoleSession.
@@ -149,4 +159,32 @@ public class SessionResource {
         return tunnelCollectionResourceFactory.create(session);
     }
 
+    /**
+     * Retrieves a resource representing all tunnel recordings written by the
+     * web application. Only users having permission to administer the
+     * system within at least one of their UserContexts may access
+     * recordings.
+     *
+     * @return
+     *     A resource representing all tunnel recordings.
+     *
+     * @throws GuacamoleException
+     *     If the current user lacks permission to access recordings, or if
+     *     permissions cannot be retrieved.
+     */
+    @Path("recordings")
+    public RecordingCollectionResource getRecordingCollectionResource()
+            throws GuacamoleException {
+
+        // Allow access only to system administrators
+        for (UserContext userContext : session.getUserContexts()) {
+            if (userContext.self().getSystemPermissions()
+                    .hasPermission(SystemPermission.Type.ADMINISTER))
+                return new RecordingCollectionResource(recordingService);
+        }
+
+        throw new GuacamoleSecurityException("Permission denied.");
+
+    }
+
 }
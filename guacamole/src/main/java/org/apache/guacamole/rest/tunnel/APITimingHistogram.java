@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.tunnel;
+
+import org.apache.guacamole.net.TimingHistogram;
+
+/**
+ * A summary of the durations recorded by a TimingHistogram which may be
+ * exposed through the REST endpoints. All durations are in microseconds.
+ */
+public class APITimingHistogram {
+
+    /**
+     * The number of durations recorded.
+     */
+    private final long count;
+
+    /**
+     * The mean of all durations recorded, in microseconds.
+     */
+    private final long mean;
+
+    /**
+     * An upper bound of the median duration, in microseconds.
+     */
+    private final long median;
+
+    /**
+     * An upper bound of the 99th percentile duration, in microseconds.
+     */
+    private final long percentile99;
+
+    /**
+     * The longest duration recorded, in microseconds.
+     */
+    private final long max;
+
+    /**
+     * Creates a new APITimingHistogram, summarizing the durations recorded
+     * by the given histogram.
+     *
+     * @param histogram
+     *     The histogram to summarize.
+     */
+    public APITimingHistogram(TimingHistogram histogram) {
+        this.count        = histogram.getCount();
+        this.mean         = histogram.getMean() / 1000;
+        this.median       = histogram.getPercentile(50) / 1000;
+        this.percentile99 = histogram.getPercentile(99) / 1000;
+        this.max          = histogram.getMax() / 1000;
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return
+     *     The number of durations recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of all durations recorded.
+     *
+     * @return
+     *     The mean of all durations recorded, in microseconds.
+     */
+    public long getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns an upper bound of the median duration, accurate to within a
+     * factor of two.
+     *
+     * @return
+     *     An upper bound of the median duration, in microseconds.
+     */
+    public long getMedian() {
+        return median;
+    }
+
+    /**
+     * Returns an upper bound of the 99th percentile duration, accurate to
+     * within a factor of two.
+     *
+     * @return
+     *     An upper bound of the 99th percentile duration, in microseconds.
+     */
+    public long getPercentile99() {
+        return percentile99;
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return
+     *     The longest duration recorded, in microseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+}
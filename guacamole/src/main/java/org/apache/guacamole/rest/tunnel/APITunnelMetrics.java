@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.tunnel;
+
+import java.util.Map;
+import org.apache.guacamole.net.TunnelMetrics;
+
+/**
+ * Traffic and timing measurements of one or more tunnels which may be
+ * exposed through the REST endpoints.
+ */
+public class APITunnelMetrics {
+
+    /**
+     * The number of characters of instruction data read from guacd.
+     */
+    private final long charactersRead;
+
+    /**
+     * The number of characters of instruction data written to guacd.
+     */
+    private final long charactersWritten;
+
+    /**
+     * The number of instructions read from guacd.
+     */
+    private final long instructionsRead;
+
+    /**
+     * The number of instructions read from guacd, grouped by opcode.
+     */
+    private final Map<String, Long> instructionCounts;
+
+    /**
+     * The duration of each read.
+     */
+    private final APITimingHistogram readTimes;
+
+    /**
+     * The time spent awaiting read access.
+     */
+    private final APITimingHistogram readerWaitTimes;
+
+    /**
+     * The time for which read access was held.
+     */
+    private final APITimingHistogram readerHoldTimes;
+
+    /**
+     * The time spent awaiting write access.
+     */
+    private final APITimingHistogram writerWaitTimes;
+
+    /**
+     * The time for which write access was held.
+     */
+    private final APITimingHistogram writerHoldTimes;
+
+    /**
+     * The time between successive frames.
+     */
+    private final APITimingHistogram frameIntervals;
+
+    /**
+     * Creates a new APITunnelMetrics, copying the current measurements of
+     * the given metrics.
+     *
+     * @param metrics
+     *     The metrics to copy measurements from.
+     */
+    public APITunnelMetrics(TunnelMetrics metrics) {
+        this.charactersRead    = metrics.getCharactersRead();
+        this.charactersWritten = metrics.getCharactersWritten();
+        this.instructionsRead  = metrics.getInstructionsRead();
+        this.instructionCounts = metrics.getInstructionCounts();
+        this.readTimes         = new APITimingHistogram(metrics.getReadTimes());
+        this.readerWaitTimes   = new APITimingHistogram(metrics.getReaderWaitTimes());
+        this.readerHoldTimes   = new APITimingHistogram(metrics.getReaderHoldTimes());
+        this.writerWaitTimes   = new APITimingHistogram(metrics.getWriterWaitTimes());
+        this.writerHoldTimes   = new APITimingHistogram(metrics.getWriterHoldTimes());
+        this.frameIntervals    = new APITimingHistogram(metrics.getFrameIntervals());
+    }
+
+    /**
+     * Returns the number of characters of instruction data read from guacd.
+     *
+     * @return
+     *     The number of characters of instruction data read.
+     */
+    public long getCharactersRead() {
+        return charactersRead;
+    }
+
+    /**
+     * Returns the number of characters of instruction data written to
+     * guacd.
+     *
+     * @return
+     *     The number of characters of instruction data written.
+     */
+    public long getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    /**
+     * Returns the number of instructions read from guacd.
+     *
+     * @return
+     *     The number of instructions read.
+     */
+    public long getInstructionsRead() {
+        return instructionsRead;
+    }
+
+    /**
+     * Returns the number of instructions read from guacd, grouped by opcode.
+     * Instructions having opcodes not defined by the Guacamole protocol are
+     * counted under the empty string.
+     *
+     * @return
+     *     A map of opcode to the number of instructions read having that
+     *     opcode.
+     */
+    public Map<String, Long> getInstructionCounts() {
+        return instructionCounts;
+    }
+
+    /**
+     * Returns a summary of the duration of each read.
+     *
+     * @return
+     *     A summary of the duration of each read.
+     */
+    public APITimingHistogram getReadTimes() {
+        return readTimes;
+    }
+
+    /**
+     * Returns a summary of the time spent awaiting read access.
+     *
+     * @return
+     *     A summary of the time spent awaiting read access.
+     */
+    public APITimingHistogram getReaderWaitTimes() {
+        return readerWaitTimes;
+    }
+
+    /**
+     * Returns a summary of the time for which read access was held.
+     *
+     * @return
+     *     A summary of the time for which read access was held.
+     */
+    public APITimingHistogram getReaderHoldTimes() {
+        return readerHoldTimes;
+    }
+
+    /**
+     * Returns a summary of the time spent awaiting write access.
+     *
+     * @return
+     *     A summary of the time spent awaiting write access.
+     */
+    public APITimingHistogram getWriterWaitTimes() {
+        return writerWaitTimes;
+    }
+
+    /**
+     * Returns a summary of the time for which write access was held.
+     *
+     * @return
+     *     A summary of the time for which write access was held.
+     */
+    public APITimingHistogram getWriterHoldTimes() {
+        return writerHoldTimes;
+    }
+
+    /**
+     * Returns a summary of the time between successive frames.
+     *
+     * @return
+     *     A summary of the time between successive frames.
+     */
+    public APITimingHistogram getFrameIntervals() {
+        return frameIntervals;
+    }
+
+}
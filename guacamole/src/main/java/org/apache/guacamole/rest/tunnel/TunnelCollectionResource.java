@@ -33,6 +33,8 @@ import javax.ws.rs.core.MediaType;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
 import org.apache.guacamole.GuacamoleSession;
+import org.apache.guacamole.net.SimpleTunnelMetrics;
+import org.apache.guacamole.net.TunnelMetrics;
 import org.apache.guacamole.tunnel.UserTunnel;
 
 /**
@@ -79,6 +81,31 @@ public class TunnelCollectionResource {
         return session.getTunnels().keySet();
     }
 
+    /**
+     * Returns the combined traffic and timing measurements of all measured
+     * tunnels exposed by this TunnelCollectionResource. Tunnels are measured
+     * only if the "tunnel-metrics" property is enabled within
+     * guacamole.properties.
+     *
+     * @return
+     *     The combined measurements of all measured tunnels.
+     */
+    @GET
+    @Path("metrics")
+    public APITunnelMetrics getMetrics() {
+
+        // Aggregate measurements of all measured tunnels
+        SimpleTunnelMetrics aggregate = new SimpleTunnelMetrics();
+        for (UserTunnel tunnel : session.getTunnels().values()) {
+            TunnelMetrics metrics = tunnel.getMetrics();
+            if (metrics != null)
+                aggregate.add(metrics);
+        }
+
+        return new APITunnelMetrics(aggregate);
+
+    }
+
     /**
      * Retrieves the tunnel having the given UUID, returning a TunnelResource
      * representing that tunnel. If no such tunnel exists, an exception will be
@@ -24,6 +24,7 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -31,6 +32,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.net.TunnelMetrics;
 import org.apache.guacamole.net.auth.ActiveConnection;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.rest.activeconnection.APIActiveConnection;
@@ -106,6 +108,30 @@ public class TunnelResource {
 
     }
 
+    /**
+     * Retrieves the current traffic and timing measurements of this tunnel.
+     * Measurements are available only if the "tunnel-metrics" property is
+     * enabled within guacamole.properties.
+     *
+     * @return
+     *     The current measurements of this tunnel.
+     *
+     * @throws GuacamoleException
+     *     If this tunnel is not being measured.
+     */
+    @GET
+    @Path("metrics")
+    public APITunnelMetrics getMetrics() throws GuacamoleException {
+
+        // Fail if tunnel traffic is not being measured
+        TunnelMetrics metrics = tunnel.getMetrics();
+        if (metrics == null)
+            throw new GuacamoleResourceNotFoundException("No metrics available for tunnel.");
+
+        return new APITunnelMetrics(metrics);
+
+    }
+
     /**
      * Intercepts and returns the entire contents of a specific stream.
      *
@@ -27,6 +27,8 @@ import javax.xml.bind.DatatypeConverter;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,7 +76,7 @@ public class InputStreamInterceptingFilter
     private void sendBlob(String index, byte[] blob) {
 
         // Send "blob" containing provided data
-        sendInstruction(new GuacamoleInstruction("blob", index,
+        sendInstruction(new GuacamoleInstruction(GuacamoleOpcode.BLOB, index,
             DatatypeConverter.printBase64Binary(blob)));
 
     }
@@ -88,7 +90,7 @@ public class InputStreamInterceptingFilter
      *     The index of the stream that this "end" instruction relates to.
      */
     private void sendEnd(String index) {
-        sendInstruction(new GuacamoleInstruction("end", index));
+        sendInstruction(new GuacamoleInstruction(GuacamoleOpcode.END, index));
     }
 
     /**
@@ -195,7 +197,7 @@ public class InputStreamInterceptingFilter
             throws GuacamoleException {
 
         // Intercept "ack" instructions for in-progress streams
-        if (instruction.getOpcode().equals("ack"))
+        if (instruction.getKnownOpcode() == GuacamoleOpcode.ACK)
             handleAck(instruction);
 
         // Pass instruction through untouched
@@ -203,6 +205,20 @@ public class InputStreamInterceptingFilter
 
     }
 
+    @Override
+    public GuacamoleInstructionView filter(GuacamoleInstructionView instruction)
+            throws GuacamoleException {
+
+        // Intercept "ack" instructions for in-progress streams, parsing only
+        // if the instruction must actually be handled
+        if (instruction.getKnownOpcode() == GuacamoleOpcode.ACK)
+            handleAck(instruction.toInstruction());
+
+        // Pass instruction through untouched
+        return instruction;
+
+    }
+
     @Override
     protected void handleInterceptedStream(InterceptedStream<InputStream> stream) {
 
@@ -23,6 +23,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -187,6 +188,40 @@ public class InterceptedStreamMap<T extends Closeable> {
         return streams.get(index);
     }
 
+    /**
+     * Returns the stream stored in this map under the index given by the
+     * specified argument of the given instruction. The value of that argument
+     * is only compared against the indexes of stored streams and is never
+     * converted to a String, thus no objects are created for instructions
+     * related to streams which are not stored within this map.
+     *
+     * @param instruction
+     *     The instruction containing the index of the stream to return.
+     *
+     * @param argIndex
+     *     The index of the argument containing the stream index, where the
+     *     first argument following the opcode is argument zero.
+     *
+     * @return
+     *     The stream having the index given by the specified argument, or
+     *     null if no such stream is stored within this map.
+     */
+    public InterceptedStream<T> get(GuacamoleInstructionView instruction,
+            int argIndex) {
+
+        // Avoid creating an iterator in the common case
+        if (streams.isEmpty())
+            return null;
+
+        for (InterceptedStream<T> stream : streams.values()) {
+            if (instruction.argEquals(argIndex, stream.getIndex()))
+                return stream;
+        }
+
+        return null;
+
+    }
+
     /**
      * Adds the given stream to this map, storing it under its associated
      * index. If another stream already exists within this map having the same
@@ -26,6 +26,8 @@ import javax.xml.bind.DatatypeConverter;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.apache.guacamole.protocol.GuacamoleOpcode;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,7 +92,7 @@ public class OutputStreamInterceptingFilter
         if (status != GuacamoleStatus.SUCCESS)
             closeInterceptedStream(index);
 
-        sendInstruction(new GuacamoleInstruction("ack", index, message,
+        sendInstruction(new GuacamoleInstruction(GuacamoleOpcode.ACK, index, message,
                 Integer.toString(status.getGuacamoleStatusCode())));
 
     }
@@ -145,7 +147,7 @@ public class OutputStreamInterceptingFilter
             // graphical session
             if (!acknowledgeBlobs) {
                 acknowledgeBlobs = true;
-                return new GuacamoleInstruction("blob", index, "");
+                return new GuacamoleInstruction(GuacamoleOpcode.BLOB, index, "");
             }
 
             // Otherwise, acknowledge the blob on the client's behalf
@@ -164,32 +166,26 @@ public class OutputStreamInterceptingFilter
 
     /**
      * Handles a single "end" instruction, closing the associated
-     * OutputStream. If no OutputStream is associated with the stream index
-     * within the "end" instruction, this function has no effect.
+     * OutputStream.
      *
-     * @param instruction
-     *     The "end" instruction being handled.
+     * @param stream
+     *     The intercepted stream associated with the stream index within the
+     *     "end" instruction, or null if that stream is not being intercepted,
+     *     in which case this function has no effect.
      */
-    private void handleEnd(GuacamoleInstruction instruction) {
-
-        // Verify all required arguments are present
-        List<String> args = instruction.getArgs();
-        if (args.size() < 1)
-            return;
+    private void handleEnd(InterceptedStream<OutputStream> stream) {
 
         // Terminate stream
-        closeInterceptedStream(args.get(0));
+        if (stream != null)
+            closeInterceptedStream(stream);
 
     }
 
     /**
      * Handles a single "sync" instruction, updating internal tracking of
      * client render state.
-     *
-     * @param instruction
-     *     The "sync" instruction being handled.
      */
-    private void handleSync(GuacamoleInstruction instruction) {
+    private void handleSync() {
         acknowledgeBlobs = false;
     }
 
@@ -197,25 +193,84 @@ public class OutputStreamInterceptingFilter
     public GuacamoleInstruction filter(GuacamoleInstruction instruction)
             throws GuacamoleException {
 
-        // Intercept "blob" instructions for in-progress streams
-        if (instruction.getOpcode().equals("blob"))
-            return handleBlob(instruction);
-
-        // Intercept "end" instructions for in-progress streams
-        if (instruction.getOpcode().equals("end")) {
-            handleEnd(instruction);
+        // Pass instructions having unknown opcodes through untouched
+        GuacamoleOpcode opcode = instruction.getKnownOpcode();
+        if (opcode == null)
             return instruction;
+
+        switch (opcode) {
+
+            // Intercept "blob" instructions for in-progress streams
+            case BLOB:
+                return handleBlob(instruction);
+
+            // Intercept "end" instructions for in-progress streams
+            case END:
+                List<String> args = instruction.getArgs();
+                if (args.size() >= 1)
+                    handleEnd(getInterceptedStream(args.get(0)));
+                return instruction;
+
+            // Monitor "sync" instructions to ensure the client does not
+            // starve from lack of graphical updates
+            case SYNC:
+                handleSync();
+                return instruction;
+
+            // Pass instruction through untouched
+            default:
+                return instruction;
+
         }
 
-        // Monitor "sync" instructions to ensure the client does not starve
-        // from lack of graphical updates
-        if (instruction.getOpcode().equals("sync")) {
-            handleSync(instruction);
+    }
+
+    @Override
+    public GuacamoleInstructionView filter(GuacamoleInstructionView instruction)
+            throws GuacamoleException {
+
+        // Pass instructions having unknown opcodes through untouched
+        GuacamoleOpcode opcode = instruction.getKnownOpcode();
+        if (opcode == null)
             return instruction;
-        }
 
-        // Pass instruction through untouched
-        return instruction;
+        switch (opcode) {
+
+            // Intercept "blob" instructions for in-progress streams, parsing
+            // only if the instruction must actually be handled
+            case BLOB:
+
+                // Pass through blobs for streams which are not intercepted
+                if (instruction.getArgCount() < 2
+                        || getInterceptedStream(instruction, 0) == null)
+                    return instruction;
+
+                // Drop blob or replace with new blob, depending on handling
+                GuacamoleInstruction handled = handleBlob(instruction.toInstruction());
+                if (handled == null)
+                    return null;
+
+                instruction.load(handled);
+                return instruction;
+
+            // Intercept "end" instructions for in-progress streams, looking
+            // up the stream without parsing the instruction
+            case END:
+                if (instruction.getArgCount() >= 1)
+                    handleEnd(getInterceptedStream(instruction, 0));
+                return instruction;
+
+            // Monitor "sync" instructions to ensure the client does not
+            // starve from lack of graphical updates
+            case SYNC:
+                handleSync();
+                return instruction;
+
+            // Pass instruction through untouched
+            default:
+                return instruction;
+
+        }
 
     }
 
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import java.nio.CharBuffer;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.AsyncRecordingWriter;
+import org.apache.guacamole.io.BufferedGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.TimedGuacamoleReader;
+import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GuacamoleTunnel implementation which records all instructions received from
+ * guacd, appending them to an AsyncRecordingWriter as they are read. The
+ * recording is written by the AsyncRecordingWriter's own thread, thus reads
+ * from this tunnel never wait on the recording. The recording is closed when
+ * the tunnel is closed.
+ */
+public class RecordingGuacamoleTunnel extends DelegatingGuacamoleTunnel {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger =
+            LoggerFactory.getLogger(RecordingGuacamoleTunnel.class);
+
+    /**
+     * The writer receiving all recorded instructions.
+     */
+    private final AsyncRecordingWriter recording;
+
+    /**
+     * The recording wrapper around the reader of the underlying tunnel most
+     * recently returned by acquireReader(). This value is only accessed while
+     * read access is held.
+     */
+    private RecordingReader reader;
+
+    /**
+     * Creates a new RecordingGuacamoleTunnel which wraps the given tunnel,
+     * appending all instructions read from that tunnel to the given writer.
+     *
+     * @param tunnel
+     *     The tunnel to record.
+     *
+     * @param recording
+     *     The writer which should receive all instructions read from the
+     *     tunnel.
+     */
+    public RecordingGuacamoleTunnel(GuacamoleTunnel tunnel,
+            AsyncRecordingWriter recording) {
+        super(tunnel);
+        this.recording = recording;
+    }
+
+    /**
+     * Returns the writer receiving all instructions read from this tunnel,
+     * from which statistics describing the recording may be retrieved.
+     *
+     * @return
+     *     The writer receiving all instructions read from this tunnel.
+     */
+    public AsyncRecordingWriter getRecording() {
+        return recording;
+    }
+
+    /**
+     * GuacamoleReader which delegates to the reader of the underlying tunnel,
+     * appending all data read to the recording.
+     */
+    private class RecordingReader
+            implements BufferedGuacamoleReader, TimedGuacamoleReader {
+
+        /**
+         * The reader of the underlying tunnel.
+         */
+        private final GuacamoleReader wrapped;
+
+        /**
+         * Creates a new RecordingReader which records all data read from the
+         * given reader.
+         *
+         * @param wrapped
+         *     The reader of the underlying tunnel.
+         */
+        public RecordingReader(GuacamoleReader wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public boolean available() throws GuacamoleException {
+            return wrapped.available();
+        }
+
+        @Override
+        public boolean available(int timeout) throws GuacamoleException {
+            if (wrapped instanceof TimedGuacamoleReader)
+                return ((TimedGuacamoleReader) wrapped).available(timeout);
+            return wrapped.available();
+        }
+
+        @Override
+        public CharBuffer readBuffer() throws GuacamoleException {
+
+            // Readers which cannot read in place are recorded by read()
+            if (!(wrapped instanceof BufferedGuacamoleReader)) {
+                char[] data = read();
+                if (data == null)
+                    return null;
+                return CharBuffer.wrap(data);
+            }
+
+            CharBuffer instruction = ((BufferedGuacamoleReader) wrapped).readBuffer();
+            if (instruction == null)
+                return null;
+
+            // Record single instruction in place
+            recording.append(instruction.array(),
+                    instruction.arrayOffset() + instruction.position(),
+                    instruction.remaining());
+
+            return instruction;
+
+        }
+
+        @Override
+        public char[] read() throws GuacamoleException {
+
+            char[] data = wrapped.read();
+            if (data == null)
+                return null;
+
+            recording.append(data, 0, data.length);
+            return data;
+
+        }
+
+        @Override
+        public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+            GuacamoleInstruction instruction = wrapped.readInstruction();
+            if (instruction == null)
+                return null;
+
+            char[] data = instruction.toString().toCharArray();
+            recording.append(data, 0, data.length);
+            return instruction;
+
+        }
+
+    }
+
+    @Override
+    public GuacamoleReader acquireReader() {
+
+        GuacamoleReader wrapped = super.acquireReader();
+
+        // Reuse existing wrapper if the underlying reader is unchanged
+        if (reader == null || reader.wrapped != wrapped)
+            reader = new RecordingReader(wrapped);
+
+        return reader;
+
+    }
+
+    @Override
+    public void close() throws GuacamoleException {
+
+        try {
+            super.close();
+        }
+
+        // Finish recording in all cases, logging its outcome
+        finally {
+
+            recording.close();
+
+            logger.debug("Recording of tunnel \"{}\" finished: {} characters "
+                    + "recorded, {} characters dropped{}.", getUUID(),
+                    recording.getCharactersRecorded(),
+                    recording.getCharactersDropped(),
+                    recording.isAborted() ? " (aborted)" : "");
+
+        }
+
+    }
+
+}
@@ -23,8 +23,9 @@ import java.io.Closeable;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
-import org.apache.guacamole.protocol.GuacamoleFilter;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleInstructionView;
+import org.apache.guacamole.protocol.GuacamoleViewFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +41,7 @@ import org.slf4j.LoggerFactory;
  *     or OutputStream.
  */
 public abstract class StreamInterceptingFilter<T extends Closeable>
-        implements GuacamoleFilter {
+        implements GuacamoleViewFilter {
 
     /**
      * Logger for this class.
@@ -116,6 +117,28 @@ public abstract class StreamInterceptingFilter<T extends Closeable>
         return streams.get(index);
     }
 
+    /**
+     * Returns the stream currently being intercepted by this filter whose
+     * index is given by the specified argument of the given instruction. No
+     * objects are created for instructions related to streams which are not
+     * being intercepted.
+     *
+     * @param instruction
+     *     The instruction containing the index of the stream to return.
+     *
+     * @param argIndex
+     *     The index of the argument containing the stream index, where the
+     *     first argument following the opcode is argument zero.
+     *
+     * @return
+     *     The stream having the index given by the specified argument, or
+     *     null if no such stream is being intercepted.
+     */
+    protected InterceptedStream<T> getInterceptedStream(
+            GuacamoleInstructionView instruction, int argIndex) {
+        return streams.get(instruction, argIndex);
+    }
+
     /**
      * Closes the stream having the given index and currently being intercepted
      * by this filter, if any. If no such stream is being intercepted, then this
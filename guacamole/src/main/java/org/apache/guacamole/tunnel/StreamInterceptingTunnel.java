@@ -27,6 +27,7 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.CompositeGuacamoleFilter;
 import org.apache.guacamole.protocol.FilteredGuacamoleReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +71,13 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
     private final OutputStreamInterceptingFilter outputStreamFilter =
             new OutputStreamInterceptingFilter(this);
 
+    /**
+     * The filter to use for applying both stream-intercepting filters in a
+     * single pass.
+     */
+    private final CompositeGuacamoleFilter streamFilter =
+            new CompositeGuacamoleFilter(inputStreamFilter, outputStreamFilter);
+
     /**
      * Intercept all data received along the stream having the given index,
      * writing that data to the given OutputStream. The OutputStream will
@@ -150,10 +158,7 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
         GuacamoleReader reader = super.acquireReader();
 
         // Filter both input and output streams
-        reader = new FilteredGuacamoleReader(reader, inputStreamFilter);
-        reader = new FilteredGuacamoleReader(reader, outputStreamFilter);
-
-        return reader;
+        return new FilteredGuacamoleReader(reader, streamFilter);
 
     }
 
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the GuacamoleBatchPolicy shared by all HTTP and
+ * WebSocket tunnels, configured using guacamole.properties.
+ */
+public class TunnelBatchPolicyFactory {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelBatchPolicyFactory.class);
+
+    /**
+     * The maximum number of characters of instruction data to send to the
+     * client within a single message or flush.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_BATCH_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-batch-size"; }
+
+    };
+
+    /**
+     * The maximum number of milliseconds to hold instruction data, whether
+     * waiting for the remainder of a partially-received frame or while
+     * further data continues to arrive.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_BATCH_DELAY =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-batch-delay"; }
+
+    };
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TunnelBatchPolicyFactory() {
+    }
+
+    /**
+     * Creates a new GuacamoleBatchPolicy configured using the given
+     * environment. If guacamole.properties cannot be read, the policy is
+     * created using default values.
+     *
+     * @param environment
+     *     The environment to use when configuring the policy.
+     *
+     * @return
+     *     A new GuacamoleBatchPolicy.
+     */
+    public static GuacamoleBatchPolicy create(Environment environment) {
+
+        int maxLength;
+        int maxDelay;
+
+        // Read batch limits from guacamole.properties
+        try {
+            maxLength = environment.getProperty(TUNNEL_BATCH_SIZE,
+                    GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH);
+            maxDelay = environment.getProperty(TUNNEL_BATCH_DELAY,
+                    GuacamoleBatchPolicy.DEFAULT_MAX_DELAY);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading tunnel batch configuration.", e);
+            maxLength = GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH;
+            maxDelay = GuacamoleBatchPolicy.DEFAULT_MAX_DELAY;
+        }
+
+        // Ignore nonsensical limits
+        if (maxLength < 1 || maxDelay < 0) {
+            logger.warn("Tunnel batch size must be positive, and batch delay "
+                    + "must not be negative. Default limits will be used.");
+            maxLength = GuacamoleBatchPolicy.DEFAULT_MAX_LENGTH;
+            maxDelay = GuacamoleBatchPolicy.DEFAULT_MAX_DELAY;
+        }
+
+        logger.debug("Tunnel data will be sent in batches of at most {} "
+                + "characters, held for at most {} ms.", maxLength, maxDelay);
+
+        return new GuacamoleBatchPolicy(maxLength, maxDelay);
+
+    }
+
+}
@@ -19,9 +19,11 @@
 
 package org.apache.guacamole.tunnel;
 
-import org.apache.guacamole.tunnel.http.RestrictedGuacamoleHTTPTunnelServlet;
+import org.apache.guacamole.tunnel.http.AsyncGuacamoleHTTPTunnelServlet;
 import com.google.inject.servlet.ServletModule;
 import java.lang.reflect.InvocationTargetException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +37,17 @@ public class TunnelModule extends ServletModule {
      */
     private final Logger logger = LoggerFactory.getLogger(TunnelModule.class);
 
+    /**
+     * The executor which runs the read loops of all WebSocket tunnels.
+     */
+    private final TunnelReaderExecutor readerExecutor;
+
+    /**
+     * The policy dictating when data is sent by all HTTP and WebSocket
+     * tunnels.
+     */
+    private final GuacamoleBatchPolicy batchPolicy;
+
     /**
      * Classnames of all implementation-specific WebSocket tunnel modules.
      */
@@ -45,6 +58,25 @@ public class TunnelModule extends ServletModule {
         "org.apache.guacamole.tunnel.websocket.tomcat.WebSocketTunnelModule"
     };
 
+    /**
+     * Creates a new TunnelModule which runs the read loops of all WebSocket
+     * tunnels using the given executor, and sends data from all tunnels as
+     * dictated by the given batch policy.
+     *
+     * @param readerExecutor
+     *     The executor which should run the read loops of all WebSocket
+     *     tunnels.
+     *
+     * @param batchPolicy
+     *     The policy dictating when data is sent by all HTTP and WebSocket
+     *     tunnels.
+     */
+    public TunnelModule(TunnelReaderExecutor readerExecutor,
+            GuacamoleBatchPolicy batchPolicy) {
+        this.readerExecutor = readerExecutor;
+        this.batchPolicy = batchPolicy;
+    }
+
     private boolean loadWebSocketModule(String classname) {
 
         try {
@@ -89,9 +121,11 @@ public class TunnelModule extends ServletModule {
     protected void configureServlets() {
 
         bind(TunnelRequestService.class);
+        bind(TunnelReaderExecutor.class).toInstance(readerExecutor);
+        bind(GuacamoleBatchPolicy.class).toInstance(batchPolicy);
 
-        // Set up HTTP tunnel
-        serve("/tunnel").with(RestrictedGuacamoleHTTPTunnelServlet.class);
+        // Set up HTTP tunnel, allowing asynchronous reads if enabled
+        serve("/tunnel").with(AsyncGuacamoleHTTPTunnelServlet.class);
 
         // Try to load each WebSocket tunnel in sequence
         for (String classname : WEBSOCKET_MODULES) {
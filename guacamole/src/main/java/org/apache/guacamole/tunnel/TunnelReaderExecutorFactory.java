@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.net.PooledTunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutors;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the TunnelReaderExecutor used by all WebSocket
+ * tunnels, configured using guacamole.properties.
+ */
+public class TunnelReaderExecutorFactory {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelReaderExecutorFactory.class);
+
+    /**
+     * The maximum number of WebSocket tunnels which may be read concurrently.
+     * Further tunnels are refused while this many tunnels are being read. By
+     * default, PooledTunnelReaderExecutor.DEFAULT_MAX_THREADS.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_READER_THREADS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-reader-threads"; }
+
+    };
+
+    /**
+     * The maximum number of WebSocket tunnels which may wait for a reader
+     * thread once all reader threads are busy. A waiting tunnel receives no
+     * data until another tunnel closes, thus no tunnels wait by default.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_READER_QUEUE_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-reader-queue-size"; }
+
+    };
+
+    /**
+     * Whether WebSocket tunnels should be read using virtual threads, if
+     * supported by the JVM. Pooled platform threads are used by default.
+     */
+    private static final BooleanGuacamoleProperty TUNNEL_READER_VIRTUAL_THREADS =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-reader-virtual-threads"; }
+
+    };
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TunnelReaderExecutorFactory() {
+    }
+
+    /**
+     * Creates a new TunnelReaderExecutor configured using the given
+     * environment. If guacamole.properties cannot be read, the executor is
+     * created using default values.
+     *
+     * @param environment
+     *     The environment to use when configuring the executor.
+     *
+     * @return
+     *     A new TunnelReaderExecutor.
+     */
+    public static TunnelReaderExecutor create(Environment environment) {
+
+        int maxThreads;
+        int maxQueued;
+        boolean useVirtualThreads;
+
+        // Read executor limits from guacamole.properties
+        try {
+            maxThreads = environment.getProperty(TUNNEL_READER_THREADS,
+                    PooledTunnelReaderExecutor.DEFAULT_MAX_THREADS);
+            maxQueued = environment.getProperty(TUNNEL_READER_QUEUE_SIZE,
+                    PooledTunnelReaderExecutor.DEFAULT_MAX_QUEUED);
+            useVirtualThreads = environment.getProperty(TUNNEL_READER_VIRTUAL_THREADS, false);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading tunnel reader configuration.", e);
+            maxThreads = PooledTunnelReaderExecutor.DEFAULT_MAX_THREADS;
+            maxQueued = PooledTunnelReaderExecutor.DEFAULT_MAX_QUEUED;
+            useVirtualThreads = false;
+        }
+
+        // Ignore nonsensical limits
+        if (maxThreads < 1 || maxQueued < 0) {
+            logger.warn("The tunnel reader thread limit must be positive, "
+                    + "and the queue limit must not be negative. Default "
+                    + "limits will be used.");
+            maxThreads = PooledTunnelReaderExecutor.DEFAULT_MAX_THREADS;
+            maxQueued = PooledTunnelReaderExecutor.DEFAULT_MAX_QUEUED;
+        }
+
+        TunnelReaderExecutor executor = TunnelReaderExecutors.create(
+                useVirtualThreads, maxThreads, maxQueued);
+
+        logger.info("WebSocket tunnels will be read using {} (at most {} "
+                + "concurrently).", executor.getClass().getSimpleName(),
+                maxThreads);
+
+        return executor;
+
+    }
+
+}
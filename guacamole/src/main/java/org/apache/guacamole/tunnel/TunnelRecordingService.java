@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.AsyncRecordingWriter;
+import org.apache.guacamole.io.RecordingIndex;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.properties.FileGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.properties.StringGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which records selected tunnels within the web application itself,
+ * independently of any recording performed by guacd, and which provides
+ * indexed access to the resulting recordings. Recording is enabled by
+ * specifying the directory which should contain recordings within
+ * guacamole.properties.
+ */
+@Singleton
+public class TunnelRecordingService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelRecordingService.class);
+
+    /**
+     * The directory in which tunnel recordings should be written. If
+     * omitted, tunnels are not recorded.
+     */
+    private static final FileGuacamoleProperty TUNNEL_RECORDING_PATH =
+            new FileGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-recording-path"; }
+
+    };
+
+    /**
+     * Comma-separated list of all connections and connection groups whose
+     * tunnels should be recorded, each given as "connection:IDENTIFIER" or
+     * "connection-group:IDENTIFIER". If omitted, all tunnels are recorded.
+     */
+    private static final StringGuacamoleProperty TUNNEL_RECORDING_CONNECTIONS =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-recording-connections"; }
+
+    };
+
+    /**
+     * The capacity of the buffer holding instruction data not yet written
+     * to each recording, in units of 1024 characters.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_RECORDING_BUFFER_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-recording-buffer-size"; }
+
+    };
+
+    /**
+     * The amount of instruction data which may be dropped from each recording
+     * while its buffer is full before that recording is aborted, in units of
+     * 1024 characters.
+     */
+    private static final IntegerGuacamoleProperty TUNNEL_RECORDING_MAX_LOSS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-recording-max-loss"; }
+
+    };
+
+    /**
+     * The default amount of instruction data which may be dropped from each
+     * recording, in units of 1024 characters.
+     */
+    private static final int DEFAULT_MAX_LOSS = 0;
+
+    /**
+     * The prefix which denotes a connection within the value of
+     * tunnel-recording-connections.
+     */
+    private static final String CONNECTION_PREFIX = "connection:";
+
+    /**
+     * The prefix which denotes a connection group within the value of
+     * tunnel-recording-connections.
+     */
+    private static final String CONNECTION_GROUP_PREFIX = "connection-group:";
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * The maximum number of recording indexes to retain in memory. Indexes
+     * are persisted alongside their recordings, thus an index which has been
+     * discarded is simply reloaded if its recording is requested again.
+     */
+    private static final int MAX_CACHED_INDEXES = 32;
+
+    /**
+     * The indexes of the recordings most recently retrieved through
+     * getRecordingIndex(), stored by recording name, in order of access. The
+     * least-recently accessed index is discarded once more than
+     * MAX_CACHED_INDEXES indexes are stored. All access to this map must be
+     * synchronized on the map itself.
+     */
+    private final Map<String, RecordingIndex> indexes =
+            new LinkedHashMap<String, RecordingIndex>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RecordingIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+
+    };
+
+    /**
+     * Returns the given identifier qualified by the given type, in the same
+     * form as the entries of tunnel-recording-connections.
+     *
+     * @param type
+     *     The type of object denoted by the identifier (connection or group).
+     *
+     * @param identifier
+     *     The identifier of the connection or connection group.
+     *
+     * @return
+     *     The given identifier, prefixed with the prefix denoting objects of
+     *     the given type.
+     */
+    private String getQualifiedIdentifier(TunnelRequest.Type type,
+            String identifier) {
+
+        switch (type) {
+
+            case CONNECTION:
+                return CONNECTION_PREFIX + identifier;
+
+            case CONNECTION_GROUP:
+                return CONNECTION_GROUP_PREFIX + identifier;
+
+        }
+
+        throw new IllegalArgumentException("Unknown tunnel request type: " + type);
+
+    }
+
+    /**
+     * Returns the type-qualified identifiers of all connections and
+     * connection groups whose tunnels should be recorded, or null if all
+     * tunnels should be recorded. Entries lacking a valid type prefix are
+     * logged and ignored.
+     *
+     * @return
+     *     The set of type-qualified identifiers of all connections and
+     *     connection groups whose tunnels should be recorded, or null if all
+     *     tunnels should be recorded.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read.
+     */
+    private Set<String> getRecordedIdentifiers() throws GuacamoleException {
+
+        String identifiers = environment.getProperty(TUNNEL_RECORDING_CONNECTIONS);
+        if (identifiers == null)
+            return null;
+
+        Set<String> recorded = new HashSet<String>();
+        for (String identifier : identifiers.split(",")) {
+
+            identifier = identifier.trim();
+            if (identifier.isEmpty())
+                continue;
+
+            // Bare identifiers are ambiguous, as connections and connection
+            // groups do not share a namespace
+            if ((identifier.startsWith(CONNECTION_PREFIX)
+                        && identifier.length() > CONNECTION_PREFIX.length())
+                    || (identifier.startsWith(CONNECTION_GROUP_PREFIX)
+                        && identifier.length() > CONNECTION_GROUP_PREFIX.length()))
+                recorded.add(identifier);
+            else
+                logger.warn("Ignoring \"{}\" within \"{}\": entries must "
+                        + "begin with \"{}\" or \"{}\".", identifier,
+                        TUNNEL_RECORDING_CONNECTIONS.getName(),
+                        CONNECTION_PREFIX, CONNECTION_GROUP_PREFIX);
+
+        }
+
+        return Collections.unmodifiableSet(recorded);
+
+    }
+
+    /**
+     * Wraps the given tunnel such that all instructions received from guacd
+     * are recorded, if recording is enabled for the connection or connection
+     * group having the given type and identifier. If recording is not enabled, or the
+     * recording cannot be created, the tunnel is returned unchanged.
+     *
+     * @param tunnel
+     *     The tunnel to record.
+     *
+     * @param type
+     *     The type of object to which the tunnel is connected (connection or
+     *     group).
+     *
+     * @param identifier
+     *     The identifier of the connection or connection group to which the
+     *     tunnel is connected.
+     *
+     * @return
+     *     A RecordingGuacamoleTunnel wrapping the given tunnel, or the given
+     *     tunnel itself if the tunnel is not to be recorded.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read.
+     */
+    public GuacamoleTunnel record(GuacamoleTunnel tunnel,
+            TunnelRequest.Type type, String identifier)
+            throws GuacamoleException {
+
+        // Do not record unless enabled for this connection
+        File path = environment.getProperty(TUNNEL_RECORDING_PATH);
+        if (path == null)
+            return tunnel;
+
+        Set<String> recordedIdentifiers = getRecordedIdentifiers();
+        if (recordedIdentifiers != null && !recordedIdentifiers.contains(getQualifiedIdentifier(type, identifier)))
+            return tunnel;
+
+        int bufferSize = environment.getProperty(TUNNEL_RECORDING_BUFFER_SIZE,
+                AsyncRecordingWriter.DEFAULT_BUFFER_SIZE / 1024);
+        int maxLoss = environment.getProperty(TUNNEL_RECORDING_MAX_LOSS,
+                DEFAULT_MAX_LOSS);
+
+        // Recordings are named by tunnel UUID, which is always unique
+        File file = new File(path, tunnel.getUUID().toString());
+
+        FileOutputStream output;
+        try {
+            output = new FileOutputStream(file);
+        }
+        catch (FileNotFoundException e) {
+            logger.warn("Tunnel \"{}\" will not be recorded: {}",
+                    tunnel.getUUID(), e.getMessage());
+            logger.debug("Unable to create tunnel recording.", e);
+            return tunnel;
+        }
+
+        logger.info("Recording tunnel \"{}\" of \"{}\" to \"{}\".",
+                tunnel.getUUID(), getQualifiedIdentifier(type, identifier),
+                file);
+
+        AsyncRecordingWriter recording = new AsyncRecordingWriter(output,
+                Math.max(1, bufferSize) * 1024, Math.max(0, maxLoss) * 1024l,
+                "recording-" + tunnel.getUUID());
+
+        return new RecordingGuacamoleTunnel(tunnel, recording);
+
+    }
+
+    /**
+     * Returns the directory containing all tunnel recordings.
+     *
+     * @return
+     *     The directory containing all tunnel recordings.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, or if tunnel recording is
+     *     not enabled.
+     */
+    private File getRecordingPath() throws GuacamoleException {
+
+        File path = environment.getProperty(TUNNEL_RECORDING_PATH);
+        if (path == null)
+            throw new GuacamoleResourceNotFoundException("Tunnel recording is not enabled.");
+
+        return path;
+
+    }
+
+    /**
+     * Returns the names of all tunnel recordings, excluding their indexes.
+     *
+     * @return
+     *     A new list of the names of all tunnel recordings.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, or if tunnel recording is
+     *     not enabled.
+     */
+    public List<String> getRecordingNames() throws GuacamoleException {
+
+        List<String> names = new ArrayList<String>();
+
+        File[] files = getRecordingPath().listFiles();
+        if (files == null)
+            return names;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && !name.endsWith(RecordingIndex.INDEX_SUFFIX))
+                names.add(name);
+        }
+
+        Collections.sort(names);
+        return names;
+
+    }
+
+    /**
+     * Returns the index of the tunnel recording having the given name,
+     * updated to include all complete frames currently within the recording.
+     * Indexes are retained in memory once retrieved, such that recordings
+     * still being written are indexed incrementally.
+     *
+     * @param name
+     *     The name of the recording.
+     *
+     * @return
+     *     The up-to-date index of the recording having the given name.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, if tunnel recording is not
+     *     enabled, if there is no such recording, or if the recording cannot
+     *     be indexed.
+     */
+    public RecordingIndex getRecordingIndex(String name) throws GuacamoleException {
+
+        // Accept only the names of files directly within the recording path
+        File file = new File(getRecordingPath(), name);
+        if (name.isEmpty() || name.startsWith(".") || name.contains("/")
+                || name.contains(File.separator)
+                || name.endsWith(RecordingIndex.INDEX_SUFFIX)
+                || !file.isFile())
+            throw new GuacamoleResourceNotFoundException("No such recording.");
+
+        // Create index if not recently retrieved
+        RecordingIndex index;
+        synchronized (indexes) {
+            index = indexes.get(name);
+            if (index == null) {
+                index = new RecordingIndex(file);
+                indexes.put(name, index);
+            }
+        }
+
+        index.update();
+        return index;
+
+    }
+
+}
@@ -26,12 +26,15 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.GuacamoleUnauthorizedException;
+import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.MeteredGuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionGroup;
 import org.apache.guacamole.net.auth.Directory;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.rest.auth.AuthenticationService;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,12 +54,36 @@ public class TunnelRequestService {
      */
     private final Logger logger = LoggerFactory.getLogger(TunnelRequestService.class);
 
+    /**
+     * Whether the traffic of each tunnel should be measured, such that those
+     * measurements may be retrieved through the REST API.
+     */
+    private static final BooleanGuacamoleProperty TUNNEL_METRICS =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-metrics"; }
+
+    };
+
     /**
      * A service for authenticating users from auth tokens.
      */
     @Inject
     private AuthenticationService authenticationService;
 
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Service for recording tunnels within the web application.
+     */
+    @Inject
+    private TunnelRecordingService recordingService;
+
     /**
      * Reads and returns the client information provided within the given
      * request.
@@ -328,6 +355,15 @@ public class TunnelRequestService {
             // Create connected tunnel using provided connection ID and client information
             GuacamoleTunnel tunnel = createConnectedTunnel(userContext, type, id, info);
 
+            // Record tunnel, if enabled for this connection
+            tunnel = recordingService.record(tunnel, type, id);
+
+            // Measure tunnel traffic, if enabled. The metered tunnel must be
+            // the tunnel given to UserTunnel, which exposes its measurements
+            // only if that tunnel is itself a TunnelMetrics.
+            if (environment.getProperty(TUNNEL_METRICS, false))
+                tunnel = new MeteredGuacamoleTunnel(tunnel);
+
             // Associate tunnel with session
             return createAssociatedTunnel(tunnel, authToken, session, userContext, type, id);
 
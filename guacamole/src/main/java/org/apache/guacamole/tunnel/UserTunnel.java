@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.UUID;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelMetrics;
 import org.apache.guacamole.net.auth.ActiveConnection;
 import org.apache.guacamole.net.auth.Directory;
 import org.apache.guacamole.net.auth.UserContext;
@@ -40,6 +41,12 @@ public class UserTunnel extends StreamInterceptingTunnel {
      */
     private final UserContext userContext;
 
+    /**
+     * The measurements of the traffic passing through this tunnel, or null
+     * if this tunnel is not being measured.
+     */
+    private final TunnelMetrics metrics;
+
     /**
      * Creates a new UserTunnel which wraps the given tunnel, associating it
      * with the given UserContext. The UserContext MUST be from the
@@ -53,11 +60,13 @@ public class UserTunnel extends StreamInterceptingTunnel {
      *
      * @param tunnel
      *     The tunnel whose stream-related instruction should be intercepted if
-     *     interceptStream() is invoked.
+     *     interceptStream() is invoked. If this tunnel is a TunnelMetrics, its
+     *     measurements will be available via getMetrics().
      */
     public UserTunnel(UserContext userContext, GuacamoleTunnel tunnel) {
         super(tunnel);
         this.userContext = userContext;
+        this.metrics = (tunnel instanceof TunnelMetrics) ? (TunnelMetrics) tunnel : null;
     }
 
     /**
@@ -115,4 +124,16 @@ public class UserTunnel extends StreamInterceptingTunnel {
 
     }
 
+    /**
+     * Returns the measurements of the traffic passing through this tunnel,
+     * if that traffic is being measured.
+     *
+     * @return
+     *     The measurements of the traffic passing through this tunnel, or
+     *     null if this tunnel is not being measured.
+     */
+    public TunnelMetrics getMetrics() {
+        return metrics;
+    }
+
 }
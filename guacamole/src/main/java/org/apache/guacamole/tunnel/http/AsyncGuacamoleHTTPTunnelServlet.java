@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel.http;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.PooledTunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.servlet.AsyncHTTPTunnelReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Variant of RestrictedGuacamoleHTTPTunnelServlet which services read
+ * requests asynchronously using Servlet 3.0, if enabled within
+ * guacamole.properties and allowed by the servlet container. Rather than
+ * occupying a container thread for the lifetime of each read request, the
+ * response of each read request is held open without any container thread,
+ * and each tunnel is read by a blocking read loop running on a pool of
+ * threads dedicated to this servlet. Data is thus written as soon as guacd
+ * sends it, without polling, including over SSL connections to guacd. This
+ * frees the servlet container's threads, but still requires one pooled
+ * thread per tunnel being read. Connect and write requests are otherwise
+ * handled exactly as by RestrictedGuacamoleHTTPTunnelServlet.
+ */
+@Singleton
+public class AsyncGuacamoleHTTPTunnelServlet extends RestrictedGuacamoleHTTPTunnelServlet {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncGuacamoleHTTPTunnelServlet.class);
+
+    /**
+     * Whether read requests to the HTTP tunnel should be serviced
+     * asynchronously, if allowed by the servlet container.
+     */
+    private static final BooleanGuacamoleProperty HTTP_TUNNEL_ASYNC =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "http-tunnel-async"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Executor which runs the read loop of each tunnel having asynchronous
+     * read requests, or null if read requests are not being serviced
+     * asynchronously. Read loops block while writing to slow clients, and
+     * thus do not share the executor running WebSocket tunnel read loops.
+     */
+    private TunnelReaderExecutor transferExecutor;
+
+    /**
+     * All tunnels which have received asynchronous read requests and are not
+     * yet closed, stored by tunnel UUID.
+     */
+    private final ConcurrentMap<String, AsyncTunnelReader> readers =
+            new ConcurrentHashMap<String, AsyncTunnelReader>();
+
+    /**
+     * Reads from a single tunnel on behalf of its asynchronous read requests,
+     * each represented by the AsyncContext of that request.
+     */
+    private class AsyncTunnelReader extends AsyncHTTPTunnelReader<AsyncContext> {
+
+        /**
+         * Creates a new AsyncTunnelReader which reads from the given tunnel.
+         *
+         * @param tunnel
+         *     The tunnel to read from.
+         */
+        public AsyncTunnelReader(GuacamoleTunnel tunnel) {
+            super(tunnel, getBatchPolicy(), transferExecutor);
+        }
+
+        @Override
+        protected OutputStream getOutputStream(AsyncContext request)
+                throws IOException {
+            return request.getResponse().getOutputStream();
+        }
+
+        @Override
+        protected void complete(AsyncContext request) {
+            request.complete();
+        }
+
+        @Override
+        protected boolean sendError(AsyncContext request,
+                GuacamoleException cause) {
+
+            if (request.getResponse().isCommitted())
+                return false;
+
+            try {
+                AsyncGuacamoleHTTPTunnelServlet.this.sendError(
+                        (HttpServletResponse) request.getResponse(), cause.getStatus(),
+                        cause instanceof GuacamoleClientException ? cause.getMessage() : "Internal server error.");
+            }
+            catch (ServletException e) {
+                logger.debug("Unable to send HTTP tunnel error.", e);
+            }
+            finally {
+                request.complete();
+            }
+
+            return true;
+
+        }
+
+        @Override
+        protected void tunnelClosed() {
+            GuacamoleTunnel tunnel = getTunnel();
+            readers.remove(tunnel.getUUID().toString(), this);
+            deregisterTunnel(tunnel);
+        }
+
+    }
+
+    @Override
+    public void init() throws ServletException {
+
+        super.init();
+
+        // Read synchronously unless asynchronous reads are enabled
+        try {
+            if (!environment.getProperty(HTTP_TUNNEL_ASYNC, false))
+                return;
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading HTTP tunnel configuration.", e);
+            return;
+        }
+
+        // Read tunnels using a dedicated pool
+        transferExecutor = new PooledTunnelReaderExecutor();
+
+        logger.debug("HTTP tunnel read requests will be serviced asynchronously "
+                + "where supported by the servlet container.");
+
+    }
+
+    @Override
+    protected void doRead(HttpServletRequest request,
+            HttpServletResponse response, String tunnelUUID)
+            throws GuacamoleException {
+
+        // Read synchronously if asynchronous reads are disabled or not
+        // allowed for this request
+        if (transferExecutor == null || !request.isAsyncSupported()) {
+            super.doRead(request, response, tunnelUUID);
+            return;
+        }
+
+        // Get tunnel, ensure tunnel exists and is open
+        GuacamoleTunnel tunnel = getTunnel(tunnelUUID);
+        if (!tunnel.isOpen())
+            throw new GuacamoleResourceNotFoundException("Tunnel is closed.");
+
+        // Get reader for tunnel, creating a new reader if necessary
+        AsyncTunnelReader reader = readers.get(tunnelUUID);
+        if (reader == null) {
+            AsyncTunnelReader newReader = new AsyncTunnelReader(tunnel);
+            reader = readers.putIfAbsent(tunnelUUID, newReader);
+            if (reader == null)
+                reader = newReader;
+        }
+
+        // Note that although we are sending text, Webkit browsers will
+        // buffer 1024 bytes before starting a normal stream if we use
+        // anything but application/octet-stream.
+        response.setContentType("application/octet-stream");
+        response.setHeader("Cache-Control", "no-cache");
+
+        // Hold response open without occupying this thread
+        AsyncContext context = request.startAsync();
+        context.setTimeout(0);
+        reader.addRequest(context);
+
+    }
+
+    @Override
+    public void destroy() {
+
+        if (transferExecutor != null)
+            transferExecutor.shutdown();
+
+        super.destroy();
+
+    }
+
+}
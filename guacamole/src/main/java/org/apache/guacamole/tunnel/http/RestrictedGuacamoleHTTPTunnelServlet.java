@@ -23,9 +23,11 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.apache.guacamole.servlet.GuacamoleHTTPTunnelServlet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,12 +44,36 @@ public class RestrictedGuacamoleHTTPTunnelServlet extends GuacamoleHTTPTunnelSer
      */
     @Inject
     private TunnelRequestService tunnelRequestService;
+
+    /**
+     * The policy dictating when data is flushed to the client.
+     */
+    @Inject
+    private GuacamoleBatchPolicy batchPolicy;
     
     /**
      * Logger for this class.
      */
     private static final Logger logger = LoggerFactory.getLogger(RestrictedGuacamoleHTTPTunnelServlet.class);
 
+    /**
+     * The number of seconds to wait between requests to an HTTP tunnel
+     * before closing that tunnel.
+     */
+    private static final IntegerGuacamoleProperty HTTP_TUNNEL_TIMEOUT =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "http-tunnel-timeout"; }
+
+    };
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
     @Override
     protected GuacamoleTunnel doConnect(HttpServletRequest request) throws GuacamoleException {
 
@@ -61,4 +87,36 @@ public class RestrictedGuacamoleHTTPTunnelServlet extends GuacamoleHTTPTunnelSer
 
     }
 
+    @Override
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
+    @Override
+    protected long getTunnelTimeout() {
+
+        // Read tunnel timeout from guacamole.properties
+        try {
+            Integer timeout = environment.getProperty(HTTP_TUNNEL_TIMEOUT);
+            if (timeout != null) {
+
+                if (timeout > 0)
+                    return timeout * 1000l;
+
+                // Ignore nonsensical timeouts
+                logger.warn("The value of \"{}\" must be positive. The "
+                        + "default HTTP tunnel timeout will be used.",
+                        HTTP_TUNNEL_TIMEOUT.getName());
+
+            }
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading HTTP tunnel timeout value.", e);
+        }
+
+        return super.getTunnelTimeout();
+
+    }
+
 }
@@ -20,17 +20,22 @@
 package org.apache.guacamole.tunnel.websocket;
 
 import com.google.inject.Provider;
+import java.util.List;
 import java.util.Map;
 import javax.websocket.EndpointConfig;
+import javax.websocket.Extension;
 import javax.websocket.HandshakeResponse;
 import javax.websocket.Session;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpointConfig;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
+import org.apache.guacamole.websocket.WebSocketCompressionPolicy;
 
 /**
  * Tunnel implementation which uses WebSocket as a tunnel backend, rather than
@@ -50,6 +55,30 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
      */
     private static final String TUNNEL_REQUEST_SERVICE_PROPERTY = "WS_GUAC_TUNNEL_REQUEST_SERVICE";
 
+    /**
+     * Unique string which shall be used to store the TunnelReaderExecutor to
+     * be used for running the tunnel read loop.
+     */
+    private static final String TUNNEL_READER_EXECUTOR_PROPERTY = "WS_GUAC_TUNNEL_READER_EXECUTOR";
+
+    /**
+     * Unique string which shall be used to store the GuacamoleBatchPolicy
+     * dictating when tunnel data is sent.
+     */
+    private static final String TUNNEL_BATCH_POLICY_PROPERTY = "WS_GUAC_TUNNEL_BATCH_POLICY";
+
+    /**
+     * The executor which should run the read loop of this endpoint's tunnel,
+     * or null if the default executor should be used.
+     */
+    private TunnelReaderExecutor readerExecutor;
+
+    /**
+     * The policy dictating when data from this endpoint's tunnel is sent, or
+     * null if the default policy should be used.
+     */
+    private GuacamoleBatchPolicy batchPolicy;
+
     /**
      * Configurator implementation which stores the requested GuacamoleTunnel
      * within the user properties. The GuacamoleTunnel will be later retrieved
@@ -62,18 +91,60 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
          * tunnel requests.
          */
         private final Provider<TunnelRequestService> tunnelRequestServiceProvider;
+
+        /**
+         * Provider which provides the executor for running tunnel read loops.
+         */
+        private final Provider<TunnelReaderExecutor> readerExecutorProvider;
+
+        /**
+         * Provider which provides the policy dictating when tunnel data is
+         * sent.
+         */
+        private final Provider<GuacamoleBatchPolicy> batchPolicyProvider;
+
+        /**
+         * Provider which provides the policy dictating whether, and how,
+         * messages may be compressed.
+         */
+        private final Provider<WebSocketCompressionPolicy> compressionPolicyProvider;
          
         /**
          * Creates a new Configurator which uses the given tunnel request
          * service provider to retrieve the necessary service to handle new
-         * connections requests.
+         * connections requests, the given executor provider to retrieve the
+         * executor which runs each tunnel's read loop, and the given policy
+         * providers to retrieve the policies dictating when tunnel data is
+         * sent and whether that data may be compressed.
          * 
          * @param tunnelRequestServiceProvider
          *     The tunnel request service provider to use for all new
          *     connections.
+         *
+         * @param readerExecutorProvider
+         *     The tunnel reader executor provider to use for all new
+         *     connections.
+         *
+         * @param batchPolicyProvider
+         *     The batch policy provider to use for all new connections.
+         *
+         * @param compressionPolicyProvider
+         *     The compression policy provider to use for all new connections.
          */
-        public Configurator(Provider<TunnelRequestService> tunnelRequestServiceProvider) {
+        public Configurator(Provider<TunnelRequestService> tunnelRequestServiceProvider,
+                Provider<TunnelReaderExecutor> readerExecutorProvider,
+                Provider<GuacamoleBatchPolicy> batchPolicyProvider,
+                Provider<WebSocketCompressionPolicy> compressionPolicyProvider) {
             this.tunnelRequestServiceProvider = tunnelRequestServiceProvider;
+            this.readerExecutorProvider = readerExecutorProvider;
+            this.batchPolicyProvider = batchPolicyProvider;
+            this.compressionPolicyProvider = compressionPolicyProvider;
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed,
+                List<Extension> requested) {
+            return compressionPolicyProvider.get().getNegotiatedExtensions(installed, requested);
         }
         
         @Override
@@ -88,6 +159,8 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
             userProperties.clear();
             userProperties.put(TUNNEL_REQUEST_PROPERTY, new WebSocketTunnelRequest(request));
             userProperties.put(TUNNEL_REQUEST_SERVICE_PROPERTY, tunnelRequestServiceProvider.get());
+            userProperties.put(TUNNEL_READER_EXECUTOR_PROPERTY, readerExecutorProvider.get());
+            userProperties.put(TUNNEL_BATCH_POLICY_PROPERTY, batchPolicyProvider.get());
 
         }
         
@@ -99,6 +172,12 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
 
         Map<String, Object> userProperties = config.getUserProperties();
 
+        // Get executor for the tunnel read loop
+        readerExecutor = (TunnelReaderExecutor) userProperties.get(TUNNEL_READER_EXECUTOR_PROPERTY);
+
+        // Get policy for sending tunnel data
+        batchPolicy = (GuacamoleBatchPolicy) userProperties.get(TUNNEL_BATCH_POLICY_PROPERTY);
+
         // Get original tunnel request
         TunnelRequest tunnelRequest = (TunnelRequest) userProperties.get(TUNNEL_REQUEST_PROPERTY);
         if (tunnelRequest == null)
@@ -114,4 +193,26 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
 
     }
 
+    @Override
+    protected TunnelReaderExecutor getReaderExecutor() {
+
+        // Fall back to default executor if none was provided
+        if (readerExecutor == null)
+            return super.getReaderExecutor();
+
+        return readerExecutor;
+
+    }
+
+    @Override
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+
+        // Fall back to default policy if none was provided
+        if (batchPolicy == null)
+            return super.getBatchPolicy();
+
+        return batchPolicy;
+
+    }
+
 }
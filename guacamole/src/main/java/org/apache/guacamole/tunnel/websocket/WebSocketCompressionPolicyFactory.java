@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel.websocket;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.websocket.WebSocketCompressionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the WebSocketCompressionPolicy shared by all
+ * WebSocket tunnels, configured using guacamole.properties.
+ */
+public class WebSocketCompressionPolicyFactory {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketCompressionPolicyFactory.class);
+
+    /**
+     * Whether WebSocket messages may be compressed using the
+     * "permessage-deflate" extension, if supported by both the client and
+     * the servlet container.
+     */
+    private static final BooleanGuacamoleProperty WEBSOCKET_COMPRESSION =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "websocket-compression"; }
+
+    };
+
+    /**
+     * The maximum LZ77 window size, in bits, which clients may use when
+     * compressing WebSocket messages.
+     */
+    private static final IntegerGuacamoleProperty WEBSOCKET_COMPRESSION_WINDOW =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "websocket-compression-window"; }
+
+    };
+
+    /**
+     * Whether compression history may be retained between WebSocket
+     * messages.
+     */
+    private static final BooleanGuacamoleProperty WEBSOCKET_COMPRESSION_CONTEXT_TAKEOVER =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "websocket-compression-context-takeover"; }
+
+    };
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private WebSocketCompressionPolicyFactory() {
+    }
+
+    /**
+     * Returns whether WebSocket messages may be compressed at all, as
+     * configured within guacamole.properties. WebSocket implementations which
+     * cannot use WebSocketCompressionPolicy may use this function to refuse
+     * compression as configured. If guacamole.properties cannot be read,
+     * compression is allowed, as it would be by default.
+     *
+     * @param environment
+     *     The environment to use when reading the configuration.
+     *
+     * @return
+     *     true if WebSocket messages may be compressed, false otherwise.
+     */
+    public static boolean isEnabled(Environment environment) {
+
+        try {
+            return environment.getProperty(WEBSOCKET_COMPRESSION, true);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading WebSocket compression configuration.", e);
+            return true;
+        }
+
+    }
+
+    /**
+     * Creates a new WebSocketCompressionPolicy configured using the given
+     * environment. If guacamole.properties cannot be read, or the configured
+     * window size is invalid, the default policy is returned.
+     *
+     * @param environment
+     *     The environment to use when configuring the policy.
+     *
+     * @return
+     *     A WebSocketCompressionPolicy.
+     */
+    public static WebSocketCompressionPolicy create(Environment environment) {
+
+        boolean enabled;
+        int windowBits;
+        boolean contextTakeover;
+
+        // Read compression settings from guacamole.properties
+        try {
+            enabled = environment.getProperty(WEBSOCKET_COMPRESSION, true);
+            windowBits = environment.getProperty(WEBSOCKET_COMPRESSION_WINDOW,
+                    WebSocketCompressionPolicy.MAX_WINDOW_BITS);
+            contextTakeover = environment.getProperty(WEBSOCKET_COMPRESSION_CONTEXT_TAKEOVER, true);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to read guacamole.properties: {}", e.getMessage());
+            logger.debug("Error while reading WebSocket compression configuration.", e);
+            return WebSocketCompressionPolicy.getDefault();
+        }
+
+        // Ignore window sizes not allowed by RFC 7692
+        if (windowBits < WebSocketCompressionPolicy.MIN_WINDOW_BITS
+                || windowBits > WebSocketCompressionPolicy.MAX_WINDOW_BITS) {
+            logger.warn("WebSocket compression window must be between {} and "
+                    + "{} bits. The default window will be used.",
+                    WebSocketCompressionPolicy.MIN_WINDOW_BITS,
+                    WebSocketCompressionPolicy.MAX_WINDOW_BITS);
+            windowBits = WebSocketCompressionPolicy.MAX_WINDOW_BITS;
+        }
+
+        if (enabled)
+            logger.debug("WebSocket compression allowed with a client window "
+                    + "of at most {} bits. Context takeover {}.", windowBits,
+                    contextTakeover ? "allowed" : "disabled");
+        else
+            logger.debug("WebSocket compression disabled.");
+
+        return new WebSocketCompressionPolicy(enabled, windowBits, contextTakeover);
+
+    }
+
+}
@@ -20,13 +20,20 @@
 package org.apache.guacamole.tunnel.websocket;
 
 import com.google.inject.Provider;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.servlet.ServletModule;
 import java.util.Arrays;
 import javax.websocket.DeploymentException;
 import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpointConfig;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelLoader;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
+import org.apache.guacamole.websocket.WebSocketCompressionPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,12 +83,18 @@ public class WebSocketTunnelModule extends ServletModule implements TunnelLoader
         }
 
         Provider<TunnelRequestService> tunnelRequestServiceProvider = getProvider(TunnelRequestService.class);
+        Provider<TunnelReaderExecutor> readerExecutorProvider = getProvider(TunnelReaderExecutor.class);
+        Provider<GuacamoleBatchPolicy> batchPolicyProvider = getProvider(GuacamoleBatchPolicy.class);
+        Provider<WebSocketCompressionPolicy> compressionPolicyProvider = getProvider(WebSocketCompressionPolicy.class);
 
         // Build configuration for WebSocket tunnel
         ServerEndpointConfig config =
                 ServerEndpointConfig.Builder.create(RestrictedGuacamoleWebSocketTunnelEndpoint.class, "/websocket-tunnel")
-                                            .configurator(new RestrictedGuacamoleWebSocketTunnelEndpoint.Configurator(tunnelRequestServiceProvider))
-                                            .subprotocols(Arrays.asList(new String[]{"guacamole"}))
+                                            .configurator(new RestrictedGuacamoleWebSocketTunnelEndpoint.Configurator(tunnelRequestServiceProvider, readerExecutorProvider, batchPolicyProvider, compressionPolicyProvider))
+                                            .subprotocols(Arrays.asList(new String[]{
+                                                GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL,
+                                                "guacamole"
+                                            }))
                                             .build();
 
         try {
@@ -96,4 +109,21 @@ public class WebSocketTunnelModule extends ServletModule implements TunnelLoader
 
     }
 
+    /**
+     * Returns the policy dictating whether, and how, messages sent over
+     * WebSocket tunnels may be compressed, as configured within
+     * guacamole.properties.
+     *
+     * @param environment
+     *     The Guacamole server environment.
+     *
+     * @return
+     *     The WebSocketCompressionPolicy shared by all WebSocket tunnels.
+     */
+    @Provides
+    @Singleton
+    public WebSocketCompressionPolicy getCompressionPolicy(Environment environment) {
+        return WebSocketCompressionPolicyFactory.create(environment);
+    }
+
 }
@@ -20,11 +20,16 @@
 package org.apache.guacamole.tunnel.websocket.jetty8;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleInstructionBatcher;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutors;
 import org.eclipse.jetty.websocket.WebSocket;
 import org.eclipse.jetty.websocket.WebSocket.Connection;
 import org.eclipse.jetty.websocket.WebSocketServlet;
@@ -33,6 +38,7 @@ import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.tunnel.http.HTTPTunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequest;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,11 +53,6 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
      */
     private static final Logger logger = LoggerFactory.getLogger(GuacamoleWebSocketTunnelServlet.class);
     
-    /**
-     * The default, minimum buffer size for instructions.
-     */
-    private static final int BUFFER_SIZE = 8192;
-
     /**
      * Sends the given status on the given WebSocket connection and closes the
      * connection.
@@ -72,6 +73,9 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
         final TunnelRequest tunnelRequest = new HTTPTunnelRequest(request);
 
+        // Send data as binary messages containing UTF-8 if requested
+        final boolean binary = GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(protocol);
+
         // Return new WebSocket which communicates through tunnel
         return new WebSocket.OnTextMessage() {
 
@@ -124,37 +128,45 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
                     return;
                 }
 
-                Thread readThread = new Thread() {
+                Runnable readLoop = new Runnable() {
 
                     @Override
                     public void run() {
 
-                        StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
                         GuacamoleReader reader = tunnel.acquireReader();
-                        char[] readMessage;
+                        GuacamoleInstructionBatcher batcher =
+                                new GuacamoleInstructionBatcher(reader, getBatchPolicy());
 
                         try {
 
                             // Send tunnel UUID
-                            connection.sendMessage(new GuacamoleInstruction(
+                            String uuid = new GuacamoleInstruction(
                                 GuacamoleTunnel.INTERNAL_DATA_OPCODE,
                                 tunnel.getUUID().toString()
-                            ).toString());
-
-                            try {
-
-                                // Attempt to read
-                                while ((readMessage = reader.read()) != null) {
+                            ).toString();
 
-                                    // Buffer message
-                                    buffer.append(readMessage);
+                            if (binary) {
+                                byte[] data = uuid.getBytes("UTF-8");
+                                connection.sendMessage(data, 0, data.length);
+                            }
+                            else
+                                connection.sendMessage(uuid);
 
-                                    // Flush if we expect to wait or buffer is getting full
-                                    if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                        connection.sendMessage(buffer.toString());
-                                        buffer.setLength(0);
-                                    }
+                            try {
 
+                                // Send each batch of instructions as read,
+                                // as UTF-8 for binary clients
+                                if (binary) {
+                                    ByteBuffer batch;
+                                    while ((batch = batcher.readUTF8Batch()) != null)
+                                        connection.sendMessage(batch.array(),
+                                                batch.arrayOffset() + batch.position(),
+                                                batch.remaining());
+                                }
+                                else {
+                                    String batch;
+                                    while ((batch = batcher.readBatch()) != null)
+                                        connection.sendMessage(batch);
                                 }
 
                                 // No more data
@@ -190,7 +202,15 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
                 };
 
-                readThread.start();
+                // Run read loop using the configured executor
+                try {
+                    getReaderExecutor().execute(readLoop);
+                }
+                catch (GuacamoleException e) {
+                    logger.warn("Unable to start WebSocket tunnel read loop: {}", e.getMessage());
+                    logger.debug("WebSocket tunnel read loop refused.", e);
+                    closeConnection(connection, e.getStatus());
+                }
 
             }
 
@@ -209,6 +229,30 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
     }
 
+    /**
+     * Returns the TunnelReaderExecutor which should run the loop reading from
+     * each tunnel. By default, the shared executor returned by
+     * TunnelReaderExecutors.getDefault() is used.
+     *
+     * @return
+     *     The TunnelReaderExecutor which should run each tunnel read loop.
+     */
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return TunnelReaderExecutors.getDefault();
+    }
+
+    /**
+     * Returns the policy dictating when instruction data read from each
+     * tunnel is sent to the client. By default, the shared policy returned by
+     * GuacamoleBatchPolicy.getDefault() is used.
+     *
+     * @return
+     *     The policy dictating when instruction data is sent to the client.
+     */
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return GuacamoleBatchPolicy.getDefault();
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a connection
      * request. It it up to the implementor of this function to define what
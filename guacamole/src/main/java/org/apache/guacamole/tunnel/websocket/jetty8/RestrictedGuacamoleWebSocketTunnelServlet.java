@@ -22,7 +22,9 @@ package org.apache.guacamole.tunnel.websocket.jetty8;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 import org.apache.guacamole.tunnel.TunnelRequest;
 
@@ -39,6 +41,18 @@ public class RestrictedGuacamoleWebSocketTunnelServlet extends GuacamoleWebSocke
      */
     @Inject
     private TunnelRequestService tunnelRequestService;
+
+    /**
+     * Executor which runs each tunnel read loop.
+     */
+    @Inject
+    private TunnelReaderExecutor readerExecutor;
+
+    /**
+     * Policy dictating when tunnel data is sent.
+     */
+    @Inject
+    private GuacamoleBatchPolicy batchPolicy;
  
     @Override
     protected GuacamoleTunnel doConnect(TunnelRequest request)
@@ -46,4 +60,14 @@ public class RestrictedGuacamoleWebSocketTunnelServlet extends GuacamoleWebSocke
         return tunnelRequestService.createTunnel(request);
     }
 
+    @Override
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return readerExecutor;
+    }
+
+    @Override
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
 }
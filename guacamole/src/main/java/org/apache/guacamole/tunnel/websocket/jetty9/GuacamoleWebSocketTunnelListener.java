@@ -20,6 +20,8 @@
 package org.apache.guacamole.tunnel.websocket.jetty9;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import org.eclipse.jetty.websocket.api.CloseStatus;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
@@ -27,11 +29,16 @@ import org.eclipse.jetty.websocket.api.WebSocketListener;
 import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleInstructionBatcher;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutors;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.protocol.GuacamoleStatus;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,14 +48,14 @@ import org.slf4j.LoggerFactory;
 public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListener {
 
     /**
-     * The default, minimum buffer size for instructions.
+     * Logger for this class.
      */
-    private static final int BUFFER_SIZE = 8192;
+    private static final Logger logger = LoggerFactory.getLogger(RestrictedGuacamoleWebSocketTunnelServlet.class);
 
     /**
-     * Logger for this class.
+     * The character set of the data within binary WebSocket messages.
      */
-    private static final Logger logger = LoggerFactory.getLogger(RestrictedGuacamoleWebSocketTunnelServlet.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     /**
      * The underlying GuacamoleTunnel. WebSocket reads/writes will be handled
@@ -76,6 +83,30 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
 
     }
 
+    /**
+     * Returns the TunnelReaderExecutor which should run the loop reading from
+     * each tunnel. By default, the shared executor returned by
+     * TunnelReaderExecutors.getDefault() is used.
+     *
+     * @return
+     *     The TunnelReaderExecutor which should run each tunnel read loop.
+     */
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return TunnelReaderExecutors.getDefault();
+    }
+
+    /**
+     * Returns the policy dictating when instruction data read from each
+     * tunnel is sent to the client. By default, the shared policy returned by
+     * GuacamoleBatchPolicy.getDefault() is used.
+     *
+     * @return
+     *     The policy dictating when instruction data is sent to the client.
+     */
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return GuacamoleBatchPolicy.getDefault();
+    }
+
     /**
      * Returns a new tunnel for the given session. How this tunnel is created
      * or retrieved is implementation-dependent.
@@ -109,43 +140,54 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
             return;
         }
 
-        // Prepare read transfer thread
-        Thread readThread = new Thread() {
+        // Prepare read transfer loop
+        Runnable readLoop = new Runnable() {
 
             /**
              * Remote (client) side of this connection
              */
             private final RemoteEndpoint remote = session.getRemote();
+
+            /**
+             * Whether data should be sent as binary messages containing UTF-8,
+             * as requested by the client via the binary subprotocol.
+             */
+            private final boolean binary = GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(
+                    session.getUpgradeResponse().getAcceptedSubProtocol());
                 
             @Override
             public void run() {
 
-                StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
                 GuacamoleReader reader = tunnel.acquireReader();
-                char[] readMessage;
+                GuacamoleInstructionBatcher batcher =
+                        new GuacamoleInstructionBatcher(reader, getBatchPolicy());
 
                 try {
 
                     // Send tunnel UUID
-                    remote.sendString(new GuacamoleInstruction(
+                    String uuid = new GuacamoleInstruction(
                         GuacamoleTunnel.INTERNAL_DATA_OPCODE,
                         tunnel.getUUID().toString()
-                    ).toString());
-
-                    try {
+                    ).toString();
 
-                        // Attempt to read
-                        while ((readMessage = reader.read()) != null) {
+                    if (binary)
+                        remote.sendBytes(ByteBuffer.wrap(uuid.getBytes(UTF8)));
+                    else
+                        remote.sendString(uuid);
 
-                            // Buffer message
-                            buffer.append(readMessage);
-
-                            // Flush if we expect to wait or buffer is getting full
-                            if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                remote.sendString(buffer.toString());
-                                buffer.setLength(0);
-                            }
+                    try {
 
+                        // Send each batch of instructions as read, as UTF-8
+                        // for binary clients
+                        if (binary) {
+                            ByteBuffer batch;
+                            while ((batch = batcher.readUTF8Batch()) != null)
+                                remote.sendBytes(batch);
+                        }
+                        else {
+                            String batch;
+                            while ((batch = batcher.readBatch()) != null)
+                                remote.sendString(batch);
                         }
 
                         // No more data
@@ -181,7 +223,15 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
 
         };
 
-        readThread.start();
+        // Run read loop using the configured executor
+        try {
+            getReaderExecutor().execute(readLoop);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to start WebSocket tunnel read loop: {}", e.getMessage());
+            logger.debug("WebSocket tunnel read loop refused.", e);
+            closeConnection(session, e.getStatus());
+        }
 
     }
 
@@ -211,7 +261,11 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
 
     @Override
     public void onWebSocketBinary(byte[] payload, int offset, int length) {
-        throw new UnsupportedOperationException("Binary WebSocket messages are not supported.");
+
+        // Binary messages contain UTF-8 text and are otherwise handled
+        // identically to text messages
+        onWebSocketText(new String(payload, offset, length, UTF8));
+
     }
 
     @Override
@@ -22,11 +22,15 @@ package org.apache.guacamole.tunnel.websocket.jetty9;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.eclipse.jetty.websocket.api.UpgradeResponse;
 import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 
 /**
  * WebSocketCreator which selects the appropriate WebSocketListener
- * implementation if the "guacamole" subprotocol is in use.
+ * implementation if the "guacamole" subprotocol, or its binary variant, is in
+ * use.
  */
 public class RestrictedGuacamoleWebSocketCreator implements WebSocketCreator {
 
@@ -35,26 +39,49 @@ public class RestrictedGuacamoleWebSocketCreator implements WebSocketCreator {
      */
     private final TunnelRequestService tunnelRequestService;
 
+    /**
+     * Executor which runs each tunnel read loop.
+     */
+    private final TunnelReaderExecutor readerExecutor;
+
+    /**
+     * Policy dictating when tunnel data is sent.
+     */
+    private final GuacamoleBatchPolicy batchPolicy;
+
     /**
      * Creates a new WebSocketCreator which uses the given TunnelRequestService
-     * to create new GuacamoleTunnels for inbound requests.
+     * to create new GuacamoleTunnels for inbound requests, reading from those
+     * tunnels using the given TunnelReaderExecutor and sending their data as
+     * dictated by the given GuacamoleBatchPolicy.
      *
      * @param tunnelRequestService The service to use for inbound tunnel
      *                             requests.
+     *
+     * @param readerExecutor The executor to use for reading from each
+     *                       tunnel.
+     *
+     * @param batchPolicy The policy dictating when tunnel data is sent.
      */
-    public RestrictedGuacamoleWebSocketCreator(TunnelRequestService tunnelRequestService) {
+    public RestrictedGuacamoleWebSocketCreator(TunnelRequestService tunnelRequestService,
+            TunnelReaderExecutor readerExecutor, GuacamoleBatchPolicy batchPolicy) {
         this.tunnelRequestService = tunnelRequestService;
+        this.readerExecutor = readerExecutor;
+        this.batchPolicy = batchPolicy;
     }
 
     @Override
     public Object createWebSocket(UpgradeRequest request, UpgradeResponse response) {
 
-        // Validate and use "guacamole" subprotocol
+        // Validate and use "guacamole" or binary subprotocol, whichever the
+        // client prefers
         for (String subprotocol : request.getSubProtocols()) {
 
-            if ("guacamole".equals(subprotocol)) {
+            if ("guacamole".equals(subprotocol)
+                    || GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(subprotocol)) {
                 response.setAcceptedSubProtocol(subprotocol);
-                return new RestrictedGuacamoleWebSocketTunnelListener(tunnelRequestService);
+                return new RestrictedGuacamoleWebSocketTunnelListener(tunnelRequestService,
+                        readerExecutor, batchPolicy);
             }
 
         }
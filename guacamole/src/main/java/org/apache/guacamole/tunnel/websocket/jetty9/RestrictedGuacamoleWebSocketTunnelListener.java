@@ -21,7 +21,9 @@ package org.apache.guacamole.tunnel.websocket.jetty9;
 
 import org.eclipse.jetty.websocket.api.Session;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelRequestService;
 
 /**
@@ -35,15 +37,35 @@ public class RestrictedGuacamoleWebSocketTunnelListener extends GuacamoleWebSock
      */
     private final TunnelRequestService tunnelRequestService;
 
+    /**
+     * Executor which runs the tunnel read loop.
+     */
+    private final TunnelReaderExecutor readerExecutor;
+
+    /**
+     * Policy dictating when tunnel data is sent.
+     */
+    private final GuacamoleBatchPolicy batchPolicy;
+
     /**
      * Creates a new WebSocketListener which uses the given TunnelRequestService
-     * to create new GuacamoleTunnels for inbound requests.
+     * to create new GuacamoleTunnels for inbound requests, reading from those
+     * tunnels using the given TunnelReaderExecutor and sending their data as
+     * dictated by the given GuacamoleBatchPolicy.
      *
      * @param tunnelRequestService The service to use for inbound tunnel
      *                             requests.
+     *
+     * @param readerExecutor The executor to use for reading from the
+     *                       tunnel.
+     *
+     * @param batchPolicy The policy dictating when tunnel data is sent.
      */
-    public RestrictedGuacamoleWebSocketTunnelListener(TunnelRequestService tunnelRequestService) {
+    public RestrictedGuacamoleWebSocketTunnelListener(TunnelRequestService tunnelRequestService,
+            TunnelReaderExecutor readerExecutor, GuacamoleBatchPolicy batchPolicy) {
         this.tunnelRequestService = tunnelRequestService;
+        this.readerExecutor = readerExecutor;
+        this.batchPolicy = batchPolicy;
     }
 
     @Override
@@ -51,4 +73,14 @@ public class RestrictedGuacamoleWebSocketTunnelListener extends GuacamoleWebSock
         return tunnelRequestService.createTunnel(new WebSocketTunnelRequest(session.getUpgradeRequest()));
     }
 
+    @Override
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return readerExecutor;
+    }
+
+    @Override
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
 }
@@ -23,7 +23,11 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.net.TunnelReaderExecutor;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.tunnel.websocket.WebSocketCompressionPolicyFactory;
 
 /**
  * A WebSocketServlet partial re-implementation of GuacamoleTunnelServlet.
@@ -31,17 +35,55 @@ import org.apache.guacamole.tunnel.TunnelRequestService;
 @Singleton
 public class RestrictedGuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
+    /**
+     * The names of all compression extensions which Jetty 9 may negotiate.
+     * Jetty 9.0 implements only draft versions of "permessage-deflate",
+     * which do not support restricting the window size or context takeover,
+     * thus compression may only be allowed or refused entirely.
+     */
+    private static final String[] COMPRESSION_EXTENSIONS = {
+        "permessage-deflate",
+        "permessage-compress",
+        "x-webkit-deflate-frame",
+        "deflate-frame"
+    };
+
     /**
      * Service for handling tunnel requests.
      */
     @Inject
     private TunnelRequestService tunnelRequestService;
+
+    /**
+     * Executor which runs each tunnel read loop.
+     */
+    @Inject
+    private TunnelReaderExecutor readerExecutor;
+
+    /**
+     * Policy dictating when tunnel data is sent.
+     */
+    @Inject
+    private GuacamoleBatchPolicy batchPolicy;
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
  
     @Override
     public void configure(WebSocketServletFactory factory) {
 
+        // Refuse compression if disabled within guacamole.properties
+        if (!WebSocketCompressionPolicyFactory.isEnabled(environment)) {
+            for (String extension : COMPRESSION_EXTENSIONS)
+                factory.getExtensionFactory().unregister(extension);
+        }
+
         // Register WebSocket implementation
-        factory.setCreator(new RestrictedGuacamoleWebSocketCreator(tunnelRequestService));
+        factory.setCreator(new RestrictedGuacamoleWebSocketCreator(tunnelRequestService,
+                readerExecutor, batchPolicy));
         
     }
     
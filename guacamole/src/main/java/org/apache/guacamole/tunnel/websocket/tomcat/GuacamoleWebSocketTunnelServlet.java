@@ -21,15 +21,20 @@ package org.apache.guacamole.tunnel.websocket.tomcat;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchPolicy;
+import org.apache.guacamole.io.GuacamoleInstructionBatcher;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelReaderExecutor;
+import org.apache.guacamole.net.TunnelReaderExecutors;
 import org.apache.catalina.websocket.StreamInbound;
 import org.apache.catalina.websocket.WebSocketServlet;
 import org.apache.catalina.websocket.WsOutbound;
@@ -38,6 +43,7 @@ import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.tunnel.http.HTTPTunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequest;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,10 +85,11 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
     @Override
     protected String selectSubProtocol(List<String> subProtocols) {
 
-        // Search for expected protocol
+        // Search for expected protocols, in the client's order of preference
         for (String protocol : subProtocols)
-            if ("guacamole".equals(protocol))
-                return "guacamole";
+            if ("guacamole".equals(protocol)
+                    || GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(protocol))
+                return protocol;
         
         // Otherwise, fail
         return null;
@@ -95,6 +102,9 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
         final TunnelRequest tunnelRequest = new HTTPTunnelRequest(request);
 
+        // Send data as binary messages containing UTF-8 if requested
+        final boolean binary = GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(protocol);
+
         // Return new WebSocket which communicates through tunnel
         return new StreamInbound() {
 
@@ -152,37 +162,41 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
                     return;
                 }
 
-                Thread readThread = new Thread() {
+                Runnable readLoop = new Runnable() {
 
                     @Override
                     public void run() {
 
-                        StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
                         GuacamoleReader reader = tunnel.acquireReader();
-                        char[] readMessage;
+                        GuacamoleInstructionBatcher batcher =
+                                new GuacamoleInstructionBatcher(reader, getBatchPolicy());
 
                         try {
 
                             // Send tunnel UUID
-                            outbound.writeTextMessage(CharBuffer.wrap(new GuacamoleInstruction(
+                            String uuid = new GuacamoleInstruction(
                                 GuacamoleTunnel.INTERNAL_DATA_OPCODE,
                                 tunnel.getUUID().toString()
-                            ).toString()));
-
-                            try {
-
-                                // Attempt to read
-                                while ((readMessage = reader.read()) != null) {
+                            ).toString();
 
-                                    // Buffer message
-                                    buffer.append(readMessage);
+                            if (binary)
+                                outbound.writeBinaryMessage(ByteBuffer.wrap(uuid.getBytes("UTF-8")));
+                            else
+                                outbound.writeTextMessage(CharBuffer.wrap(uuid));
 
-                                    // Flush if we expect to wait or buffer is getting full
-                                    if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                        outbound.writeTextMessage(CharBuffer.wrap(buffer));
-                                        buffer.setLength(0);
-                                    }
+                            try {
 
+                                // Send each batch of instructions as read,
+                                // as UTF-8 for binary clients
+                                if (binary) {
+                                    ByteBuffer batch;
+                                    while ((batch = batcher.readUTF8Batch()) != null)
+                                        outbound.writeBinaryMessage(batch);
+                                }
+                                else {
+                                    String batch;
+                                    while ((batch = batcher.readBatch()) != null)
+                                        outbound.writeTextMessage(CharBuffer.wrap(batch));
                                 }
 
                                 // No more data
@@ -218,7 +232,15 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
                 };
 
-                readThread.start();
+                // Run read loop using the configured executor
+                try {
+                    getReaderExecutor().execute(readLoop);
+                }
+                catch (GuacamoleException e) {
+                    logger.warn("Unable to start WebSocket tunnel read loop: {}", e.getMessage());
+                    logger.debug("WebSocket tunnel read loop refused.", e);
+                    closeConnection(outbound, e.getStatus());
+                }
 
             }
 
@@ -235,13 +257,41 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
             @Override
             protected void onBinaryData(InputStream in) throws IOException {
-                throw new UnsupportedOperationException("Not supported yet.");
+
+                // Binary messages contain UTF-8 text and are otherwise
+                // handled identically to text messages
+                onTextData(new InputStreamReader(in, "UTF-8"));
+
             }
 
         };
 
     }
 
+    /**
+     * Returns the TunnelReaderExecutor which should run the loop reading from
+     * each tunnel. By default, the shared executor returned by
+     * TunnelReaderExecutors.getDefault() is used.
+     *
+     * @return
+     *     The TunnelReaderExecutor which should run each tunnel read loop.
+     */
+    protected TunnelReaderExecutor getReaderExecutor() {
+        return TunnelReaderExecutors.getDefault();
+    }
+
+    /**
+     * Returns the policy dictating when instruction data read from each
+     * tunnel is sent to the client. By default, the shared policy returned by
+     * GuacamoleBatchPolicy.getDefault() is used.
+     *
+     * @return
+     *     The policy dictating when instruction data is sent to the client.
+     */
+    protected GuacamoleBatchPolicy getBatchPolicy() {
+        return GuacamoleBatchPolicy.getDefault();
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a connection
      * request. It it up to the implementor of this function to define what